@@ -0,0 +1,72 @@
+package com.example.kafka.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.kafka.config.EstadisticasProperties;
+import com.example.kafka.config.RegistroEventosProperties;
+import com.example.kafka.estadisticas.EstadisticasPedidos;
+import com.example.kafka.logging.RegistroEventos;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Entidades y ajustes compartidos por los benchmarks.
+ */
+final class Datos {
+
+    private Datos() {
+    }
+
+    static Pedido pedido() {
+        return Pedido.builder()
+                .id(123456L)
+                .usuarioId(4242L)
+                .monto(new BigDecimal("1520.75"))
+                .estado("PENDIENTE")
+                .fechaPedido(LocalDateTime.of(2026, 1, 15, 10, 30, 45, 123_000_000))
+                .build();
+    }
+
+    static Usuario usuario() {
+        return Usuario.builder()
+                .id(4242L)
+                .nombre("María González")
+                .email("maria.gonzalez512@example.com")
+                .pais("Chile")
+                .fechaCreacion(LocalDateTime.of(2025, 11, 3, 8, 0, 0))
+                .build();
+    }
+
+    /**
+     * Nivel de log de la aplicación durante el benchmark; con INFO se mide también
+     * el coste del logging por registro.
+     */
+    static void nivelLog(String nivel) {
+        ((Logger) LoggerFactory.getLogger("com.example.kafka")).setLevel(Level.valueOf(nivel));
+    }
+
+    /**
+     * Registro de eventos con la configuración por defecto (muestreo) y su hilo escritor
+     * en marcha, como en la aplicación.
+     */
+    static RegistroEventos registroEventos(MeterRegistry meterRegistry) {
+        RegistroEventos registroEventos = new RegistroEventos(new RegistroEventosProperties(), meterRegistry);
+        ReflectionTestUtils.invokeMethod(registroEventos, "iniciar");
+        return registroEventos;
+    }
+
+    /**
+     * Estadísticas de pedidos con la configuración por defecto, como en la aplicación.
+     */
+    static EstadisticasPedidos estadisticasPedidos(MeterRegistry meterRegistry) {
+        EstadisticasPedidos estadisticas = new EstadisticasPedidos(new EstadisticasProperties(), meterRegistry);
+        ReflectionTestUtils.invokeMethod(estadisticas, "iniciar");
+        return estadisticas;
+    }
+}
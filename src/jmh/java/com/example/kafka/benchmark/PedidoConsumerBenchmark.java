@@ -0,0 +1,89 @@
+package com.example.kafka.benchmark;
+
+import com.example.kafka.config.InstantaneasProperties;
+import com.example.kafka.consumer.PedidoConsumer;
+import com.example.kafka.dedup.DeduplicadorRegistros;
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.store.AlmacenPedidos;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.listener.adapter.HandlerAdapter;
+import org.springframework.kafka.listener.adapter.RecordMessagingMessageListenerAdapter;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camino del adaptador de listener de Spring (conversión del registro a Message,
+ * resolución de @Payload/@Header e invocación) hasta PedidoConsumer.consumirPedido.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PedidoConsumerBenchmark {
+
+    @Param({"WARN"})
+    public String nivelLog;
+
+    private RecordMessagingMessageListenerAdapter<String, Object> adapter;
+    private MockConsumer<String, Object> mockConsumer;
+    private Acknowledgment acknowledgment;
+    private ConsumerRecord<String, Object> record;
+
+    @Setup
+    public void setup() throws Exception {
+        Datos.nivelLog(nivelLog);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KafkaMetricas metricas = new KafkaMetricas(meterRegistry);
+        // Sin @Value el deduplicador y el almacén quedan deshabilitados
+        PedidoConsumer pedidoConsumer = new PedidoConsumer(null, metricas,
+                new DeduplicadorRegistros(metricas, meterRegistry),
+                new AlmacenPedidos(null, null, meterRegistry, new InstantaneasProperties()),
+                Datos.registroEventos(meterRegistry), Datos.estadisticasPedidos(meterRegistry));
+        Method metodo = PedidoConsumer.class.getMethod("consumirPedido",
+                Pedido.class, String.class, String.class, int.class, long.class, long.class, byte[].class,
+                Acknowledgment.class);
+
+        DefaultMessageHandlerMethodFactory factory = new DefaultMessageHandlerMethodFactory();
+        factory.afterPropertiesSet();
+
+        adapter = new RecordMessagingMessageListenerAdapter<>(pedidoConsumer, metodo);
+        adapter.setHandlerMethod(new HandlerAdapter(factory.createInvocableHandlerMethod(pedidoConsumer, metodo)));
+
+        mockConsumer = new MockConsumer<>("earliest");
+        acknowledgment = () -> {
+        };
+
+        Pedido pedido = Datos.pedido();
+        // Con timestamp reciente el pedido se suma a las estadísticas como en la aplicación
+        record = new ConsumerRecord<>("pedidos-topic", 0, 0L, System.currentTimeMillis(), TimestampType.CREATE_TIME,
+                0, 0, pedido.getId().toString(), pedido, new RecordHeaders(), Optional.empty());
+    }
+
+    @Benchmark
+    public void consumirPedido() {
+        adapter.onMessage(record, acknowledgment, mockConsumer);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.kafka.benchmark;
+
+import com.example.kafka.config.ClavesCalientesProperties;
+import com.example.kafka.config.SpoolProperties;
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.particionado.DetectorClavesCalientes;
+import com.example.kafka.producer.PedidoProducer;
+import com.example.kafka.producer.SpoolEnvios;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PedidoProducer.enviarPedido sobre un MockProducer que completa cada envío al
+ * momento: mide KafkaTemplate, serialización y callback sin red.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PedidoProducerBenchmark {
+
+    private static final int LIMPIAR_CADA = 10_000;
+
+    @Param({"WARN"})
+    public String nivelLog;
+
+    private MockProducer<String, Object> mockProducer;
+    private PedidoProducer pedidoProducer;
+    private Pedido pedido;
+    private int enviados;
+
+    @Setup
+    public void setup() {
+        Datos.nivelLog(nivelLog);
+
+        // KafkaTemplate cierra el productor tras cada envío cuando no viene de un
+        // DefaultKafkaProducerFactory; aquí el mismo MockProducer se reutiliza
+        mockProducer = new MockProducer<>(true, null, new StringSerializer(), new JacksonJsonSerializer<>()) {
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> mockProducer));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KafkaMetricas metricas = new KafkaMetricas(meterRegistry);
+        // Spool deshabilitado: se mide el envío directo al productor
+        SpoolProperties spool = new SpoolProperties();
+        spool.setHabilitado(false);
+        // Detector sin topics con reparto: la key se devuelve tal cual
+        DetectorClavesCalientes detector = new DetectorClavesCalientes(new ClavesCalientesProperties(), meterRegistry);
+        pedidoProducer = new PedidoProducer(new SpoolEnvios(kafkaTemplate, spool, null, metricas, meterRegistry),
+                detector, metricas, Datos.registroEventos(meterRegistry));
+        ReflectionTestUtils.setField(pedidoProducer, "topic", "pedidos-topic");
+        pedido = Datos.pedido();
+    }
+
+    @Benchmark
+    public void enviarPedido() {
+        pedidoProducer.enviarPedido(pedido);
+
+        // El MockProducer guarda el historial de envíos; se vacía para no medir la memoria
+        if (++enviados % LIMPIAR_CADA == 0) {
+            mockProducer.clear();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.kafka.benchmark;
+
+import com.example.kafka.config.ObjectMapperConfig;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import com.example.kafka.serde.BinarioDeserializer;
+import com.example.kafka.serde.BinarioSerializer;
+import com.example.kafka.serde.JsonModeloDeserializer;
+import com.example.kafka.serde.JsonModeloSerializer;
+import com.example.kafka.serde.RegistroEsquemas;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de serializar y deserializar Pedido y Usuario con el ObjectMapper de
+ * ObjectMapperConfig, con el serializador JSON de Kafka, con los lectores y escritores
+ * JSON ligados a cada modelo y con el formato binario.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerdeBenchmark {
+
+    private static final String TOPIC = "pedidos-topic";
+
+    private ObjectMapper objectMapper;
+    private JacksonJsonSerializer<Object> kafkaJsonSerializer;
+    private JacksonJsonDeserializer<Object> kafkaJsonDeserializer;
+    private JsonModeloSerializer jsonModeloSerializer;
+    private JsonModeloDeserializer jsonModeloDeserializer;
+    private BinarioSerializer binarioSerializer;
+    private BinarioDeserializer binarioDeserializer;
+
+    private Pedido pedido;
+    private Usuario usuario;
+
+    private byte[] pedidoMapper;
+    private byte[] usuarioMapper;
+    private byte[] pedidoKafkaJson;
+    private RecordHeaders headersKafkaJson;
+    private ByteBuffer pedidoKafkaJsonBuffer;
+    private byte[] pedidoBinario;
+    private RecordHeaders headersBinario;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = new ObjectMapperConfig().objectMapper();
+
+        kafkaJsonSerializer = new JacksonJsonSerializer<>();
+        kafkaJsonDeserializer = new JacksonJsonDeserializer<>();
+        kafkaJsonDeserializer.addTrustedPackages("com.example.kafka.model");
+        // Se reutilizan las mismas cabeceras en cada invocación
+        kafkaJsonDeserializer.setRemoveTypeHeaders(false);
+
+        jsonModeloSerializer = new JsonModeloSerializer(objectMapper, new JacksonJsonSerializer<>());
+        jsonModeloDeserializer = new JsonModeloDeserializer(objectMapper, kafkaJsonDeserializer);
+
+        RegistroEsquemas registro = new RegistroEsquemas(
+                Files.createTempDirectory("esquemas").resolve("esquemas.properties"));
+        binarioSerializer = new BinarioSerializer(registro, new JacksonJsonSerializer<>(), true);
+        binarioDeserializer = new BinarioDeserializer(registro, kafkaJsonDeserializer);
+
+        pedido = Datos.pedido();
+        usuario = Datos.usuario();
+
+        pedidoMapper = objectMapper.writeValueAsBytes(pedido);
+        usuarioMapper = objectMapper.writeValueAsBytes(usuario);
+
+        headersKafkaJson = new RecordHeaders();
+        pedidoKafkaJson = kafkaJsonSerializer.serialize(TOPIC, headersKafkaJson, pedido);
+        // Como llega del fetch: el registro es una vista sobre un buffer mayor
+        pedidoKafkaJsonBuffer = ByteBuffer.allocate(pedidoKafkaJson.length + 64);
+        pedidoKafkaJsonBuffer.position(32);
+        pedidoKafkaJsonBuffer.put(pedidoKafkaJson);
+        pedidoKafkaJsonBuffer.position(32).limit(32 + pedidoKafkaJson.length);
+        pedidoKafkaJsonBuffer = pedidoKafkaJsonBuffer.slice();
+
+        headersBinario = new RecordHeaders();
+        pedidoBinario = binarioSerializer.serialize(TOPIC, headersBinario, pedido);
+    }
+
+    @Benchmark
+    public byte[] objectMapperSerializarPedido() throws Exception {
+        return objectMapper.writeValueAsBytes(pedido);
+    }
+
+    @Benchmark
+    public Pedido objectMapperDeserializarPedido() throws Exception {
+        return objectMapper.readValue(pedidoMapper, Pedido.class);
+    }
+
+    @Benchmark
+    public byte[] objectMapperSerializarUsuario() throws Exception {
+        return objectMapper.writeValueAsBytes(usuario);
+    }
+
+    @Benchmark
+    public Usuario objectMapperDeserializarUsuario() throws Exception {
+        return objectMapper.readValue(usuarioMapper, Usuario.class);
+    }
+
+    @Benchmark
+    public byte[] kafkaJsonSerializarPedido() {
+        return kafkaJsonSerializer.serialize(TOPIC, new RecordHeaders(), pedido);
+    }
+
+    @Benchmark
+    public Object kafkaJsonDeserializarPedido() {
+        return kafkaJsonDeserializer.deserialize(TOPIC, headersKafkaJson, pedidoKafkaJson);
+    }
+
+    @Benchmark
+    public byte[] jsonModeloSerializarPedido() {
+        return jsonModeloSerializer.serialize(TOPIC, new RecordHeaders(), pedido);
+    }
+
+    @Benchmark
+    public Object jsonModeloDeserializarPedido() {
+        // La cabecera de tipo se quita tras leer: se pasa una copia de las cabeceras
+        return jsonModeloDeserializer.deserialize(TOPIC, new RecordHeaders(headersKafkaJson.toArray()),
+                pedidoKafkaJsonBuffer.duplicate());
+    }
+
+    @Benchmark
+    public byte[] binarioSerializarPedido() {
+        return binarioSerializer.serialize(TOPIC, new RecordHeaders(), pedido);
+    }
+
+    @Benchmark
+    public Object binarioDeserializarPedido() {
+        return binarioDeserializer.deserialize(TOPIC, headersBinario, pedidoBinario);
+    }
+}
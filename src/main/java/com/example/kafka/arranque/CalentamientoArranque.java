@@ -0,0 +1,206 @@
+package com.example.kafka.arranque;
+
+import com.example.kafka.config.AjusteProductorProperties;
+import com.example.kafka.config.ArranqueProperties;
+import com.example.kafka.generador.EntidadesAleatorias;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.compress.Compression;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Prepara el productor principal antes de que la aplicación acepte tráfico: los
+ * {@link ApplicationRunner} se ejecutan antes de que el estado de readiness pase a
+ * ACCEPTING_TRAFFIC, así que el primer envío de una petición real no paga la creación
+ * del productor, los metadatos de sus topics (y con ellos el id de productor
+ * idempotente), la carga de las librerías nativas de compresión ni el código del
+ * serializador sin compilar.
+ * <p>
+ * También decide cuándo comprueba KafkaAdmin los topics declarados: durante el
+ * arranque (por defecto), en segundo plano una vez aceptado el tráfico o nunca.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(ArranqueProperties.class)
+public class CalentamientoArranque implements ApplicationRunner {
+
+    private static final int MUESTRAS = 64;
+
+    private final ArranqueProperties propiedades;
+
+    private final AjusteProductorProperties ajusteProductor;
+
+    private final KafkaAdmin kafkaAdmin;
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    private final LineaTiempoArranque lineaTiempo;
+
+    @Value("${kafka.topics.pedidos}")
+    private String pedidosTopic;
+
+    @Value("${kafka.topics.usuarios}")
+    private String usuariosTopic;
+
+    private final AtomicBoolean topicsLanzados = new AtomicBoolean();
+
+    @PostConstruct
+    void configurarAdmin() {
+        switch (propiedades.getTopicsAdmin()) {
+            case "al-arrancar" -> {
+            }
+            case "diferido", "omitido" -> {
+                // KafkaAdmin comprueba los topics en afterSingletonsInstantiated, cuando este
+                // bean ya está creado
+                kafkaAdmin.setAutoCreate(false);
+                log.info("Comprobación de topics con KafkaAdmin: {}", propiedades.getTopicsAdmin());
+            }
+            default -> throw new IllegalStateException("kafka.arranque.topics-admin desconocido: "
+                    + propiedades.getTopicsAdmin() + " (al-arrancar, diferido u omitido)");
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!propiedades.isCalentar()) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            metadatos();
+            List<byte[]> valores = serializador();
+            compresion(valores);
+        } catch (RuntimeException e) {
+            // El calentamiento nunca impide arrancar: el primer envío pagará lo que falte
+            log.warn("Calentamiento del productor interrumpido", e);
+        }
+        lineaTiempo.fase("calentamiento", inicio);
+    }
+
+    @EventListener
+    public void alAceptarTrafico(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC
+                && "diferido".equals(propiedades.getTopicsAdmin())
+                && topicsLanzados.compareAndSet(false, true)) {
+            Thread hilo = new Thread(this::comprobarTopics, "topics-diferidos");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+    }
+
+    private void comprobarTopics() {
+        long inicio = System.nanoTime();
+        boolean comprobados = kafkaAdmin.initialize();
+        lineaTiempo.fase(comprobados ? "topics" : "topics (fallo)", inicio);
+        if (!comprobados) {
+            log.warn("No se pudieron comprobar los topics en segundo plano; deben existir en el broker");
+        }
+    }
+
+    /**
+     * Crea el productor compartido de la factoría y pide los metadatos de cada topic.
+     */
+    private void metadatos() {
+        List<String> topics = propiedades.getTopicsCalentados().isEmpty()
+                ? List.of(pedidosTopic, usuariosTopic) : propiedades.getTopicsCalentados();
+        for (String topic : topics) {
+            long inicio = System.nanoTime();
+            try {
+                kafkaTemplate.partitionsFor(topic);
+                lineaTiempo.fase("metadatos " + topic, inicio);
+            } catch (KafkaException e) {
+                // Sin broker cada topic esperaría max.block.ms; los envíos irán al spool
+                log.warn("Calentamiento: sin metadatos de {} ({}), se omiten los demás topics", topic, e.getMessage());
+                lineaTiempo.fase("metadatos " + topic + " (fallo)", inicio);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serializa pedidos y usuarios con la misma instancia de serializador que usa el
+     * productor; devuelve una muestra de los valores para la compresión.
+     */
+    private List<byte[]> serializador() {
+        Supplier<Serializer<Object>> proveedor = kafkaTemplate.getProducerFactory().getValueSerializerSupplier();
+        List<byte[]> valores = new ArrayList<>(MUESTRAS * 2);
+        if (proveedor == null) {
+            return valores;
+        }
+        Serializer<Object> serializer = proveedor.get();
+        List<Object> pedidos = new ArrayList<>(MUESTRAS);
+        List<Object> usuarios = new ArrayList<>(MUESTRAS);
+        for (int i = 0; i < MUESTRAS; i++) {
+            pedidos.add(EntidadesAleatorias.pedido(i, (long) i));
+            usuarios.add(EntidadesAleatorias.usuario(i));
+        }
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < propiedades.getIteracionesSerializador(); i++) {
+            byte[] pedido = serializer.serialize(pedidosTopic, new RecordHeaders(), pedidos.get(i % MUESTRAS));
+            byte[] usuario = serializer.serialize(usuariosTopic, new RecordHeaders(), usuarios.get(i % MUESTRAS));
+            if (i < MUESTRAS) {
+                valores.add(pedido);
+                valores.add(usuario);
+            }
+        }
+        lineaTiempo.fase("serializador", inicio);
+        return valores;
+    }
+
+    /**
+     * Construye lotes con cada códec de los perfiles del productor, como hace su
+     * acumulador: carga la librería nativa y compila el camino de compresión.
+     */
+    private void compresion(List<byte[]> valores) {
+        if (valores.isEmpty()) {
+            return;
+        }
+        Set<String> codecs = new LinkedHashSet<>();
+        ajusteProductor.getPerfiles().forEach(perfil -> codecs.add(perfil.getCompresion()));
+        codecs.remove("none");
+        for (String codec : codecs) {
+            long inicio = System.nanoTime();
+            try {
+                Compression compresion = Compression.of(codec).build();
+                for (int i = 0; i < propiedades.getIteracionesCompresion(); i++) {
+                    MemoryRecordsBuilder lote = MemoryRecords.builder(
+                            ByteBuffer.allocate(16 * 1024), compresion, TimestampType.CREATE_TIME, 0L);
+                    for (byte[] valor : valores) {
+                        lote.append(System.currentTimeMillis(), null, valor);
+                    }
+                    lote.build();
+                }
+                lineaTiempo.fase("compresion " + codec, inicio);
+            } catch (RuntimeException | LinkageError e) {
+                log.warn("Calentamiento: no se pudo comprimir con {}", codec, e);
+                lineaTiempo.fase("compresion " + codec + " (fallo)", inicio);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.kafka.arranque;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.support.ProducerListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Fases del arranque medidas desde el inicio de la JVM: contexto refrescado (beans
+ * creados y contenedores de listeners arrancados), calentamiento del productor,
+ * aceptación de tráfico, creación diferida de topics y primer envío confirmado del
+ * productor principal, del que es {@link ProducerListener}.
+ */
+@Slf4j
+@Component
+public class LineaTiempoArranque implements ProducerListener<String, Object> {
+
+    /**
+     * Fase que termina a los {@code finMs} del inicio de la JVM; los hitos duran 0.
+     */
+    public record Fase(String nombre, long finMs, long duracionMs) {
+    }
+
+    private final List<Fase> fases = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean contextoRefrescado = new AtomicBoolean();
+
+    private final AtomicBoolean primerEnvio = new AtomicBoolean();
+
+    /** Hito en este instante. */
+    public void marcar(String nombre) {
+        fases.add(new Fase(nombre, msDesdeJvm(), 0));
+    }
+
+    /** Fase que empezó en {@code inicioNanos} ({@link System#nanoTime()}) y acaba ahora. */
+    public void fase(String nombre, long inicioNanos) {
+        fases.add(new Fase(nombre, msDesdeJvm(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos)));
+    }
+
+    @EventListener
+    public void alRefrescarContexto(ContextRefreshedEvent event) {
+        // Solo el contexto principal, no los hijos (servidor de management en otro puerto)
+        if (event.getApplicationContext().getParent() == null && contextoRefrescado.compareAndSet(false, true)) {
+            marcar("contexto");
+        }
+    }
+
+    @EventListener
+    public void alArrancar(ApplicationStartedEvent event) {
+        marcar("arrancada");
+    }
+
+    @EventListener
+    public void alCambiarDisponibilidad(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC) {
+            marcar("aceptando-trafico");
+            log.info("Arranque: {}", resumen());
+        }
+    }
+
+    @Override
+    public void onSuccess(ProducerRecord<String, Object> record, RecordMetadata metadata) {
+        if (!primerEnvio.get() && primerEnvio.compareAndSet(false, true)) {
+            marcar("primer-envio " + record.topic());
+            log.info("Primer envío confirmado a {} a los {} ms del inicio de la JVM", record.topic(), msDesdeJvm());
+        }
+    }
+
+    public Map<String, Object> informe() {
+        List<Map<String, Object>> lista = new ArrayList<>(fases.size());
+        for (Fase fase : fases) {
+            Map<String, Object> entrada = new LinkedHashMap<>();
+            entrada.put("fase", fase.nombre());
+            entrada.put("finMs", fase.finMs());
+            entrada.put("duracionMs", fase.duracionMs());
+            lista.add(entrada);
+        }
+        Map<String, Object> informe = new LinkedHashMap<>();
+        informe.put("inicioJvm", Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()));
+        informe.put("fases", lista);
+        return informe;
+    }
+
+    private String resumen() {
+        return fases.stream()
+                .map(fase -> fase.duracionMs() > 0
+                        ? fase.nombre() + " " + fase.finMs() + " ms (" + fase.duracionMs() + " ms)"
+                        : fase.nombre() + " " + fase.finMs() + " ms")
+                .collect(Collectors.joining(", "));
+    }
+
+    private static long msDesdeJvm() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
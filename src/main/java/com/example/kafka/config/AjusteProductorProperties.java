@@ -0,0 +1,63 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Perfiles de batching y compresión del productor y parámetros del ajuste adaptativo
+ * ({@code kafka.producer.ajuste}). Los perfiles van ordenados de menor latencia a mayor
+ * throughput.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.producer.ajuste")
+public class AjusteProductorProperties {
+
+    /** fijo: siempre el perfil inicial | adaptativo: cambia de perfil según las métricas. */
+    private String modo = "fijo";
+
+    private String perfilInicial = "equilibrado";
+
+    private Duration intervalo = Duration.ofSeconds(30);
+
+    /** Objetivo para record-queue-time-avg + request-latency-avg. */
+    private double latenciaObjetivoMs = 50;
+
+    /** Evaluaciones seguidas que deben pedir el mismo cambio antes de aplicarlo. */
+    private int evaluacionesParaCambiar = 3;
+
+    private List<Perfil> perfiles = new ArrayList<>(List.of(
+            new Perfil("latencia", 0, 16384, "lz4"),
+            new Perfil("equilibrado", 10, 65536, "snappy"),
+            new Perfil("rendimiento", 50, 262144, "zstd")
+    ));
+
+    @Data
+    public static class Perfil {
+        private String nombre;
+        private int lingerMs;
+        private int batchSize;
+        /** zstd, lz4, snappy, gzip o none. */
+        private String compresion;
+
+        public Perfil() {
+        }
+
+        public Perfil(String nombre, int lingerMs, int batchSize, String compresion) {
+            this.nombre = nombre;
+            this.lingerMs = lingerMs;
+            this.batchSize = batchSize;
+            this.compresion = compresion;
+        }
+    }
+
+    public Perfil perfil(String nombre) {
+        return perfiles.stream()
+                .filter(p -> p.getNombre().equals(nombre))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Perfil de productor desconocido: " + nombre));
+    }
+}
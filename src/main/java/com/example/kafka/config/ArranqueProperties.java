@@ -0,0 +1,36 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arranque de la aplicación: creación de topics y calentamiento del productor antes de
+ * aceptar tráfico ({@code kafka.arranque}). Solo son propiedades, así que el mismo
+ * artefacto procesado con Spring AOT sirve para cualquier modo.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.arranque")
+public class ArranqueProperties {
+
+    /**
+     * al-arrancar: KafkaAdmin comprueba y crea los topics durante el arranque |
+     * diferido: en segundo plano una vez aceptado el tráfico |
+     * omitido: nunca, los topics se gestionan fuera de la aplicación.
+     */
+    private String topicsAdmin = "al-arrancar";
+
+    /** Calentar el productor principal antes de aceptar tráfico. */
+    private boolean calentar = false;
+
+    /** Topics cuyos metadatos se piden al calentar; vacío = pedidos y usuarios. */
+    private List<String> topicsCalentados = new ArrayList<>();
+
+    /** Serializaciones de Pedido y Usuario para que el JIT compile el serializador. */
+    private int iteracionesSerializador = 20_000;
+
+    /** Lotes comprimidos con cada códec de los perfiles del productor. */
+    private int iteracionesCompresion = 200;
+}
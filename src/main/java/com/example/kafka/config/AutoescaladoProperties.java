@@ -0,0 +1,50 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ajuste automático de la concurrencia de los contenedores de listeners según su lag y
+ * su ocupación ({@code kafka.consumer.autoescalado}).
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.consumer.autoescalado")
+public class AutoescaladoProperties {
+
+    /**
+     * Desactivado por defecto: cada cambio para y arranca el contenedor completo (ver
+     * {@code AutoescaladoListeners}).
+     */
+    private boolean habilitado = false;
+
+    private Duration intervalo = Duration.ofSeconds(30);
+
+    /** Tiempo mínimo entre dos cambios de concurrencia del mismo listener. */
+    private Duration enfriamiento = Duration.ofMinutes(2);
+
+    /** Evaluaciones seguidas que deben pedir el mismo cambio antes de aplicarlo. */
+    private int evaluacionesParaCambiar = 3;
+
+    /** Fracción del intervalo que los hilos pasan en el listener por encima de la cual se sube. */
+    private double ocupacionAlta = 0.7;
+
+    /** Fracción del intervalo por debajo de la cual se baja. */
+    private double ocupacionBaja = 0.2;
+
+    /** Id del listener -> límites; los listeners sin entrada no se ajustan. */
+    private Map<String, Limites> listeners = new HashMap<>();
+
+    @Data
+    public static class Limites {
+        private int min = 1;
+        private int max = 3;
+        /** Lag total (registros) a partir del cual se considera subir. */
+        private long lagAlto = 10_000;
+        /** Lag total por debajo del cual se considera bajar. */
+        private long lagBajo = 100;
+    }
+}
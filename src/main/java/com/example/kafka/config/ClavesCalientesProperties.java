@@ -0,0 +1,35 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detección de keys calientes en los envíos y reparto de esas keys entre varias
+ * particiones ({@code kafka.producer.claves-calientes}).
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.producer.claves-calientes")
+public class ClavesCalientesProperties {
+
+    /** Topics cuyas keys calientes se reparten; el resto solo se observa. */
+    private List<String> topics = new ArrayList<>();
+
+    /** Keys distintas que sigue el esbozo de cada topic. */
+    private int capacidad = 64;
+
+    /** Fracción mínima de los envíos recientes del topic para considerar caliente una key. */
+    private double umbral = 0.1;
+
+    /** Envíos recientes mínimos de una key para considerarla caliente. */
+    private long minimoRegistros = 500;
+
+    /** Cada ventana los contadores se reducen a la mitad: pesan más los envíos recientes. */
+    private Duration ventana = Duration.ofSeconds(10);
+
+    /** Particiones entre las que se reparte una key caliente; 0 = todas las del topic. */
+    private int abanico = 0;
+}
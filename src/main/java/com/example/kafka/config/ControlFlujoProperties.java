@@ -0,0 +1,34 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Límites de consumo por listener y carriles de prioridad por topic
+ * ({@code kafka.consumer.flujo}). Se pueden cambiar en caliente con /api/kafka/flujo.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.consumer.flujo")
+public class ControlFlujoProperties {
+
+    private boolean habilitado = true;
+
+    /** Id del listener -> límite de registros por segundo. */
+    private Map<String, Limite> limites = new HashMap<>();
+
+    /** Registros por segundo compartidos por todos los carriles; 0 sin límite (sin carriles). */
+    private double capacidadTotal = 0;
+
+    /** Topic -> alta, normal o baja; los topics sin prioridad van al carril normal. */
+    private Map<String, String> prioridades = new HashMap<>();
+
+    @Data
+    public static class Limite {
+        private double tasa;
+        /** Registros que se pueden consumir de golpe; 0 equivale a un segundo de tasa. */
+        private double rafaga;
+    }
+}
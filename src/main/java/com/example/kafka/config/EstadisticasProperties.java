@@ -0,0 +1,55 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estadísticas de los pedidos consumidos en ventanas de tiempo
+ * ({@code kafka.consumer.pedidos.estadisticas}).
+ * <p>
+ * Cada partición reserva al recibir su primer pedido
+ * {@code (minutos + horas) × (maxEstados + maxPaises)} celdas de unos
+ * {@code 4 × cubetas + 16} bytes, con {@code cubetas ≈ ln(montoMaximo × 100) / ln((1 + e) / (1 - e))};
+ * unos 2,3 MB por partición con los valores por defecto.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.consumer.pedidos.estadisticas")
+public class EstadisticasProperties {
+
+    private boolean habilitado = true;
+
+    /** Cubos de un minuto que se conservan por partición. */
+    private int minutos = 60;
+
+    /** Cubos de una hora que se conservan por partición. */
+    private int horas = 24;
+
+    /** Error relativo máximo de los percentiles de monto. */
+    private double errorRelativo = 0.05;
+
+    /** Los montos mayores se cuentan en la última cubeta del histograma. */
+    private double montoMaximo = 1_000_000;
+
+    /** Estados distintos que se distinguen, contando "desconocido" y "otros". */
+    private int maxEstados = 12;
+
+    /** Países distintos que se distinguen, contando "desconocido" y "otros" (como mucho 127). */
+    private int maxPaises = 24;
+
+    /** Usuarios cuyo país se recuerda para clasificar sus pedidos. */
+    private int maxUsuarios = 262_144;
+
+    /** Nombre -> ventana saltante; se sirven además las fijas "minuto" y "hora". */
+    private Map<String, Saltante> saltantes = new LinkedHashMap<>();
+
+    @Data
+    public static class Saltante {
+        private Duration tamano;
+        /** Cada cuánto empieza una ventana; múltiplo de un minuto o de una hora, como el tamaño. */
+        private Duration avance;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Instantáneas del almacén local de pedidos ({@code kafka.consumer.pedidos.almacen.instantaneas}):
+ * el estado de cada partición junto con el offset que cubre, para que una instancia
+ * nueva arranque desde ahí en lugar de reproducir el topic completo.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.consumer.pedidos.almacen.instantaneas")
+public class InstantaneasProperties {
+
+    private boolean habilitado = true;
+
+    /** Compartido entre instancias (volumen común) para que una instancia nueva las encuentre. */
+    private String directorio = "./data/instantaneas";
+
+    /** Cada cuánto se escriben las particiones con registros nuevos; cero = solo bajo demanda. */
+    private Duration intervalo = Duration.ofMinutes(10);
+
+    /** Instantáneas conservadas por partición. */
+    private int retener = 2;
+
+    /** Códec de los bloques: none, gzip, snappy, lz4 o zstd. */
+    private String compresion = "zstd";
+
+    /** Datos sin comprimir por bloque; cada búsqueda descomprime un bloque. */
+    private DataSize tamanoBloque = DataSize.ofKilobytes(64);
+
+    /**
+     * Si el grupo no tiene offset confirmado de una partición (el consumidor empieza por
+     * el principio del log), saltar hasta el offset que cubre la instantánea en lugar de
+     * volver a procesar esos registros.
+     */
+    private boolean saltarReproduccion = true;
+}
@@ -1,16 +1,41 @@
 package com.example.kafka.config;
 
+import com.example.kafka.consumer.AuditoriaPedidos;
+import com.example.kafka.consumer.ControlFlujo;
+import com.example.kafka.consumer.PedidoConsumer;
+import com.example.kafka.consumer.RegistrosIlegibles;
+import com.example.kafka.consumer.UnionPedidosUsuarios;
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.serde.BinarioDeserializer;
+import com.example.kafka.serde.DeserializadorTolerante;
+import com.example.kafka.serde.JsonModeloDeserializer;
+import com.example.kafka.serde.RegistroEsquemas;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.RangeAssignor;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
 import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -19,12 +44,33 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class KafkaConsumerConfig {
 
+    private final ControlFlujo controlFlujo;
+
+    private final RegistrosIlegibles registrosIlegibles;
+
+    private final RegistroEsquemas registroEsquemas;
+
+    private final ObjectMapper objectMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    private final KafkaMetricas metricas;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
 
+    @Value("${kafka.consumer.pedidos.nack-sleep-ms:1000}")
+    private long nackSleepMs;
+
+    @Value("${kafka.consumer.pedidos.reintentos.intentos:4}")
+    private int intentosPedidos;
+
+    @Value("${kafka.consumer.estrategia-asignacion:org.apache.kafka.clients.consumer.CooperativeStickyAssignor}")
+    private String estrategiaAsignacion;
+
     @Bean
     public Map<String, Object> consumerConfigs() {
         Map<String, Object> props = new HashMap<>();
@@ -47,6 +93,11 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 45000);
         props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 3000);
 
+        // Rebalanceo incremental: solo se revocan las particiones que cambian de dueño y el
+        // resto sigue consumiendo. Para migrar un grupo eager en caliente se despliega antes
+        // con "CooperativeStickyAssignor,RangeAssignor" y después solo con el cooperativo.
+        props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, estrategiaAsignacion);
+
         // Configuración de fetch
         props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 1);
         props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 500);
@@ -57,20 +108,29 @@ public class KafkaConsumerConfig {
 
     @Bean
     public ConsumerFactory<String, Object> consumerFactory() {
-        // Usar el ObjectMapper de Spring Boot que ya tiene JSR310Module configurado
+        // Pedido y Usuario en JSON con lectores del ObjectMapper de la aplicación; el
+        // resto de tipos con el deserializador JSON de Kafka
         JacksonJsonDeserializer<Object> jsonDeserializer = new JacksonJsonDeserializer<>();
         jsonDeserializer.addTrustedPackages("com.example.kafka.model");
 
-        return new DefaultKafkaConsumerFactory<>(
+        DefaultKafkaConsumerFactory<String, Object> factory = new DefaultKafkaConsumerFactory<>(
                 consumerConfigs(),
                 new StringDeserializer(),
-                jsonDeserializer
+                // Registros con cabecera de formato binario; el resto sigue llegando como JSON.
+                // Uno ilegible llega con valor null y la excepción en una cabecera en lugar
+                // de hacer fallar cada poll de la partición
+                new DeserializadorTolerante(new BinarioDeserializer(registroEsquemas,
+                        new JsonModeloDeserializer(objectMapper, jsonDeserializer)))
         );
+        // Métricas del cliente, entre ellas records-lag por topic y partición
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+
+        return factory;
     }
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, Object>
-    kafkaListenerContainerFactory() {
+    kafkaListenerContainerFactory(@Lazy PedidoConsumer pedidoConsumer) {
 
         ConcurrentKafkaListenerContainerFactory<String, Object> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
@@ -79,7 +139,154 @@ public class KafkaConsumerConfig {
         factory.setConcurrency(3);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         factory.getContainerProperties().setPollTimeout(3000);
+        // Límites por listener y carriles de prioridad con pause()/resume()
+        factory.setContainerCustomizer(container -> {
+            controlFlujo.gobernar(container);
+            escucharAsignacionesPedidos(container, pedidoConsumer);
+        });
 
         return factory;
     }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object>
+    batchKafkaListenerContainerFactory(@Lazy PedidoConsumer pedidoConsumer,
+                                       KafkaTemplate<String, Object> kafkaTemplate) {
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(3);
+        // Entrega al listener todos los registros de cada poll (hasta max.poll.records)
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setPollTimeout(3000);
+        DefaultErrorHandler erroresPedidos = erroresLotePedidos(kafkaTemplate);
+        factory.setContainerCustomizer(container -> {
+            controlFlujo.gobernar(container);
+            escucharAsignacionesPedidos(container, pedidoConsumer);
+            if (PedidoConsumer.LISTENER_BATCH.equals(container.getListenerId())) {
+                container.setCommonErrorHandler(erroresPedidos);
+            }
+        });
+        // En un lote un registro ilegible llegaría como tombstone; si se descarta el lote
+        // entero se confirma igualmente
+        factory.setRecordFilterStrategy(registrosIlegibles);
+        factory.setAckDiscarded(true);
+
+        return factory;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object>
+    paraleloKafkaListenerContainerFactory(@Lazy PedidoConsumer pedidoConsumer) {
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(3);
+        factory.setBatchListener(true);
+        // Los offsets los confirma ProcesadorParalelo a medida que terminan los hilos
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setPollTimeout(3000);
+        factory.getContainerProperties().setIdleEventInterval(1000L);
+        // PedidoConsumer delega en ProcesadorParalelo la confirmación al revocarse
+        factory.getContainerProperties().setConsumerRebalanceListener(pedidoConsumer);
+        factory.setRecordFilterStrategy(registrosIlegibles);
+
+        return factory;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object>
+    unionKafkaListenerContainerFactory(@Lazy UnionPedidosUsuarios unionPedidosUsuarios) {
+        // @Lazy: UnionPedidosUsuarios es a la vez el listener que usa esta factoría
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(KafkaTopicConfig.PARTICIONES_USUARIOS);
+        factory.setBatchListener(true);
+        // Los offsets de pedidos los confirma UnionPedidosUsuarios; los de usuarios no se usan
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setPollTimeout(3000);
+        factory.getContainerProperties().setIdleEventInterval(1000L);
+        factory.getContainerProperties().setConsumerRebalanceListener(unionPedidosUsuarios);
+        factory.setRecordFilterStrategy(registrosIlegibles);
+        // Co-particionado: la partición N de usuarios y de pedidos-por-usuario al mismo consumidor
+        factory.getContainerProperties().getKafkaConsumerProperties().setProperty(
+                ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, RangeAssignor.class.getName());
+
+        return factory;
+    }
+
+    @Bean
+    public KafkaTransactionManager<String, Object> kafkaTransactionManager(
+            @Qualifier("transactionalProducerFactory") ProducerFactory<String, Object> transactionalProducerFactory) {
+        KafkaTransactionManager<String, Object> manager = new KafkaTransactionManager<>(transactionalProducerFactory);
+        // Por defecto sin sincronización: AuditoriaPedidos aplica sus estados en afterCommit
+        manager.setTransactionSynchronization(AbstractPlatformTransactionManager.SYNCHRONIZATION_ON_ACTUAL_TRANSACTION);
+        return manager;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object>
+    auditoriaKafkaListenerContainerFactory(
+            @Lazy AuditoriaPedidos auditoriaPedidos,
+            KafkaTransactionManager<String, Object> kafkaTransactionManager) {
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(3);
+        factory.setBatchListener(true);
+        // Transacción por lote: los envíos del listener y los offsets consumidos se
+        // confirman juntos (sendOffsetsToTransaction)
+        factory.getContainerProperties().setKafkaAwareTransactionManager(kafkaTransactionManager);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.getContainerProperties().setPollTimeout(3000);
+        factory.getContainerProperties().setConsumerRebalanceListener(auditoriaPedidos);
+        // Reanuda antes de cada poll las particiones que pausó la reconstrucción de estados
+        factory.setBatchInterceptor(auditoriaPedidos);
+        // Descartado dentro de la transacción del lote: su offset se confirma con el resto
+        factory.setRecordFilterStrategy(registrosIlegibles);
+        // Solo registros de transacciones confirmadas (p. ej. las de TransaccionService)
+        factory.getContainerProperties().getKafkaConsumerProperties().setProperty(
+                ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+
+        return factory;
+    }
+
+    /**
+     * Errores del listener de pedidos en modo batch: el listener señala el registro que
+     * falló, se confirman los anteriores y el lote se vuelve a entregar desde él tras
+     * nack-sleep-ms. Agotados los mismos intentos que el modo record, el registro se
+     * publica en pedidos-topic-dlt y la partición sigue avanzando.
+     */
+    private DefaultErrorHandler erroresLotePedidos(KafkaTemplate<String, Object> kafkaTemplate) {
+        DeadLetterPublishingRecoverer dlt = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, ex) -> new TopicPartition(record.topic() + "-dlt", -1));
+        DefaultErrorHandler errores = new DefaultErrorHandler((record, ex) -> {
+            dlt.accept(record, ex);
+            metricas.registrarDlt(record.topic() + "-dlt");
+        }, new FixedBackOff(nackSleepMs, Math.max(0, intentosPedidos - 1)));
+        errores.setRetryListeners((record, ex, intento) ->
+                metricas.registrarReintento(PedidoConsumer.LISTENER_BATCH, record.topic()));
+        return errores;
+    }
+
+    /**
+     * Los contenedores de pedidos-processor-group deciden al asignarse cada partición
+     * desde dónde empieza el listener; el resto de listeners de la factoría no.
+     */
+    private static void escucharAsignacionesPedidos(ConcurrentMessageListenerContainer<String, Object> container,
+                                                    PedidoConsumer pedidoConsumer) {
+        if (PedidoConsumer.GRUPO.equals(container.getGroupId())) {
+            container.getContainerProperties().setConsumerRebalanceListener(pedidoConsumer);
+        }
+    }
 }
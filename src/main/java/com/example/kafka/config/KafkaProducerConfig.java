@@ -1,26 +1,75 @@
 package com.example.kafka.config;
 
+import com.example.kafka.arranque.LineaTiempoArranque;
+import com.example.kafka.particionado.DetectorClavesCalientes;
+import com.example.kafka.particionado.ParticionadorClavesCalientes;
+import com.example.kafka.serde.BinarioSerializer;
+import com.example.kafka.serde.JsonModeloSerializer;
+import com.example.kafka.serde.RegistroEsquemas;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.CompositeProducerListener;
+import org.springframework.kafka.support.LoggingProducerListener;
 import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
+@Slf4j
 @Configuration
 @RequiredArgsConstructor
+@EnableConfigurationProperties(AjusteProductorProperties.class)
 public class KafkaProducerConfig {
 
+    private final RegistroEsquemas registroEsquemas;
+
+    private final AjusteProductorProperties ajusteProductor;
+
+    private final ObjectMapper objectMapper;
+
+    private final DetectorClavesCalientes detectorClavesCalientes;
+
+    private final MeterRegistry meterRegistry;
+
+    private final LineaTiempoArranque lineaTiempoArranque;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${kafka.serde.formato:json}")
+    private String formatoSerializacion;
+
+    @Value("${kafka.producer.max-bloqueo-ms:5000}")
+    private long maxBloqueoMs;
+
+    @Value("${spring.application.name:kafka-demo}")
+    private String nombreAplicacion;
+
+    @Value("${kafka.producer.instancia:}")
+    private String instancia;
+
+    @Value("${kafka.producer.instancia-fichero:./data/instancia}")
+    private String ficheroInstancia;
+
     @Bean
     public Map<String, Object> producerConfigs() {
         Map<String, Object> props = new HashMap<>();
@@ -35,18 +84,24 @@ public class KafkaProducerConfig {
         props.put(ProducerConfig.RETRIES_CONFIG, 3);
         props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
 
-        // Configuración de rendimiento
-        props.put(ProducerConfig.BATCH_SIZE_CONFIG, 16384);
-        props.put(ProducerConfig.LINGER_MS_CONFIG, 10);
+        // Configuración de rendimiento: batching y compresión según el perfil inicial
+        // (en modo adaptativo AjusteProductor los cambia en producerFactory)
+        props.putAll(configuracionPerfil(ajusteProductor.perfil(ajusteProductor.getPerfilInicial())));
         props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, 33554432);
-        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "snappy");
 
         // Configuración de ordenamiento
         props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
 
+        // Mismo reparto que murmur2 para las keys normales; las keys saladas se reparten
+        // entre particiones consecutivas. Cada envío alimenta el detector de keys calientes
+        props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, ParticionadorClavesCalientes.class);
+        props.put(DetectorClavesCalientes.CONFIG_DETECTOR, detectorClavesCalientes);
+
         // Timeouts
         props.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, 30000);
         props.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, 120000);
+        // Máximo que send() puede bloquear al llamador (buffer lleno o sin metadatos)
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBloqueoMs);
 
 
         return props;
@@ -54,31 +109,99 @@ public class KafkaProducerConfig {
 
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
-        // Usar el ObjectMapper de Spring Boot que ya tiene JSR310Module configurado
-        JacksonJsonSerializer<Object> jsonSerializer = new JacksonJsonSerializer<>();
-
         DefaultKafkaProducerFactory<String, Object> factory =
                 new DefaultKafkaProducerFactory<>(producerConfigs());
-        factory.setValueSerializer(jsonSerializer);
+        factory.setValueSerializer(valueSerializer());
+        // Métricas del cliente: record-queue-time, batch-size-avg, request-latency, reintentos...
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
 
         return factory;
     }
 
     @Bean
+    @Primary
     public KafkaTemplate<String, Object> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+        KafkaTemplate<String, Object> template = new KafkaTemplate<>(producerFactory());
+        // El listener por defecto registra los errores; la línea de tiempo, el primer envío
+        template.setProducerListener(new CompositeProducerListener<>(
+                new LoggingProducerListener<>(), lineaTiempoArranque));
+        return template;
     }
 
     @Bean
     public ProducerFactory<String, Object> transactionalProducerFactory() {
-        Map<String, Object> props = producerConfigs();
-        props.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, "tx-");
+        // Copia: producerConfigs() es un bean compartido con producerFactory()
+        Map<String, Object> props = new HashMap<>(producerConfigs());
         props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
 
         DefaultKafkaProducerFactory<String, Object> factory =
                 new DefaultKafkaProducerFactory<>(props);
-        factory.setTransactionIdPrefix("tx-");
+        factory.setValueSerializer(valueSerializer());
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        factory.setTransactionIdPrefix(prefijoTransaccional());
 
         return factory;
     }
+
+    /**
+     * Prefijo de los transactional.id de esta instancia. Debe ser distinto en cada
+     * instancia viva: dos instancias con el mismo prefijo reparten los mismos ids y se
+     * expulsan entre sí (ProducerFencedException) en cada initTransactions. Estable entre
+     * reinicios de la misma instancia, para que la nueva aborte lo que dejó a medias.
+     */
+    String prefijoTransaccional() {
+        return nombreAplicacion + "-" + instancia() + "-tx-";
+    }
+
+    /**
+     * {@code kafka.producer.instancia} o, si no se configuró (HOSTNAME no llega a la JVM
+     * fuera de un contenedor), la generada en el primer arranque y guardada en
+     * {@code kafka.producer.instancia-fichero}. Si no se puede leer ni guardar, la
+     * aplicación no arranca: un valor por defecto común volvería a expulsar a las demás.
+     */
+    private String instancia() {
+        if (instancia != null && !instancia.isBlank()) {
+            return instancia.trim();
+        }
+        Path fichero = Path.of(ficheroInstancia).toAbsolutePath();
+        try {
+            if (Files.exists(fichero)) {
+                String guardada = Files.readString(fichero, StandardCharsets.UTF_8).trim();
+                if (!guardada.isEmpty()) {
+                    return guardada;
+                }
+            }
+            String generada = UUID.randomUUID().toString();
+            Files.createDirectories(fichero.getParent());
+            Files.writeString(fichero, generada, StandardCharsets.UTF_8);
+            log.info("Sin kafka.producer.instancia: se usa {}, guardada en {}", generada, fichero);
+            return generada;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer ni guardar el identificador de instancia en "
+                    + fichero + "; configurar kafka.producer.instancia", e);
+        }
+    }
+
+    @Bean
+    public KafkaTemplate<String, Object> transactionalKafkaTemplate() {
+        // Cada transacción toma un productor de la caché de la factoría y lo devuelve al
+        // terminar: el pool crece hasta el número de transacciones concurrentes
+        return new KafkaTemplate<>(transactionalProducerFactory());
+    }
+
+    public static Map<String, Object> configuracionPerfil(AjusteProductorProperties.Perfil perfil) {
+        return Map.of(
+                ProducerConfig.LINGER_MS_CONFIG, perfil.getLingerMs(),
+                ProducerConfig.BATCH_SIZE_CONFIG, perfil.getBatchSize(),
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, perfil.getCompresion());
+    }
+
+    private BinarioSerializer valueSerializer() {
+        // Binario para Pedido y Usuario; JSON para el resto y mientras dure la migración
+        return new BinarioSerializer(
+                registroEsquemas,
+                new JsonModeloSerializer(objectMapper, new JacksonJsonSerializer<>()),
+                "binario".equals(formatoSerializacion)
+        );
+    }
 }
\ No newline at end of file
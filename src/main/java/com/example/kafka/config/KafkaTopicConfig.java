@@ -9,19 +9,38 @@ import org.springframework.kafka.config.TopicBuilder;
 @Configuration
 public class KafkaTopicConfig {
 
+    /**
+     * Particiones de usuarios-topic; pedidos-por-usuario-topic debe tener las mismas para
+     * que la unión de pedidos con usuarios esté co-particionada.
+     */
+    public static final int PARTICIONES_USUARIOS = 3;
+
     @Value("${kafka.topics.usuarios}")
     private String usuariosTopic;
 
     @Value("${kafka.topics.pedidos}")
     private String pedidosTopic;
 
+    /** Compartido con los topics de reintento de PedidoConsumer, que conservan la partición. */
+    @Value("${kafka.topics.pedidos-particiones:5}")
+    private int particionesPedidos;
+
     @Value("${kafka.topics.notificaciones}")
     private String notificacionesTopic;
 
+    @Value("${kafka.topics.pedidos-por-usuario}")
+    private String pedidosPorUsuarioTopic;
+
+    @Value("${kafka.topics.auditoria}")
+    private String auditoriaTopic;
+
+    @Value("${kafka.topics.pedidos-estados}")
+    private String pedidosEstadosTopic;
+
     @Bean
     public NewTopic usuariosTopic() {
         return TopicBuilder.name(usuariosTopic)
-                .partitions(3)
+                .partitions(PARTICIONES_USUARIOS)
                 .replicas(1)
                 .config("retention.ms", "604800000") // 7 días
                 .build();
@@ -30,7 +49,7 @@ public class KafkaTopicConfig {
     @Bean
     public NewTopic pedidosTopic() {
         return TopicBuilder.name(pedidosTopic)
-                .partitions(5)
+                .partitions(particionesPedidos)
                 .replicas(1)
                 .compact() // Compactación por key
                 .build();
@@ -43,4 +62,32 @@ public class KafkaTopicConfig {
                 .replicas(1)
                 .build();
     }
+
+    @Bean
+    public NewTopic pedidosPorUsuarioTopic() {
+        // Topic interno: pedidos re-particionados por usuarioId
+        return TopicBuilder.name(pedidosPorUsuarioTopic)
+                .partitions(PARTICIONES_USUARIOS)
+                .replicas(1)
+                .config("retention.ms", "86400000") // 1 día
+                .build();
+    }
+
+    @Bean
+    public NewTopic auditoriaTopic() {
+        return TopicBuilder.name(auditoriaTopic)
+                .partitions(3)
+                .replicas(1)
+                .config("retention.ms", "2592000000") // 30 días
+                .build();
+    }
+
+    @Bean
+    public NewTopic pedidosEstadosTopic() {
+        return TopicBuilder.name(pedidosEstadosTopic)
+                .partitions(3)
+                .replicas(1)
+                .config("retention.ms", "604800000") // 7 días
+                .build();
+    }
 }
@@ -0,0 +1,32 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registro de eventos por registro de productores, consumidores y API
+ * ({@code kafka.logging}). El modo y las tasas de muestreo se pueden cambiar en caliente
+ * con PUT /api/kafka/logging.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.logging")
+public class RegistroEventosProperties {
+
+    /** detallado: una línea por evento | muestreo: una de cada 1/tasa | resumen: solo resúmenes. */
+    private String modo = "muestreo";
+
+    /** Fracción de eventos escritos en modo muestreo para los topics sin tasa propia. */
+    private double tasaMuestreo = 0.01;
+
+    private Map<String, Double> tasasPorTopic = new HashMap<>();
+
+    /** Cada cuánto se escribe el resumen de eventos por topic y partición. */
+    private Duration intervaloResumen = Duration.ofSeconds(10);
+
+    /** Eventos pendientes de escribir (potencia de 2); con el anillo lleno se descartan. */
+    private int capacidadAnillo = 8192;
+}
@@ -0,0 +1,20 @@
+package com.example.kafka.config;
+
+import com.example.kafka.serde.RegistroEsquemas;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class SerdeConfig {
+
+    @Value("${kafka.serde.registro-esquemas:./data/esquemas.properties}")
+    private String ficheroEsquemas;
+
+    @Bean
+    public RegistroEsquemas registroEsquemas() {
+        return new RegistroEsquemas(Path.of(ficheroEsquemas));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Spool local de los envíos de pedidos y usuarios mientras el broker no responde o el
+ * buffer del productor está casi lleno ({@code kafka.producer.spool}).
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.producer.spool")
+public class SpoolProperties {
+
+    private boolean habilitado = true;
+
+    private String directorio = "./data/spool";
+
+    /** Tamaño de cada segmento mapeado en memoria. */
+    private DataSize tamanoSegmento = DataSize.ofMegabytes(64);
+
+    /** Tamaño máximo del spool en disco; por encima los envíos se rechazan. */
+    private DataSize tamanoMaximo = DataSize.ofGigabytes(1);
+
+    /** ninguna: la caché de páginas del SO | periodica: cada intervalo-fsync | siempre: en cada envío. */
+    private String fsync = "periodica";
+
+    private Duration intervaloFsync = Duration.ofSeconds(1);
+
+    /** Con envíos pendientes y sin ninguna confirmación durante este tiempo, se pasa al spool. */
+    private Duration sinConfirmacion = Duration.ofSeconds(3);
+
+    /** Fracción libre de buffer.memory por debajo de la cual se pasa al spool. */
+    private double bufferLibreMinimo = 0.1;
+
+    private Duration intervaloComprobacion = Duration.ofMillis(200);
+
+    /** Registros reenviados por lote; el lote avanza solo si el broker confirma todos. */
+    private int loteReenvio = 500;
+
+    private Duration esperaReintento = Duration.ofSeconds(1);
+}
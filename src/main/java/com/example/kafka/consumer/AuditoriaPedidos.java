@@ -0,0 +1,393 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.model.AuditoriaPedido;
+import com.example.kafka.model.CambioEstadoPedido;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.particionado.ClavesSaladas;
+import com.example.kafka.serde.DeserializadorTolerante;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consume-transforma-produce exactly-once: por cada registro de pedidos-topic emite un
+ * registro de auditoría y, si el estado del pedido cambió, un cambio de estado.
+ * <p>
+ * El contenedor abre una transacción por lote con el productor transaccional; los
+ * envíos del listener y los offsets consumidos (sendOffsetsToTransaction) se confirman
+ * juntos, y el consumidor lee con read_committed. El último estado conocido de cada
+ * pedido se reconstruye al asignarse la partición leyendo el topic compactado hasta el
+ * offset confirmado, y solo se actualiza cuando la transacción hace commit, así que un
+ * lote abortado se vuelve a derivar igual.
+ * <p>
+ * La reconstrucción no se hace dentro de onPartitionsAssigned: la partición se pausa,
+ * se lee en un hilo aparte y se reanuda al terminar. Mientras tanto el consumidor sigue
+ * haciendo poll (y consumiendo el resto de sus particiones), así que una reconstrucción
+ * larga no excede max.poll.interval.ms ni provoca otro rebalanceo.
+ * <p>
+ * La pausa se hace directamente en el consumidor, para que el poll en curso ya no
+ * devuelva registros de la partición; el contenedor no reanuda pausas que no hizo él,
+ * así que la reanudación también la hace esta clase, desde el hilo del consumidor justo
+ * antes de cada poll (como interceptor de lotes del contenedor).
+ */
+@Slf4j
+@Service
+public class AuditoriaPedidos implements ConsumerAwareRebalanceListener, BatchInterceptor<String, Object> {
+
+    static final String LISTENER_ID = "pedidos-auditoria";
+
+    private static final String GROUP_ID = "pedidos-auditoria-group";
+
+    private static final Duration POLL_RESTAURACION = Duration.ofMillis(500);
+
+    private static final long REINTENTO_RESTAURACION_MS = 5_000;
+
+    // Pedido existente sin estado (los mapas de estados no admiten null)
+    private static final String SIN_ESTADO = "";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    private final ConsumerFactory<String, Object> consumerFactory;
+
+    private final KafkaMetricas metricas;
+
+    @Value("${kafka.topics.auditoria}")
+    private String auditoriaTopic;
+
+    @Value("${kafka.topics.pedidos-estados}")
+    private String pedidosEstadosTopic;
+
+    // Último estado de cada pedido por partición; cada partición la usa un único hilo
+    private final Map<Integer, Map<Long, String>> estados = new ConcurrentHashMap<>();
+
+    // Reconstrucciones en curso o terminadas y aún sin reanudar; la partición sigue
+    // pausada hasta que el hilo de su consumidor la reanuda
+    private final Map<TopicPartition, Restauracion> restauraciones = new ConcurrentHashMap<>();
+
+    private ExecutorService restaurador;
+
+    public AuditoriaPedidos(
+            @Qualifier("transactionalKafkaTemplate") KafkaTemplate<String, Object> kafkaTemplate,
+            ConsumerFactory<String, Object> consumerFactory,
+            KafkaMetricas metricas) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.consumerFactory = consumerFactory;
+        this.metricas = metricas;
+    }
+
+    @PostConstruct
+    void iniciar() {
+        restaurador = Executors.newCachedThreadPool(r -> {
+            Thread hilo = new Thread(r, "auditoria-restauracion");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PreDestroy
+    void detener() {
+        restaurador.shutdownNow();
+    }
+
+    @KafkaListener(
+            id = LISTENER_ID,
+            topics = "${kafka.topics.pedidos}",
+            groupId = GROUP_ID,
+            containerFactory = "auditoriaKafkaListenerContainerFactory",
+            autoStartup = "${kafka.auditoria.habilitado:true}"
+    )
+    public void auditar(List<ConsumerRecord<String, Pedido>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        metricas.registrarLote(LISTENER_ID, records.get(0).topic(), records.size());
+
+        // Estados derivados en este lote; pasan a la tabla solo tras el commit
+        Map<Integer, Map<Long, String>> cambios = new HashMap<>();
+        for (ConsumerRecord<String, Pedido> record : records) {
+            metricas.registrarConsumo(LISTENER_ID, record);
+            Long id = idDe(record);
+            if (id == null) {
+                log.warn("Pedido sin id en partición: {} offset: {}, no se audita", record.partition(), record.offset());
+                continue;
+            }
+
+            Map<Long, String> cambiosParticion = cambios.computeIfAbsent(record.partition(), k -> new HashMap<>());
+            // null: el pedido no existe (aún no creado o eliminado)
+            String anterior = cambiosParticion.containsKey(id)
+                    ? cambiosParticion.get(id)
+                    : estados.getOrDefault(record.partition(), Map.of()).get(id);
+
+            Pedido pedido = record.value();
+            String estadoNuevo = pedido != null ? Objects.requireNonNullElse(pedido.getEstado(), SIN_ESTADO) : null;
+            String operacion = pedido == null ? "ELIMINADO" : anterior != null ? "ACTUALIZADO" : "CREADO";
+            kafkaTemplate.send(auditoriaTopic, id.toString(), auditoria(record, id, operacion));
+
+            if (anterior != null && estadoNuevo != null && !anterior.equals(estadoNuevo)) {
+                kafkaTemplate.send(pedidosEstadosTopic, id.toString(), CambioEstadoPedido.builder()
+                        .pedidoId(id)
+                        .usuarioId(pedido.getUsuarioId())
+                        .estadoAnterior(SIN_ESTADO.equals(anterior) ? null : anterior)
+                        .estadoNuevo(pedido.getEstado())
+                        .fechaCambio(fecha(record.timestamp()))
+                        .build());
+            }
+            cambiosParticion.put(id, estadoNuevo);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cambios.forEach((particion, cambiosParticion) -> {
+                    Map<Long, String> estadosParticion = estados.get(particion);
+                    if (estadosParticion != null) {
+                        aplicar(estadosParticion, cambiosParticion);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> confirmados = consumer.committed(Set.copyOf(partitions));
+        List<TopicPartition> pendientes = partitions.stream()
+                .filter(tp -> confirmados.get(tp) != null && confirmados.get(tp).offset() > 0)
+                .toList();
+        partitions.stream()
+                .filter(tp -> !pendientes.contains(tp))
+                .forEach(tp -> estados.put(tp.partition(), new ConcurrentHashMap<>()));
+        if (pendientes.isEmpty()) {
+            return;
+        }
+
+        // Pausada ya para el poll en curso; la reanuda setupThreadState al terminar
+        consumer.pause(pendientes);
+        for (TopicPartition tp : pendientes) {
+            Restauracion restauracion = new Restauracion(tp, confirmados.get(tp).offset());
+            Restauracion anterior = restauraciones.put(tp, restauracion);
+            if (anterior != null) {
+                anterior.cancelada = true;
+            }
+            restaurador.execute(() -> reconstruir(restauracion));
+        }
+    }
+
+    /**
+     * Llamado por el contenedor en el hilo del consumidor antes de cada poll: reanuda las
+     * particiones de ese consumidor cuya reconstrucción terminó.
+     */
+    @Override
+    public void setupThreadState(Consumer<?, ?> consumer) {
+        if (restauraciones.isEmpty()) {
+            return;
+        }
+        Set<TopicPartition> asignadas = consumer.assignment();
+        List<TopicPartition> reanudadas = new ArrayList<>();
+        restauraciones.forEach((tp, restauracion) -> {
+            if (restauracion.terminada && asignadas.contains(tp) && restauraciones.remove(tp, restauracion)) {
+                reanudadas.add(tp);
+            }
+        });
+        if (!reanudadas.isEmpty()) {
+            consumer.resume(reanudadas);
+            log.info("Auditoría: particiones {} reanudadas tras restaurar sus estados", reanudadas);
+        }
+    }
+
+    @Override
+    public ConsumerRecords<String, Object> intercept(ConsumerRecords<String, Object> records,
+                                                     Consumer<String, Object> consumer) {
+        return records;
+    }
+
+    /**
+     * Particiones pausadas hasta reconstruir su estado.
+     */
+    public Set<TopicPartition> particionesEnRestauracion() {
+        return Set.copyOf(restauraciones.keySet());
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        olvidar(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        olvidar(partitions);
+    }
+
+    private void olvidar(Collection<TopicPartition> partitions) {
+        // La pausa del consumidor no pasa a una nueva asignación de la partición
+        partitions.forEach(tp -> {
+            Restauracion restauracion = restauraciones.remove(tp);
+            if (restauracion != null) {
+                restauracion.cancelada = true;
+            }
+            estados.remove(tp.partition());
+        });
+    }
+
+    private void reconstruir(Restauracion restauracion) {
+        TopicPartition tp = restauracion.tp;
+        Map<Long, String> estadosParticion = null;
+        while (estadosParticion == null && !restauracion.cancelada) {
+            try {
+                estadosParticion = restaurar(restauracion);
+            } catch (RuntimeException e) {
+                // La partición sigue pausada: reanudarla sin estado derivaría auditorías erróneas
+                log.error("Auditoría: no se pudieron restaurar los estados de la partición {}, " +
+                        "se reintenta en {} ms", tp, REINTENTO_RESTAURACION_MS, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(REINTENTO_RESTAURACION_MS);
+                } catch (InterruptedException interrumpido) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        if (restauracion.cancelada || restauraciones.get(tp) != restauracion) {
+            return;
+        }
+        estados.put(tp.partition(), estadosParticion);
+        restauracion.terminada = true;
+    }
+
+    /**
+     * Estado de cada pedido de la partición hasta el offset confirmado (excluido),
+     * leído con read_committed igual que el listener.
+     */
+    private Map<Long, String> restaurar(Restauracion restauracion) {
+        TopicPartition tp = restauracion.tp;
+        long hasta = restauracion.hasta;
+        Map<Long, String> estadosParticion = new ConcurrentHashMap<>();
+
+        Properties propiedades = new Properties();
+        propiedades.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        long inicio = System.currentTimeMillis();
+        Map<Long, String> cambios = new HashMap<>();
+
+        try (Consumer<String, Object> consumer = consumerFactory.createConsumer(
+                GROUP_ID, "auditoria-restauracion", null, propiedades)) {
+            consumer.assign(List.of(tp));
+            consumer.seekToBeginning(List.of(tp));
+            while (consumer.position(tp) < hasta && !restauracion.cancelada) {
+                for (ConsumerRecord<String, Object> record : consumer.poll(POLL_RESTAURACION).records(tp)) {
+                    if (record.offset() >= hasta) {
+                        break;
+                    }
+                    if (DeserializadorTolerante.esIlegible(record)) {
+                        // El listener también lo descartó: no es un tombstone
+                        continue;
+                    }
+                    Long id = record.value() instanceof Pedido pedido && pedido.getId() != null
+                            ? pedido.getId() : parsearId(record.key());
+                    if (id != null) {
+                        cambios.put(id, record.value() instanceof Pedido pedido
+                                ? Objects.requireNonNullElse(pedido.getEstado(), SIN_ESTADO) : null);
+                    }
+                }
+            }
+        }
+        aplicar(estadosParticion, cambios);
+
+        log.info("Auditoría: estados de la partición {} restaurados hasta el offset {} en {} ms, {} pedidos",
+                tp, hasta, System.currentTimeMillis() - inicio, estadosParticion.size());
+        return estadosParticion;
+    }
+
+    private static final class Restauracion {
+
+        final TopicPartition tp;
+        final long hasta;
+
+        // La partición se revocó o se volvió a asignar antes de terminar
+        volatile boolean cancelada;
+
+        // Estados publicados: falta reanudar la partición en el hilo del consumidor
+        volatile boolean terminada;
+
+        Restauracion(TopicPartition tp, long hasta) {
+            this.tp = tp;
+            this.hasta = hasta;
+        }
+    }
+
+    private static void aplicar(Map<Long, String> estadosParticion, Map<Long, String> cambios) {
+        cambios.forEach((id, estado) -> {
+            if (estado == null) {
+                estadosParticion.remove(id);
+            } else {
+                estadosParticion.put(id, estado);
+            }
+        });
+    }
+
+    private static AuditoriaPedido auditoria(ConsumerRecord<String, Pedido> record, Long id, String operacion) {
+        Pedido pedido = record.value();
+        return AuditoriaPedido.builder()
+                .pedidoId(id)
+                .usuarioId(pedido != null ? pedido.getUsuarioId() : null)
+                .monto(pedido != null ? pedido.getMonto() : null)
+                .estado(pedido != null ? pedido.getEstado() : null)
+                .operacion(operacion)
+                .particion(record.partition())
+                .offset(record.offset())
+                .fechaEvento(fecha(record.timestamp()))
+                .build();
+    }
+
+    private static LocalDateTime fecha(long timestamp) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC);
+    }
+
+    private static Long idDe(ConsumerRecord<String, Pedido> record) {
+        if (record.value() != null && record.value().getId() != null) {
+            return record.value().getId();
+        }
+        return parsearId(record.key());
+    }
+
+    private static Long parsearId(String key) {
+        try {
+            return key != null ? Long.valueOf(ClavesSaladas.original(key)) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
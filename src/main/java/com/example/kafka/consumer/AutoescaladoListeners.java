@@ -0,0 +1,244 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.config.AutoescaladoProperties;
+import com.example.kafka.config.AutoescaladoProperties.Limites;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sube o baja la concurrencia de los contenedores configurados según el lag total de
+ * sus particiones y la ocupación de sus hilos (tiempo dentro del listener según el timer
+ * {@code spring.kafka.listener} sobre el tiempo disponible):
+ * <ul>
+ *   <li>lag por encima de {@code lag-alto}, sin bajar, con los hilos ocupados: falta
+ *   capacidad de proceso y hay particiones sin hilo propio, se sube;</li>
+ *   <li>lag por debajo de {@code lag-bajo} con los hilos desocupados: se baja.</li>
+ * </ul>
+ * Con lag alto y los hilos desocupados no se sube: el cuello de botella está en otra
+ * parte (p. ej. el control de flujo ha pausado el contenedor). Un cambio se aplica solo
+ * si lo piden varias evaluaciones seguidas y ha pasado el enfriamiento desde el anterior.
+ * <p>
+ * Coste: el contenedor no admite añadir o quitar hilos en marcha, así que cada cambio lo
+ * detiene y lo vuelve a arrancar con la nueva concurrencia. Todos sus consumidores salen
+ * del grupo y vuelven a entrar, lo que supone dos rebalanceos de todas sus particiones
+ * (también con el asignador cooperativo). Al revocarse, cada partición espera sus
+ * registros en vuelo y cierra su almacén local, y al asignarse de nuevo lo restaura
+ * desde el topic. Mientras tanto la partición no consume, así que el lag sube justo
+ * cuando se quería bajar. Por eso viene desactivado y los cambios exigen varias
+ * evaluaciones y un enfriamiento largo.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(AutoescaladoProperties.class)
+public class AutoescaladoListeners {
+
+    private static final String TIMER_LISTENER = "spring.kafka.listener";
+
+    private final KafkaListenerEndpointRegistry registry;
+
+    private final AutoescaladoProperties propiedades;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, EstadoEscalado> estados = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService planificador;
+
+    @PostConstruct
+    void iniciar() {
+        if (!propiedades.isHabilitado() || propiedades.getListeners().isEmpty()) {
+            return;
+        }
+        propiedades.getListeners().keySet().forEach(id -> {
+            EstadoEscalado estado = estados.computeIfAbsent(id, k -> new EstadoEscalado());
+            Gauge.builder("kafka.app.autoescalado.concurrencia", registry, r -> concurrencia(r, id))
+                    .description("Concurrencia actual del contenedor del listener")
+                    .tag("listener", id)
+                    .register(meterRegistry);
+            Gauge.builder("kafka.app.autoescalado.lag", estado, e -> e.lag)
+                    .description("Lag total del listener en la última evaluación")
+                    .tag("listener", id)
+                    .register(meterRegistry);
+            Gauge.builder("kafka.app.autoescalado.ocupacion", estado, e -> e.ocupacion)
+                    .description("Fracción del intervalo que los hilos pasaron en el listener")
+                    .tag("listener", id)
+                    .register(meterRegistry);
+        });
+
+        long intervalo = propiedades.getIntervalo().toMillis();
+        planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "autoescalado-listeners");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        planificador.scheduleWithFixedDelay(this::evaluar, intervalo, intervalo, TimeUnit.MILLISECONDS);
+        log.info("Autoescalado de listeners cada {} ms: {}", intervalo, propiedades.getListeners().keySet());
+    }
+
+    @PreDestroy
+    void detener() {
+        if (planificador != null) {
+            planificador.shutdownNow();
+        }
+    }
+
+    void evaluar() {
+        propiedades.getListeners().forEach((id, limites) -> {
+            try {
+                evaluar(id, limites, estados.get(id));
+            } catch (Exception e) {
+                log.warn("Error evaluando el autoescalado del listener {}", id, e);
+            }
+        });
+    }
+
+    private void evaluar(String id, Limites limites, EstadoEscalado estado) {
+        MessageListenerContainer container = registry.getListenerContainer(id);
+        if (!(container instanceof ConcurrentMessageListenerContainer<?, ?> concurrente)
+                || !container.isRunning() || estado.cambiando) {
+            return;
+        }
+
+        long ahora = System.nanoTime();
+        int actual = concurrente.getConcurrency();
+        long lag = lagTotal(container);
+        double ocupado = tiempoEnListener(id);
+        double ocupacion = estado.ultimaEvaluacion == 0 ? Double.NaN
+                : (ocupado - estado.ocupadoAnterior) / ((double) (ahora - estado.ultimaEvaluacion) * actual);
+        long lagAnterior = estado.lag;
+        estado.ultimaEvaluacion = ahora;
+        estado.ocupadoAnterior = ocupado;
+        estado.lag = lag;
+        estado.ocupacion = ocupacion;
+        if (Double.isNaN(ocupacion) || lag < 0) {
+            return;
+        }
+
+        int asignadas = container.getAssignedPartitions() != null ? container.getAssignedPartitions().size() : 0;
+        int deseada = actual;
+        if (lag > limites.getLagAlto() && lag >= lagAnterior && ocupacion >= propiedades.getOcupacionAlta()
+                && actual < Math.min(limites.getMax(), asignadas)) {
+            deseada = actual + 1;
+        } else if (lag < limites.getLagBajo() && ocupacion < propiedades.getOcupacionBaja()
+                && actual > limites.getMin()) {
+            deseada = actual - 1;
+        }
+
+        if (deseada == actual) {
+            estado.evaluacionesSeguidas = 0;
+            return;
+        }
+        if (deseada == estado.propuesta) {
+            estado.evaluacionesSeguidas++;
+        } else {
+            estado.propuesta = deseada;
+            estado.evaluacionesSeguidas = 1;
+        }
+        boolean enfriado = ahora - estado.ultimoCambio >= propiedades.getEnfriamiento().toNanos();
+        if (estado.evaluacionesSeguidas < propiedades.getEvaluacionesParaCambiar() || !enfriado) {
+            return;
+        }
+
+        log.info("Listener {}: concurrencia {} -> {} (lag {}, ocupación {}, {} particiones asignadas)",
+                id, actual, deseada, lag, String.format("%.2f", ocupacion), asignadas);
+        Counter.builder("kafka.app.autoescalado.cambios")
+                .description("Cambios de concurrencia aplicados por el autoescalado")
+                .tag("listener", id)
+                .tag("direccion", deseada > actual ? "subir" : "bajar")
+                .register(meterRegistry)
+                .increment();
+        cambiarConcurrencia(concurrente, estado, deseada);
+    }
+
+    /**
+     * La concurrencia solo se aplica al arrancar: se detiene el contenedor (cada hilo
+     * confirma lo procesado y entrega sus particiones) y se arranca desde el planificador.
+     */
+    private void cambiarConcurrencia(ConcurrentMessageListenerContainer<?, ?> container,
+                                     EstadoEscalado estado, int concurrencia) {
+        estado.cambiando = true;
+        estado.ultimoCambio = System.nanoTime();
+        estado.evaluacionesSeguidas = 0;
+        container.stop(() -> planificador.execute(() -> {
+            try {
+                container.setConcurrency(concurrencia);
+                container.start();
+            } finally {
+                // La ocupación se vuelve a medir desde el nuevo arranque
+                estado.ultimaEvaluacion = 0;
+                estado.cambiando = false;
+            }
+        }));
+    }
+
+    /**
+     * Suma de records-lag de las particiones asignadas, -1 si aún no hay medida.
+     */
+    private static long lagTotal(MessageListenerContainer container) {
+        long total = 0;
+        boolean medido = false;
+        for (Map<MetricName, ? extends Metric> metricas : container.metrics().values()) {
+            for (Map.Entry<MetricName, ? extends Metric> metrica : metricas.entrySet()) {
+                MetricName nombre = metrica.getKey();
+                if ("records-lag".equals(nombre.name()) && "consumer-fetch-manager-metrics".equals(nombre.group())
+                        && metrica.getValue().metricValue() instanceof Double lag && !lag.isNaN()) {
+                    total += lag.longValue();
+                    medido = true;
+                }
+            }
+        }
+        return medido ? total : -1;
+    }
+
+    /**
+     * Nanosegundos acumulados dentro del listener por todos los hilos del contenedor;
+     * cada hilo registra su timer con el nombre {@code <id>-<n>}.
+     */
+    private double tiempoEnListener(String id) {
+        double total = 0;
+        for (Timer timer : meterRegistry.find(TIMER_LISTENER).timers()) {
+            String nombre = timer.getId().getTag("name");
+            if (nombre != null && nombre.startsWith(id + "-")
+                    && nombre.substring(id.length() + 1).chars().allMatch(Character::isDigit)) {
+                total += timer.totalTime(TimeUnit.NANOSECONDS);
+            }
+        }
+        return total;
+    }
+
+    private static double concurrencia(KafkaListenerEndpointRegistry registry, String id) {
+        return registry.getListenerContainer(id) instanceof ConcurrentMessageListenerContainer<?, ?> container
+                && container.isRunning() ? container.getConcurrency() : 0;
+    }
+
+    private static final class EstadoEscalado {
+        volatile long lag = -1;
+        volatile double ocupacion = Double.NaN;
+        volatile long ultimaEvaluacion;
+        volatile boolean cambiando;
+        double ocupadoAnterior;
+        long ultimoCambio = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+        int propuesta;
+        int evaluacionesSeguidas;
+    }
+}
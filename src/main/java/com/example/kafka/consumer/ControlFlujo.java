@@ -0,0 +1,308 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.config.ControlFlujoProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Control de flujo de los contenedores de listeners sin bloquear el hilo del consumidor:
+ * <ul>
+ *   <li>límite por listener: un cubo de tokens por id de listener; al agotarse se pausa
+ *   el contenedor completo hasta que se recupera;</li>
+ *   <li>carriles de prioridad: todos los registros gastan de una capacidad compartida y
+ *   cada carril necesita que quede una reserva (ninguna para alta), así que al escasear
+ *   se pausan antes las particiones de los topics de baja prioridad.</li>
+ * </ul>
+ * El consumo se cuenta con interceptores al entregar cada registro o lote. Las pausas
+ * usan pause()/pausePartition() del contenedor: el consumidor sigue haciendo poll sin
+ * recibir registros, con lo que mantiene el heartbeat y no excede max.poll.interval.ms.
+ * Los registros del poll en curso se siguen entregando y quedan como deuda del cubo.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(ControlFlujoProperties.class)
+public class ControlFlujo {
+
+    public enum Prioridad {
+        ALTA(0), NORMAL(0.25), BAJA(0.5);
+
+        // Fracción de la capacidad compartida que debe quedar libre para consumir
+        final double reserva;
+
+        Prioridad(double reserva) {
+            this.reserva = reserva;
+        }
+    }
+
+    private final ControlFlujoProperties propiedades;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, EstadoListener> listeners = new ConcurrentHashMap<>();
+    private final Map<String, Prioridad> prioridades = new ConcurrentHashMap<>();
+    private final CuboTokens capacidad = new CuboTokens();
+
+    private ScheduledExecutorService planificador;
+
+    @PostConstruct
+    void iniciar() {
+        planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "control-flujo");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        capacidad.configurar(propiedades.getCapacidadTotal(), 0);
+        propiedades.getPrioridades().forEach((topic, prioridad) ->
+                prioridades.put(topic, Prioridad.valueOf(prioridad.toUpperCase(Locale.ROOT))));
+    }
+
+    @PreDestroy
+    void detener() {
+        planificador.shutdownNow();
+    }
+
+    /**
+     * Customizer de las factorías: registra el contenedor e instala los interceptores
+     * que cuentan su consumo.
+     */
+    public void gobernar(ConcurrentMessageListenerContainer<String, Object> container) {
+        if (!propiedades.isHabilitado()) {
+            return;
+        }
+        String id = container.getListenerId();
+        EstadoListener estado = listeners.computeIfAbsent(id, k -> new EstadoListener(id));
+        estado.container = container;
+        ControlFlujoProperties.Limite limite = propiedades.getLimites().get(id);
+        if (limite != null) {
+            estado.limite.configurar(limite.getTasa(), limite.getRafaga());
+        }
+        log.debug("Control de flujo en el listener {}", id);
+
+        container.setRecordInterceptor(new RecordInterceptor<>() {
+            @Override
+            public ConsumerRecord<String, Object> intercept(ConsumerRecord<String, Object> record,
+                                                            Consumer<String, Object> consumer) {
+                consumir(estado, record.topic(), 1);
+                return record;
+            }
+        });
+        container.setBatchInterceptor(new BatchInterceptor<>() {
+            @Override
+            public ConsumerRecords<String, Object> intercept(ConsumerRecords<String, Object> records,
+                                                             Consumer<String, Object> consumer) {
+                Map<String, Integer> porTopic = new TreeMap<>();
+                for (TopicPartition tp : records.partitions()) {
+                    porTopic.merge(tp.topic(), records.records(tp).size(), Integer::sum);
+                }
+                porTopic.forEach((topic, cantidad) -> consumir(estado, topic, cantidad));
+                return records;
+            }
+        });
+    }
+
+    public void configurarLimite(String listenerId, double tasa, double rafaga) {
+        if (tasa < 0 || rafaga < 0) {
+            throw new IllegalArgumentException("La tasa y la ráfaga no pueden ser negativas");
+        }
+        listeners.computeIfAbsent(listenerId, EstadoListener::new).limite.configurar(tasa, rafaga);
+        log.info("Límite de consumo de {}: {} registros/s (0 sin límite), ráfaga {}", listenerId, tasa, rafaga);
+    }
+
+    public void configurarCapacidadTotal(double tasa) {
+        if (tasa < 0) {
+            throw new IllegalArgumentException("La capacidad no puede ser negativa");
+        }
+        capacidad.configurar(tasa, 0);
+        log.info("Capacidad compartida de los carriles: {} registros/s (0 sin límite)", tasa);
+    }
+
+    public void configurarPrioridad(String topic, Prioridad prioridad) {
+        prioridades.put(topic, prioridad);
+        log.info("Topic {} en el carril de prioridad {}", topic, prioridad);
+    }
+
+    public Map<String, Object> estado() {
+        Map<String, Object> porListener = new TreeMap<>();
+        listeners.forEach((id, estado) -> {
+            Map<String, Object> valores = new LinkedHashMap<>();
+            valores.put("tasa", estado.limite.tasa());
+            valores.put("rafaga", estado.limite.rafaga());
+            valores.put("tokens", estado.limite.nivel());
+            valores.put("pausado", estado.pausado.get());
+            valores.put("topicsPausados", Set.copyOf(estado.topicsPausados.keySet()));
+            porListener.put(id, valores);
+        });
+
+        Map<String, Object> carriles = new LinkedHashMap<>();
+        carriles.put("capacidadTotal", capacidad.tasa());
+        carriles.put("tokens", capacidad.nivel());
+        carriles.put("prioridades", new TreeMap<>(prioridades));
+
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("habilitado", propiedades.isHabilitado());
+        estado.put("listeners", porListener);
+        estado.put("carriles", carriles);
+        return estado;
+    }
+
+    private void consumir(EstadoListener estado, String topic, int cantidad) {
+        long espera = estado.limite.consumir(cantidad, 0);
+        if (espera > 0 && estado.pausado.compareAndSet(false, true)) {
+            estado.container.pause();
+            registrarPausa(estado.id, "limite");
+            log.debug("Listener {} pausado {} ms por límite de consumo", estado.id, TimeUnit.NANOSECONDS.toMillis(espera));
+            planificador.schedule(() -> reanudar(estado), espera, TimeUnit.NANOSECONDS);
+        }
+
+        Prioridad prioridad = prioridades.getOrDefault(topic, Prioridad.NORMAL);
+        long esperaCarril = capacidad.consumir(cantidad, prioridad.reserva);
+        if (esperaCarril > 0 && estado.topicsPausados.putIfAbsent(topic, Boolean.TRUE) == null) {
+            Collection<TopicPartition> pausadas = estado.container.getAssignedPartitions().stream()
+                    .filter(tp -> tp.topic().equals(topic))
+                    .toList();
+            pausadas.forEach(estado.container::pausePartition);
+            registrarPausa(estado.id, "prioridad_" + prioridad.name().toLowerCase(Locale.ROOT));
+            planificador.schedule(() -> reanudarTopic(estado, topic, prioridad, pausadas),
+                    esperaCarril, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void reanudar(EstadoListener estado) {
+        // La deuda puede haber crecido con el resto del poll en curso
+        long espera = estado.limite.espera(0);
+        if (espera > 0) {
+            planificador.schedule(() -> reanudar(estado), espera, TimeUnit.NANOSECONDS);
+            return;
+        }
+        estado.container.resume();
+        estado.pausado.set(false);
+    }
+
+    private void reanudarTopic(EstadoListener estado, String topic, Prioridad prioridad,
+                               Collection<TopicPartition> pausadas) {
+        long espera = capacidad.espera(prioridad.reserva);
+        if (espera > 0) {
+            planificador.schedule(() -> reanudarTopic(estado, topic, prioridad, pausadas),
+                    espera, TimeUnit.NANOSECONDS);
+            return;
+        }
+        // Solo las particiones que pausó este control
+        pausadas.forEach(estado.container::resumePartition);
+        estado.topicsPausados.remove(topic);
+    }
+
+    private void registrarPausa(String listenerId, String motivo) {
+        Counter.builder("kafka.app.flujo.pausas")
+                .description("Pausas de contenedores o topics por control de flujo")
+                .tag("listener", listenerId)
+                .tag("motivo", motivo)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static final class EstadoListener {
+
+        final String id;
+        final CuboTokens limite = new CuboTokens();
+        final Map<String, Boolean> topicsPausados = new ConcurrentHashMap<>();
+        volatile ConcurrentMessageListenerContainer<String, Object> container;
+        final AtomicBoolean pausado = new AtomicBoolean();
+
+        EstadoListener(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Cubo de tokens que admite deuda: consumir siempre descuenta y devuelve cuánto falta
+     * para que el nivel vuelva al umbral. Con tasa 0 no limita.
+     */
+    static final class CuboTokens {
+
+        private double tasa;
+        private double rafaga;
+        private double nivel;
+        private long ultimo = System.nanoTime();
+
+        synchronized void configurar(double tasa, double rafaga) {
+            // Un cubo que no limitaba empieza lleno
+            boolean lleno = this.tasa <= 0;
+            this.tasa = tasa;
+            this.rafaga = rafaga > 0 ? rafaga : tasa;
+            nivel = lleno ? this.rafaga : Math.min(nivel, this.rafaga);
+            ultimo = System.nanoTime();
+        }
+
+        /**
+         * Descuenta {@code cantidad} y devuelve los nanosegundos hasta que el nivel alcance
+         * {@code reserva * rafaga}, o 0 si ya lo alcanza.
+         */
+        synchronized long consumir(int cantidad, double reserva) {
+            if (tasa <= 0) {
+                return 0;
+            }
+            rellenar();
+            nivel -= cantidad;
+            return esperaHasta(reserva * rafaga);
+        }
+
+        synchronized long espera(double reserva) {
+            if (tasa <= 0) {
+                return 0;
+            }
+            rellenar();
+            return esperaHasta(reserva * rafaga);
+        }
+
+        synchronized double tasa() {
+            return tasa;
+        }
+
+        synchronized double rafaga() {
+            return rafaga;
+        }
+
+        synchronized double nivel() {
+            if (tasa > 0) {
+                rellenar();
+            }
+            return nivel;
+        }
+
+        private void rellenar() {
+            long ahora = System.nanoTime();
+            nivel = Math.min(rafaga, nivel + (ahora - ultimo) / 1e9 * tasa);
+            ultimo = ahora;
+        }
+
+        private long esperaHasta(double umbral) {
+            return nivel >= umbral ? 0 : (long) Math.ceil((umbral - nivel) / tasa * 1e9);
+        }
+    }
+}
@@ -1,46 +1,291 @@
 package com.example.kafka.consumer;
 
+import com.example.kafka.dedup.DeduplicadorRegistros;
+import com.example.kafka.estadisticas.EstadisticasPedidos;
+import com.example.kafka.logging.RegistroEventos;
+import com.example.kafka.logging.RegistroEventos.Evento;
+import com.example.kafka.metrics.KafkaMetricas;
 import com.example.kafka.model.Pedido;
+import com.example.kafka.store.AlmacenPedidos;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.BackOff;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.List;
+
 @Service
+@RequiredArgsConstructor
 @Slf4j
-public class PedidoConsumer {
+public class PedidoConsumer implements ConsumerAwareRebalanceListener {
+
+    static final String LISTENER_RECORD = "pedidos-record";
+    public static final String LISTENER_BATCH = "pedidos-batch";
+    public static final String GRUPO = "pedidos-processor-group";
+
+    private final ProcesadorParalelo procesadorParalelo;
+
+    private final KafkaMetricas metricas;
+
+    private final DeduplicadorRegistros deduplicador;
+
+    private final AlmacenPedidos almacen;
+
+    private final RegistroEventos eventos;
+
+    private final EstadisticasPedidos estadisticas;
 
+    @Value("${kafka.topics.pedidos}")
+    private String pedidosTopic;
+
+    /**
+     * Un pedido que falla sale de la partición principal hacia el primer topic de
+     * reintento (pedidos-topic-retry-1000, -10000, -60000 con la configuración por
+     * defecto) y, agotados los intentos, a pedidos-topic-dlt. Los consumidores de
+     * reintento esperan pausando la partición hasta que vence el retardo del registro,
+     * sin dormir el hilo, así que el resto del tráfico sigue fluyendo.
+     */
+    @RetryableTopic(
+            attempts = "${kafka.consumer.pedidos.reintentos.intentos:4}",
+            backOff = @BackOff(
+                    delayString = "${kafka.consumer.pedidos.reintentos.espera-inicial-ms:1000}",
+                    multiplierString = "${kafka.consumer.pedidos.reintentos.multiplicador:10}",
+                    maxDelayString = "${kafka.consumer.pedidos.reintentos.espera-max-ms:60000}"),
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_DELAY_VALUE,
+            // Mismas particiones que pedidos-topic: el registro conserva su partición
+            numPartitions = "${kafka.topics.pedidos-particiones:5}",
+            replicationFactor = "1",
+            kafkaTemplate = "kafkaTemplate"
+    )
     @KafkaListener(
+            id = LISTENER_RECORD,
             topics = "${kafka.topics.pedidos}",
-            groupId = "pedidos-processor-group"
+            groupId = GRUPO,
+            autoStartup = "#{'${kafka.consumer.pedidos.modo:record}' == 'record'}"
     )
     public void consumirPedido(
-            @Payload Pedido pedido,
+            @Payload(required = false) Pedido pedido,
+            @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
             @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
             @Header(KafkaHeaders.OFFSET) long offset,
+            @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp,
+            @Header(name = DeduplicadorRegistros.HEADER_ID_ENVIO, required = false) byte[] idEnvio,
             Acknowledgment acknowledgment) {
 
-        log.info("Recibido pedido: {} desde partición: {} offset: {}",
-                pedido.getId(), partition, offset);
+        metricas.registrarConsumo(LISTENER_RECORD, topic, timestamp);
+        if (topic.equals(pedidosTopic)) {
+            // El almacén refleja el topic completo, también los duplicados y los tombstones;
+            // los topics de reintento tienen sus propios offsets y no se aplican
+            almacen.aplicar(partition, offset, key, pedido);
+        }
+
+        if (pedido == null) {
+            // Tombstone del topic compactado
+            acknowledgment.acknowledge();
+            return;
+        }
+        eventos.registrar(Evento.RECIBIDO, topic, partition, offset, pedido.getId());
+
+        if (deduplicador.esDuplicado(LISTENER_RECORD, topic, partition, offset, idEnvio)) {
+            eventos.registrar(Evento.DUPLICADO, topic, partition, offset, pedido.getId());
+            acknowledgment.acknowledge();
+            return;
+        }
 
         try {
-            procesarPedido(pedido);
+            procesarPedido(partition, timestamp, pedido);
+            deduplicador.marcarProcesado(topic, partition, offset, idEnvio);
 
             // Confirmar manualmente después de procesar exitosamente
             acknowledgment.acknowledge();
-            log.info("Pedido procesado y confirmado: {}", pedido.getId());
+            eventos.registrar(Evento.PROCESADO, topic, partition, offset, pedido.getId());
+
+        } catch (RuntimeException e) {
+            log.error("Error procesando pedido: {} desde {}", pedido.getId(), topic, e);
+            metricas.registrarError(LISTENER_RECORD, topic);
+            // El error handler lo publica en el siguiente topic de reintento (o en el DLT)
+            // y confirma el offset, así que la partición no se queda bloqueada
+            throw e;
+        }
+    }
+
+    /**
+     * Pedidos que agotaron los reintentos. Quedan en pedidos-topic-dlt hasta que se
+     * reprocesan con POST /api/kafka/dlt/pedidos/reprocesar.
+     */
+    @DltHandler
+    public void pedidoEnDlt(
+            ConsumerRecord<String, Pedido> record,
+            @Header(name = KafkaHeaders.DLT_EXCEPTION_MESSAGE, required = false) String error,
+            Acknowledgment acknowledgment) {
+
+        log.error("Pedido con key: {} enviado a {} partición: {} offset: {} tras agotar los reintentos: {}",
+                record.key(), record.topic(), record.partition(), record.offset(), error);
+        metricas.registrarDlt(record.topic());
+        acknowledgment.acknowledge();
+    }
+
+    @KafkaListener(
+            id = LISTENER_BATCH,
+            topics = "${kafka.topics.pedidos}",
+            groupId = GRUPO,
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "#{'${kafka.consumer.pedidos.modo:record}' == 'batch'}"
+    )
+    public void consumirPedidosBatch(
+            List<ConsumerRecord<String, Pedido>> records,
+            Acknowledgment acknowledgment) {
+
+        if (!records.isEmpty()) {
+            metricas.registrarLote(LISTENER_BATCH, records.get(0).topic(), records.size());
+        }
+
+        try {
+            procesarPedidos(records);
+        } finally {
+            almacen.vaciar();
+        }
+
+        // Un único commit para todo el lote
+        acknowledgment.acknowledge();
+        log.info("Lote de {} pedidos procesado y confirmado", records.size());
+    }
+
+    @KafkaListener(
+            id = ProcesadorParalelo.LISTENER_ID,
+            topics = "${kafka.topics.pedidos}",
+            groupId = GRUPO,
+            containerFactory = "paraleloKafkaListenerContainerFactory",
+            autoStartup = "#{'${kafka.consumer.pedidos.modo:record}' == 'paralelo'}"
+    )
+    public void consumirPedidosParalelo(
+            List<ConsumerRecord<String, Pedido>> records,
+            Consumer<?, ?> consumer) {
+
+        if (!records.isEmpty()) {
+            metricas.registrarLote(ProcesadorParalelo.LISTENER_ID, records.get(0).topic(), records.size());
+        }
+
+        for (ConsumerRecord<String, Pedido> record : records) {
+            metricas.registrarConsumo(ProcesadorParalelo.LISTENER_ID, record);
+            // En el hilo del consumidor, en orden de offset
+            almacen.aplicar(record.partition(), record.offset(), record.key(), record.value());
+            Pedido pedido = record.value();
+            procesadorParalelo.enviar(record, () -> {
+                // Los tombstones también ocupan un offset que hay que completar
+                if (pedido == null || deduplicador.esDuplicado(ProcesadorParalelo.LISTENER_ID, record)) {
+                    return;
+                }
+                procesarPedido(record.partition(), record.timestamp(), pedido);
+                deduplicador.marcarProcesado(record);
+                eventos.registrar(Evento.PROCESADO, record.topic(), record.partition(), record.offset(), pedido.getId());
+            });
+        }
+
+        almacen.vaciar();
+        procesadorParalelo.confirmar(consumer);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        List<TopicPartition> pedidos = delTopic(partitions);
+        if (pedidos.isEmpty()) {
+            return;
+        }
+        // El almacén local de cada partición se restaura en otro hilo; aquí solo se decide
+        // desde dónde empieza el listener
+        pedidos.forEach(tp -> almacen.abrir(tp.partition()));
+        // Sin offset confirmado del grupo, lo cubierto por la instantánea no se reprocesa
+        almacen.posicionesIniciales(consumer, pedidos).forEach((tp, destino) -> {
+            log.info("Partición {} sin offset confirmado: se salta hasta el offset {} de la instantánea",
+                    tp, destino);
+            consumer.seek(tp, destino);
+        });
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // Solo el modo paralelo tiene registros en vuelo que confirmar antes de soltarlas
+        procesadorParalelo.onPartitionsRevokedBeforeCommit(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        cerrar(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        procesadorParalelo.onPartitionsLost(consumer, partitions);
+        cerrar(partitions);
+    }
+
+    private void cerrar(Collection<TopicPartition> partitions) {
+        delTopic(partitions).forEach(tp -> {
+            almacen.cerrar(tp.partition());
+            estadisticas.liberar(tp.partition());
+        });
+    }
+
+    /**
+     * Particiones de pedidos-topic; los contenedores de reintento también pasan por aquí.
+     */
+    private List<TopicPartition> delTopic(Collection<TopicPartition> partitions) {
+        return partitions.stream()
+                .filter(tp -> tp.topic().equals(pedidosTopic))
+                .toList();
+    }
 
-        } catch (Exception e) {
-            log.error("Error procesando pedido: {}", pedido.getId(), e);
-            // No confirmamos, el mensaje se reprocesará
+    /**
+     * Procesa el lote en orden. Si un registro falla lo señala al manejador de errores
+     * del contenedor, que confirma los previos y vuelve a entregar el lote desde él (o,
+     * agotados los intentos, lo publica en pedidos-topic-dlt); se identifica por el propio
+     * registro porque el lote llega sin los ilegibles y su índice no es el del poll.
+     */
+    private void procesarPedidos(List<ConsumerRecord<String, Pedido>> records) {
+        for (ConsumerRecord<String, Pedido> record : records) {
+            metricas.registrarConsumo(LISTENER_BATCH, record);
+            almacen.aplicar(record.partition(), record.offset(), record.key(), record.value());
+            if (record.value() == null) {
+                // Tombstone del topic compactado
+                continue;
+            }
+            if (deduplicador.esDuplicado(LISTENER_BATCH, record)) {
+                continue;
+            }
+            try {
+                procesarPedido(record.partition(), record.timestamp(), record.value());
+                deduplicador.marcarProcesado(record);
+                eventos.registrar(Evento.PROCESADO, record.topic(), record.partition(), record.offset(),
+                        record.value().getId());
+            } catch (Exception e) {
+                log.error("Error procesando pedido con key: {} en partición: {} offset: {}",
+                        record.key(), record.partition(), record.offset(), e);
+                metricas.registrarError(LISTENER_BATCH, record.topic());
+                throw new BatchListenerFailedException("Lote interrumpido en el pedido con key " + record.key(),
+                        e, record);
+            }
         }
     }
 
-    private void procesarPedido(Pedido pedido) {
+    private void procesarPedido(int partition, long timestamp, Pedido pedido) {
         // Lógica de negocio
-        log.info("Procesando pedido de monto: {}", pedido.getMonto());
+        estadisticas.registrar(partition, timestamp, pedido);
     }
 }
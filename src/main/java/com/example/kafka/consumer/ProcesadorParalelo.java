@@ -0,0 +1,380 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.particionado.ClavesSaladas;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Reparte los registros de cada partición entre muchos hilos manteniendo el orden por key.
+ * Solo confirma, por partición, hasta el mayor offset contiguo ya procesado y pausa las
+ * particiones que acumulan demasiados registros en vuelo.
+ * <p>
+ * Un registro que falla se reintenta con las mismas esperas que los topics de reintento
+ * del modo record, sin ocupar un hilo mientras espera y sin adelantar a los siguientes
+ * de su key. Agotados los intentos se publica en el DLT del topic y se da por completado,
+ * así que la partición sigue confirmando; si el DLT tampoco acepta el registro, se
+ * reintenta la publicación con las mismas esperas.
+ * <p>
+ * Al revocarse una partición se espera un tiempo a los registros en vuelo; los que
+ * siguen en cola o esperando un reintento después ya no se ejecutan, porque sus
+ * registros los procesa el nuevo dueño de la partición.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProcesadorParalelo implements ConsumerAwareRebalanceListener {
+
+    static final String LISTENER_ID = "pedidos-paralelo";
+
+    private final KafkaListenerEndpointRegistry registry;
+
+    private final KafkaMetricas metricas;
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Value("${kafka.consumer.pedidos.paralelo.max-en-vuelo-por-particion:1000}")
+    private int maxEnVueloPorParticion;
+
+    @Value("${kafka.consumer.pedidos.paralelo.hilos:256}")
+    private int hilos;
+
+    @Value("${kafka.consumer.pedidos.paralelo.espera-revocacion-ms:10000}")
+    private long esperaRevocacionMs;
+
+    @Value("${kafka.consumer.pedidos.reintentos.intentos:4}")
+    private int intentos;
+
+    @Value("${kafka.consumer.pedidos.reintentos.espera-inicial-ms:1000}")
+    private long esperaInicialMs;
+
+    @Value("${kafka.consumer.pedidos.reintentos.multiplicador:10}")
+    private double multiplicador;
+
+    @Value("${kafka.consumer.pedidos.reintentos.espera-max-ms:60000}")
+    private long esperaMaxMs;
+
+    private final Map<TopicPartition, EstadoParticion> particiones = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> ultimaTareaPorKey = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+    private DeadLetterPublishingRecoverer dlt;
+
+    @PostConstruct
+    void iniciar() {
+        executor = crearExecutor();
+        // Mismo DLT que el modo record (pedidos-topic-dlt); la partición la elige la key
+        dlt = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, ex) -> new TopicPartition(record.topic() + "-dlt", -1));
+    }
+
+    @PreDestroy
+    void detener() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(esperaRevocacionMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Encola la tarea detrás de la última tarea pendiente con la misma key.
+     * Debe invocarse desde el hilo del consumidor, en orden de offset.
+     */
+    public void enviar(ConsumerRecord<String, ?> record, Runnable tarea) {
+        TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+        EstadoParticion estado = particiones.computeIfAbsent(tp, k -> new EstadoParticion());
+        long offset = record.offset();
+        estado.registrar(offset);
+
+        // Sin key solo se puede garantizar el orden de la partición; las variantes saladas
+        // de una key caliente se ordenan como la key original
+        String key = record.key() != null ? ClavesSaladas.original(record.key()) : tp.toString();
+
+        CompletableFuture<Void> siguiente = ultimaTareaPorKey.compute(key, (k, previa) -> {
+            CompletableFuture<Void> base = previa != null ? previa : CompletableFuture.completedFuture(null);
+            return base.thenComposeAsync(v -> ejecutar(record, estado, tarea, 1), executor);
+        });
+        siguiente.whenComplete((r, ex) -> ultimaTareaPorKey.remove(key, siguiente));
+    }
+
+    /**
+     * Confirma los offsets contiguos completados y ajusta la pausa de cada partición.
+     * Debe invocarse desde el hilo del consumidor.
+     */
+    public void confirmar(Consumer<?, ?> consumer) {
+        Set<TopicPartition> asignadas = consumer.assignment();
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+
+        for (TopicPartition tp : asignadas) {
+            EstadoParticion estado = particiones.get(tp);
+            if (estado == null) {
+                continue;
+            }
+            long offset = estado.offsetConfirmable();
+            if (offset >= 0) {
+                offsets.put(tp, new OffsetAndMetadata(offset));
+            }
+        }
+
+        if (!offsets.isEmpty()) {
+            consumer.commitAsync(offsets, (confirmados, ex) -> {
+                if (ex != null) {
+                    // Sin marcar como confirmados: el siguiente confirmar() los vuelve a enviar
+                    log.warn("Error confirmando offsets {}", confirmados, ex);
+                    return;
+                }
+                confirmados.forEach((tp, offset) -> {
+                    EstadoParticion estado = particiones.get(tp);
+                    if (estado != null) {
+                        estado.confirmado(offset.offset());
+                    }
+                });
+            });
+        }
+
+        aplicarContrapresion(asignadas);
+    }
+
+    @EventListener
+    public void alEstarInactivo(ListenerContainerIdleEvent event) {
+        // Sin registros nuevos (o con todas las particiones pausadas) seguimos confirmando
+        // lo que terminen los hilos de procesamiento
+        if (event.getListenerId().startsWith(LISTENER_ID)) {
+            confirmar(event.getConsumer());
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+
+        for (TopicPartition tp : partitions) {
+            EstadoParticion estado = particiones.remove(tp);
+            if (estado == null) {
+                continue;
+            }
+            if (!estado.esperarEnVuelo(esperaRevocacionMs)) {
+                log.warn("Partición {} revocada con {} registros aún en vuelo, se descartan", tp, estado.enVuelo());
+            }
+            estado.revocar();
+            long offset = estado.offsetConfirmable();
+            if (offset >= 0) {
+                offsets.put(tp, new OffsetAndMetadata(offset));
+            }
+        }
+
+        if (!offsets.isEmpty()) {
+            consumer.commitSync(offsets);
+            log.info("Offsets confirmados antes de la revocación: {}", offsets);
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // Ya no somos dueños de las particiones, no se puede confirmar nada
+        partitions.forEach(tp -> {
+            EstadoParticion estado = particiones.remove(tp);
+            if (estado != null) {
+                estado.revocar();
+            }
+        });
+    }
+
+    /**
+     * Ejecuta la tarea; el future termina cuando el registro queda completado (procesado
+     * o en el DLT), de modo que el siguiente de la key espera también a los reintentos.
+     */
+    private CompletableFuture<Void> ejecutar(ConsumerRecord<String, ?> record, EstadoParticion estado,
+                                             Runnable tarea, int intento) {
+        if (estado.revocada()) {
+            // La partición ya es de otro miembro del grupo
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            tarea.run();
+            estado.completar(record.offset());
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            metricas.registrarError(LISTENER_ID, record.topic());
+            if (intento < intentos) {
+                long espera = espera(intento);
+                log.warn("Error procesando registro de partición: {}-{} offset: {}, intento {} de {}, reintento en {} ms",
+                        record.topic(), record.partition(), record.offset(), intento, intentos, espera, e);
+                metricas.registrarReintento(LISTENER_ID, record.topic());
+                Executor diferido = CompletableFuture.delayedExecutor(espera, TimeUnit.MILLISECONDS, executor);
+                return CompletableFuture.supplyAsync(() -> ejecutar(record, estado, tarea, intento + 1), diferido)
+                        .thenCompose(Function.identity());
+            }
+            return enviarAlDlt(record, estado, e, 1);
+        }
+    }
+
+    /**
+     * Publica el registro en el DLT reintentando hasta que lo acepte o se revoque la
+     * partición: mientras tanto su offset sigue pendiente y la partición no confirma
+     * más allá.
+     */
+    private CompletableFuture<Void> enviarAlDlt(ConsumerRecord<String, ?> record, EstadoParticion estado,
+                                                Exception causa, int intento) {
+        if (estado.revocada()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            dlt.accept(record, causa);
+            log.error("Registro de partición: {}-{} offset: {} enviado al DLT tras {} intentos",
+                    record.topic(), record.partition(), record.offset(), intentos, causa);
+            metricas.registrarDlt(record.topic() + "-dlt");
+            estado.completar(record.offset());
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            long espera = espera(intento);
+            log.error("No se pudo publicar en el DLT el registro de partición: {}-{} offset: {} (intento {}), "
+                            + "la partición no confirma más allá; reintento en {} ms",
+                    record.topic(), record.partition(), record.offset(), intento, espera, e);
+            metricas.registrarError(LISTENER_ID, record.topic() + "-dlt");
+            Executor diferido = CompletableFuture.delayedExecutor(espera, TimeUnit.MILLISECONDS, executor);
+            return CompletableFuture.supplyAsync(() -> enviarAlDlt(record, estado, causa, intento + 1), diferido)
+                    .thenCompose(Function.identity());
+        }
+    }
+
+    private long espera(int intento) {
+        return (long) Math.min(esperaMaxMs, esperaInicialMs * Math.pow(multiplicador, intento - 1));
+    }
+
+    private void aplicarContrapresion(Collection<TopicPartition> asignadas) {
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (container == null) {
+            return;
+        }
+
+        for (TopicPartition tp : asignadas) {
+            EstadoParticion estado = particiones.get(tp);
+            int enVuelo = estado != null ? estado.enVuelo() : 0;
+            boolean pausada = container.isPartitionPauseRequested(tp);
+
+            if (!pausada && enVuelo >= maxEnVueloPorParticion) {
+                container.pausePartition(tp);
+                log.info("Partición {} pausada con {} registros en vuelo", tp, enVuelo);
+            } else if (pausada && enVuelo <= maxEnVueloPorParticion / 2) {
+                container.resumePartition(tp);
+                log.info("Partición {} reanudada con {} registros en vuelo", tp, enVuelo);
+            }
+        }
+    }
+
+    private ExecutorService crearExecutor() {
+        // Hilos virtuales cuando la JVM los soporta (Java 21+), pool acotado en caso contrario
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            log.info("Procesamiento paralelo de pedidos con hilos virtuales");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Hilos virtuales no disponibles, procesamiento paralelo con {} hilos", hilos);
+            AtomicInteger numero = new AtomicInteger();
+            return Executors.newFixedThreadPool(hilos, r -> {
+                Thread hilo = new Thread(r, LISTENER_ID + "-" + numero.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+
+    /**
+     * Offsets recibidos y aún no completados de una partición.
+     */
+    static final class EstadoParticion {
+
+        private final TreeSet<Long> pendientes = new TreeSet<>();
+        private final Set<Long> fallidos = new HashSet<>();
+        private long siguienteOffset = -1;
+        private long ultimoConfirmado = -1;
+        private volatile boolean revocada;
+
+        synchronized void registrar(long offset) {
+            pendientes.add(offset);
+            siguienteOffset = offset + 1;
+        }
+
+        synchronized void completar(long offset) {
+            pendientes.remove(offset);
+            notifyAll();
+        }
+
+        synchronized void fallar(long offset) {
+            fallidos.add(offset);
+            notifyAll();
+        }
+
+        void revocar() {
+            revocada = true;
+        }
+
+        boolean revocada() {
+            return revocada;
+        }
+
+        synchronized int enVuelo() {
+            return pendientes.size() - fallidos.size();
+        }
+
+        /**
+         * Primer offset aún no procesado, o -1 si no avanzó desde la última confirmación
+         * que aceptó el broker.
+         */
+        synchronized long offsetConfirmable() {
+            long offset = pendientes.isEmpty() ? siguienteOffset : pendientes.first();
+            return offset <= ultimoConfirmado ? -1 : offset;
+        }
+
+        synchronized void confirmado(long offset) {
+            ultimoConfirmado = Math.max(ultimoConfirmado, offset);
+        }
+
+        synchronized boolean esperarEnVuelo(long timeoutMs) {
+            long limite = System.currentTimeMillis() + timeoutMs;
+            try {
+                while (enVuelo() > 0) {
+                    long restante = limite - System.currentTimeMillis();
+                    if (restante <= 0) {
+                        return false;
+                    }
+                    wait(restante);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
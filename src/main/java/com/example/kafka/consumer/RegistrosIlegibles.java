@@ -0,0 +1,45 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.serde.DeserializadorTolerante;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Descarta antes de los listeners batch los registros cuyo valor no se pudo leer. Los
+ * listeners por registro no lo necesitan: el contenedor entrega la excepción al
+ * manejador de errores (y @RetryableTopic la lleva directamente al DLT). En un lote
+ * llegarían con valor null y se tratarían como tombstones.
+ * <p>
+ * El registro se salta y su offset se confirma con el resto del lote; el log deja la
+ * partición y el offset para recuperarlo cuando el esquema esté disponible.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RegistrosIlegibles implements RecordFilterStrategy<String, Object> {
+
+    private static final LogAccessor LOG_CABECERA = new LogAccessor(RegistrosIlegibles.class);
+
+    private final KafkaMetricas metricas;
+
+    @Override
+    public boolean filter(ConsumerRecord<String, Object> record) {
+        if (!DeserializadorTolerante.esIlegible(record)) {
+            return false;
+        }
+        DeserializationException causa = SerializationUtils.getExceptionFromHeader(
+                record, DeserializadorTolerante.CABECERA_EXCEPCION_VALOR, LOG_CABECERA);
+        log.error("Registro ilegible descartado en partición: {}-{} offset: {} key: {}: {}",
+                record.topic(), record.partition(), record.offset(), record.key(),
+                causa != null && causa.getCause() != null ? causa.getCause().getMessage() : "sin detalle");
+        metricas.registrarIlegible(record.topic());
+        return true;
+    }
+}
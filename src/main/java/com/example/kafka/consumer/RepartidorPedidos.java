@@ -0,0 +1,79 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.model.Pedido;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Re-particiona pedidos-topic por usuarioId hacia pedidos-por-usuario-topic, que tiene
+ * las mismas particiones que usuarios-topic: así cada pedido llega a la instancia que
+ * tiene la partición de la tabla de usuarios donde está su usuario.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RepartidorPedidos {
+
+    static final String LISTENER_ID = "notificaciones-repartidor";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    private final KafkaMetricas metricas;
+
+    @Value("${kafka.topics.pedidos-por-usuario}")
+    private String pedidosPorUsuarioTopic;
+
+    @Value("${kafka.consumer.pedidos.nack-sleep-ms:1000}")
+    private long nackSleepMs;
+
+    @KafkaListener(
+            id = LISTENER_ID,
+            topics = "${kafka.topics.pedidos}",
+            groupId = "notificaciones-repartidor-group",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "${kafka.notificaciones.habilitado:true}"
+    )
+    public void repartir(List<ConsumerRecord<String, Pedido>> records, Acknowledgment acknowledgment) {
+        if (records.isEmpty()) {
+            return;
+        }
+        metricas.registrarLote(LISTENER_ID, records.get(0).topic(), records.size());
+
+        List<CompletableFuture<?>> envios = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, Pedido> record : records) {
+            metricas.registrarConsumo(LISTENER_ID, record);
+            Pedido pedido = record.value();
+            if (pedido == null) {
+                // Los tombstones no generan notificación
+                continue;
+            }
+            String key = pedido.getUsuarioId() != null ? pedido.getUsuarioId().toString() : null;
+            long inicio = System.nanoTime();
+            envios.add(kafkaTemplate.send(pedidosPorUsuarioTopic, key, pedido)
+                    .whenComplete((result, ex) -> metricas.registrarEnvio(pedidosPorUsuarioTopic, inicio, ex)));
+        }
+
+        try {
+            // Se confirma el lote solo cuando todos los pedidos están en el topic re-particionado
+            CompletableFuture.allOf(envios.toArray(CompletableFuture[]::new)).join();
+            acknowledgment.acknowledge();
+        } catch (CompletionException e) {
+            log.error("Error re-particionando lote de {} pedidos, se reenviará", records.size(), e);
+            metricas.registrarReintento(LISTENER_ID, records.get(0).topic());
+            acknowledgment.nack(0, Duration.ofMillis(nackSleepMs));
+        }
+    }
+}
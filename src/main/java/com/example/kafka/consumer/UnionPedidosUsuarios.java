@@ -0,0 +1,308 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.model.NotificacionPedido;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import com.example.kafka.particionado.ClavesSaladas;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unión incremental stream-tabla de pedidos con usuarios, publicada en
+ * notificaciones-topic.
+ * <p>
+ * Consume a la vez usuarios-topic (la tabla) y pedidos-por-usuario-topic (el stream),
+ * co-particionados: con el asignador por rangos la partición N de ambos topics va al
+ * mismo consumidor, y cada consumidor mantiene solo la tabla de sus particiones. La
+ * tabla se reconstruye leyendo usuarios-topic desde el principio en cada asignación.
+ * <p>
+ * Los pedidos cuyo usuario aún no está en la tabla esperan hasta la ventana
+ * configurada; si el usuario no llega se emiten sin enriquecer. Los offsets de pedidos
+ * se confirman solo hasta el primer pedido aún en espera o sin confirmar por el broker.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UnionPedidosUsuarios implements ConsumerAwareRebalanceListener {
+
+    static final String LISTENER_ID = "notificaciones-union";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    private final KafkaMetricas metricas;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${kafka.topics.usuarios}")
+    private String usuariosTopic;
+
+    @Value("${kafka.topics.pedidos-por-usuario}")
+    private String pedidosPorUsuarioTopic;
+
+    @Value("${kafka.topics.notificaciones}")
+    private String notificacionesTopic;
+
+    @Value("${kafka.notificaciones.ventana-espera:PT5M}")
+    private Duration ventanaEspera;
+
+    @Value("${kafka.notificaciones.max-en-espera-por-particion:100000}")
+    private int maxEnEsperaPorParticion;
+
+    // Cada partición la usa solo el hilo del consumidor al que está asignada
+    private final Map<Integer, ParticionUnion> particiones = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void registrarMetricas() {
+        Gauge.builder("kafka.app.union.en.espera", this, u -> u.particiones.values().stream()
+                        .mapToInt(p -> p.enEspera).sum())
+                .description("Pedidos esperando a que llegue su usuario")
+                .register(meterRegistry);
+    }
+
+    @KafkaListener(
+            id = LISTENER_ID,
+            topics = {"${kafka.topics.usuarios}", "${kafka.topics.pedidos-por-usuario}"},
+            groupId = "notificaciones-union-group",
+            containerFactory = "unionKafkaListenerContainerFactory",
+            autoStartup = "${kafka.notificaciones.habilitado:true}"
+    )
+    public void unir(List<ConsumerRecord<String, Object>> records, Consumer<?, ?> consumer) {
+        long ahora = System.currentTimeMillis();
+
+        for (ConsumerRecord<String, Object> record : records) {
+            ParticionUnion particion = particiones.computeIfAbsent(record.partition(), k -> new ParticionUnion());
+            if (usuariosTopic.equals(record.topic())) {
+                actualizarTabla(particion, record);
+            } else {
+                metricas.registrarConsumo(LISTENER_ID, record);
+                unirPedido(particion, record, ahora);
+            }
+        }
+
+        expirar(consumer, ahora);
+        confirmar(consumer);
+    }
+
+    @EventListener
+    public void alEstarInactivo(ListenerContainerIdleEvent event) {
+        // Sin registros nuevos también hay que emitir los pedidos cuya espera venció
+        if (event.getListenerId().startsWith(LISTENER_ID)) {
+            expirar(event.getConsumer(), System.currentTimeMillis());
+            confirmar(event.getConsumer());
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        List<TopicPartition> tabla = new ArrayList<>();
+        for (TopicPartition tp : partitions) {
+            if (usuariosTopic.equals(tp.topic())) {
+                tabla.add(tp);
+                particiones.put(tp.partition(), new ParticionUnion());
+            }
+        }
+        // La tabla se reconstruye desde el principio: usuarios-topic es su changelog
+        consumer.seekToBeginning(tabla);
+        log.info("Unión de notificaciones: reconstruyendo tabla de usuarios de {}", tabla);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // Completa los envíos en curso para confirmar todo lo ya emitido
+        kafkaTemplate.flush();
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition tp : partitions) {
+            ParticionUnion particion = particiones.get(tp.partition());
+            if (pedidosPorUsuarioTopic.equals(tp.topic()) && particion != null) {
+                long offset = particion.offsets.offsetConfirmable();
+                if (offset >= 0) {
+                    offsets.put(tp, new OffsetAndMetadata(offset));
+                }
+            }
+        }
+        if (!offsets.isEmpty()) {
+            consumer.commitSync(offsets);
+        }
+        // Los pedidos en espera no confirmados los recibirá el nuevo dueño de la partición
+        partitions.forEach(tp -> particiones.remove(tp.partition()));
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(tp -> particiones.remove(tp.partition()));
+    }
+
+    private void actualizarTabla(ParticionUnion particion, ConsumerRecord<String, Object> record) {
+        if (record.value() instanceof Usuario usuario && usuario.getId() != null) {
+            particion.usuarios.put(usuario.getId(), usuario);
+            // Libera los pedidos que esperaban a este usuario
+            List<PedidoEnEspera> esperando = particion.porUsuario.remove(usuario.getId());
+            if (esperando != null) {
+                for (PedidoEnEspera pedido : esperando) {
+                    pedido.liberado = true;
+                    particion.enEspera--;
+                    emitir(particion, pedido.offset, pedido.pedido, usuario);
+                }
+            }
+        } else if (record.value() == null && record.key() != null) {
+            particion.usuarios.remove(Long.valueOf(ClavesSaladas.original(record.key())));
+        }
+    }
+
+    private void unirPedido(ParticionUnion particion, ConsumerRecord<String, Object> record, long ahora) {
+        particion.offsets.registrar(record.offset());
+        Pedido pedido = (Pedido) record.value();
+
+        if (pedido.getUsuarioId() == null) {
+            emitir(particion, record.offset(), pedido, null);
+            return;
+        }
+        Usuario usuario = particion.usuarios.get(pedido.getUsuarioId());
+        if (usuario != null) {
+            emitir(particion, record.offset(), pedido, usuario);
+            return;
+        }
+
+        PedidoEnEspera enEspera = new PedidoEnEspera(record.offset(), pedido, ahora);
+        particion.porUsuario.computeIfAbsent(pedido.getUsuarioId(), k -> new ArrayList<>()).add(enEspera);
+        particion.porLlegada.addLast(enEspera);
+        particion.enEspera++;
+    }
+
+    private void expirar(Consumer<?, ?> consumer, long ahora) {
+        long limite = ahora - ventanaEspera.toMillis();
+        for (TopicPartition tp : consumer.assignment()) {
+            ParticionUnion particion = particiones.get(tp.partition());
+            if (!pedidosPorUsuarioTopic.equals(tp.topic()) || particion == null) {
+                continue;
+            }
+            while (!particion.porLlegada.isEmpty()) {
+                PedidoEnEspera pedido = particion.porLlegada.peekFirst();
+                if (!pedido.liberado && pedido.llegada > limite && particion.enEspera <= maxEnEsperaPorParticion) {
+                    break;
+                }
+                particion.porLlegada.pollFirst();
+                if (pedido.liberado) {
+                    continue;
+                }
+                List<PedidoEnEspera> esperando = particion.porUsuario.get(pedido.pedido.getUsuarioId());
+                esperando.remove(pedido);
+                if (esperando.isEmpty()) {
+                    particion.porUsuario.remove(pedido.pedido.getUsuarioId());
+                }
+                particion.enEspera--;
+                log.warn("Pedido {} emitido sin enriquecer: usuario {} no recibido",
+                        pedido.pedido.getId(), pedido.pedido.getUsuarioId());
+                emitir(particion, pedido.offset, pedido.pedido, null);
+            }
+        }
+    }
+
+    private void emitir(ParticionUnion particion, long offset, Pedido pedido, Usuario usuario) {
+        NotificacionPedido notificacion = NotificacionPedido.builder()
+                .pedidoId(pedido.getId())
+                .usuarioId(pedido.getUsuarioId())
+                .nombre(usuario != null ? usuario.getNombre() : null)
+                .email(usuario != null ? usuario.getEmail() : null)
+                .pais(usuario != null ? usuario.getPais() : null)
+                .monto(pedido.getMonto())
+                .estado(pedido.getEstado())
+                .fechaPedido(pedido.getFechaPedido())
+                .enriquecida(usuario != null)
+                .build();
+
+        long inicio = System.nanoTime();
+        try {
+            kafkaTemplate.send(notificacionesTopic, String.valueOf(pedido.getId()), notificacion)
+                    .whenComplete((result, ex) -> {
+                        metricas.registrarEnvio(notificacionesTopic, inicio, ex);
+                        if (ex == null) {
+                            particion.offsets.completar(offset);
+                        } else {
+                            fallar(particion, offset, pedido, ex);
+                        }
+                    });
+            metricas.registrarNotificacion(usuario != null);
+        } catch (Exception e) {
+            fallar(particion, offset, pedido, e);
+        }
+    }
+
+    private void fallar(ParticionUnion particion, long offset, Pedido pedido, Throwable ex) {
+        // El offset queda sin confirmar: el pedido se volverá a unir tras un reinicio o rebalanceo
+        log.error("Error emitiendo notificación del pedido {}", pedido.getId(), ex);
+        metricas.registrarError(LISTENER_ID, pedidosPorUsuarioTopic);
+        particion.offsets.fallar(offset);
+    }
+
+    private void confirmar(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition tp : consumer.assignment()) {
+            ParticionUnion particion = particiones.get(tp.partition());
+            if (!pedidosPorUsuarioTopic.equals(tp.topic()) || particion == null) {
+                continue;
+            }
+            long offset = particion.offsets.offsetConfirmable();
+            if (offset >= 0) {
+                offsets.put(tp, new OffsetAndMetadata(offset));
+            }
+        }
+        if (!offsets.isEmpty()) {
+            consumer.commitAsync(offsets, (confirmados, ex) -> {
+                if (ex != null) {
+                    log.warn("Error confirmando offsets {}", confirmados, ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Tabla de usuarios, pedidos en espera y offsets pendientes de una partición.
+     */
+    private static final class ParticionUnion {
+
+        private final Map<Long, Usuario> usuarios = new HashMap<>();
+        private final Map<Long, List<PedidoEnEspera>> porUsuario = new HashMap<>();
+        private final ArrayDeque<PedidoEnEspera> porLlegada = new ArrayDeque<>();
+        private final ProcesadorParalelo.EstadoParticion offsets = new ProcesadorParalelo.EstadoParticion();
+        private volatile int enEspera;
+    }
+
+    private static final class PedidoEnEspera {
+
+        private final long offset;
+        private final Pedido pedido;
+        private final long llegada;
+        private boolean liberado;
+
+        PedidoEnEspera(long offset, Pedido pedido, long llegada) {
+            this.offset = offset;
+            this.pedido = pedido;
+            this.llegada = llegada;
+        }
+    }
+}
@@ -1,26 +1,54 @@
 package com.example.kafka.consumer;
 
+import com.example.kafka.logging.RegistroEventos;
+import com.example.kafka.logging.RegistroEventos.Evento;
+import com.example.kafka.metrics.KafkaMetricas;
 import com.example.kafka.model.Usuario;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class UsuarioConsumer {
 
+    static final String LISTENER_ID = "usuarios";
+
+    private final KafkaMetricas metricas;
+
+    private final RegistroEventos eventos;
+
     @KafkaListener(
+            id = LISTENER_ID,
             topics = "${kafka.topics.usuarios}",
             groupId = "${spring.kafka.consumer.group-id}"
     )
-    public void consumirUsuario(Usuario usuario) {
-        log.info("Usuario recibido: {}", usuario);
+    public void consumirUsuario(
+            @Payload Usuario usuario,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+            @Header(KafkaHeaders.OFFSET) long offset,
+            @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp,
+            Acknowledgment acknowledgment) {
+
+        metricas.registrarConsumo(LISTENER_ID, topic, timestamp);
+        eventos.registrar(Evento.RECIBIDO, topic, partition, offset, usuario.getId());
         // Procesar el usuario
         procesarUsuario(usuario);
+        // La factoría usa AckMode.MANUAL: sin este ack el offset nunca se confirmaría
+        acknowledgment.acknowledge();
+        eventos.registrar(Evento.PROCESADO, topic, partition, offset, usuario.getId());
     }
 
     private void procesarUsuario(Usuario usuario) {
-        // Lógica de negocio
-        log.info("Procesando usuario: {}", usuario.getNombre());
+        // Lógica de negocio; el país de las estadísticas lo lee LectorUsuarios de todas
+        // las particiones, no solo de las asignadas a esta instancia
+        log.debug("Usuario {} procesado", usuario.getId());
     }
 }
@@ -0,0 +1,89 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.model.Pedido;
+import com.example.kafka.store.AlmacenPedidos;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consultas sobre el almacén local de pedidos: se responden solo con las particiones
+ * asignadas a esta instancia, sin acceder al broker.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/kafka/pedidos")
+@RequiredArgsConstructor
+public class AlmacenPedidosController {
+
+    private static final int MAX_LIMITE = 10_000;
+
+    private final AlmacenPedidos almacen;
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> buscar(@PathVariable long id) {
+        Pedido pedido = almacen.buscar(id);
+        if (pedido == null) {
+            int particion = almacen.particionDe(id);
+            if (almacen.particionesEnRestauracion().contains(particion)) {
+                return error(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Pedido " + id + " pertenece a la partición " + particion + ", aún en restauración");
+            }
+            String mensaje = particion >= 0 && !almacen.particionesAsignadas().contains(particion)
+                    ? "Pedido " + id + " pertenece a la partición " + particion + ", no asignada a esta instancia"
+                    : "Pedido " + id + " no encontrado";
+            return error(HttpStatus.NOT_FOUND, mensaje);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("pedido", pedido);
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> consultar(
+            @RequestParam(defaultValue = "0") long desde,
+            @RequestParam(defaultValue = "" + Long.MAX_VALUE) long hasta,
+            @RequestParam(required = false) String estado,
+            @RequestParam(defaultValue = "100") int limite) {
+
+        if (desde > hasta || limite < 1 || limite > MAX_LIMITE) {
+            return error(HttpStatus.BAD_REQUEST,
+                    "Se requiere desde <= hasta y un límite entre 1 y " + MAX_LIMITE);
+        }
+
+        List<Pedido> pedidos = almacen.rango(desde, hasta, estado, limite);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("pedidos", pedidos);
+        response.put("total", pedidos.size());
+        response.put("particiones", almacen.particionesAsignadas());
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/resumen")
+    public ResponseEntity<Map<String, Object>> resumen() {
+        Map<String, Object> response = almacen.resumen();
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<Map<String, Object>> error(HttpStatus status, String mensaje) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("status", "error");
+        errorResponse.put("message", mensaje);
+        errorResponse.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.status(status).body(errorResponse);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.arranque.LineaTiempoArranque;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Línea de tiempo del arranque de esta instancia.
+ */
+@RestController
+@RequestMapping("/api/kafka/arranque")
+@RequiredArgsConstructor
+public class ArranqueController {
+
+    private final LineaTiempoArranque lineaTiempo;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> lineaTiempo() {
+        Map<String, Object> response = new HashMap<>(lineaTiempo.informe());
+        response.put("status", "success");
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.service.ReprocesoDltService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Operaciones sobre los dead letter topics.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/kafka/dlt")
+@RequiredArgsConstructor
+public class DltController {
+
+    private static final int MAX_LIMITE = 100_000;
+
+    private final ReprocesoDltService reprocesoDltService;
+
+    @PostMapping("/pedidos/reprocesar")
+    public ResponseEntity<Map<String, Object>> reprocesarPedidos(
+            @RequestParam(defaultValue = "1000") int limite) {
+
+        if (limite < 1 || limite > MAX_LIMITE) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("status", "error");
+            errorResponse.put("message", "El límite debe estar entre 1 y " + MAX_LIMITE);
+            errorResponse.put("timestamp", LocalDateTime.now());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        }
+
+        try {
+            return ResponseEntity.ok(reprocesoDltService.reprocesarPedidos(limite));
+        } catch (Exception e) {
+            log.error("Error reprocesando el DLT de pedidos", e);
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("status", "error");
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("timestamp", LocalDateTime.now());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+}
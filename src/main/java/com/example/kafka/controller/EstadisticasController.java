@@ -0,0 +1,49 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.estadisticas.EstadisticasPedidos;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estadísticas de monto de los pedidos consumidos por esta instancia, por estado y por
+ * país, en ventanas de tiempo.
+ */
+@RestController
+@RequestMapping("/api/kafka/stats")
+@RequiredArgsConstructor
+public class EstadisticasController {
+
+    private final EstadisticasPedidos estadisticas;
+
+    /**
+     * Sin ventana, la ventana en curso de cada una; con ventana, sus {@code ultimas}
+     * ventanas de la más reciente a la más antigua.
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> estadisticas(
+            @RequestParam(required = false) String ventana,
+            @RequestParam(defaultValue = "1") int ultimas) {
+        Map<String, Object> response;
+        try {
+            response = new HashMap<>(ventana == null ? estadisticas.informe() : estadisticas.informe(ventana, ultimas));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("status", "error");
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("timestamp", LocalDateTime.now());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        }
+        response.put("status", "success");
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.consumer.ControlFlujo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Consulta y cambio en caliente de los límites de consumo y los carriles de prioridad.
+ */
+@RestController
+@RequestMapping("/api/kafka/flujo")
+@RequiredArgsConstructor
+public class FlujoController {
+
+    private final ControlFlujo controlFlujo;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> estado() {
+        Map<String, Object> response = new HashMap<>(controlFlujo.estado());
+        response.put("status", "success");
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Límite de registros por segundo de un listener; tasa 0 lo quita.
+     */
+    @PutMapping("/limites/{listenerId}")
+    public ResponseEntity<Map<String, Object>> limite(
+            @PathVariable String listenerId,
+            @RequestParam double tasa,
+            @RequestParam(defaultValue = "0") double rafaga) {
+        try {
+            controlFlujo.configurarLimite(listenerId, tasa, rafaga);
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        }
+        return estado();
+    }
+
+    /**
+     * Capacidad compartida por los carriles de prioridad; 0 desactiva los carriles.
+     */
+    @PutMapping("/capacidad")
+    public ResponseEntity<Map<String, Object>> capacidad(@RequestParam double tasa) {
+        try {
+            controlFlujo.configurarCapacidadTotal(tasa);
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        }
+        return estado();
+    }
+
+    @PutMapping("/prioridades/{topic}")
+    public ResponseEntity<Map<String, Object>> prioridad(
+            @PathVariable String topic,
+            @RequestParam String prioridad) {
+        try {
+            controlFlujo.configurarPrioridad(topic, ControlFlujo.Prioridad.valueOf(prioridad.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            return error("Prioridad desconocida: " + prioridad + " (alta, normal o baja)");
+        }
+        return estado();
+    }
+
+    private ResponseEntity<Map<String, Object>> error(String mensaje) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("status", "error");
+        errorResponse.put("message", mensaje);
+        errorResponse.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.generador.ConfiguracionCarga;
+import com.example.kafka.generador.GeneradorCarga;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/kafka/generador")
+@RequiredArgsConstructor
+public class GeneradorCargaController {
+
+    private final GeneradorCarga generadorCarga;
+
+    @PostMapping("/iniciar")
+    public ResponseEntity<Map<String, Object>> iniciar(
+            @RequestBody(required = false) ConfiguracionCarga configuracion) {
+        try {
+            return ResponseEntity.accepted().body(generadorCarga.iniciar(
+                    configuracion != null ? configuracion : new ConfiguracionCarga()));
+
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    @PostMapping("/detener")
+    public ResponseEntity<Map<String, Object>> detener() {
+        return ResponseEntity.ok(generadorCarga.detener());
+    }
+
+    @GetMapping("/estado")
+    public ResponseEntity<Map<String, Object>> estado() {
+        return ResponseEntity.ok(generadorCarga.estado());
+    }
+
+    private ResponseEntity<Map<String, Object>> error(HttpStatus status, String mensaje) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("status", "error");
+        errorResponse.put("message", mensaje);
+        errorResponse.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.status(status).body(errorResponse);
+    }
+}
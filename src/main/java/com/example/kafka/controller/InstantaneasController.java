@@ -0,0 +1,66 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.store.AlmacenPedidos;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Instantáneas del almacén local de pedidos: las que hay en el directorio y escritura
+ * bajo demanda de las particiones asignadas a esta instancia.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/kafka/pedidos/instantaneas")
+@RequiredArgsConstructor
+public class InstantaneasController {
+
+    private final AlmacenPedidos almacen;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> listar() {
+        Map<String, Object> response = new HashMap<>(almacen.instantaneas());
+        response.put("status", "success");
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Escribe las particiones con registros nuevos desde su última instantánea, o todas
+     * con {@code forzar=true}.
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> escribir(@RequestParam(defaultValue = "false") boolean forzar) {
+        try {
+            List<Map<String, Object>> escritas = almacen.escribirInstantaneas(forzar);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "success");
+            response.put("escritas", escritas);
+            response.put("particiones", almacen.particionesAsignadas());
+            response.put("timestamp", LocalDateTime.now());
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalStateException e) {
+            return error(HttpStatus.CONFLICT, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Error escribiendo instantáneas del almacén", e);
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> error(HttpStatus status, String mensaje) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("status", "error");
+        errorResponse.put("message", mensaje);
+        errorResponse.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.status(status).body(errorResponse);
+    }
+}
@@ -1,20 +1,30 @@
 package com.example.kafka.controller;
 
+import com.example.kafka.logging.RegistroEventos;
+import com.example.kafka.logging.RegistroEventos.Evento;
 import com.example.kafka.model.Pedido;
+import com.example.kafka.model.PedidoUsuario;
 import com.example.kafka.model.Usuario;
-import com.example.kafka.producer.PedidoProducer;
-import com.example.kafka.producer.UsuarioProducer;
+import com.example.kafka.producer.PasarelaEnvios;
+import com.example.kafka.producer.PasarelaSaturadaException;
+import com.example.kafka.producer.SpoolEnvios;
+import com.example.kafka.service.IngestaBulkService;
+import com.example.kafka.service.TransaccionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.errors.RetriableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
@@ -22,26 +32,16 @@ import java.util.concurrent.ThreadLocalRandom;
 @RequiredArgsConstructor
 public class KafkaController {
 
-    private final UsuarioProducer usuarioProducer;
-    private final PedidoProducer pedidoProducer;
+    private final PasarelaEnvios pasarelaEnvios;
+    private final IngestaBulkService ingestaBulkService;
+    private final TransaccionService transaccionService;
+    private final RegistroEventos eventos;
 
-    private static final List<String> NOMBRES = Arrays.asList(
-            "Juan", "María", "Pedro", "Ana", "Carlos", "Laura", "Diego", "Sofia",
-            "Miguel", "Carmen", "Luis", "Patricia", "Jorge", "Isabel", "Roberto"
-    );
+    @Value("${kafka.topics.usuarios}")
+    private String usuariosTopic;
 
-    private static final List<String> APELLIDOS = Arrays.asList(
-            "García", "Rodríguez", "Martínez", "López", "González", "Pérez", "Sánchez",
-            "Ramírez", "Torres", "Flores", "Rivera", "Gómez", "Díaz", "Cruz"
-    );
-
-    private static final List<String> PAISES = Arrays.asList(
-            "Chile", "Argentina", "México", "Colombia", "Perú", "España", "Uruguay", "Venezuela"
-    );
-
-    private static final List<String> ESTADOS_PEDIDO = Arrays.asList(
-            "PENDIENTE", "PROCESANDO", "ENVIADO", "ENTREGADO", "CANCELADO"
-    );
+    @Value("${kafka.topics.pedidos}")
+    private String pedidosTopic;
 
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> health() {
@@ -55,167 +55,180 @@ public class KafkaController {
     }
 
     @PostMapping("/usuarios")
-    public ResponseEntity<Map<String, Object>> enviarUsuario(@RequestBody Usuario usuario) {
-        try {
-            if (usuario.getFechaCreacion() == null) {
-                usuario.setFechaCreacion(LocalDateTime.now());
-            }
-
-            usuarioProducer.enviarUsuario(usuario);
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("message", "Usuario enviado a Kafka exitosamente");
-            response.put("usuario", usuario);
-            response.put("timestamp", LocalDateTime.now());
-
-            log.info("Usuario enviado vía API: {}", usuario);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
-
-        } catch (Exception e) {
-            log.error("Error al enviar usuario vía API", e);
-
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("status", "error");
-            errorResponse.put("message", "Error al enviar usuario: " + e.getMessage());
-            errorResponse.put("timestamp", LocalDateTime.now());
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> enviarUsuario(
+            @RequestBody Usuario usuario,
+            @RequestParam(defaultValue = "false") boolean confirmar) {
 
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        if (usuario.getFechaCreacion() == null) {
+            usuario.setFechaCreacion(LocalDateTime.now());
         }
+        return responderEnvio("usuario", usuario, usuariosTopic, usuario.getId(), confirmar,
+                () -> pasarelaEnvios.enviarUsuario(usuario));
     }
 
     @PostMapping("/pedidos")
-    public ResponseEntity<Map<String, Object>> enviarPedido(@RequestBody Pedido pedido) {
-        try {
-            if (pedido.getFechaPedido() == null) {
-                pedido.setFechaPedido(LocalDateTime.now());
-            }
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> enviarPedido(
+            @RequestBody Pedido pedido,
+            @RequestParam(defaultValue = "false") boolean confirmar) {
 
-            if (pedido.getEstado() == null || pedido.getEstado().isEmpty()) {
-                pedido.setEstado("PENDIENTE");
-            }
+        if (pedido.getFechaPedido() == null) {
+            pedido.setFechaPedido(LocalDateTime.now());
+        }
 
-            pedidoProducer.enviarPedido(pedido);
+        if (pedido.getEstado() == null || pedido.getEstado().isEmpty()) {
+            pedido.setEstado("PENDIENTE");
+        }
+        return responderEnvio("pedido", pedido, pedidosTopic, pedido.getId(), confirmar,
+                () -> pasarelaEnvios.enviarPedido(pedido));
+    }
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("message", "Pedido enviado a Kafka exitosamente");
-            response.put("pedido", pedido);
-            response.put("timestamp", LocalDateTime.now());
+    @PostMapping(value = "/usuarios/bulk", consumes = "application/x-ndjson")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> enviarUsuariosBulk(InputStream cuerpo) {
+        return responderBulk("usuarios", ingestaBulkService.ingestarUsuarios(cuerpo));
+    }
 
-            log.info("Pedido enviado vía API: {}", pedido);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    @PostMapping(value = "/pedidos/bulk", consumes = "application/x-ndjson")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> enviarPedidosBulk(InputStream cuerpo) {
+        return responderBulk("pedidos", ingestaBulkService.ingestarPedidos(cuerpo));
+    }
 
-        } catch (Exception e) {
-            log.error("Error al enviar pedido vía API", e);
+    @PostMapping("/transacciones")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> enviarEnTransaccion(
+            @RequestBody PedidoUsuario par) {
 
+        Pedido pedido = par.getPedido();
+        Usuario usuario = par.getUsuario();
+        if (pedido == null || pedido.getId() == null || usuario == null || usuario.getId() == null) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("status", "error");
-            errorResponse.put("message", "Error al enviar pedido: " + e.getMessage());
+            errorResponse.put("message", "Se requieren pedido y usuario con id");
             errorResponse.put("timestamp", LocalDateTime.now());
-
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errorResponse));
+        }
+        if (pedido.getFechaPedido() == null) {
+            pedido.setFechaPedido(LocalDateTime.now());
+        }
+        if (usuario.getFechaCreacion() == null) {
+            usuario.setFechaCreacion(LocalDateTime.now());
         }
-    }
 
-    @PostMapping("/generar-datos")
-    public ResponseEntity<Map<String, Object>> generarDatosPrueba(
-            @RequestParam(defaultValue = "10") int cantidad) {
+        // La respuesta se envía cuando se confirma la transacción que incluye este par
+        return transaccionService.enviarEnTransaccion(pedido, usuario)
+                .handle((result, ex) -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("timestamp", LocalDateTime.now());
+                    if (ex != null) {
+                        log.error("Error en transacción para pedido: {}", pedido.getId(), ex);
+                        response.put("status", "error");
+                        response.put("message", "Transacción fallida: " + ex.getMessage());
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+                    }
+                    response.put("status", "success");
+                    response.put("message", "Pedido y usuario confirmados en una transacción");
+                    response.put("particion", result.getRecordMetadata().partition());
+                    response.put("offset", result.getRecordMetadata().offset());
+                    return ResponseEntity.status(HttpStatus.CREATED).body(response);
+                });
+    }
 
+    /**
+     * Sin {@code confirmar} responde 202 en cuanto el envío entra en la pasarela; con
+     * {@code confirmar=true} responde 201 tras la confirmación del broker, con partición
+     * y offset, sin ocupar un hilo del servidor mientras espera; si el broker no está
+     * disponible y el envío queda en el spool local responde 202 sin partición ni offset.
+     */
+    private CompletableFuture<ResponseEntity<Map<String, Object>>> responderEnvio(
+            String entidad,
+            Object valor,
+            String topic,
+            Long id,
+            boolean confirmar,
+            Supplier<CompletableFuture<SendResult<String, Object>>> envio) {
+
+        CompletableFuture<SendResult<String, Object>> future;
         try {
-            if (cantidad < 1 || cantidad > 1000) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("status", "error");
-                errorResponse.put("message", "La cantidad debe estar entre 1 y 1000");
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
-
-            log.info("Generando {} usuarios y {} pedidos de prueba", cantidad, cantidad);
-
-            List<Long> usuariosIds = new ArrayList<>();
-            int usuariosEnviados = 0;
-            int pedidosEnviados = 0;
-
-            // Generar usuarios
-            for (int i = 0; i < cantidad; i++) {
-                Usuario usuario = generarUsuarioAleatorio();
-                usuarioProducer.enviarUsuario(usuario);
-                usuariosIds.add(usuario.getId());
-                usuariosEnviados++;
-            }
+            future = envio.get();
+        } catch (PasarelaSaturadaException e) {
+            log.warn("Envío de {} rechazado: {}", entidad, e.getMessage());
+            return CompletableFuture.completedFuture(errorEnvio(entidad, HttpStatus.TOO_MANY_REQUESTS, e));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorEnvio(entidad, e));
+        }
 
-            // Pequeña pausa para permitir que los usuarios se procesen
-            Thread.sleep(100);
+        if (!confirmar) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "accepted");
+            response.put("message", "Envío de " + entidad + " aceptado, pendiente de confirmación del broker");
+            response.put(entidad, valor);
+            response.put("timestamp", LocalDateTime.now());
+            eventos.registrar(Evento.ACEPTADO_API, topic, -1, -1, id);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.ACCEPTED).body(response));
+        }
 
-            // Generar pedidos asociados a los usuarios creados
-            for (int i = 0; i < cantidad; i++) {
-                Long usuarioId = usuariosIds.get(ThreadLocalRandom.current().nextInt(usuariosIds.size()));
-                Pedido pedido = generarPedidoAleatorio(usuarioId);
-                pedidoProducer.enviarPedido(pedido);
-                pedidosEnviados++;
+        return future.handle((result, ex) -> {
+            if (ex != null) {
+                return errorEnvio(entidad, ex);
             }
-
             Map<String, Object> response = new HashMap<>();
+            if (SpoolEnvios.enSpool(result)) {
+                response.put("status", "spooled");
+                response.put("message", "Broker no disponible: " + entidad + " guardado en el spool local, se enviará al recuperarse");
+                response.put(entidad, valor);
+                response.put("timestamp", LocalDateTime.now());
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            }
             response.put("status", "success");
-            response.put("message", "Datos de prueba generados exitosamente");
-            response.put("usuariosEnviados", usuariosEnviados);
-            response.put("pedidosEnviados", pedidosEnviados);
+            response.put("message", "Envío de " + entidad + " confirmado por el broker");
+            response.put(entidad, valor);
+            response.put("particion", result.getRecordMetadata().partition());
+            response.put("offset", result.getRecordMetadata().offset());
             response.put("timestamp", LocalDateTime.now());
-
-            log.info("Datos de prueba generados: {} usuarios, {} pedidos",
-                    usuariosEnviados, pedidosEnviados);
-
-            return ResponseEntity.ok(response);
-
-        } catch (Exception e) {
-            log.error("Error al generar datos de prueba", e);
-
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("status", "error");
-            errorResponse.put("message", "Error al generar datos: " + e.getMessage());
-            errorResponse.put("timestamp", LocalDateTime.now());
-
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
-        }
+            eventos.registrar(Evento.CONFIRMADO_API, topic, result.getRecordMetadata().partition(),
+                    result.getRecordMetadata().offset(), id);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        });
     }
 
-    private Usuario generarUsuarioAleatorio() {
-        ThreadLocalRandom random = ThreadLocalRandom.current();
-
-        String nombre = NOMBRES.get(random.nextInt(NOMBRES.size()));
-        String apellido = APELLIDOS.get(random.nextInt(APELLIDOS.size()));
-        String nombreCompleto = nombre + " " + apellido;
-
-        String email = nombre.toLowerCase() + "." +
-                       apellido.toLowerCase() +
-                       random.nextInt(1000) +
-                       "@example.com";
-
-        String pais = PAISES.get(random.nextInt(PAISES.size()));
-
-        return Usuario.builder()
-                .id(random.nextLong(1, 100000))
-                .nombre(nombreCompleto)
-                .email(email)
-                .pais(pais)
-                .fechaCreacion(LocalDateTime.now())
-                .build();
+    /**
+     * La respuesta se envía cuando el broker confirma (o rechaza) todos los envíos; si la
+     * pasarela siguió llena y la ingesta se interrumpió responde 503 con lo enviado hasta entonces.
+     */
+    private CompletableFuture<ResponseEntity<Map<String, Object>>> responderBulk(
+            String entidad, CompletableFuture<Map<String, Object>> ingesta) {
+
+        return ingesta.thenApply(resumen -> {
+            log.info("Ingesta bulk de {}: {} aceptados, {} fallidos",
+                    entidad, resumen.get("aceptados"), resumen.get("fallidos"));
+            if (Boolean.TRUE.equals(resumen.get("interrumpida"))) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(resumen);
+            }
+            return ResponseEntity.ok(resumen);
+        });
     }
 
-    private Pedido generarPedidoAleatorio(Long usuarioId) {
-        ThreadLocalRandom random = ThreadLocalRandom.current();
-
-        BigDecimal monto = BigDecimal.valueOf(random.nextDouble(10.0, 5000.0))
-                .setScale(2, RoundingMode.HALF_UP);
+    private ResponseEntity<Map<String, Object>> errorEnvio(String entidad, Throwable ex) {
+        // Broker no disponible o buffer lleno durante max.block.ms: el cliente puede reintentar
+        Throwable causa = ex;
+        while (causa != null && !(causa instanceof RetriableException)) {
+            causa = causa.getCause();
+        }
+        HttpStatus status = causa != null ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR;
+        log.error("Error al enviar {} vía API", entidad, ex);
+        return errorEnvio(entidad, status, ex);
+    }
 
-        String estado = ESTADOS_PEDIDO.get(random.nextInt(ESTADOS_PEDIDO.size()));
+    private ResponseEntity<Map<String, Object>> errorEnvio(String entidad, HttpStatus status, Throwable ex) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("status", "error");
+        errorResponse.put("message", "Error al enviar " + entidad + ": " + ex.getMessage());
+        errorResponse.put("timestamp", LocalDateTime.now());
 
-        return Pedido.builder()
-                .id(random.nextLong(1000, 999999))
-                .usuarioId(usuarioId)
-                .monto(monto)
-                .estado(estado)
-                .fechaPedido(LocalDateTime.now())
-                .build();
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.status(status);
+        if (status != HttpStatus.INTERNAL_SERVER_ERROR) {
+            respuesta.header(HttpHeaders.RETRY_AFTER, "1");
+        }
+        return respuesta.body(errorResponse);
     }
 }
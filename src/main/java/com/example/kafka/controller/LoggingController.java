@@ -0,0 +1,62 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.logging.RegistroEventos;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Consulta y cambio en caliente del modo del registro de eventos por registro.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/kafka/logging")
+@RequiredArgsConstructor
+public class LoggingController {
+
+    private final RegistroEventos registroEventos;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> configuracion() {
+        Map<String, Object> response = new HashMap<>(registroEventos.configuracion());
+        response.put("status", "success");
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Cambia el modo y/o la tasa de muestreo; con {@code topic} la tasa solo se aplica a
+     * ese topic.
+     */
+    @PutMapping
+    public ResponseEntity<Map<String, Object>> cambiar(
+            @RequestParam(required = false) String modo,
+            @RequestParam(required = false) Double tasa,
+            @RequestParam(required = false) String topic) {
+
+        try {
+            if (modo != null) {
+                registroEventos.cambiarModo(RegistroEventos.Modo.valueOf(modo.toUpperCase(Locale.ROOT)));
+            }
+            if (tasa != null) {
+                registroEventos.cambiarTasa(topic, tasa);
+            }
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("status", "error");
+            errorResponse.put("message", "Modo (detallado, muestreo, resumen) o tasa (0-1) inválidos: " + e.getMessage());
+            errorResponse.put("timestamp", LocalDateTime.now());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        }
+
+        log.info("Registro de eventos actualizado: modo={} tasa={} topic={}", modo, tasa, topic);
+        return configuracion();
+    }
+}
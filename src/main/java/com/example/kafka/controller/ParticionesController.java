@@ -0,0 +1,33 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.particionado.DetectorClavesCalientes;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Carga reciente de cada partición en los envíos de esta instancia y keys más
+ * frecuentes de cada topic.
+ */
+@RestController
+@RequestMapping("/api/kafka/particiones")
+@RequiredArgsConstructor
+public class ParticionesController {
+
+    private final DetectorClavesCalientes detector;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> carga() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("topics", detector.informe());
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+}
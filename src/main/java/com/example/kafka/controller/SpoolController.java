@@ -0,0 +1,31 @@
+package com.example.kafka.controller;
+
+import com.example.kafka.producer.SpoolEnvios;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estado del spool local de envíos: modo actual y registros pendientes de reenviar.
+ */
+@RestController
+@RequestMapping("/api/kafka/spool")
+@RequiredArgsConstructor
+public class SpoolController {
+
+    private final SpoolEnvios spool;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> estado() {
+        Map<String, Object> response = new HashMap<>(spool.estado());
+        response.put("status", "success");
+        response.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(response);
+    }
+}
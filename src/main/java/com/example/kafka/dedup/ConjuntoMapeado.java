@@ -0,0 +1,129 @@
+package com.example.kafka.dedup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Conjunto de longs de capacidad fija sobre un fichero mapeado en memoria
+ * (direccionamiento abierto con sondeo lineal). Los datos viven fuera del heap y
+ * sobreviven a reinicios del proceso.
+ * <p>
+ * Cabecera: número de elementos (8 bytes) y momento de creación en ms (8 bytes).
+ * El valor 0 marca una posición libre.
+ */
+class ConjuntoMapeado implements AutoCloseable {
+
+    private static final int CABECERA = 16;
+    private static final byte[] CEROS = new byte[64 * 1024];
+
+    private final FileChannel canal;
+    private final MappedByteBuffer buffer;
+    private final int capacidad;
+    private final int mascara;
+
+    ConjuntoMapeado(Path fichero, int capacidad) {
+        if (Integer.bitCount(capacidad) != 1 || capacidad > (1 << 27)) {
+            throw new IllegalArgumentException("La capacidad debe ser potencia de 2 y como máximo 2^27: " + capacidad);
+        }
+        this.capacidad = capacidad;
+        this.mascara = capacidad - 1;
+        try {
+            this.canal = FileChannel.open(fichero,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long tamano = CABECERA + (long) capacidad * Long.BYTES;
+            boolean nuevo = canal.size() != tamano;
+            if (nuevo) {
+                // Fichero nuevo o de otra capacidad: se descarta su contenido
+                canal.truncate(0);
+            }
+            this.buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+            if (nuevo) {
+                limpiar();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo mapear " + fichero, e);
+        }
+    }
+
+    synchronized boolean contiene(long valor) {
+        long clave = clave(valor);
+        for (int i = indice(clave), intentos = 0; intentos < capacidad; i = (i + 1) & mascara, intentos++) {
+            long actual = buffer.getLong(posicion(i));
+            if (actual == clave) {
+                return true;
+            }
+            if (actual == 0) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Añade el valor; devuelve false si ya estaba o si el conjunto está lleno.
+     */
+    synchronized boolean agregar(long valor) {
+        long clave = clave(valor);
+        for (int i = indice(clave), intentos = 0; intentos < capacidad; i = (i + 1) & mascara, intentos++) {
+            int posicion = posicion(i);
+            long actual = buffer.getLong(posicion);
+            if (actual == clave) {
+                return false;
+            }
+            if (actual == 0) {
+                buffer.putLong(posicion, clave);
+                buffer.putLong(0, buffer.getLong(0) + 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized long tamano() {
+        return buffer.getLong(0);
+    }
+
+    synchronized long creado() {
+        return buffer.getLong(8);
+    }
+
+    int capacidad() {
+        return capacidad;
+    }
+
+    synchronized void limpiar() {
+        int limite = buffer.capacity();
+        for (int posicion = 0; posicion < limite; posicion += CEROS.length) {
+            buffer.put(posicion, CEROS, 0, Math.min(CEROS.length, limite - posicion));
+        }
+        buffer.putLong(8, System.currentTimeMillis());
+    }
+
+    synchronized void forzar() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        forzar();
+        canal.close();
+    }
+
+    private static long clave(long valor) {
+        // 0 está reservado para las posiciones libres
+        return valor == 0 ? 1 : valor;
+    }
+
+    private int indice(long clave) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+
+    private static int posicion(int indice) {
+        return CABECERA + indice * Long.BYTES;
+    }
+}
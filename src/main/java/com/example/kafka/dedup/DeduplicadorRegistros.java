@@ -0,0 +1,169 @@
+package com.example.kafka.dedup;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Descarta registros ya procesados que Kafka vuelve a entregar tras un fallo o un
+ * rebalanceo. Cada registro se identifica por un hash de 64 bits de (topic, id de
+ * envío) si trae la cabecera {@value #HEADER_ID_ENVIO} y de (topic, partición, offset)
+ * si no: el id lo pone el productor y se conserva cuando el spool reenvía el registro
+ * con otro offset, así que esos reenvíos también se descartan. Se guarda en dos
+ * generaciones de
+ * {@link ConjuntoMapeado}: cuando la actual se llena o caduca, la anterior se vacía y
+ * pasa a ser la actual. Así la memoria está acotada y ningún dato vive en el heap.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeduplicadorRegistros {
+
+    /** Cabecera con el id de 8 bytes que el productor asigna a cada envío. */
+    public static final String HEADER_ID_ENVIO = "id-envio";
+
+    private final KafkaMetricas metricas;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${kafka.consumer.dedup.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${kafka.consumer.dedup.directorio:./data/dedup}")
+    private String directorio;
+
+    /** Entradas por generación (potencia de 2); cada una ocupa 8 bytes en disco. */
+    @Value("${kafka.consumer.dedup.capacidad:4194304}")
+    private int capacidad;
+
+    @Value("${kafka.consumer.dedup.ttl:PT24H}")
+    private Duration ttl;
+
+    private ConjuntoMapeado[] generaciones;
+    private volatile int actual;
+
+    @PostConstruct
+    void abrir() throws IOException {
+        if (!habilitado) {
+            return;
+        }
+        Path base = Path.of(directorio);
+        Files.createDirectories(base);
+        generaciones = new ConjuntoMapeado[]{
+                new ConjuntoMapeado(base.resolve("dedup-0.bin"), capacidad),
+                new ConjuntoMapeado(base.resolve("dedup-1.bin"), capacidad)
+        };
+        // Tras un reinicio la generación actual es la más reciente
+        actual = generaciones[0].creado() >= generaciones[1].creado() ? 0 : 1;
+
+        Gauge.builder("kafka.app.dedup.entradas", this, d -> d.generaciones[0].tamano() + d.generaciones[1].tamano())
+                .description("Registros recordados por el deduplicador")
+                .register(meterRegistry);
+
+        log.info("Deduplicador abierto en {} con {} entradas recordadas",
+                base, generaciones[0].tamano() + generaciones[1].tamano());
+    }
+
+    @PreDestroy
+    void cerrar() throws IOException {
+        if (generaciones != null) {
+            for (ConjuntoMapeado generacion : generaciones) {
+                generacion.close();
+            }
+        }
+    }
+
+    public boolean esDuplicado(String listenerId, ConsumerRecord<?, ?> record) {
+        return esDuplicado(listenerId, record.topic(), record.partition(), record.offset(), idEnvio(record.headers()));
+    }
+
+    public void marcarProcesado(ConsumerRecord<?, ?> record) {
+        marcarProcesado(record.topic(), record.partition(), record.offset(), idEnvio(record.headers()));
+    }
+
+    /**
+     * Indica si el registro ya fue procesado; los duplicados se cuentan en métricas.
+     * {@code idEnvio} es el valor de la cabecera {@value #HEADER_ID_ENVIO} o null.
+     */
+    public boolean esDuplicado(String listenerId, String topic, int partition, long offset, byte[] idEnvio) {
+        if (!habilitado) {
+            return false;
+        }
+        long clave = clave(topic, partition, offset, idEnvio);
+        boolean duplicado = generaciones[0].contiene(clave) || generaciones[1].contiene(clave);
+        if (duplicado) {
+            metricas.registrarDuplicado(listenerId, topic);
+        }
+        return duplicado;
+    }
+
+    /**
+     * Recuerda el registro; se invoca solo después de procesarlo con éxito para que
+     * un fallo permita reprocesarlo.
+     */
+    public void marcarProcesado(String topic, int partition, long offset, byte[] idEnvio) {
+        if (!habilitado) {
+            return;
+        }
+        long clave = clave(topic, partition, offset, idEnvio);
+        ConjuntoMapeado generacion = generaciones[actual];
+        if (debeRotar(generacion)) {
+            generacion = rotar(generacion);
+        }
+        generacion.agregar(clave);
+    }
+
+    private boolean debeRotar(ConjuntoMapeado generacion) {
+        // Con más del 70% de ocupación el sondeo lineal se degrada
+        return generacion.tamano() >= generacion.capacidad() * 7L / 10
+                || System.currentTimeMillis() - generacion.creado() >= ttl.toMillis();
+    }
+
+    private synchronized ConjuntoMapeado rotar(ConjuntoMapeado vista) {
+        ConjuntoMapeado generacion = generaciones[actual];
+        if (generacion != vista) {
+            // Otro hilo ya rotó
+            return generacion;
+        }
+        int siguiente = 1 - actual;
+        generaciones[siguiente].limpiar();
+        actual = siguiente;
+        log.info("Deduplicador rota de generación con {} entradas", vista.tamano());
+        return generaciones[siguiente];
+    }
+
+    private static byte[] idEnvio(Headers headers) {
+        Header header = headers.lastHeader(HEADER_ID_ENVIO);
+        return header != null ? header.value() : null;
+    }
+
+    static long clave(String topic, int partition, long offset, byte[] idEnvio) {
+        long h;
+        if (idEnvio != null && idEnvio.length == Long.BYTES) {
+            // Sin la partición: el reenvío puede llegar a otra si cambió el número de particiones
+            h = ((long) topic.hashCode() << 32) ^ 0x9E3779B97F4A7C15L;
+            h ^= ByteBuffer.wrap(idEnvio).getLong() * 0xC2B2AE3D27D4EB4FL;
+        } else {
+            h = ((long) topic.hashCode() << 32) ^ (partition & 0xFFFFFFFFL);
+            h ^= offset * 0xC2B2AE3D27D4EB4FL;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
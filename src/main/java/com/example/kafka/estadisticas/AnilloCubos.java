@@ -0,0 +1,109 @@
+package com.example.kafka.estadisticas;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Anillo de cubos de tiempo de una partición (un minuto o una hora cada uno) sobre
+ * arrays primitivos. Cada cubo guarda, por dimensión (estado o país), registros, suma
+ * de montos en céntimos e histograma de montos.
+ * <p>
+ * Los hilos del consumidor suman con operaciones atómicas sobre los arrays, así que
+ * varios hilos pueden escribir la misma partición (modo {@code paralelo}) sin bloqueos.
+ * Un cubo se reutiliza para una época nueva cuando su época es más antigua: el primer
+ * hilo que lo reclama con un CAS lo pone a cero y los demás esperan a que publique la
+ * época nueva. Las consultas leen los cubos mientras se escriben; el resultado es una
+ * instantánea aproximada.
+ */
+final class AnilloCubos {
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final long VACIO = -1;
+    private static final long REINICIANDO = Long.MIN_VALUE;
+
+    private final int cubos;
+    private final int dimensiones;
+    private final int cubetas;
+    private final long[] epocas;
+    private final long[] registros;
+    private final long[] sumas;
+    private final int[] histogramas;
+
+    AnilloCubos(int cubos, int dimensiones, int cubetas) {
+        this.cubos = cubos;
+        this.dimensiones = dimensiones;
+        this.cubetas = cubetas;
+        this.epocas = new long[cubos];
+        this.registros = new long[cubos * dimensiones];
+        this.sumas = new long[cubos * dimensiones];
+        this.histogramas = new int[cubos * dimensiones * cubetas];
+        Arrays.fill(epocas, VACIO);
+    }
+
+    /**
+     * Suma un pedido a las dimensiones {@code estado} y {@code pais} del cubo de
+     * {@code epoca}. Devuelve false si el cubo ya pertenece a una época posterior.
+     */
+    boolean anadir(long epoca, int estado, int pais, long centimos, int cubeta) {
+        int cubo = (int) Math.floorMod(epoca, cubos);
+        if (!ocupar(cubo, epoca)) {
+            return false;
+        }
+        sumar(cubo * dimensiones + estado, centimos, cubeta);
+        sumar(cubo * dimensiones + pais, centimos, cubeta);
+        return true;
+    }
+
+    /**
+     * Acumula el cubo de {@code epoca} en los arrays de destino (por dimensión y, en el
+     * histograma, por dimensión y cubeta); no hace nada si el cubo no tiene esa época.
+     */
+    void acumular(long epoca, long[] registrosDestino, long[] sumasDestino, long[] histogramasDestino) {
+        int cubo = (int) Math.floorMod(epoca, cubos);
+        if ((long) LONGS.getAcquire(epocas, cubo) != epoca) {
+            return;
+        }
+        int desde = cubo * dimensiones;
+        for (int d = 0; d < dimensiones; d++) {
+            registrosDestino[d] += (long) LONGS.getOpaque(registros, desde + d);
+            sumasDestino[d] += (long) LONGS.getOpaque(sumas, desde + d);
+        }
+        int desdeHistograma = desde * cubetas;
+        for (int i = 0; i < dimensiones * cubetas; i++) {
+            histogramasDestino[i] += (int) INTS.getOpaque(histogramas, desdeHistograma + i);
+        }
+    }
+
+    private boolean ocupar(int cubo, long epoca) {
+        while (true) {
+            long actual = (long) LONGS.getAcquire(epocas, cubo);
+            if (actual == epoca) {
+                return true;
+            }
+            if (actual == REINICIANDO) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (actual > epoca) {
+                return false;
+            }
+            if (LONGS.compareAndSet(epocas, cubo, actual, REINICIANDO)) {
+                int desde = cubo * dimensiones;
+                Arrays.fill(registros, desde, desde + dimensiones, 0);
+                Arrays.fill(sumas, desde, desde + dimensiones, 0);
+                Arrays.fill(histogramas, desde * cubetas, (desde + dimensiones) * cubetas, 0);
+                LONGS.setRelease(epocas, cubo, epoca);
+                return true;
+            }
+        }
+    }
+
+    private void sumar(int celda, long centimos, int cubeta) {
+        LONGS.getAndAdd(registros, celda, 1L);
+        LONGS.getAndAdd(sumas, celda, centimos);
+        INTS.getAndAdd(histogramas, celda * cubetas + cubeta, 1);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.kafka.estadisticas;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Asigna a cada valor de texto (estado, país) un índice denso para usarlo como
+ * dimensión de los arrays de cubos. El 0 es para los valores nulos y, agotados los
+ * índices, los valores nuevos comparten el 1.
+ */
+final class Diccionario {
+
+    static final int DESCONOCIDO = 0;
+    static final int OTROS = 1;
+
+    private final int maximo;
+    private final Map<String, Integer> indices = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> nombres;
+    private volatile int tamano = 2;
+
+    Diccionario(int maximo) {
+        this.maximo = maximo;
+        this.nombres = new AtomicReferenceArray<>(maximo);
+        nombres.set(DESCONOCIDO, "desconocido");
+        nombres.set(OTROS, "otros");
+    }
+
+    int indice(String nombre) {
+        if (nombre == null) {
+            return DESCONOCIDO;
+        }
+        Integer indice = indices.get(nombre);
+        if (indice != null) {
+            return indice;
+        }
+        return tamano < maximo ? anadir(nombre) : OTROS;
+    }
+
+    int tamano() {
+        return tamano;
+    }
+
+    int maximo() {
+        return maximo;
+    }
+
+    String nombre(int indice) {
+        return nombres.get(indice);
+    }
+
+    private synchronized int anadir(String nombre) {
+        Integer indice = indices.get(nombre);
+        if (indice != null) {
+            return indice;
+        }
+        int nuevo = tamano;
+        if (nuevo == maximo) {
+            return OTROS;
+        }
+        nombres.set(nuevo, nombre);
+        indices.put(nombre, nuevo);
+        tamano = nuevo + 1;
+        return nuevo;
+    }
+}
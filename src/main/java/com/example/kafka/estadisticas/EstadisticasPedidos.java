@@ -0,0 +1,315 @@
+package com.example.kafka.estadisticas;
+
+import com.example.kafka.config.EstadisticasProperties;
+import com.example.kafka.config.EstadisticasProperties.Saltante;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registros, suma y percentiles de monto de los pedidos consumidos, por estado y por
+ * país del usuario, en ventanas fijas de un minuto y de una hora y en las ventanas
+ * saltantes configuradas. La ventana es la del timestamp del registro.
+ * <p>
+ * Cada partición acumula en sus propios anillos de cubos; una consulta suma los cubos
+ * de la ventana de todas las particiones. Un pedido cuenta en esta instancia mientras
+ * tenga asignada su partición, así que con varias instancias cada una ve su parte. El
+ * país sale de usuarios-topic completo, que {@link LectorUsuarios} lee en todas las
+ * instancias: solo los pedidos de usuarios aún no vistos cuentan como "desconocido".
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(EstadisticasProperties.class)
+public class EstadisticasPedidos {
+
+    private static final long MINUTO = Duration.ofMinutes(1).toMillis();
+    private static final long HORA = Duration.ofHours(1).toMillis();
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+    private static final String[] NOMBRES_PERCENTILES = {"p50", "p90", "p99"};
+
+    private final EstadisticasProperties propiedades;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Integer, Particion> particiones = new ConcurrentHashMap<>();
+
+    private final Map<String, Ventana> ventanas = new LinkedHashMap<>();
+
+    private Diccionario estados;
+
+    private Diccionario paises;
+
+    private PaisesUsuarios paisesUsuarios;
+
+    private HistogramaMontos histograma;
+
+    private Counter descartados;
+
+    @PostConstruct
+    void iniciar() {
+        if (propiedades.getMinutos() < 2 || propiedades.getHoras() < 2) {
+            throw new IllegalStateException("Las estadísticas necesitan al menos 2 cubos de minutos y 2 de horas");
+        }
+        if (propiedades.getMaxPaises() > Byte.MAX_VALUE) {
+            throw new IllegalStateException("Como mucho " + Byte.MAX_VALUE + " países: " + propiedades.getMaxPaises());
+        }
+        histograma = new HistogramaMontos(propiedades.getErrorRelativo(), propiedades.getMontoMaximo());
+        estados = new Diccionario(propiedades.getMaxEstados());
+        paises = new Diccionario(propiedades.getMaxPaises());
+        paisesUsuarios = new PaisesUsuarios(propiedades.getMaxUsuarios());
+
+        ventanas.put("minuto", new Ventana("minuto", false, 1, 1));
+        ventanas.put("hora", new Ventana("hora", true, 1, 1));
+        propiedades.getSaltantes().forEach((nombre, saltante) -> ventanas.put(nombre, saltante(nombre, saltante)));
+
+        descartados = Counter.builder("kafka.app.estadisticas.descartados")
+                .description("Pedidos fuera de los cubos conservados (demasiado antiguos o con timestamp futuro)")
+                .register(meterRegistry);
+        if (propiedades.isHabilitado()) {
+            log.info("Estadísticas de pedidos: ventanas {}, {} cubetas de monto por dimensión",
+                    ventanas.keySet(), histograma.cubetas());
+        }
+    }
+
+    /**
+     * Suma el pedido a los cubos de su minuto y de su hora en la partición; lo invocan
+     * los hilos del consumidor, varios a la vez para la misma partición en modo paralelo.
+     */
+    public void registrar(int particion, long timestamp, Pedido pedido) {
+        if (!propiedades.isHabilitado()) {
+            return;
+        }
+        int estado = estados.indice(pedido.getEstado());
+        int pais = estados.maximo() + (pedido.getUsuarioId() != null
+                ? paisesUsuarios.pais(pedido.getUsuarioId()) : Diccionario.DESCONOCIDO);
+        long centimos = pedido.getMonto() != null ? pedido.getMonto().movePointRight(2).longValue() : 0;
+        int cubeta = histograma.cubeta(centimos);
+
+        Particion cubos = particiones.get(particion);
+        if (cubos == null) {
+            cubos = particiones.computeIfAbsent(particion, p -> new Particion());
+        }
+        long ahora = System.currentTimeMillis();
+        long minuto = Math.floorDiv(timestamp, MINUTO);
+        long hora = Math.floorDiv(timestamp, HORA);
+        boolean enMinutos = aceptable(minuto, Math.floorDiv(ahora, MINUTO), propiedades.getMinutos())
+                && cubos.minutos.anadir(minuto, estado, pais, centimos, cubeta);
+        boolean enHoras = aceptable(hora, Math.floorDiv(ahora, HORA), propiedades.getHoras())
+                && cubos.horas.anadir(hora, estado, pais, centimos, cubeta);
+        if (!enMinutos && !enHoras) {
+            descartados.increment();
+        }
+    }
+
+    /**
+     * Descarta los cubos de una partición que esta instancia ha dejado de tener asignada;
+     * sus pedidos pasan a contar en la instancia que la recibe.
+     */
+    public void liberar(int particion) {
+        particiones.remove(particion);
+    }
+
+    /**
+     * País del usuario para clasificar sus pedidos siguientes.
+     */
+    public void registrarUsuario(Usuario usuario) {
+        if (propiedades.isHabilitado() && usuario.getId() != null) {
+            paisesUsuarios.registrar(usuario.getId(), paises.indice(usuario.getPais()));
+        }
+    }
+
+    /**
+     * Ventana en curso de cada ventana configurada.
+     */
+    public Map<String, Object> informe() {
+        long ahora = System.currentTimeMillis();
+        Map<String, Object> porVentana = new LinkedHashMap<>();
+        ventanas.forEach((nombre, ventana) -> porVentana.put(nombre, resumen(ventana, ventana.fin(ahora), ahora)));
+
+        Map<String, Object> informe = new LinkedHashMap<>();
+        informe.put("habilitado", propiedades.isHabilitado());
+        informe.put("particiones", new TreeSet<>(particiones.keySet()));
+        informe.put("usuariosConPais", paisesUsuarios.tamano());
+        informe.put("descartados", (long) descartados.count());
+        informe.put("ventanas", porVentana);
+        return informe;
+    }
+
+    /**
+     * Las {@code ultimas} ventanas de {@code nombre}, de la más reciente (en curso) a la
+     * más antigua; limitadas a las que caben en los cubos conservados.
+     *
+     * @throws IllegalArgumentException si la ventana no existe
+     */
+    public Map<String, Object> informe(String nombre, int ultimas) {
+        Ventana ventana = ventanas.get(nombre);
+        if (ventana == null) {
+            throw new IllegalArgumentException("Ventana desconocida: " + nombre + " (" + ventanas.keySet() + ")");
+        }
+        int cubos = ventana.enHoras() ? propiedades.getHoras() : propiedades.getMinutos();
+        int total = Math.max(1, Math.min(ultimas, ventana.maximoUltimas(cubos)));
+        long ahora = System.currentTimeMillis();
+        long fin = ventana.fin(ahora);
+        List<Map<String, Object>> serie = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            serie.add(resumen(ventana, fin - (long) i * ventana.avance(), ahora));
+        }
+
+        Map<String, Object> informe = new LinkedHashMap<>();
+        informe.put("ventana", nombre);
+        informe.put("tamano", Duration.ofMillis(ventana.tamano() * ventana.duracionCubo()));
+        informe.put("avance", Duration.ofMillis(ventana.avance() * ventana.duracionCubo()));
+        informe.put("serie", serie);
+        return informe;
+    }
+
+    private Map<String, Object> resumen(Ventana ventana, long fin, long ahora) {
+        int dimensiones = estados.maximo() + paises.maximo();
+        int cubetas = histograma.cubetas();
+        long[] registros = new long[dimensiones];
+        long[] sumas = new long[dimensiones];
+        long[] histogramas = new long[dimensiones * cubetas];
+        for (long epoca = fin - ventana.tamano(); epoca < fin; epoca++) {
+            for (Particion particion : particiones.values()) {
+                particion.anillo(ventana.enHoras()).acumular(epoca, registros, sumas, histogramas);
+            }
+        }
+
+        // Cada pedido cuenta en exactamente un estado: el total es la suma de los estados
+        long registrosTotales = 0;
+        long sumaTotal = 0;
+        long[] histogramaTotal = new long[cubetas];
+        for (int d = 0; d < estados.maximo(); d++) {
+            registrosTotales += registros[d];
+            sumaTotal += sumas[d];
+            for (int i = 0; i < cubetas; i++) {
+                histogramaTotal[i] += histogramas[d * cubetas + i];
+            }
+        }
+
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("inicio", Instant.ofEpochMilli((fin - ventana.tamano()) * ventana.duracionCubo()));
+        resumen.put("fin", Instant.ofEpochMilli(fin * ventana.duracionCubo()));
+        resumen.put("enCurso", fin * ventana.duracionCubo() > ahora);
+        resumen.putAll(metricas(registrosTotales, sumaTotal, histogramaTotal, 0));
+        resumen.put("porEstado", porDimension(estados, 0, registros, sumas, histogramas));
+        resumen.put("porPais", porDimension(paises, estados.maximo(), registros, sumas, histogramas));
+        return resumen;
+    }
+
+    private Map<String, Object> porDimension(Diccionario diccionario, int desplazamiento,
+                                             long[] registros, long[] sumas, long[] histogramas) {
+        Map<String, Object> porValor = new LinkedHashMap<>();
+        for (int i = 0; i < diccionario.tamano(); i++) {
+            int d = desplazamiento + i;
+            if (registros[d] > 0) {
+                porValor.put(diccionario.nombre(i), metricas(registros[d], sumas[d], histogramas, d * histograma.cubetas()));
+            }
+        }
+        return porValor;
+    }
+
+    private Map<String, Object> metricas(long registros, long suma, long[] histogramas, int desde) {
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("registros", registros);
+        metricas.put("suma", BigDecimal.valueOf(suma, 2));
+        if (registros > 0) {
+            metricas.put("media", BigDecimal.valueOf(suma, 2).divide(BigDecimal.valueOf(registros), 2, RoundingMode.HALF_UP));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                metricas.put(NOMBRES_PERCENTILES[i],
+                        BigDecimal.valueOf(histograma.percentil(histogramas, desde, registros, PERCENTILES[i]), 2));
+            }
+        }
+        return metricas;
+    }
+
+    private Ventana saltante(String nombre, Saltante saltante) {
+        Duration tamano = saltante.getTamano();
+        Duration avance = saltante.getAvance();
+        if (tamano == null || avance == null || avance.isZero() || avance.isNegative() || tamano.compareTo(avance) < 0) {
+            throw new IllegalStateException("Ventana saltante " + nombre
+                    + ": tamaño y avance positivos, con el avance no mayor que el tamaño");
+        }
+        Ventana ventana = enCubos(nombre, false, tamano, avance, propiedades.getMinutos());
+        if (ventana == null) {
+            ventana = enCubos(nombre, true, tamano, avance, propiedades.getHoras());
+        }
+        if (ventana == null) {
+            throw new IllegalStateException("Ventana saltante " + nombre + ": tamaño y avance deben ser múltiplos de un minuto"
+                    + " con el tamaño hasta " + (propiedades.getMinutos() - 1) + " minutos, o múltiplos de una hora"
+                    + " con el tamaño hasta " + (propiedades.getHoras() - 1) + " horas");
+        }
+        return ventana;
+    }
+
+    private static Ventana enCubos(String nombre, boolean enHoras, Duration tamano, Duration avance, int cubos) {
+        long cubo = enHoras ? HORA : MINUTO;
+        if (tamano.toMillis() % cubo != 0 || avance.toMillis() % cubo != 0 || tamano.toMillis() / cubo > cubos - 1) {
+            return null;
+        }
+        return new Ventana(nombre, enHoras, (int) (tamano.toMillis() / cubo), (int) (avance.toMillis() / cubo));
+    }
+
+    /**
+     * El anillo admite las {@code cubos} épocas que terminan en la siguiente a la actual,
+     * por si el reloj del productor va algo adelantado; las consultas no miran la más
+     * antigua, que es la primera en reutilizarse.
+     */
+    static boolean aceptable(long epoca, long actual, int cubos) {
+        return epoca <= actual + 1 && epoca >= actual - cubos + 2;
+    }
+
+    /**
+     * Ventana de {@code tamano} cubos que empieza cada {@code avance} cubos; las fijas
+     * tienen tamaño y avance 1. Las ventanas se alinean con múltiplos del avance.
+     */
+    record Ventana(String nombre, boolean enHoras, int tamano, int avance) {
+
+        long duracionCubo() {
+            return enHoras ? HORA : MINUTO;
+        }
+
+        /** Fin (exclusivo, en cubos) de la ventana en curso. */
+        long fin(long ahora) {
+            long actual = Math.floorDiv(ahora, duracionCubo());
+            return Math.floorDiv(actual, avance) * avance + avance;
+        }
+
+        /** Ventanas consultables sin tocar la época más antigua del anillo. */
+        int maximoUltimas(int cubos) {
+            return (cubos - 1 - tamano) / avance + 1;
+        }
+    }
+
+    private final class Particion {
+
+        private final AnilloCubos minutos = new AnilloCubos(propiedades.getMinutos(),
+                estados.maximo() + paises.maximo(), histograma.cubetas());
+
+        private final AnilloCubos horas = new AnilloCubos(propiedades.getHoras(),
+                estados.maximo() + paises.maximo(), histograma.cubetas());
+
+        AnilloCubos anillo(boolean enHoras) {
+            return enHoras ? horas : minutos;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.kafka.estadisticas;
+
+/**
+ * Cubetas logarítmicas de montos en céntimos: la cubeta {@code i} cubre
+ * {@code (γ^(i-1), γ^i]} con {@code γ = (1 + e) / (1 - e)}, así que tomar
+ * {@code 2γ^i / (γ + 1)} como valor de la cubeta acota el error relativo de un
+ * percentil por {@code e}. Los histogramas se suman cubeta a cubeta, de modo que los
+ * de varias particiones y cubos de tiempo se combinan sin perder precisión.
+ */
+final class HistogramaMontos {
+
+    private final double gamma;
+    private final double logGamma;
+    private final int cubetas;
+
+    HistogramaMontos(double errorRelativo, double montoMaximo) {
+        if (errorRelativo <= 0 || errorRelativo >= 1) {
+            throw new IllegalArgumentException("El error relativo debe estar entre 0 y 1: " + errorRelativo);
+        }
+        this.gamma = (1 + errorRelativo) / (1 - errorRelativo);
+        this.logGamma = Math.log(gamma);
+        this.cubetas = (int) Math.ceil(Math.log(Math.max(montoMaximo * 100, 2)) / logGamma) + 1;
+    }
+
+    int cubetas() {
+        return cubetas;
+    }
+
+    int cubeta(long centimos) {
+        if (centimos <= 1) {
+            return 0;
+        }
+        return (int) Math.min(cubetas - 1, Math.ceil(Math.log(centimos) / logGamma));
+    }
+
+    /**
+     * Percentil {@code q} (0-1), en céntimos, de las cuentas {@code [desde, desde + cubetas)}.
+     */
+    long percentil(long[] cuentas, int desde, long total, double q) {
+        long rango = Math.max(1, (long) Math.ceil(q * total));
+        long acumulado = 0;
+        for (int i = 0; i < cubetas; i++) {
+            acumulado += cuentas[desde + i];
+            if (acumulado >= rango) {
+                return valor(i);
+            }
+        }
+        return valor(cubetas - 1);
+    }
+
+    private long valor(int cubeta) {
+        return cubeta == 0 ? 1 : Math.round(2 * Math.pow(gamma, cubeta) / (gamma + 1));
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.kafka.estadisticas;
+
+import com.example.kafka.config.EstadisticasProperties;
+import com.example.kafka.model.Usuario;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lee usuarios-topic completo (todas sus particiones, desde el principio) para que
+ * {@link EstadisticasPedidos} conozca el país de cualquier usuario, aunque sus
+ * particiones de usuarios estén asignadas a otra instancia del grupo.
+ * <p>
+ * Usa un consumidor propio sin grupo y con asignación manual, como una tabla global:
+ * no confirma offsets y en cada arranque vuelve a leer el topic. Las particiones que
+ * se añadan al topic se asignan en la siguiente revisión.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LectorUsuarios {
+
+    private static final Duration POLL = Duration.ofSeconds(1);
+    private static final long ESPERA_REINTENTO_MS = 5_000;
+    private static final long REVISION_PARTICIONES_MS = 60_000;
+
+    private final ConsumerFactory<String, Object> consumerFactory;
+    private final EstadisticasPedidos estadisticas;
+    private final EstadisticasProperties propiedades;
+
+    @Value("${kafka.topics.usuarios}")
+    private String topic;
+
+    private volatile boolean activo;
+    private volatile Consumer<String, Object> consumer;
+    private Thread hilo;
+
+    @PostConstruct
+    void iniciar() {
+        if (!propiedades.isHabilitado()) {
+            return;
+        }
+        activo = true;
+        hilo = new Thread(this::leer, "estadisticas-usuarios");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    @PreDestroy
+    void detener() throws InterruptedException {
+        activo = false;
+        Consumer<String, Object> actual = consumer;
+        if (actual != null) {
+            actual.wakeup();
+        }
+        if (hilo != null) {
+            hilo.join(POLL.toMillis() * 5);
+        }
+    }
+
+    private void leer() {
+        while (activo) {
+            try (Consumer<String, Object> actual = consumerFactory.createConsumer(null, "estadisticas-usuarios")) {
+                consumer = actual;
+                Set<TopicPartition> asignadas = new HashSet<>();
+                long revision = 0;
+                while (activo) {
+                    long ahora = System.currentTimeMillis();
+                    if (ahora - revision >= REVISION_PARTICIONES_MS) {
+                        asignar(actual, asignadas);
+                        revision = ahora;
+                    }
+                    for (ConsumerRecord<String, Object> record : actual.poll(POLL)) {
+                        // Los ilegibles llegan sin valor y los tombstones no tienen país
+                        if (record.value() instanceof Usuario usuario) {
+                            estadisticas.registrarUsuario(usuario);
+                        }
+                    }
+                }
+            } catch (WakeupException e) {
+                // detener()
+            } catch (RuntimeException e) {
+                log.warn("Error leyendo {} para las estadísticas, se reintenta en {} ms", topic, ESPERA_REINTENTO_MS, e);
+                esperar();
+            } finally {
+                consumer = null;
+            }
+        }
+    }
+
+    /**
+     * Asigna las particiones del topic que aún no lo estaban, leyéndolas desde el
+     * principio; las ya asignadas conservan su posición.
+     */
+    private void asignar(Consumer<String, Object> actual, Set<TopicPartition> asignadas) {
+        List<TopicPartition> nuevas = new ArrayList<>();
+        actual.partitionsFor(topic).forEach(info -> {
+            TopicPartition tp = new TopicPartition(topic, info.partition());
+            if (!asignadas.contains(tp)) {
+                nuevas.add(tp);
+            }
+        });
+        if (nuevas.isEmpty()) {
+            return;
+        }
+        asignadas.addAll(nuevas);
+        actual.assign(asignadas);
+        actual.seekToBeginning(nuevas);
+        log.info("Estadísticas: leyendo {} particiones de {} desde el principio", asignadas.size(), topic);
+    }
+
+    private void esperar() {
+        try {
+            Thread.sleep(ESPERA_REINTENTO_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            activo = false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.kafka.estadisticas;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Índice del país de cada usuario en una tabla de direccionamiento abierto sobre arrays
+ * primitivos: 9 bytes por hueco y el doble de huecos que usuarios. Las altas ocupan el
+ * hueco con un CAS sobre el id, así que el hilo de usuarios escribe mientras los hilos
+ * de pedidos leen sin bloqueos. Llena la tabla, los usuarios nuevos no se recuerdan.
+ */
+final class PaisesUsuarios {
+
+    private static final VarHandle CLAVES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle PAISES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private static final long VACIA = Long.MIN_VALUE;
+
+    private final long[] claves;
+    private final byte[] paises;
+    private final int mascara;
+    private final int maximo;
+    private final AtomicInteger ocupadas = new AtomicInteger();
+
+    PaisesUsuarios(int maximo) {
+        int capacidad = Integer.highestOneBit(Math.max(1, maximo * 2 - 1)) << 1;
+        this.claves = new long[capacidad];
+        this.paises = new byte[capacidad];
+        this.mascara = capacidad - 1;
+        this.maximo = maximo;
+        Arrays.fill(claves, VACIA);
+    }
+
+    void registrar(long usuarioId, int pais) {
+        if (usuarioId == VACIA) {
+            return;
+        }
+        int hueco = posicion(usuarioId);
+        while (true) {
+            long clave = (long) CLAVES.getAcquire(claves, hueco);
+            if (clave == usuarioId) {
+                PAISES.setRelease(paises, hueco, (byte) pais);
+                return;
+            }
+            if (clave == VACIA) {
+                if (ocupadas.get() >= maximo) {
+                    return;
+                }
+                // Sin CAS otro hilo podría ocupar el hueco a la vez con otro usuario
+                if (CLAVES.compareAndSet(claves, hueco, VACIA, usuarioId)) {
+                    PAISES.setRelease(paises, hueco, (byte) pais);
+                    ocupadas.incrementAndGet();
+                    return;
+                }
+                continue;
+            }
+            hueco = (hueco + 1) & mascara;
+        }
+    }
+
+    /**
+     * Índice del país del usuario, {@link Diccionario#DESCONOCIDO} si no se conoce.
+     */
+    int pais(long usuarioId) {
+        int hueco = posicion(usuarioId);
+        while (true) {
+            long clave = (long) CLAVES.getAcquire(claves, hueco);
+            if (clave == usuarioId) {
+                return (byte) PAISES.getAcquire(paises, hueco);
+            }
+            if (clave == VACIA) {
+                return Diccionario.DESCONOCIDO;
+            }
+            hueco = (hueco + 1) & mascara;
+        }
+    }
+
+    int tamano() {
+        return ocupadas.get();
+    }
+
+    private int posicion(long usuarioId) {
+        // Ids consecutivos repartidos por toda la tabla
+        return (int) ((usuarioId * 0x9E3779B97F4A7C15L) >>> 32) & mascara;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.kafka.generador;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Parámetros de una ejecución del generador de carga.
+ */
+@Data
+@NoArgsConstructor
+public class ConfiguracionCarga {
+
+    /** Mensajes por segundo a enviar (usuarios + pedidos). */
+    private int tasaObjetivo = 1000;
+
+    private int duracionSegundos = 60;
+
+    /** Número de keys distintas por topic. */
+    private int cardinalidadKeys = 10_000;
+
+    /** Fracción de los mensajes que son pedidos; el resto son usuarios. */
+    private double proporcionPedidos = 0.8;
+
+    /** Rango de longitud del nombre de los usuarios, para variar el tamaño del payload. */
+    private int longitudNombreMin = 10;
+    private int longitudNombreMax = 40;
+
+    /** Envíos sin confirmar a partir de los cuales el generador espera. */
+    private int maxEnVuelo = 10_000;
+}
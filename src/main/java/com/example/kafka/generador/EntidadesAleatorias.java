@@ -0,0 +1,87 @@
+package com.example.kafka.generador;
+
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Construcción de usuarios y pedidos de prueba con datos aleatorios.
+ */
+public final class EntidadesAleatorias {
+
+    private static final List<String> NOMBRES = List.of(
+            "Juan", "María", "Pedro", "Ana", "Carlos", "Laura", "Diego", "Sofia",
+            "Miguel", "Carmen", "Luis", "Patricia", "Jorge", "Isabel", "Roberto"
+    );
+
+    private static final List<String> APELLIDOS = List.of(
+            "García", "Rodríguez", "Martínez", "López", "González", "Pérez", "Sánchez",
+            "Ramírez", "Torres", "Flores", "Rivera", "Gómez", "Díaz", "Cruz"
+    );
+
+    private static final List<String> PAISES = List.of(
+            "Chile", "Argentina", "México", "Colombia", "Perú", "España", "Uruguay", "Venezuela"
+    );
+
+    private static final List<String> ESTADOS_PEDIDO = List.of(
+            "PENDIENTE", "PROCESANDO", "ENVIADO", "ENTREGADO", "CANCELADO"
+    );
+
+    private EntidadesAleatorias() {
+    }
+
+    public static Usuario usuario(long id) {
+        return usuario(id, 0);
+    }
+
+    /**
+     * Usuario cuyo nombre se alarga con apellidos adicionales hasta al menos
+     * {@code longitudNombre} caracteres, para controlar el tamaño del payload.
+     */
+    public static Usuario usuario(long id, int longitudNombre) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        String nombre = NOMBRES.get(random.nextInt(NOMBRES.size()));
+        String apellido = APELLIDOS.get(random.nextInt(APELLIDOS.size()));
+
+        StringBuilder nombreCompleto = new StringBuilder(Math.max(32, longitudNombre + 16))
+                .append(nombre).append(' ').append(apellido);
+        while (nombreCompleto.length() < longitudNombre) {
+            nombreCompleto.append(' ').append(APELLIDOS.get(random.nextInt(APELLIDOS.size())));
+        }
+
+        String email = new StringBuilder(48)
+                .append(nombre.toLowerCase()).append('.')
+                .append(apellido.toLowerCase())
+                .append(random.nextInt(1000))
+                .append("@example.com")
+                .toString();
+
+        return Usuario.builder()
+                .id(id)
+                .nombre(nombreCompleto.toString())
+                .email(email)
+                .pais(PAISES.get(random.nextInt(PAISES.size())))
+                .fechaCreacion(LocalDateTime.now())
+                .build();
+    }
+
+    public static Pedido pedido(long id, Long usuarioId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        // Céntimos enteros: evita pasar por double y redondear
+        BigDecimal monto = BigDecimal.valueOf(random.nextLong(1_000, 500_000), 2);
+
+        return Pedido.builder()
+                .id(id)
+                .usuarioId(usuarioId)
+                .monto(monto)
+                .estado(ESTADOS_PEDIDO.get(random.nextInt(ESTADOS_PEDIDO.size())))
+                .fechaPedido(LocalDateTime.now())
+                .build();
+    }
+}
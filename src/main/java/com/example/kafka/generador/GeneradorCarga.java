@@ -0,0 +1,248 @@
+package com.example.kafka.generador;
+
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import com.example.kafka.producer.PedidoProducer;
+import com.example.kafka.producer.UsuarioProducer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generador de carga sintética en segundo plano: envía usuarios y pedidos a una tasa
+ * objetivo, tomándolos de pools generados antes de arrancar el reloj, y mide la
+ * tasa lograda y la latencia hasta la confirmación del broker.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GeneradorCarga {
+
+    private static final int MAX_POOL = 100_000;
+
+    private final PedidoProducer pedidoProducer;
+    private final UsuarioProducer usuarioProducer;
+
+    private volatile Ejecucion actual;
+
+    public synchronized Map<String, Object> iniciar(ConfiguracionCarga configuracion) {
+        if (configuracion.getTasaObjetivo() < 1 || configuracion.getDuracionSegundos() < 1
+                || configuracion.getCardinalidadKeys() < 1 || configuracion.getMaxEnVuelo() < 1) {
+            throw new IllegalArgumentException(
+                    "tasaObjetivo, duracionSegundos, cardinalidadKeys y maxEnVuelo deben ser mayores que 0");
+        }
+        if (actual != null && actual.activa()) {
+            throw new IllegalStateException("Ya hay una generación de carga en curso");
+        }
+
+        actual = new Ejecucion(configuracion);
+        Thread hilo = new Thread(actual::ejecutar, "generador-carga");
+        hilo.setDaemon(true);
+        hilo.start();
+
+        log.info("Generador de carga iniciado: {} msg/s durante {} s",
+                configuracion.getTasaObjetivo(), configuracion.getDuracionSegundos());
+        return actual.estado();
+    }
+
+    public Map<String, Object> detener() {
+        Ejecucion ejecucion = actual;
+        if (ejecucion == null) {
+            return estado();
+        }
+        ejecucion.detener();
+        return ejecucion.estado();
+    }
+
+    public Map<String, Object> estado() {
+        Ejecucion ejecucion = actual;
+        if (ejecucion == null) {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("estado", Estado.INACTIVO);
+            return response;
+        }
+        return ejecucion.estado();
+    }
+
+    enum Estado {
+        INACTIVO, PREPARANDO, EJECUTANDO, DRENANDO, DETENIDO, COMPLETADO
+    }
+
+    private final class Ejecucion {
+
+        private final ConfiguracionCarga configuracion;
+        private final Semaphore enVuelo;
+        private final Timer latencia;
+
+        private final LongAdder enviados = new LongAdder();
+        private final LongAdder confirmados = new LongAdder();
+        private final LongAdder fallidos = new LongAdder();
+        private final LongAdder esperasPorSaturacion = new LongAdder();
+
+        private volatile Estado estado = Estado.PREPARANDO;
+        private volatile boolean detenida;
+        private volatile long inicioNanos;
+        private volatile long finNanos;
+
+        private Usuario[] usuarios;
+        private Pedido[] pedidos;
+
+        Ejecucion(ConfiguracionCarga configuracion) {
+            this.configuracion = configuracion;
+            this.enVuelo = new Semaphore(configuracion.getMaxEnVuelo());
+            // Registro propio por ejecución: los percentiles no mezclan ejecuciones anteriores
+            this.latencia = Timer.builder("generador.latencia")
+                    .publishPercentiles(0.5, 0.95, 0.99, 0.999)
+                    .distributionStatisticExpiry(Duration.ofDays(1))
+                    .distributionStatisticBufferLength(1)
+                    .register(new SimpleMeterRegistry());
+        }
+
+        boolean activa() {
+            return estado == Estado.PREPARANDO || estado == Estado.EJECUTANDO || estado == Estado.DRENANDO;
+        }
+
+        void detener() {
+            detenida = true;
+        }
+
+        void ejecutar() {
+            try {
+                prepararPools();
+                estado = Estado.EJECUTANDO;
+                enviar();
+                estado = Estado.DRENANDO;
+                // Esperar las confirmaciones pendientes antes de dar la ejecución por cerrada
+                enVuelo.acquire(configuracion.getMaxEnVuelo());
+                enVuelo.release(configuracion.getMaxEnVuelo());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error en el generador de carga", e);
+            } finally {
+                finNanos = System.nanoTime();
+                estado = detenida ? Estado.DETENIDO : Estado.COMPLETADO;
+                log.info("Generador de carga finalizado: {}", estado());
+            }
+        }
+
+        private void prepararPools() {
+            int tamano = Math.min(configuracion.getCardinalidadKeys(), MAX_POOL);
+            int min = Math.max(0, configuracion.getLongitudNombreMin());
+            int max = Math.max(min, configuracion.getLongitudNombreMax());
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            usuarios = new Usuario[tamano];
+            pedidos = new Pedido[tamano];
+            for (int i = 0; i < tamano; i++) {
+                usuarios[i] = EntidadesAleatorias.usuario(i + 1L, random.nextInt(min, max + 1));
+            }
+            for (int i = 0; i < tamano; i++) {
+                pedidos[i] = EntidadesAleatorias.pedido(1000L + i, usuarios[random.nextInt(tamano)].getId());
+            }
+        }
+
+        private void enviar() throws InterruptedException {
+            long tasa = configuracion.getTasaObjetivo();
+            long duracion = TimeUnit.SECONDS.toNanos(configuracion.getDuracionSegundos());
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            inicioNanos = System.nanoTime();
+            long enviadosLocal = 0;
+
+            while (!detenida) {
+                long transcurrido = System.nanoTime() - inicioNanos;
+                if (transcurrido >= duracion) {
+                    break;
+                }
+
+                long debidos = (long) (transcurrido / 1e9 * tasa) - enviadosLocal;
+                if (debidos <= 0) {
+                    LockSupport.parkNanos(Math.min(1_000_000L, 1_000_000_000L / tasa));
+                    continue;
+                }
+
+                for (long i = 0; i < debidos && !detenida; i++) {
+                    if (!enVuelo.tryAcquire()) {
+                        esperasPorSaturacion.increment();
+                        enVuelo.acquire();
+                    }
+                    enviarUno(random);
+                    enviadosLocal++;
+                }
+            }
+        }
+
+        private void enviarUno(ThreadLocalRandom random) {
+            long inicio = System.nanoTime();
+            CompletableFuture<SendResult<String, Object>> future;
+            try {
+                if (random.nextDouble() < configuracion.getProporcionPedidos()) {
+                    future = pedidoProducer.enviarPedido(pedidos[random.nextInt(pedidos.length)]);
+                } else {
+                    future = usuarioProducer.enviarUsuario(usuarios[random.nextInt(usuarios.length)]);
+                }
+            } catch (Exception e) {
+                fallidos.increment();
+                enVuelo.release();
+                return;
+            }
+
+            enviados.increment();
+            future.whenComplete((result, ex) -> {
+                if (ex == null) {
+                    confirmados.increment();
+                    latencia.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                } else {
+                    fallidos.increment();
+                }
+                enVuelo.release();
+            });
+        }
+
+        Map<String, Object> estado() {
+            long inicio = inicioNanos;
+            long fin = activa() ? System.nanoTime() : finNanos;
+            double segundos = inicio == 0 ? 0 : (fin - inicio) / 1e9;
+
+            Map<String, Object> latencias = new LinkedHashMap<>();
+            HistogramSnapshot snapshot = latencia.takeSnapshot();
+            for (ValueAtPercentile percentil : snapshot.percentileValues()) {
+                String nombre = "p" + BigDecimal.valueOf(percentil.percentile() * 100).stripTrailingZeros().toPlainString();
+                latencias.put(nombre, percentil.value(TimeUnit.MILLISECONDS));
+            }
+            latencias.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("estado", estado);
+            response.put("configuracion", configuracion);
+            response.put("segundosTranscurridos", segundos);
+            response.put("enviados", enviados.sum());
+            response.put("confirmados", confirmados.sum());
+            response.put("fallidos", fallidos.sum());
+            response.put("enVuelo", configuracion.getMaxEnVuelo() - enVuelo.availablePermits());
+            response.put("esperasPorSaturacion", esperasPorSaturacion.sum());
+            response.put("tasaLograda", segundos > 0 ? confirmados.sum() / segundos : 0);
+            response.put("latenciaMs", latencias);
+            response.put("timestamp", LocalDateTime.now());
+            return response;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.kafka.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cola circular acotada de eventos con las ranuras reservadas de antemano: publicar no
+ * reserva memoria ni bloquea, y si el anillo está lleno el evento se descarta. Admite
+ * varios hilos publicando y un único hilo drenando.
+ */
+final class AnilloEventos {
+
+    /**
+     * Ranura reutilizable. {@code secuencia} indica su estado: igual a la posición cuando
+     * está libre para esa vuelta, posición + 1 cuando tiene un evento listo para leer.
+     */
+    static final class Ranura {
+        volatile long secuencia;
+        RegistroEventos.Evento evento;
+        String topic;
+        int particion;
+        long offset;
+        long id;
+    }
+
+    private final Ranura[] ranuras;
+    private final int mascara;
+
+    // Siguiente posición a reservar por los productores
+    private final AtomicLong escritura = new AtomicLong();
+    // Siguiente posición a leer; solo la escribe el hilo que drena
+    private volatile long lectura;
+
+    AnilloEventos(int capacidad) {
+        if (capacidad < 2 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("La capacidad del anillo debe ser potencia de 2: " + capacidad);
+        }
+        ranuras = new Ranura[capacidad];
+        for (int i = 0; i < capacidad; i++) {
+            ranuras[i] = new Ranura();
+            ranuras[i].secuencia = i;
+        }
+        mascara = capacidad - 1;
+    }
+
+    /**
+     * Copia el evento en la siguiente ranura libre; devuelve false si el anillo está lleno.
+     */
+    boolean publicar(RegistroEventos.Evento evento, String topic, int particion, long offset, long id) {
+        while (true) {
+            long posicion = escritura.get();
+            Ranura ranura = ranuras[(int) (posicion & mascara)];
+            long secuencia = ranura.secuencia;
+            if (secuencia < posicion) {
+                // La ranura aún tiene el evento de la vuelta anterior
+                return false;
+            }
+            if (secuencia == posicion && escritura.compareAndSet(posicion, posicion + 1)) {
+                ranura.evento = evento;
+                ranura.topic = topic;
+                ranura.particion = particion;
+                ranura.offset = offset;
+                ranura.id = id;
+                // Escritura volátil: publica los campos anteriores al hilo que drena
+                ranura.secuencia = posicion + 1;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Entrega hasta {@code maximo} eventos en orden de publicación y libera sus ranuras.
+     */
+    int drenar(Consumer<Ranura> accion, int maximo) {
+        int drenados = 0;
+        while (drenados < maximo) {
+            Ranura ranura = ranuras[(int) (lectura & mascara)];
+            if (ranura.secuencia != lectura + 1) {
+                break;
+            }
+            accion.accept(ranura);
+            ranura.topic = null;
+            ranura.secuencia = lectura + ranuras.length;
+            lectura++;
+            drenados++;
+        }
+        return drenados;
+    }
+
+    int pendientes() {
+        return (int) Math.max(0, escritura.get() - lectura);
+    }
+
+    int capacidad() {
+        return ranuras.length;
+    }
+}
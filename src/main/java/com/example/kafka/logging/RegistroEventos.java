@@ -0,0 +1,249 @@
+package com.example.kafka.logging;
+
+import com.example.kafka.config.RegistroEventosProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro de los eventos por registro (envío, confirmación, consumo...) fuera del hilo
+ * que los produce. En el camino caliente no se formatea ni se reserva memoria: el evento
+ * se cuenta por topic y partición y, si el modo lo pide, se copia en un anillo
+ * preasignado que un hilo propio escribe en el logger {@code com.example.kafka.eventos}
+ * como pares clave=valor. Con el anillo lleno el evento se descarta en lugar de bloquear.
+ * <p>
+ * En los modos muestreo y resumen, cada {@code intervalo-resumen} se escribe una línea por
+ * topic y tipo de evento con los registros de cada partición en el intervalo.
+ */
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(RegistroEventosProperties.class)
+public class RegistroEventos {
+
+    private static final Logger log = LoggerFactory.getLogger("com.example.kafka.eventos");
+
+    private static final int MAX_DRENAJE = 1024;
+
+    // Particiones contadas por separado; las demás (y -1, aún sin asignar) van a la última
+    private static final int MAX_PARTICIONES = 256;
+
+    private static final Evento[] EVENTOS = Evento.values();
+
+    public enum Modo {
+        DETALLADO, MUESTREO, RESUMEN
+    }
+
+    public enum Evento {
+        ENVIADO, CONFIRMADO, RECIBIDO, PROCESADO, DUPLICADO, ACEPTADO_API, CONFIRMADO_API
+    }
+
+    private final RegistroEventosProperties propiedades;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, EstadoTopic> topics = new ConcurrentHashMap<>();
+    private final LongAdder descartados = new LongAdder();
+
+    private volatile Modo modo = Modo.MUESTREO;
+    private volatile double tasaPorDefecto;
+
+    private AnilloEventos anillo;
+    private Thread escritor;
+    private volatile boolean detenido;
+
+    @PostConstruct
+    void iniciar() {
+        anillo = new AnilloEventos(propiedades.getCapacidadAnillo());
+        tasaPorDefecto = propiedades.getTasaMuestreo();
+        propiedades.getTasasPorTopic().forEach((topic, tasa) -> estado(topic).fijarTasa(tasa));
+        modo = Modo.valueOf(propiedades.getModo().toUpperCase(Locale.ROOT));
+
+        Gauge.builder("kafka.app.logging.pendientes", anillo, AnilloEventos::pendientes)
+                .description("Eventos en el anillo pendientes de escribir")
+                .register(meterRegistry);
+        FunctionCounter.builder("kafka.app.logging.descartados", descartados, LongAdder::sum)
+                .description("Eventos descartados con el anillo lleno")
+                .register(meterRegistry);
+
+        escritor = new Thread(this::escribir, "registro-eventos");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    @PreDestroy
+    void detener() throws InterruptedException {
+        detenido = true;
+        if (escritor != null) {
+            escritor.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Registra un evento; {@code particion} y {@code offset} son -1 si aún no se conocen.
+     */
+    public void registrar(Evento evento, String topic, int particion, long offset, Long id) {
+        if (anillo == null || !log.isInfoEnabled()) {
+            return;
+        }
+        Modo actual = modo;
+        EstadoTopic estado = topics.get(topic);
+        if (estado == null) {
+            estado = estado(topic);
+        }
+        if (actual != Modo.DETALLADO) {
+            estado.contar(evento, particion);
+            if (actual == Modo.RESUMEN || !estado.muestrear(tasaPorDefecto)) {
+                return;
+            }
+        }
+        if (!anillo.publicar(evento, topic, particion, offset, id != null ? id : -1)) {
+            descartados.increment();
+        }
+    }
+
+    public Map<String, Object> configuracion() {
+        Map<String, Double> tasas = new TreeMap<>();
+        topics.forEach((topic, estado) -> {
+            if (!Double.isNaN(estado.tasa)) {
+                tasas.put(topic, estado.tasa);
+            }
+        });
+
+        Map<String, Object> configuracion = new LinkedHashMap<>();
+        configuracion.put("modo", modo.name().toLowerCase(Locale.ROOT));
+        configuracion.put("tasaMuestreo", tasaPorDefecto);
+        configuracion.put("tasasPorTopic", tasas);
+        configuracion.put("intervaloResumen", propiedades.getIntervaloResumen().toString());
+        configuracion.put("capacidadAnillo", anillo != null ? anillo.capacidad() : 0);
+        configuracion.put("pendientes", anillo != null ? anillo.pendientes() : 0);
+        configuracion.put("descartados", descartados.sum());
+        return configuracion;
+    }
+
+    public void cambiarModo(Modo nuevo) {
+        log.info("evento=CAMBIO_MODO desde={} hacia={}", modo, nuevo);
+        modo = nuevo;
+    }
+
+    /**
+     * Tasa de muestreo de un topic o, sin topic, la tasa por defecto.
+     */
+    public void cambiarTasa(String topic, double tasa) {
+        if (tasa < 0 || tasa > 1) {
+            throw new IllegalArgumentException("La tasa de muestreo debe estar entre 0 y 1");
+        }
+        if (topic == null) {
+            tasaPorDefecto = tasa;
+        } else {
+            estado(topic).fijarTasa(tasa);
+        }
+    }
+
+    private EstadoTopic estado(String topic) {
+        return topics.computeIfAbsent(topic, t -> new EstadoTopic());
+    }
+
+    private void escribir() {
+        StringBuilder linea = new StringBuilder(160);
+        long intervalo = propiedades.getIntervaloResumen().toNanos();
+        long siguienteResumen = System.nanoTime() + intervalo;
+
+        while (!detenido || anillo.pendientes() > 0) {
+            int drenados = anillo.drenar(ranura -> {
+                linea.setLength(0);
+                linea.append("evento=").append(ranura.evento.name())
+                        .append(" topic=").append(ranura.topic);
+                if (ranura.particion >= 0) {
+                    linea.append(" particion=").append(ranura.particion);
+                }
+                if (ranura.offset >= 0) {
+                    linea.append(" offset=").append(ranura.offset);
+                }
+                if (ranura.id >= 0) {
+                    linea.append(" id=").append(ranura.id);
+                }
+                log.info(linea.toString());
+            }, MAX_DRENAJE);
+
+            if (System.nanoTime() - siguienteResumen >= 0) {
+                resumir(linea, intervalo);
+                siguienteResumen += intervalo;
+            }
+            if (drenados == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private void resumir(StringBuilder linea, long intervalo) {
+        long segundos = TimeUnit.NANOSECONDS.toSeconds(intervalo);
+        topics.forEach((topic, estado) -> {
+            for (Evento evento : EVENTOS) {
+                linea.setLength(0);
+                long total = 0;
+                for (int particion = 0; particion < MAX_PARTICIONES; particion++) {
+                    long contados = estado.contadores.getAndSet(evento.ordinal() * MAX_PARTICIONES + particion, 0);
+                    if (contados > 0) {
+                        linea.append(total == 0 ? "" : ",")
+                                .append(particion == MAX_PARTICIONES - 1 ? "otras" : particion)
+                                .append(':').append(contados);
+                        total += contados;
+                    }
+                }
+                if (total > 0) {
+                    log.info("evento=RESUMEN tipo={} topic={} intervalo={}s total={} particiones={}",
+                            evento, topic, segundos, total, linea);
+                }
+            }
+        });
+    }
+
+    private static final class EstadoTopic {
+
+        // Eventos por tipo y partición desde el último resumen
+        final AtomicLongArray contadores = new AtomicLongArray(EVENTOS.length * MAX_PARTICIONES);
+        final AtomicLong vistos = new AtomicLong();
+
+        // NaN: se usa la tasa por defecto
+        volatile double tasa = Double.NaN;
+
+        void contar(Evento evento, int particion) {
+            int indice = particion >= 0 && particion < MAX_PARTICIONES - 1 ? particion : MAX_PARTICIONES - 1;
+            contadores.incrementAndGet(evento.ordinal() * MAX_PARTICIONES + indice);
+        }
+
+        void fijarTasa(double tasa) {
+            this.tasa = tasa;
+        }
+
+        /**
+         * Uno de cada 1/tasa eventos, de forma determinista.
+         */
+        boolean muestrear(double tasaPorDefecto) {
+            double efectiva = Double.isNaN(tasa) ? tasaPorDefecto : tasa;
+            if (efectiva <= 0) {
+                return false;
+            }
+            long cada = Math.max(1, Math.round(1 / efectiva));
+            return vistos.incrementAndGet() % cada == 0;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.kafka.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas propias de productores y listeners, etiquetadas por topic y listener.
+ * Las métricas de los clientes Kafka (lag por partición, reintentos del productor,
+ * record-queue-time, etc.) se registran aparte con MicrometerProducerListener y
+ * MicrometerConsumerListener.
+ */
+@Component
+@RequiredArgsConstructor
+public class KafkaMetricas {
+
+    private final MeterRegistry registry;
+
+    // Los meters se cachean para no construir tags en cada registro; los de dos tags, por
+    // topic y después por el otro tag, para no componer una clave en cada llamada
+    private final Map<String, Map<String, Timer>> envios = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Timer>> consumos = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, DistributionSummary>> lotes = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Counter>> errores = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Counter>> reintentos = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Counter>> duplicados = new ConcurrentHashMap<>();
+    private final Map<String, Counter> ilegibles = new ConcurrentHashMap<>();
+    private final Map<String, Counter> notificaciones = new ConcurrentHashMap<>();
+    private final Map<String, Timer> transacciones = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Counter>> rechazos = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> tamanosTransaccion = new ConcurrentHashMap<>();
+    private final Map<String, Counter> dlt = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Counter>> reprocesosDlt = new ConcurrentHashMap<>();
+
+    /**
+     * Latencia desde kafkaTemplate.send hasta el callback de confirmación.
+     */
+    public void registrarEnvio(String topic, long inicioNanos, Throwable ex) {
+        String resultado = ex == null ? "ok" : "error";
+        meter(envios, topic, resultado, (r, t, c) -> Timer.builder("kafka.app.envio.latencia")
+                        .description("Latencia de envío hasta la confirmación del broker")
+                        .tag("topic", t)
+                        .tag("resultado", c)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofMinutes(2))
+                        .register(r))
+                .record(System.nanoTime() - inicioNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Latencia de extremo a extremo: desde el timestamp del registro hasta su consumo.
+     */
+    public void registrarConsumo(String listenerId, String topic, long timestampRegistro) {
+        long latencia = Math.max(0, System.currentTimeMillis() - timestampRegistro);
+        meter(consumos, topic, listenerId, (r, t, c) -> Timer.builder("kafka.app.consumo.latencia")
+                        .description("Latencia desde la producción del registro hasta su consumo")
+                        .tag("topic", t)
+                        .tag("listener", c)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofHours(1))
+                        .register(r))
+                .record(latencia, TimeUnit.MILLISECONDS);
+    }
+
+    public void registrarConsumo(String listenerId, ConsumerRecord<?, ?> record) {
+        registrarConsumo(listenerId, record.topic(), record.timestamp());
+    }
+
+    public void registrarLote(String listenerId, String topic, int tamano) {
+        meter(lotes, topic, listenerId, (r, t, c) -> DistributionSummary.builder("kafka.app.lote.tamano")
+                        .description("Registros entregados por invocación de un listener batch")
+                        .tag("topic", t)
+                        .tag("listener", c)
+                        .publishPercentileHistogram()
+                        .register(r))
+                .record(tamano);
+    }
+
+    public void registrarError(String listenerId, String topic) {
+        meter(errores, topic, listenerId, (r, t, c) -> Counter.builder("kafka.app.consumo.errores")
+                        .description("Registros cuyo procesamiento falló")
+                        .tag("topic", t)
+                        .tag("listener", c)
+                        .register(r))
+                .increment();
+    }
+
+    public void registrarReintento(String listenerId, String topic) {
+        meter(reintentos, topic, listenerId, (r, t, c) -> Counter.builder("kafka.app.consumo.reintentos")
+                        .description("Registros que se volverán a entregar tras un fallo")
+                        .tag("topic", t)
+                        .tag("listener", c)
+                        .register(r))
+                .increment();
+    }
+
+    public void registrarDuplicado(String listenerId, String topic) {
+        meter(duplicados, topic, listenerId, (r, t, c) -> Counter.builder("kafka.app.dedup.duplicados")
+                        .description("Registros ya procesados descartados antes de la lógica de negocio")
+                        .tag("topic", t)
+                        .tag("listener", c)
+                        .register(r))
+                .increment();
+    }
+
+    /**
+     * Registro cuyo valor no se pudo deserializar, descartado antes del listener.
+     */
+    public void registrarIlegible(String topic) {
+        ilegibles.computeIfAbsent(topic, k -> Counter.builder("kafka.app.consumo.ilegibles")
+                        .description("Registros descartados porque su valor no se pudo deserializar")
+                        .tag("topic", topic)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * Notificación emitida por la unión de pedidos con usuarios; {@code enriquecida} es
+     * false cuando el usuario no llegó dentro de la ventana de espera.
+     */
+    public void registrarNotificacion(boolean enriquecida) {
+        String resultado = enriquecida ? "enriquecida" : "sin_usuario";
+        notificaciones.computeIfAbsent(resultado, k -> Counter.builder("kafka.app.union.notificaciones")
+                        .description("Notificaciones de pedido emitidas por la unión con usuarios")
+                        .tag("resultado", resultado)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * Transacción del productor transaccional: duración hasta el commit (o abort) y
+     * pares pedido-usuario que agrupó.
+     */
+    public void registrarTransaccion(int pares, long inicioNanos, Throwable ex) {
+        String resultado = ex == null ? "ok" : "error";
+        transacciones.computeIfAbsent(resultado, k -> Timer.builder("kafka.app.transaccion.latencia")
+                        .description("Duración de la transacción hasta el commit")
+                        .tag("resultado", resultado)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofMinutes(1))
+                        .register(registry))
+                .record(System.nanoTime() - inicioNanos, TimeUnit.NANOSECONDS);
+        tamanosTransaccion.computeIfAbsent(resultado, k -> DistributionSummary.builder("kafka.app.transaccion.tamano")
+                        .description("Pares pedido-usuario por transacción")
+                        .tag("resultado", resultado)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(pares);
+    }
+
+    /**
+     * Envío de la API rechazado por la pasarela antes de llegar al productor.
+     */
+    public void registrarRechazo(String topic, String motivo) {
+        meter(rechazos, topic, motivo, (r, t, c) -> Counter.builder("kafka.app.pasarela.rechazos")
+                        .description("Envíos rechazados por la pasarela sin bloquear")
+                        .tag("topic", t)
+                        .tag("motivo", c)
+                        .register(r))
+                .increment();
+    }
+
+    /**
+     * Registro que agotó los reintentos y llegó al dead letter topic.
+     */
+    public void registrarDlt(String topic) {
+        dlt.computeIfAbsent(topic, k -> Counter.builder("kafka.app.dlt.recibidos")
+                        .description("Registros llegados al dead letter topic tras agotar los reintentos")
+                        .tag("topic", topic)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * Registro del dead letter topic reenviado para reprocesarse.
+     */
+    public void registrarReprocesoDlt(String topic, boolean ok) {
+        String resultado = ok ? "ok" : "error";
+        meter(reprocesosDlt, topic, resultado, (r, t, c) -> Counter.builder("kafka.app.dlt.reprocesados")
+                        .description("Registros del dead letter topic reenviados a reintento")
+                        .tag("topic", t)
+                        .tag("resultado", c)
+                        .register(r))
+                .increment();
+    }
+
+    /**
+     * Meter de {@code topic} y {@code clave}, creado con {@code fabrica} la primera vez.
+     */
+    private <M> M meter(Map<String, Map<String, M>> cache, String topic, String clave, Fabrica<M> fabrica) {
+        Map<String, M> porClave = cache.get(topic);
+        if (porClave == null) {
+            porClave = cache.computeIfAbsent(topic, k -> new ConcurrentHashMap<>());
+        }
+        M meter = porClave.get(clave);
+        if (meter == null) {
+            meter = porClave.computeIfAbsent(clave, k -> fabrica.crear(registry, topic, clave));
+        }
+        return meter;
+    }
+
+    /**
+     * Sin capturas, la lambda es la misma instancia en cada llamada.
+     */
+    @FunctionalInterface
+    private interface Fabrica<M> {
+        M crear(MeterRegistry registry, String topic, String clave);
+    }
+}
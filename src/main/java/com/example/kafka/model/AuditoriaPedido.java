@@ -0,0 +1,25 @@
+package com.example.kafka.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuditoriaPedido {
+    private Long pedidoId;
+    private Long usuarioId;
+    private BigDecimal monto;
+    private String estado;
+    // CREADO, ACTUALIZADO o ELIMINADO (tombstone)
+    private String operacion;
+    private Integer particion;
+    private Long offset;
+    private LocalDateTime fechaEvento;
+}
@@ -0,0 +1,20 @@
+package com.example.kafka.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CambioEstadoPedido {
+    private Long pedidoId;
+    private Long usuarioId;
+    private String estadoAnterior;
+    private String estadoNuevo;
+    private LocalDateTime fechaCambio;
+}
@@ -0,0 +1,26 @@
+package com.example.kafka.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificacionPedido {
+    private Long pedidoId;
+    private Long usuarioId;
+    private String nombre;
+    private String email;
+    private String pais;
+    private BigDecimal monto;
+    private String estado;
+    private LocalDateTime fechaPedido;
+    // false si el usuario no llegó dentro de la ventana de espera
+    private boolean enriquecida;
+}
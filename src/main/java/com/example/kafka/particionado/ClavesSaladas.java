@@ -0,0 +1,50 @@
+package com.example.kafka.particionado;
+
+/**
+ * Keys con sufijo de sal: {@code <key>~<sal>}. El productor sala las keys calientes de
+ * los topics configurados para repartirlas entre particiones; los consumidores recuperan
+ * la key original con {@link #original}. El separador queda reservado en las keys.
+ */
+public final class ClavesSaladas {
+
+    static final char SEPARADOR = '~';
+
+    private ClavesSaladas() {
+    }
+
+    public static String salar(String key, int sal) {
+        return key + SEPARADOR + sal;
+    }
+
+    /**
+     * Key sin el sufijo de sal; las keys sin sal se devuelven tal cual.
+     */
+    public static String original(String key) {
+        int separador = posicionSeparador(key);
+        return separador < 0 ? key : key.substring(0, separador);
+    }
+
+    /**
+     * Sal de la key, o -1 si no la lleva.
+     */
+    public static int sal(String key) {
+        int separador = posicionSeparador(key);
+        return separador < 0 ? -1 : Integer.parseInt(key, separador + 1, key.length(), 10);
+    }
+
+    private static int posicionSeparador(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int separador = key.lastIndexOf(SEPARADOR);
+        if (separador <= 0 || separador == key.length() - 1 || key.length() - separador > 4) {
+            return -1;
+        }
+        for (int i = separador + 1; i < key.length(); i++) {
+            if (!Character.isDigit(key.charAt(i))) {
+                return -1;
+            }
+        }
+        return separador;
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.kafka.particionado;
+
+import com.example.kafka.config.ClavesCalientesProperties;
+import com.example.kafka.particionado.EsbozoFrecuencias.Frecuencia;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sigue, por topic, las keys más frecuentes de los envíos recientes y los registros
+ * enviados a cada partición. El particionador le notifica cada envío; los productores
+ * le piden la key con la que enviar: en los topics configurados, una key caliente sale
+ * con una sal aleatoria para repartirse entre {@code abanico} particiones.
+ * <p>
+ * Repartir una key renuncia a su orden entre particiones y a su co-particionado con
+ * otros topics; los consumidores recuperan la key original con
+ * {@link ClavesSaladas#original}. No se admite en topics compactados, donde cada sal es
+ * una key distinta que la compactación conserva (y un tombstone solo borra la suya), ni
+ * en pedidos-topic, cuyas versiones de un pedido tienen que llegar a la misma partición
+ * para el almacén local y la auditoría.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(ClavesCalientesProperties.class)
+public class DetectorClavesCalientes {
+
+    /** Entrada de la configuración del productor con la que el particionador recibe el detector. */
+    public static final String CONFIG_DETECTOR = "app.claves-calientes.detector";
+
+    private static final int MAX_CLAVES_INFORME = 10;
+
+    private final ClavesCalientesProperties propiedades;
+
+    private final MeterRegistry meterRegistry;
+
+    private final List<NewTopic> topicsDeclarados;
+
+    @Value("${kafka.topics.usuarios}")
+    private String usuariosTopic;
+
+    @Value("${kafka.topics.pedidos}")
+    private String pedidosTopic;
+
+    @Value("${kafka.notificaciones.habilitado:true}")
+    private boolean unionHabilitada;
+
+    private final Map<String, EstadoTopic> topics = new ConcurrentHashMap<>();
+
+    private Set<String> repartidos = Set.of();
+
+    @PostConstruct
+    void iniciar() {
+        repartidos = Set.copyOf(propiedades.getTopics());
+        Set<String> rechazados = new TreeSet<>();
+        for (NewTopic topic : topicsDeclarados) {
+            String limpieza = topic.configs() != null ? topic.configs().get(TopicConfig.CLEANUP_POLICY_CONFIG) : null;
+            if (repartidos.contains(topic.name()) && limpieza != null
+                    && limpieza.contains(TopicConfig.CLEANUP_POLICY_COMPACT)) {
+                rechazados.add(topic.name());
+            }
+        }
+        if (repartidos.contains(pedidosTopic)) {
+            // AlmacenPedidos y AuditoriaPedidos guardan el estado de cada pedido por partición
+            rechazados.add(pedidosTopic);
+        }
+        if (!rechazados.isEmpty()) {
+            throw new IllegalStateException("kafka.producer.claves-calientes.topics no admite " + rechazados
+                    + ": son compactados o los leen por partición el almacén o la auditoría de pedidos");
+        }
+        if (!repartidos.isEmpty()) {
+            log.info("Reparto de keys calientes en {}: umbral {} de los envíos y al menos {} registros",
+                    repartidos, propiedades.getUmbral(), propiedades.getMinimoRegistros());
+        }
+        if (unionHabilitada && repartidos.contains(usuariosTopic)) {
+            log.warn("Las keys calientes de {} se reparten: la unión con pedidos no encontrará esos usuarios "
+                    + "en su partición y emitirá sus pedidos sin enriquecer", usuariosTopic);
+        }
+    }
+
+    /**
+     * Key con la que enviar el registro: con sal si el topic reparte sus keys calientes
+     * y esta lo es, la misma key en otro caso.
+     */
+    public String clave(String topic, String key) {
+        if (key == null || !repartidos.contains(topic)) {
+            return key;
+        }
+        EstadoTopic estado = topics.get(topic);
+        if (estado == null) {
+            return key;
+        }
+        int abanico = estado.abanico();
+        if (abanico < 2 || !estado.caliente(key)) {
+            return key;
+        }
+        return ClavesSaladas.salar(key, ThreadLocalRandom.current().nextInt(abanico));
+    }
+
+    /**
+     * Envío de {@code clave} (sin sal) a {@code particion}; lo invoca el particionador.
+     */
+    void registrar(String topic, String clave, int particion, int particiones) {
+        EstadoTopic estado = topics.get(topic);
+        if (estado == null) {
+            estado = topics.computeIfAbsent(topic, this::nuevoEstado);
+        }
+        estado.registrar(clave, particion, particiones).increment();
+    }
+
+    /**
+     * Carga reciente por partición y keys más frecuentes de cada topic observado.
+     */
+    public Map<String, Object> informe() {
+        Map<String, Object> informe = new TreeMap<>();
+        topics.forEach((topic, estado) -> informe.put(topic, estado.informe()));
+        return informe;
+    }
+
+    private EstadoTopic nuevoEstado(String topic) {
+        EstadoTopic estado = new EstadoTopic(topic, repartidos.contains(topic));
+        Gauge.builder("kafka.app.particion.claves.calientes", estado, EstadoTopic::calientes)
+                .description("Keys del topic por encima del umbral de envíos recientes")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        return estado;
+    }
+
+    private final class EstadoTopic {
+
+        private final String topic;
+        private final boolean reparto;
+        private final EsbozoFrecuencias esbozo = new EsbozoFrecuencias(propiedades.getCapacidad());
+        private final long ventana = propiedades.getVentana().toNanos();
+        private long ultimoEnvejecimiento = System.nanoTime();
+        private long[] recientes = new long[0];
+        private Counter[] contadores = new Counter[0];
+
+        EstadoTopic(String topic, boolean reparto) {
+            this.topic = topic;
+            this.reparto = reparto;
+        }
+
+        synchronized Counter registrar(String clave, int particion, int particiones) {
+            if (particiones != recientes.length) {
+                redimensionar(particiones);
+            }
+            long ahora = System.nanoTime();
+            if (ahora - ultimoEnvejecimiento >= ventana) {
+                ultimoEnvejecimiento = ahora;
+                esbozo.envejecer();
+                for (int i = 0; i < recientes.length; i++) {
+                    recientes[i] /= 2;
+                }
+            }
+            esbozo.registrar(clave);
+            recientes[particion]++;
+            return contadores[particion];
+        }
+
+        synchronized boolean caliente(String clave) {
+            return esbozo.minimo(clave) >= umbral();
+        }
+
+        synchronized int abanico() {
+            int abanico = propiedades.getAbanico();
+            return abanico > 0 ? Math.min(abanico, recientes.length) : recientes.length;
+        }
+
+        synchronized int calientes() {
+            long umbral = umbral();
+            return (int) esbozo.mayores(propiedades.getCapacidad()).stream()
+                    .filter(f -> f.cuenta() - f.error() >= umbral)
+                    .count();
+        }
+
+        synchronized Map<String, Object> informe() {
+            long total = 0;
+            long maxima = 0;
+            for (long registros : recientes) {
+                total += registros;
+                maxima = Math.max(maxima, registros);
+            }
+            List<Map<String, Object>> carga = new ArrayList<>(recientes.length);
+            for (int i = 0; i < recientes.length; i++) {
+                Map<String, Object> particion = new LinkedHashMap<>();
+                particion.put("particion", i);
+                particion.put("registrosRecientes", recientes[i]);
+                particion.put("fraccion", total > 0 ? (double) recientes[i] / total : 0.0);
+                particion.put("registrosTotales", (long) contadores[i].count());
+                carga.add(particion);
+            }
+
+            long umbral = umbral();
+            List<Map<String, Object>> claves = new ArrayList<>();
+            for (Frecuencia frecuencia : esbozo.mayores(MAX_CLAVES_INFORME)) {
+                Map<String, Object> clave = new LinkedHashMap<>();
+                clave.put("clave", frecuencia.clave());
+                clave.put("registrosRecientes", frecuencia.cuenta());
+                clave.put("error", frecuencia.error());
+                clave.put("fraccion", esbozo.total() > 0 ? (double) frecuencia.cuenta() / esbozo.total() : 0.0);
+                clave.put("caliente", frecuencia.cuenta() - frecuencia.error() >= umbral);
+                claves.add(clave);
+            }
+
+            Map<String, Object> informe = new LinkedHashMap<>();
+            informe.put("reparto", reparto);
+            informe.put("particiones", recientes.length);
+            informe.put("registrosRecientes", total);
+            // Partición más cargada frente a la media: 1 es un reparto perfecto
+            informe.put("desequilibrio", total > 0 ? (double) maxima * recientes.length / total : 0.0);
+            informe.put("carga", carga);
+            informe.put("clavesFrecuentes", claves);
+            return informe;
+        }
+
+        private long umbral() {
+            return Math.max(propiedades.getMinimoRegistros(), (long) Math.ceil(propiedades.getUmbral() * esbozo.total()));
+        }
+
+        private void redimensionar(int particiones) {
+            long[] nuevos = new long[particiones];
+            System.arraycopy(recientes, 0, nuevos, 0, Math.min(recientes.length, particiones));
+            Counter[] nuevosContadores = new Counter[particiones];
+            for (int i = 0; i < particiones; i++) {
+                nuevosContadores[i] = Counter.builder("kafka.app.particion.registros")
+                        .description("Registros enviados a cada partición por el productor principal")
+                        .tag("topic", topic)
+                        .tag("particion", String.valueOf(i))
+                        .register(meterRegistry);
+            }
+            recientes = nuevos;
+            contadores = nuevosContadores;
+        }
+    }
+}
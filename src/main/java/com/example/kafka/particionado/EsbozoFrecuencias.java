@@ -0,0 +1,93 @@
+package com.example.kafka.particionado;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Esbozo Space-Saving de las keys más frecuentes de un topic con memoria fija: sigue
+ * como mucho {@code capacidad} keys y, cuando llega una nueva con el esbozo lleno,
+ * sustituye a la de menor cuenta heredando esa cuenta como error. {@code cuenta - error}
+ * es una cota inferior de la frecuencia real, así que una key por encima del umbral con
+ * esa cota es caliente con seguridad. No es seguro para varios hilos.
+ */
+class EsbozoFrecuencias {
+
+    record Frecuencia(String clave, long cuenta, long error) {
+    }
+
+    private static final class Contador {
+        long cuenta;
+        long error;
+    }
+
+    private final int capacidad;
+    private final Map<String, Contador> contadores;
+    private long total;
+
+    EsbozoFrecuencias(int capacidad) {
+        this.capacidad = capacidad;
+        this.contadores = new HashMap<>(capacidad * 2);
+    }
+
+    void registrar(String clave) {
+        total++;
+        Contador contador = contadores.get(clave);
+        if (contador != null) {
+            contador.cuenta++;
+            return;
+        }
+        if (contadores.size() < capacidad) {
+            contador = new Contador();
+            contador.cuenta = 1;
+            contadores.put(clave, contador);
+            return;
+        }
+        String minima = null;
+        Contador menor = null;
+        for (Map.Entry<String, Contador> entrada : contadores.entrySet()) {
+            if (menor == null || entrada.getValue().cuenta < menor.cuenta) {
+                minima = entrada.getKey();
+                menor = entrada.getValue();
+            }
+        }
+        contadores.remove(minima);
+        // Se reutiliza el contador desplazado: su cuenta pasa a ser el error de la nueva key
+        menor.error = menor.cuenta;
+        menor.cuenta++;
+        contadores.put(clave, menor);
+    }
+
+    /**
+     * Cota inferior de las apariciones recientes de la key, 0 si no se sigue.
+     */
+    long minimo(String clave) {
+        Contador contador = contadores.get(clave);
+        return contador != null ? contador.cuenta - contador.error : 0;
+    }
+
+    long total() {
+        return total;
+    }
+
+    /**
+     * Reduce todas las cuentas a la mitad para que pesen más los envíos recientes.
+     */
+    void envejecer() {
+        total /= 2;
+        contadores.values().removeIf(contador -> {
+            contador.cuenta /= 2;
+            contador.error /= 2;
+            return contador.cuenta == 0;
+        });
+    }
+
+    List<Frecuencia> mayores(int maximo) {
+        List<Frecuencia> frecuencias = new ArrayList<>(contadores.size());
+        contadores.forEach((clave, contador) -> frecuencias.add(new Frecuencia(clave, contador.cuenta, contador.error)));
+        frecuencias.sort(Comparator.comparingLong(Frecuencia::cuenta).reversed());
+        return frecuencias.subList(0, Math.min(maximo, frecuencias.size()));
+    }
+}
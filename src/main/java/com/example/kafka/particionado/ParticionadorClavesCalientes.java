@@ -0,0 +1,59 @@
+package com.example.kafka.particionado;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Particionador del productor principal. Las keys sin sal van a la misma partición que
+ * con el particionador por defecto (murmur2), así que se mantiene el co-particionado
+ * entre topics; una key salada va a la partición de su key original desplazada tantas
+ * posiciones como su sal, de modo que cada sal cae en una partición distinta. Cada key
+ * se registra en el {@link DetectorClavesCalientes} recibido en la configuración.
+ */
+public class ParticionadorClavesCalientes implements Partitioner {
+
+    private DetectorClavesCalientes detector;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        if (configs.get(DetectorClavesCalientes.CONFIG_DETECTOR) instanceof DetectorClavesCalientes configurado) {
+            detector = configurado;
+        }
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int particiones = cluster.partitionsForTopic(topic).size();
+        if (keyBytes == null) {
+            List<PartitionInfo> disponibles = cluster.availablePartitionsForTopic(topic);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return disponibles.isEmpty() ? random.nextInt(particiones)
+                    : disponibles.get(random.nextInt(disponibles.size())).partition();
+        }
+
+        String clave = key instanceof String texto ? texto : null;
+        int sal = ClavesSaladas.sal(clave);
+        int particion;
+        if (sal < 0) {
+            particion = Utils.toPositive(Utils.murmur2(keyBytes)) % particiones;
+        } else {
+            clave = ClavesSaladas.original(clave);
+            particion = (Utils.toPositive(Utils.murmur2(clave.getBytes(StandardCharsets.UTF_8))) + sal) % particiones;
+        }
+        if (detector != null && clave != null) {
+            detector.registrar(topic, clave, particion, particiones);
+        }
+        return particion;
+    }
+
+    @Override
+    public void close() {
+    }
+}
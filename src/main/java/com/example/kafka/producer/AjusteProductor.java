@@ -0,0 +1,232 @@
+package com.example.kafka.producer;
+
+import com.example.kafka.config.AjusteProductorProperties;
+import com.example.kafka.config.AjusteProductorProperties.Perfil;
+import com.example.kafka.config.KafkaProducerConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ajuste adaptativo del batching y la compresión del productor principal.
+ * <p>
+ * Cada intervalo lee las métricas del productor y decide si pasar al perfil contiguo:
+ * <ul>
+ *   <li>latencia (record-queue-time + request-latency) por encima del objetivo con lotes
+ *   casi vacíos: el linger espera en vano, se baja de perfil;</li>
+ *   <li>latencia por encima del objetivo con lotes llenos: el broker recibe demasiadas
+ *   peticiones, se sube a lotes más grandes;</li>
+ *   <li>latencia holgada y lotes llenos: se sube para ganar throughput;</li>
+ *   <li>lotes casi vacíos: se baja, el batching no aporta.</li>
+ * </ul>
+ * Un cambio se aplica solo si lo piden varias evaluaciones seguidas; entonces se
+ * actualiza la configuración de la factoría y se rota el productor. Cada decisión queda
+ * en las métricas {@code kafka.app.productor.*}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AjusteProductor {
+
+    private static final Set<String> METRICAS = Set.of(
+            "record-queue-time-avg", "request-latency-avg", "batch-size-avg",
+            "compression-rate-avg", "record-send-rate");
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    private final AjusteProductorProperties propiedades;
+
+    private final MeterRegistry meterRegistry;
+
+    private List<Perfil> perfiles;
+    private volatile int actual;
+    private int propuesta;
+    private int evaluacionesSeguidas;
+
+    // Entradas de la última evaluación, publicadas como gauges
+    private volatile double latenciaObservadaMs = Double.NaN;
+    private volatile double llenadoLotes = Double.NaN;
+    private volatile double tasaCompresion = Double.NaN;
+
+    private ScheduledExecutorService planificador;
+
+    @PostConstruct
+    void iniciar() {
+        perfiles = propiedades.getPerfiles();
+        actual = perfiles.indexOf(propiedades.perfil(propiedades.getPerfilInicial()));
+
+        for (int i = 0; i < perfiles.size(); i++) {
+            int indice = i;
+            Gauge.builder("kafka.app.productor.perfil.activo", this, a -> a.actual == indice ? 1 : 0)
+                    .description("1 para el perfil de batching y compresión en uso")
+                    .tag("perfil", perfiles.get(i).getNombre())
+                    .tag("compresion", perfiles.get(i).getCompresion())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("kafka.app.productor.latencia.observada", this, a -> a.latenciaObservadaMs)
+                .description("record-queue-time-avg + request-latency-avg en la última evaluación (ms)")
+                .register(meterRegistry);
+        Gauge.builder("kafka.app.productor.llenado.lotes", this, a -> a.llenadoLotes)
+                .description("batch-size-avg / batch.size en la última evaluación")
+                .register(meterRegistry);
+        Gauge.builder("kafka.app.productor.tasa.compresion", this, a -> a.tasaCompresion)
+                .description("compression-rate-avg en la última evaluación")
+                .register(meterRegistry);
+
+        if (!"adaptativo".equals(propiedades.getModo())) {
+            return;
+        }
+        if (!(kafkaTemplate.getProducerFactory() instanceof DefaultKafkaProducerFactory)) {
+            log.warn("Ajuste adaptativo del productor desactivado: la factoría no es DefaultKafkaProducerFactory");
+            return;
+        }
+
+        long intervalo = propiedades.getIntervalo().toMillis();
+        planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "ajuste-productor");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        planificador.scheduleWithFixedDelay(this::evaluar, intervalo, intervalo, TimeUnit.MILLISECONDS);
+        log.info("Ajuste adaptativo del productor cada {} ms, perfil inicial {}, objetivo {} ms",
+                intervalo, perfiles.get(actual).getNombre(), propiedades.getLatenciaObjetivoMs());
+    }
+
+    @PreDestroy
+    void detener() {
+        if (planificador != null) {
+            planificador.shutdownNow();
+        }
+    }
+
+    public String perfilActual() {
+        return perfiles.get(actual).getNombre();
+    }
+
+    void evaluar() {
+        try {
+            Map<String, Double> valores = metricasProductor();
+            double tasa = valores.getOrDefault("record-send-rate", Double.NaN);
+            if (Double.isNaN(tasa) || tasa <= 0) {
+                // Sin tráfico no hay información para decidir
+                registrarDecision("mantener", "sin_trafico");
+                evaluacionesSeguidas = 0;
+                return;
+            }
+
+            Perfil perfil = perfiles.get(actual);
+            double latencia = valores.getOrDefault("record-queue-time-avg", 0.0)
+                    + valores.getOrDefault("request-latency-avg", 0.0);
+            double llenado = valores.getOrDefault("batch-size-avg", 0.0) / perfil.getBatchSize();
+            latenciaObservadaMs = latencia;
+            llenadoLotes = llenado;
+            tasaCompresion = valores.getOrDefault("compression-rate-avg", Double.NaN);
+
+            double objetivo = propiedades.getLatenciaObjetivoMs();
+            int deseado = actual;
+            String motivo = "dentro_de_objetivo";
+            if (latencia > objetivo) {
+                if (llenado < 0.5 && actual > 0) {
+                    deseado = actual - 1;
+                    motivo = "linger_sin_llenar_lotes";
+                } else if (llenado >= 0.5 && actual < perfiles.size() - 1) {
+                    deseado = actual + 1;
+                    motivo = "saturacion";
+                } else {
+                    motivo = "fuera_de_objetivo_sin_alternativa";
+                }
+            } else if (llenado >= 0.9 && latencia < objetivo / 2 && actual < perfiles.size() - 1) {
+                deseado = actual + 1;
+                motivo = "lotes_llenos";
+            } else if (llenado < 0.1 && actual > 0) {
+                deseado = actual - 1;
+                motivo = "lotes_vacios";
+            }
+
+            if (deseado == actual) {
+                evaluacionesSeguidas = 0;
+                registrarDecision("mantener", motivo);
+                return;
+            }
+            if (deseado == propuesta) {
+                evaluacionesSeguidas++;
+            } else {
+                propuesta = deseado;
+                evaluacionesSeguidas = 1;
+            }
+            if (evaluacionesSeguidas < propiedades.getEvaluacionesParaCambiar()) {
+                registrarDecision("pendiente", motivo);
+                return;
+            }
+
+            aplicar(deseado, motivo, latencia, llenado);
+            evaluacionesSeguidas = 0;
+        } catch (Exception e) {
+            log.warn("Error evaluando el ajuste del productor", e);
+        }
+    }
+
+    private void aplicar(int nuevo, String motivo, double latencia, double llenado) {
+        Perfil anterior = perfiles.get(actual);
+        Perfil perfil = perfiles.get(nuevo);
+        DefaultKafkaProducerFactory<String, Object> factory =
+                (DefaultKafkaProducerFactory<String, Object>) kafkaTemplate.getProducerFactory();
+
+        // El siguiente envío crea un productor con la nueva configuración; el anterior
+        // se cierra enviando lo que tenga acumulado
+        factory.updateConfigs(KafkaProducerConfig.configuracionPerfil(perfil));
+        factory.reset();
+        actual = nuevo;
+
+        registrarDecision(nuevo > perfiles.indexOf(anterior) ? "subir" : "bajar", motivo);
+        Counter.builder("kafka.app.productor.cambios.perfil")
+                .description("Cambios de perfil del productor aplicados")
+                .tag("desde", anterior.getNombre())
+                .tag("hacia", perfil.getNombre())
+                .tag("motivo", motivo)
+                .register(meterRegistry)
+                .increment();
+
+        log.info("Productor: perfil {} -> {} ({}): latencia {} ms, llenado de lotes {}, linger.ms={} batch.size={} compresión={}",
+                anterior.getNombre(), perfil.getNombre(), motivo, String.format("%.1f", latencia),
+                String.format("%.2f", llenado), perfil.getLingerMs(), perfil.getBatchSize(), perfil.getCompresion());
+    }
+
+    private void registrarDecision(String decision, String motivo) {
+        Counter.builder("kafka.app.productor.decisiones")
+                .description("Evaluaciones del ajuste adaptativo del productor")
+                .tag("decision", decision)
+                .tag("motivo", motivo)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Map<String, Double> metricasProductor() {
+        Map<String, Double> valores = new HashMap<>();
+        for (Map.Entry<MetricName, ? extends Metric> metrica : kafkaTemplate.metrics().entrySet()) {
+            MetricName nombre = metrica.getKey();
+            if ("producer-metrics".equals(nombre.group()) && METRICAS.contains(nombre.name())
+                    && metrica.getValue().metricValue() instanceof Double valor) {
+                valores.put(nombre.name(), valor);
+            }
+        }
+        return valores;
+    }
+}
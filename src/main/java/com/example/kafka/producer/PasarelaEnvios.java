@@ -0,0 +1,126 @@
+package com.example.kafka.producer;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Punto de entrada de los envíos que llegan por la API. Limita los envíos sin confirmar
+ * con un presupuesto de permisos: cuando se agota, el envío se rechaza al momento con
+ * {@link PasarelaSaturadaException} en lugar de bloquear el hilo de la petición en
+ * {@code send} mientras el buffer del productor está lleno. Los envíos de la ingesta
+ * masiva comparten el presupuesto, pero esperan un permiso hasta
+ * {@code espera-bulk-ms}: mientras esperan no se lee más del cuerpo de la petición.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PasarelaEnvios {
+
+    private final PedidoProducer pedidoProducer;
+
+    private final UsuarioProducer usuarioProducer;
+
+    private final KafkaMetricas metricas;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${kafka.producer.pasarela.max-en-vuelo:10000}")
+    private int maxEnVuelo;
+
+    @Value("${kafka.producer.pasarela.espera-bulk-ms:30000}")
+    private long esperaBulkMs;
+
+    @Value("${kafka.topics.pedidos}")
+    private String pedidosTopic;
+
+    @Value("${kafka.topics.usuarios}")
+    private String usuariosTopic;
+
+    private Semaphore permisos;
+
+    @PostConstruct
+    void iniciar() {
+        permisos = new Semaphore(maxEnVuelo);
+        Gauge.builder("kafka.app.pasarela.en.vuelo", this, p -> p.maxEnVuelo - p.permisos.availablePermits())
+                .description("Envíos de la API pendientes de confirmación del broker")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<SendResult<String, Object>> enviarPedido(Pedido pedido) {
+        return enviar(pedidosTopic, () -> pedidoProducer.enviarPedido(pedido));
+    }
+
+    public CompletableFuture<SendResult<String, Object>> enviarUsuario(Usuario usuario) {
+        return enviar(usuariosTopic, () -> usuarioProducer.enviarUsuario(usuario));
+    }
+
+    /**
+     * Como {@link #enviarPedido}, pero espera un permiso libre en lugar de rechazar al momento.
+     */
+    public CompletableFuture<SendResult<String, Object>> enviarPedidoEnLote(Pedido pedido) {
+        return enviarEnLote(pedidosTopic, () -> pedidoProducer.enviarPedido(pedido));
+    }
+
+    public CompletableFuture<SendResult<String, Object>> enviarUsuarioEnLote(Usuario usuario) {
+        return enviarEnLote(usuariosTopic, () -> usuarioProducer.enviarUsuario(usuario));
+    }
+
+    private CompletableFuture<SendResult<String, Object>> enviar(
+            String topic, Supplier<CompletableFuture<SendResult<String, Object>>> envio) {
+
+        if (!permisos.tryAcquire()) {
+            metricas.registrarRechazo(topic, "saturada");
+            throw new PasarelaSaturadaException(
+                    "Demasiados envíos pendientes de confirmación (" + maxEnVuelo + "), reintente más tarde");
+        }
+        return enviarConPermiso(topic, envio);
+    }
+
+    private CompletableFuture<SendResult<String, Object>> enviarEnLote(
+            String topic, Supplier<CompletableFuture<SendResult<String, Object>>> envio) {
+
+        boolean concedido;
+        try {
+            concedido = permisos.tryAcquire(esperaBulkMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            concedido = false;
+        }
+        if (!concedido) {
+            metricas.registrarRechazo(topic, "saturada");
+            throw new PasarelaSaturadaException("Sin permisos libres tras esperar " + esperaBulkMs
+                    + " ms (" + maxEnVuelo + " envíos pendientes de confirmación), reintente más tarde");
+        }
+        return enviarConPermiso(topic, envio);
+    }
+
+    private CompletableFuture<SendResult<String, Object>> enviarConPermiso(
+            String topic, Supplier<CompletableFuture<SendResult<String, Object>>> envio) {
+
+        CompletableFuture<SendResult<String, Object>> future;
+        try {
+            future = envio.get();
+        } catch (RuntimeException e) {
+            // Fallo síncrono (p. ej. metadatos no disponibles tras max.block.ms)
+            permisos.release();
+            metricas.registrarRechazo(topic, "error_envio");
+            throw e;
+        }
+        future.whenComplete((result, ex) -> permisos.release());
+        return future;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.kafka.producer;
+
+/**
+ * La pasarela de envíos no tiene permisos libres: hay demasiados envíos esperando la
+ * confirmación del broker y el nuevo se rechaza sin bloquear. También se lanza cuando el
+ * broker no está disponible y el spool local ha llegado a su tamaño máximo.
+ */
+public class PasarelaSaturadaException extends RuntimeException {
+
+    public PasarelaSaturadaException(String message) {
+        super(message);
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.kafka.producer;
 
+import com.example.kafka.logging.RegistroEventos;
+import com.example.kafka.logging.RegistroEventos.Evento;
+import com.example.kafka.metrics.KafkaMetricas;
 import com.example.kafka.model.Pedido;
+import com.example.kafka.particionado.DetectorClavesCalientes;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
@@ -15,25 +18,37 @@ import java.util.concurrent.CompletableFuture;
 @Slf4j
 public class PedidoProducer {
 
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final SpoolEnvios spool;
+
+    private final DetectorClavesCalientes clavesCalientes;
+
+    private final KafkaMetricas metricas;
+
+    private final RegistroEventos eventos;
 
     @Value("${kafka.topics.pedidos}")
     private String topic;
 
-    public void enviarPedido(Pedido pedido) {
-        log.info("Enviando pedido: {}", pedido.getId());
-
+    public CompletableFuture<SendResult<String, Object>> enviarPedido(Pedido pedido) {
+        eventos.registrar(Evento.ENVIADO, topic, -1, -1, pedido.getId());
+        long inicio = System.nanoTime();
         CompletableFuture<SendResult<String, Object>> future =
-                kafkaTemplate.send(topic, pedido.getId().toString(), pedido);
+                spool.enviar(topic, clavesCalientes.clave(topic, pedido.getId().toString()), pedido);
 
         future.whenComplete((result, ex) -> {
+            if (SpoolEnvios.enSpool(result)) {
+                // Se confirmará al reenviarse desde el spool
+                return;
+            }
+            metricas.registrarEnvio(topic, inicio, ex);
             if (ex == null) {
-                log.info("Pedido enviado exitosamente: {} con offset: {}",
-                        pedido.getId(),
-                        result.getRecordMetadata().offset());
+                eventos.registrar(Evento.CONFIRMADO, topic, result.getRecordMetadata().partition(),
+                        result.getRecordMetadata().offset(), pedido.getId());
             } else {
                 log.error("Error al enviar pedido: {}", pedido.getId(), ex);
             }
         });
+
+        return future;
     }
 }
@@ -0,0 +1,271 @@
+package com.example.kafka.producer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Segmento del spool: fichero de tamaño fijo mapeado en memoria en el que las entradas
+ * solo se añaden al final. Los datos viven fuera del heap y, al estar en la caché de
+ * páginas, sobreviven a una caída del proceso aunque no se haya hecho fsync.
+ * <p>
+ * Cabecera: magia (4 bytes) | versión (4) | fin de lo escrito (8) | posición confirmada
+ * (8) | reservado (8). Entrada: longitud del contenido (4) | crc32c del contenido (4) |
+ * id de envío (8) | topic (2 + bytes) | key (2 + bytes, -1 si es null) | valor (resto).
+ * Los segmentos de la versión 1 no tienen id de envío y se siguen pudiendo leer. No es
+ * seguro para varios hilos: lo sincroniza {@link SpoolEnvios}.
+ */
+class SegmentoSpool implements AutoCloseable {
+
+    static final int CABECERA = 32;
+    private static final int CABECERA_ENTRADA = 8;
+    private static final int MAGIA = 0x53504f4c;
+    private static final int VERSION = 2;
+    private static final int VERSION_SIN_ID = 1;
+    private static final int POS_ESCRITURA = 8;
+    private static final int POS_LECTURA = 16;
+
+    /** {@code idEnvio} 0: entrada de un segmento de la versión 1, sin id. */
+    record Entrada(long idEnvio, String topic, String key, byte[] valor, int siguiente) {
+    }
+
+    private final long numero;
+    private final Path fichero;
+    private final FileChannel canal;
+    private final MappedByteBuffer buffer;
+    private final int capacidad;
+    private final CRC32C crc = new CRC32C();
+    private int version = VERSION;
+
+    private int escritura;
+    private int lectura;
+    private int pendientes;
+    private int sinForzar;
+
+    private SegmentoSpool(long numero, Path fichero, int capacidad, boolean nuevo) throws IOException {
+        this.numero = numero;
+        this.fichero = fichero;
+        this.canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.capacidad = nuevo ? capacidad : (int) Math.min(canal.size(), Integer.MAX_VALUE);
+            this.buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, this.capacidad);
+            if (nuevo) {
+                buffer.putInt(0, MAGIA).putInt(4, VERSION);
+                escritura = CABECERA;
+                lectura = CABECERA;
+                guardarCabecera();
+            } else {
+                recuperar();
+            }
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    static SegmentoSpool crear(Path directorio, long numero, int capacidad) {
+        Path fichero = directorio.resolve(nombre(numero));
+        try {
+            Files.deleteIfExists(fichero);
+            return new SegmentoSpool(numero, fichero, capacidad, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el segmento " + fichero, e);
+        }
+    }
+
+    static SegmentoSpool abrir(Path fichero, long numero) {
+        try {
+            return new SegmentoSpool(numero, fichero, 0, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el segmento " + fichero, e);
+        }
+    }
+
+    static String nombre(long numero) {
+        return String.format("spool-%020d.seg", numero);
+    }
+
+    /**
+     * Número del segmento a partir del nombre del fichero, o -1 si no es un segmento.
+     */
+    static long numero(Path fichero) {
+        String nombre = fichero.getFileName().toString();
+        if (!nombre.startsWith("spool-") || !nombre.endsWith(".seg")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(nombre.substring(6, nombre.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Bytes que ocupa en el segmento una entrada con estos datos.
+     */
+    static int tamanoEntrada(byte[] topic, byte[] key, byte[] valor) {
+        return CABECERA_ENTRADA + 8 + 2 + topic.length + 2 + (key != null ? key.length : 0) + valor.length;
+    }
+
+    /**
+     * Añade una entrada al final; devuelve false si no cabe en lo que queda del segmento.
+     */
+    boolean anadir(long idEnvio, byte[] topic, byte[] key, byte[] valor) {
+        int tamano = tamanoEntrada(topic, key, valor);
+        if (version != VERSION || escritura + tamano > capacidad) {
+            // En un segmento de la versión 1 no se añade: sigue otro de la actual
+            return false;
+        }
+        int contenido = escritura + CABECERA_ENTRADA;
+        buffer.putLong(contenido, idEnvio);
+        int pos = contenido + 8;
+        buffer.putShort(pos, (short) topic.length).put(pos + 2, topic);
+        pos += 2 + topic.length;
+        if (key != null) {
+            buffer.putShort(pos, (short) key.length).put(pos + 2, key);
+            pos += 2 + key.length;
+        } else {
+            buffer.putShort(pos, (short) -1);
+            pos += 2;
+        }
+        buffer.put(pos, valor);
+
+        int longitud = tamano - CABECERA_ENTRADA;
+        buffer.putInt(escritura + 4, crc(contenido, longitud));
+        // La longitud se escribe la última: una entrada a medias no se da por válida
+        buffer.putInt(escritura, longitud);
+        escritura += tamano;
+        pendientes++;
+        sinForzar++;
+        buffer.putLong(POS_ESCRITURA, escritura);
+        return true;
+    }
+
+    /**
+     * Lee hasta {@code maximo} entradas sin confirmar desde la posición confirmada.
+     */
+    void leer(int maximo, List<Entrada> entradas) {
+        int pos = lectura;
+        while (pos < escritura && entradas.size() < maximo) {
+            Entrada entrada = leer(pos);
+            entradas.add(entrada);
+            pos = entrada.siguiente();
+        }
+    }
+
+    /**
+     * Marca como entregadas las entradas anteriores a {@code posicion}.
+     */
+    void confirmar(int posicion, int entradas) {
+        lectura = posicion;
+        pendientes -= entradas;
+        buffer.putLong(POS_LECTURA, lectura);
+    }
+
+    void forzar() {
+        if (sinForzar > 0) {
+            buffer.force();
+            sinForzar = 0;
+        }
+    }
+
+    boolean agotado() {
+        return lectura == escritura;
+    }
+
+    long numero() {
+        return numero;
+    }
+
+    int pendientes() {
+        return pendientes;
+    }
+
+    long bytesPendientes() {
+        return escritura - lectura;
+    }
+
+    long capacidad() {
+        return capacidad;
+    }
+
+    @Override
+    public void close() throws IOException {
+        forzar();
+        canal.close();
+    }
+
+    void borrar() throws IOException {
+        canal.close();
+        Files.deleteIfExists(fichero);
+    }
+
+    private Entrada leer(int pos) {
+        int longitud = buffer.getInt(pos);
+        int p = pos + CABECERA_ENTRADA;
+        long idEnvio = 0;
+        if (version == VERSION) {
+            idEnvio = buffer.getLong(p);
+            p += 8;
+        }
+        byte[] topic = new byte[buffer.getShort(p)];
+        buffer.get(p + 2, topic);
+        p += 2 + topic.length;
+        short largoKey = buffer.getShort(p);
+        byte[] key = null;
+        p += 2;
+        if (largoKey >= 0) {
+            key = new byte[largoKey];
+            buffer.get(p, key);
+            p += largoKey;
+        }
+        int siguiente = pos + CABECERA_ENTRADA + longitud;
+        byte[] valor = new byte[siguiente - p];
+        buffer.get(p, valor);
+        return new Entrada(idEnvio, new String(topic, StandardCharsets.UTF_8),
+                key != null ? new String(key, StandardCharsets.UTF_8) : null, valor, siguiente);
+    }
+
+    /**
+     * Valida la cabecera y recorre las entradas desde la posición confirmada: el final
+     * de lo escrito es la última entrada completa con crc correcto, aunque la cabecera
+     * no llegara a actualizarse antes de la caída.
+     */
+    private void recuperar() throws IOException {
+        if (capacidad < CABECERA || buffer.getInt(0) != MAGIA
+                || (buffer.getInt(4) != VERSION && buffer.getInt(4) != VERSION_SIN_ID)) {
+            throw new IOException("Segmento de spool no válido: " + fichero);
+        }
+        version = buffer.getInt(4);
+        lectura = (int) Math.max(CABECERA, Math.min(buffer.getLong(POS_LECTURA), capacidad));
+        int pos = lectura;
+        while (pos + CABECERA_ENTRADA <= capacidad) {
+            int longitud = buffer.getInt(pos);
+            if (longitud <= 0 || pos + CABECERA_ENTRADA + longitud > capacidad
+                    || crc(pos + CABECERA_ENTRADA, longitud) != buffer.getInt(pos + 4)) {
+                break;
+            }
+            pos += CABECERA_ENTRADA + longitud;
+            pendientes++;
+        }
+        escritura = pos;
+        guardarCabecera();
+    }
+
+    private int crc(int desde, int longitud) {
+        crc.reset();
+        crc.update(buffer.slice(desde, longitud));
+        return (int) crc.getValue();
+    }
+
+    private void guardarCabecera() {
+        buffer.putLong(POS_ESCRITURA, escritura).putLong(POS_LECTURA, lectura);
+    }
+}
@@ -0,0 +1,542 @@
+package com.example.kafka.producer;
+
+import com.example.kafka.config.SpoolProperties;
+import com.example.kafka.dedup.DeduplicadorRegistros;
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.producer.SegmentoSpool.Entrada;
+import com.example.kafka.serde.BinarioDeserializer;
+import com.example.kafka.serde.BinarioSerializer;
+import com.example.kafka.serde.ModeloBinario;
+import com.example.kafka.serde.RegistroEsquemas;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Envía pedidos y usuarios al broker o, mientras el broker no confirma o el buffer del
+ * productor está casi lleno, los guarda en un spool local en disco: una secuencia de
+ * segmentos mapeados en memoria en los que solo se añade al final, fuera del heap y con
+ * un tamaño máximo. Un hilo de fondo comprueba el estado del productor y reenvía el
+ * spool en el orden en que se guardó; el modo directo vuelve cuando el spool queda vacío
+ * y el broker vuelve a confirmar.
+ * <p>
+ * Mientras hay registros en el spool, los envíos nuevos también van al spool para no
+ * adelantar a los anteriores de la misma key.
+ * <p>
+ * La entrega es al menos una vez. Un lote del spool que falla a medias se reenvía
+ * entero, y un envío directo que agota {@code delivery.timeout.ms} se rescata al spool
+ * aunque el broker pudiera haberlo escrito. Esos reenvíos llegan con otro offset, así
+ * que cada envío lleva en la cabecera {@value DeduplicadorRegistros#HEADER_ID_ENVIO}
+ * un id que se guarda con él en el spool y con el que los consumidores de pedidos
+ * descartan la copia; otros consumidores (los de usuarios y los externos) la reciben
+ * dos veces.
+ * <p>
+ * El orden por key tampoco se garantiza en ese rescate: el envío rescatado sale detrás
+ * de lo que ya había en el spool y de los envíos directos posteriores de la misma key
+ * que el broker sí confirmó antes de pasar al spool.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(SpoolProperties.class)
+public class SpoolEnvios {
+
+    enum Modo { DIRECTO, SPOOL }
+
+    private static final Set<Class<?>> SOPORTADOS = ModeloBinario.TODOS.stream()
+            .map(ModeloBinario::clase).collect(Collectors.toUnmodifiableSet());
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    private final SpoolProperties propiedades;
+
+    private final RegistroEsquemas registroEsquemas;
+
+    private final KafkaMetricas metricas;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ArrayDeque<SegmentoSpool> segmentos = new ArrayDeque<>();
+    private final AtomicLong enVuelo = new AtomicLong();
+    private final Map<String, Counter> guardados = new ConcurrentHashMap<>();
+    private final Map<String, Counter> reenviados = new ConcurrentHashMap<>();
+
+    private volatile Modo modo = Modo.DIRECTO;
+    private volatile long pendienteDesde;
+    private volatile long ultimaConfirmacion = System.nanoTime();
+    private volatile boolean activo;
+
+    private BinarioSerializer serializer;
+    private BinarioDeserializer deserializer;
+    private final RecordHeaders cabecerasBinario = new RecordHeaders();
+    private Path directorio;
+    private boolean fsyncSiempre;
+    private long siguienteSegmento;
+    private Thread drenaje;
+
+    @PostConstruct
+    void iniciar() throws IOException {
+        if (!propiedades.isHabilitado()) {
+            return;
+        }
+        serializer = new BinarioSerializer(registroEsquemas, new JacksonJsonSerializer<>(), true);
+        deserializer = new BinarioDeserializer(registroEsquemas, new JacksonJsonDeserializer<>());
+        cabecerasBinario.add(BinarioSerializer.HEADER_FORMATO, "binario".getBytes(StandardCharsets.UTF_8));
+        fsyncSiempre = "siempre".equalsIgnoreCase(propiedades.getFsync());
+
+        directorio = Path.of(propiedades.getDirectorio());
+        Files.createDirectories(directorio);
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            for (Path fichero : ficheros.filter(f -> SegmentoSpool.numero(f) >= 0)
+                    .sorted().toList()) {
+                long numero = SegmentoSpool.numero(fichero);
+                siguienteSegmento = numero + 1;
+                try {
+                    segmentos.addLast(SegmentoSpool.abrir(fichero, numero));
+                } catch (UncheckedIOException e) {
+                    cuarentena(fichero, e);
+                }
+            }
+        }
+        long pendientes = registros();
+        if (pendientes > 0) {
+            // Lo que quedó de la ejecución anterior sale antes que los envíos nuevos
+            modo = Modo.SPOOL;
+            log.info("Spool con {} registros pendientes en {} segmentos; se reenvían antes de enviar directo",
+                    pendientes, segmentos.size());
+        }
+
+        Gauge.builder("kafka.app.spool.registros", this, SpoolEnvios::registros)
+                .description("Registros del spool local pendientes de reenviar")
+                .register(meterRegistry);
+        Gauge.builder("kafka.app.spool.bytes", this, SpoolEnvios::bytesEnDisco)
+                .description("Bytes reservados en disco por los segmentos del spool")
+                .register(meterRegistry);
+        Gauge.builder("kafka.app.spool.modo", this, s -> s.modo == Modo.SPOOL ? 1 : 0)
+                .description("1 mientras los envíos van al spool, 0 en envío directo")
+                .register(meterRegistry);
+
+        activo = true;
+        drenaje = new Thread(this::drenar, "spool-drenaje");
+        drenaje.setDaemon(true);
+        drenaje.start();
+    }
+
+    @PreDestroy
+    void detener() throws InterruptedException {
+        if (!activo) {
+            return;
+        }
+        activo = false;
+        drenaje.interrupt();
+        drenaje.join(TimeUnit.SECONDS.toMillis(5));
+        synchronized (this) {
+            for (SegmentoSpool segmento : segmentos) {
+                try {
+                    segmento.close();
+                } catch (IOException e) {
+                    log.warn("Error cerrando el segmento {} del spool", segmento.numero(), e);
+                }
+            }
+            segmentos.clear();
+        }
+    }
+
+    /**
+     * Envía el registro o lo guarda en el spool. Un registro guardado completa el future
+     * al momento con un resultado sin partición ni offset ({@link #enSpool}); si el spool
+     * está lleno se lanza {@link PasarelaSaturadaException}.
+     */
+    public CompletableFuture<SendResult<String, Object>> enviar(String topic, String key, Object valor) {
+        long idEnvio = nuevoIdEnvio();
+        if (!activo || valor == null || !SOPORTADOS.contains(valor.getClass())) {
+            return kafkaTemplate.send(registro(topic, key, valor, idEnvio));
+        }
+        if (modo == Modo.SPOOL) {
+            synchronized (this) {
+                // Se comprueba otra vez bajo el lock: el drenaje puede haber vuelto a directo
+                if (modo == Modo.SPOOL) {
+                    return CompletableFuture.completedFuture(guardar(topic, key, valor, idEnvio));
+                }
+            }
+        }
+
+        if (enVuelo.getAndIncrement() == 0) {
+            pendienteDesde = System.nanoTime();
+        }
+        CompletableFuture<SendResult<String, Object>> envio;
+        try {
+            envio = kafkaTemplate.send(registro(topic, key, valor, idEnvio));
+        } catch (RuntimeException e) {
+            enVuelo.decrementAndGet();
+            if (!reintentable(e)) {
+                throw e;
+            }
+            // send() agotó max.block.ms sin metadatos o con el buffer lleno
+            activar("error_envio");
+            return CompletableFuture.completedFuture(guardarSincronizado(topic, key, valor, idEnvio));
+        }
+
+        CompletableFuture<SendResult<String, Object>> resultado = new CompletableFuture<>();
+        envio.whenComplete((result, ex) -> {
+            enVuelo.decrementAndGet();
+            if (ex == null) {
+                ultimaConfirmacion = System.nanoTime();
+                resultado.complete(result);
+                return;
+            }
+            if (!reintentable(ex)) {
+                resultado.completeExceptionally(ex);
+                return;
+            }
+            // Agotó delivery.timeout.ms: se rescata al spool en lugar de perderlo
+            activar("error_envio");
+            try {
+                resultado.complete(guardarSincronizado(topic, key, valor, idEnvio));
+            } catch (RuntimeException e) {
+                ex.addSuppressed(e);
+                resultado.completeExceptionally(ex);
+            }
+        });
+        return resultado;
+    }
+
+    /**
+     * true si el resultado corresponde a un registro guardado en el spool y aún no
+     * confirmado por el broker.
+     */
+    public static boolean enSpool(SendResult<?, ?> result) {
+        return result != null && result.getRecordMetadata().partition() < 0;
+    }
+
+    public Map<String, Object> estado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("habilitado", propiedades.isHabilitado());
+        estado.put("modo", modo.name().toLowerCase(Locale.ROOT));
+        estado.put("registros", registros());
+        synchronized (this) {
+            estado.put("segmentos", segmentos.size());
+        }
+        estado.put("bytes", bytesEnDisco());
+        estado.put("bytesMaximo", propiedades.getTamanoMaximo().toBytes());
+        estado.put("enviosSinConfirmar", enVuelo.get());
+        return estado;
+    }
+
+    private synchronized SendResult<String, Object> guardarSincronizado(String topic, String key, Object valor,
+                                                                       long idEnvio) {
+        return guardar(topic, key, valor, idEnvio);
+    }
+
+    private SendResult<String, Object> guardar(String topic, String key, Object valor, long idEnvio) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key != null ? key.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] valorBytes = serializer.serialize(topic, new RecordHeaders(), valor);
+
+        SegmentoSpool actual = segmentos.peekLast();
+        if (actual == null || !actual.anadir(idEnvio, topicBytes, keyBytes, valorBytes)) {
+            actual = nuevoSegmento(topic, SegmentoSpool.tamanoEntrada(topicBytes, keyBytes, valorBytes));
+            actual.anadir(idEnvio, topicBytes, keyBytes, valorBytes);
+        }
+        if (fsyncSiempre) {
+            actual.forzar();
+        }
+        guardados.computeIfAbsent(topic, t -> Counter.builder("kafka.app.spool.guardados")
+                        .description("Registros guardados en el spool local en lugar de enviarse")
+                        .tag("topic", t)
+                        .register(meterRegistry))
+                .increment();
+
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition(topic, -1), -1, 0,
+                System.currentTimeMillis(), keyBytes != null ? keyBytes.length : -1, valorBytes.length);
+        return new SendResult<>(registro(topic, key, valor, idEnvio), metadata);
+    }
+
+    private static ProducerRecord<String, Object> registro(String topic, String key, Object valor, long idEnvio) {
+        RecordHeaders cabeceras = new RecordHeaders();
+        cabeceras.add(DeduplicadorRegistros.HEADER_ID_ENVIO, ByteBuffer.allocate(Long.BYTES).putLong(idEnvio).array());
+        return new ProducerRecord<>(topic, null, key, valor, cabeceras);
+    }
+
+    /**
+     * Id aleatorio distinto de 0, que en el spool marca las entradas sin id.
+     */
+    private static long nuevoIdEnvio() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * Aparta un segmento que no se puede abrir para que no impida arrancar; sus registros
+     * quedan en el fichero renombrado para revisarlos a mano.
+     */
+    private void cuarentena(Path fichero, RuntimeException causa) {
+        Path apartado = fichero.resolveSibling(fichero.getFileName() + ".corrupto");
+        try {
+            Files.move(fichero, apartado, StandardCopyOption.REPLACE_EXISTING);
+            log.error("Segmento del spool {} ilegible, apartado como {}", fichero, apartado.getFileName(), causa);
+        } catch (IOException e) {
+            log.error("Segmento del spool {} ilegible y no se pudo apartar; se ignora", fichero, causa);
+        }
+    }
+
+    private SegmentoSpool nuevoSegmento(String topic, int tamanoEntrada) {
+        long tamano = propiedades.getTamanoSegmento().toBytes();
+        if (tamanoEntrada > tamano - SegmentoSpool.CABECERA) {
+            metricas.registrarRechazo(topic, "spool_lleno");
+            throw new PasarelaSaturadaException("El registro (" + tamanoEntrada
+                    + " bytes) no cabe en un segmento del spool (" + tamano + " bytes)");
+        }
+        if (bytesEnDisco() + tamano > propiedades.getTamanoMaximo().toBytes()) {
+            metricas.registrarRechazo(topic, "spool_lleno");
+            throw new PasarelaSaturadaException("Broker no disponible y spool local lleno ("
+                    + propiedades.getTamanoMaximo() + "), reintente más tarde");
+        }
+        SegmentoSpool segmento = SegmentoSpool.crear(directorio, siguienteSegmento++, (int) tamano);
+        segmentos.addLast(segmento);
+        return segmento;
+    }
+
+    private void activar(String motivo) {
+        synchronized (this) {
+            if (modo == Modo.SPOOL) {
+                return;
+            }
+            modo = Modo.SPOOL;
+        }
+        log.warn("Envíos al spool local: {}", motivo);
+        Counter.builder("kafka.app.spool.activaciones")
+                .description("Veces que los envíos pasaron del broker al spool local")
+                .tag("motivo", motivo)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Bucle del hilo de drenaje: comprobación del productor, fsync periódico, reenvío
+     * de un lote si hay registros y vuelta al modo directo cuando el spool se vacía.
+     */
+    private void drenar() {
+        long espera = propiedades.getIntervaloComprobacion().toMillis();
+        long intervaloFsync = propiedades.getIntervaloFsync().toNanos();
+        boolean fsyncPeriodico = "periodica".equalsIgnoreCase(propiedades.getFsync());
+        long ultimoFsync = System.nanoTime();
+        while (activo) {
+            try {
+                comprobarProductor();
+                if (fsyncPeriodico && System.nanoTime() - ultimoFsync >= intervaloFsync) {
+                    forzar();
+                    ultimoFsync = System.nanoTime();
+                }
+                if (registros() > 0) {
+                    if (!reenviarLote()) {
+                        Thread.sleep(propiedades.getEsperaReintento().toMillis());
+                    }
+                    continue;
+                }
+                volverADirecto();
+                Thread.sleep(espera);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Error en el drenaje del spool", e);
+            }
+        }
+    }
+
+    /**
+     * Pasa al spool si hay envíos directos sin ninguna confirmación durante
+     * {@code sin-confirmacion} o si queda poco buffer libre en el productor.
+     */
+    private void comprobarProductor() {
+        if (modo == Modo.SPOOL) {
+            return;
+        }
+        if (sinConfirmar()) {
+            activar("sin_confirmacion");
+        } else if (bufferCasiLleno()) {
+            activar("buffer_lleno");
+        }
+    }
+
+    private boolean sinConfirmar() {
+        long desde = Math.max(pendienteDesde, ultimaConfirmacion);
+        return enVuelo.get() > 0 && System.nanoTime() - desde > propiedades.getSinConfirmacion().toNanos();
+    }
+
+    /**
+     * Reenvía en orden el siguiente lote del segmento más antiguo y espera todas las
+     * confirmaciones; solo entonces avanza la posición confirmada del segmento.
+     */
+    private boolean reenviarLote() throws InterruptedException {
+        List<Entrada> lote = new ArrayList<>(propiedades.getLoteReenvio());
+        SegmentoSpool segmento;
+        synchronized (this) {
+            segmento = segmentos.peekFirst();
+            if (segmento == null) {
+                return true;
+            }
+            if (segmento.agotado()) {
+                if (segmento != segmentos.peekLast()) {
+                    segmentos.removeFirst();
+                    borrar(segmento);
+                }
+                return true;
+            }
+            segmento.leer(propiedades.getLoteReenvio(), lote);
+        }
+
+        List<CompletableFuture<SendResult<String, Object>>> envios = new ArrayList<>(lote.size());
+        try {
+            for (Entrada entrada : lote) {
+                Object valor = deserializer.deserialize(entrada.topic(), cabecerasBinario, entrada.valor());
+                // Las entradas de segmentos de la versión 1 no tienen id de envío
+                long idEnvio = entrada.idEnvio() != 0 ? entrada.idEnvio() : nuevoIdEnvio();
+                envios.add(kafkaTemplate.send(registro(entrada.topic(), entrada.key(), valor, idEnvio)));
+            }
+            CompletableFuture.allOf(envios.toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Reenvío del spool fallido, se reintenta el lote de {} registros: {}", lote.size(), e.getMessage());
+            return false;
+        }
+
+        ultimaConfirmacion = System.nanoTime();
+        synchronized (this) {
+            segmento.confirmar(lote.get(lote.size() - 1).siguiente(), lote.size());
+        }
+        Map<String, Integer> porTopic = new HashMap<>();
+        lote.forEach(entrada -> porTopic.merge(entrada.topic(), 1, Integer::sum));
+        porTopic.forEach((topic, n) -> reenviados.computeIfAbsent(topic, t -> Counter.builder("kafka.app.spool.reenviados")
+                        .description("Registros del spool confirmados por el broker al reenviarse")
+                        .tag("topic", t)
+                        .register(meterRegistry))
+                .increment(n));
+        return true;
+    }
+
+    private void volverADirecto() {
+        if (modo == Modo.DIRECTO || sinConfirmar() || bufferCasiLleno()) {
+            return;
+        }
+        synchronized (this) {
+            // Bajo el lock: ningún envío puede entrar al spool entre la comprobación y el cambio
+            if (registros() > 0) {
+                return;
+            }
+            modo = Modo.DIRECTO;
+        }
+        log.info("Spool vacío y productor sano: envíos directos al broker");
+    }
+
+    private synchronized void forzar() {
+        SegmentoSpool actual = segmentos.peekLast();
+        if (actual != null) {
+            actual.forzar();
+        }
+    }
+
+    private void borrar(SegmentoSpool segmento) {
+        try {
+            segmento.borrar();
+        } catch (IOException e) {
+            log.warn("No se pudo borrar el segmento {} del spool", segmento.numero(), e);
+        }
+    }
+
+    /**
+     * Solo con envíos directos sin confirmar: sin ellos el buffer está vacío y no hace
+     * falta crear el productor para leer sus métricas.
+     */
+    private boolean bufferCasiLleno() {
+        return enVuelo.get() > 0 && bufferLibre() < propiedades.getBufferLibreMinimo();
+    }
+
+    /**
+     * Fracción libre de buffer.memory del productor, 1 si aún no hay métricas.
+     */
+    private double bufferLibre() {
+        double disponible = -1;
+        double total = -1;
+        for (Map.Entry<MetricName, ? extends Metric> metrica : kafkaTemplate.metrics().entrySet()) {
+            MetricName nombre = metrica.getKey();
+            if ("producer-metrics".equals(nombre.group()) && metrica.getValue().metricValue() instanceof Double valor) {
+                if ("buffer-available-bytes".equals(nombre.name())) {
+                    disponible = valor;
+                } else if ("buffer-total-bytes".equals(nombre.name())) {
+                    total = valor;
+                }
+            }
+        }
+        return disponible < 0 || total <= 0 ? 1 : disponible / total;
+    }
+
+    private synchronized long registros() {
+        long total = 0;
+        for (SegmentoSpool segmento : segmentos) {
+            total += segmento.pendientes();
+        }
+        return total;
+    }
+
+    private synchronized long bytesEnDisco() {
+        long total = 0;
+        for (SegmentoSpool segmento : segmentos) {
+            total += segmento.capacidad();
+        }
+        return total;
+    }
+
+    private static boolean reintentable(Throwable ex) {
+        Throwable causa = ex;
+        while (causa != null && !(causa instanceof RetriableException)) {
+            causa = causa.getCause();
+        }
+        return causa != null;
+    }
+}
@@ -1,24 +1,54 @@
 package com.example.kafka.producer;
 
+import com.example.kafka.logging.RegistroEventos;
+import com.example.kafka.logging.RegistroEventos.Evento;
+import com.example.kafka.metrics.KafkaMetricas;
 import com.example.kafka.model.Usuario;
+import com.example.kafka.particionado.DetectorClavesCalientes;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class UsuarioProducer {
 
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final SpoolEnvios spool;
+
+    private final DetectorClavesCalientes clavesCalientes;
+
+    private final KafkaMetricas metricas;
+
+    private final RegistroEventos eventos;
 
     @Value("${kafka.topics.usuarios}")
     private String topic;
 
-    public void enviarUsuario(Usuario usuario) {
-        log.info("Enviando usuario: {}", usuario);
-        kafkaTemplate.send(topic, usuario.getId().toString(), usuario);
+    public CompletableFuture<SendResult<String, Object>> enviarUsuario(Usuario usuario) {
+        eventos.registrar(Evento.ENVIADO, topic, -1, -1, usuario.getId());
+        long inicio = System.nanoTime();
+        CompletableFuture<SendResult<String, Object>> future =
+                spool.enviar(topic, clavesCalientes.clave(topic, usuario.getId().toString()), usuario);
+
+        future.whenComplete((result, ex) -> {
+            if (SpoolEnvios.enSpool(result)) {
+                // Se confirmará al reenviarse desde el spool
+                return;
+            }
+            metricas.registrarEnvio(topic, inicio, ex);
+            if (ex == null) {
+                eventos.registrar(Evento.CONFIRMADO, topic, result.getRecordMetadata().partition(),
+                        result.getRecordMetadata().offset(), usuario.getId());
+            } else {
+                log.error("Error al enviar usuario: {}", usuario.getId(), ex);
+            }
+        });
+
+        return future;
     }
 }
@@ -0,0 +1,124 @@
+package com.example.kafka.serde;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Lee registros en formato binario cuando traen la cabecera de formato y delega en el
+ * deserializador JSON en caso contrario, de modo que un topic puede mezclar ambos
+ * formatos durante la migración.
+ * <p>
+ * El esquema del escritor se resuelve por su huella en el {@link RegistroEsquemas};
+ * los campos que este lector no conoce se descartan y los que faltan quedan en null.
+ */
+public class BinarioDeserializer implements Deserializer<Object> {
+
+    private final RegistroEsquemas registro;
+    private final Deserializer<Object> json;
+    private final Map<Long, PlanLectura<?>> planes = new ConcurrentHashMap<>();
+
+    public BinarioDeserializer(RegistroEsquemas registro, Deserializer<Object> json) {
+        this.registro = registro;
+        this.json = json;
+        ModeloBinario.TODOS.forEach(modelo -> registro.registrar(modelo.esquema()));
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        json.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return json.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null || !esBinario(headers)) {
+            return json.deserialize(topic, headers, data);
+        }
+        return leer(ByteBuffer.wrap(data));
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, ByteBuffer data) {
+        if (data == null || !esBinario(headers)) {
+            return json.deserialize(topic, headers, data);
+        }
+        // Se lee directamente del buffer del fetch, sin copiarlo a un byte[]
+        return leer(data.duplicate());
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+
+    private Object leer(ByteBuffer buffer) {
+        long huella = CodecBinario.leerLongFijo(buffer);
+        return planes.computeIfAbsent(huella, this::crearPlan).leer(buffer);
+    }
+
+    private PlanLectura<?> crearPlan(long huella) {
+        Esquema esquema = registro.buscar(huella);
+        ModeloBinario<?> modelo = ModeloBinario.TODOS.stream()
+                .filter(m -> m.tipo().equals(esquema.tipo()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Tipo sin modelo binario: " + esquema.tipo()));
+        return new PlanLectura<>(modelo, esquema.campos());
+    }
+
+    private static boolean esBinario(Headers headers) {
+        if (headers == null) {
+            return false;
+        }
+        Header header = headers.lastHeader(BinarioSerializer.HEADER_FORMATO);
+        return header != null && Arrays.equals(header.value(), BinarioSerializer.FORMATO_BINARIO);
+    }
+
+    /**
+     * Lectura de un esquema de escritor concreto sobre el modelo actual.
+     */
+    private static final class PlanLectura<T> {
+
+        private final ModeloBinario<T> modelo;
+        private final TipoCampo[] tipos;
+        private final List<BiConsumer<T, Object>> setters;
+
+        PlanLectura(ModeloBinario<T> modelo, List<Esquema.Campo> camposEscritor) {
+            this.modelo = modelo;
+            this.tipos = camposEscritor.stream().map(Esquema.Campo::tipo).toArray(TipoCampo[]::new);
+            this.setters = camposEscritor.stream().map(modelo::setter).toList();
+        }
+
+        T leer(ByteBuffer buffer) {
+            int bytesBitmap = (tipos.length + 7) / 8;
+            long bitmap = 0;
+            for (int i = 0; i < bytesBitmap; i++) {
+                bitmap |= (buffer.get() & 0xFFL) << (8 * i);
+            }
+
+            T objeto = modelo.nuevo();
+            for (int i = 0; i < tipos.length; i++) {
+                if ((bitmap & (1L << i)) == 0) {
+                    continue;
+                }
+                Object valor = tipos[i].leer(buffer);
+                BiConsumer<T, Object> setter = setters.get(i);
+                if (setter != null) {
+                    setter.accept(objeto, valor);
+                }
+            }
+            return objeto;
+        }
+    }
+}
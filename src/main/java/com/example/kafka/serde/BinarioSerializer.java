@@ -0,0 +1,95 @@
+package com.example.kafka.serde;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serializa los modelos conocidos en formato binario compacto y marca el registro con
+ * la cabecera {@value #HEADER_FORMATO}. Cualquier otro valor, o todos cuando la
+ * escritura binaria está desactivada, se delega al serializador JSON.
+ */
+public class BinarioSerializer implements Serializer<Object> {
+
+    public static final String HEADER_FORMATO = "formato";
+    static final byte[] FORMATO_BINARIO = "binario".getBytes(StandardCharsets.UTF_8);
+
+    private final Serializer<Object> json;
+    private final boolean escribirBinario;
+    private final Map<Class<?>, Escritor<?>> escritores = new HashMap<>();
+    private final ThreadLocal<CodecBinario.Salida> salidas =
+            ThreadLocal.withInitial(() -> new CodecBinario.Salida(256));
+
+    public BinarioSerializer(RegistroEsquemas registro, Serializer<Object> json, boolean escribirBinario) {
+        this.json = json;
+        this.escribirBinario = escribirBinario;
+        for (ModeloBinario<?> modelo : ModeloBinario.TODOS) {
+            escritores.put(modelo.clase(), new Escritor<>(modelo, registro.registrar(modelo.esquema())));
+        }
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        json.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return json.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        Escritor<?> escritor = data != null && escribirBinario ? escritores.get(data.getClass()) : null;
+        if (escritor == null) {
+            return json.serialize(topic, headers, data);
+        }
+
+        headers.remove(HEADER_FORMATO);
+        headers.add(HEADER_FORMATO, FORMATO_BINARIO);
+
+        CodecBinario.Salida salida = salidas.get();
+        salida.reiniciar();
+        escritor.escribir(salida, data);
+        return salida.copiar();
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+
+    private record Escritor<T>(ModeloBinario<T> modelo, long huella) {
+
+        /**
+         * Formato: huella (8 bytes) | bitmap de campos no nulos | valores no nulos.
+         */
+        void escribir(CodecBinario.Salida salida, Object data) {
+            T objeto = modelo.clase().cast(data);
+            int campos = modelo.numeroCampos();
+            int bytesBitmap = (campos + 7) / 8;
+
+            salida.escribirLongFijo(huella);
+            int inicioBitmap = salida.posicion();
+            for (int i = 0; i < bytesBitmap; i++) {
+                salida.escribirByte(0);
+            }
+
+            long bitmap = 0;
+            for (int i = 0; i < campos; i++) {
+                Object valor = modelo.leerCampo(objeto, i);
+                if (valor != null) {
+                    bitmap |= 1L << i;
+                    modelo.tipoCampo(i).escribir(salida, valor);
+                }
+            }
+
+            for (int i = 0; i < bytesBitmap; i++) {
+                salida.escribirByteEn(inicioBitmap + i, (int) (bitmap >>> (8 * i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.kafka.serde;
+
+import java.util.Arrays;
+
+/**
+ * Caché de correspondencia directa de texto a valor inmutable: cada texto ocupa la
+ * ranura de su hash y desplaza al anterior. Las búsquedas comparan los caracteres del
+ * parser sin crear un String, y las entradas son inmutables, así que puede compartirse
+ * entre hilos sin sincronizar.
+ */
+final class CacheTexto<T> {
+
+    private static final int MAX_LONGITUD = 64;
+
+    private record Entrada<T>(char[] clave, T valor) {
+    }
+
+    private final Entrada<T>[] entradas;
+    private final int mascara;
+
+    @SuppressWarnings("unchecked")
+    CacheTexto(int tamano) {
+        if (Integer.bitCount(tamano) != 1) {
+            throw new IllegalArgumentException("El tamaño de la caché debe ser potencia de 2: " + tamano);
+        }
+        this.entradas = (Entrada<T>[]) new Entrada[tamano];
+        this.mascara = tamano - 1;
+    }
+
+    static int hash(char[] texto, int desde, int longitud) {
+        int h = 0;
+        for (int i = desde; i < desde + longitud; i++) {
+            h = 31 * h + texto[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    T buscar(int hash, char[] texto, int desde, int longitud) {
+        Entrada<T> entrada = entradas[hash & mascara];
+        if (entrada != null && Arrays.equals(entrada.clave(), 0, entrada.clave().length, texto, desde, desde + longitud)) {
+            return entrada.valor();
+        }
+        return null;
+    }
+
+    void guardar(int hash, char[] texto, int desde, int longitud, T valor) {
+        if (longitud <= MAX_LONGITUD) {
+            entradas[hash & mascara] = new Entrada<>(Arrays.copyOfRange(texto, desde, desde + longitud), valor);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.kafka.serde;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Primitivas de codificación compacta: varints zigzag, strings UTF-8 con longitud,
+ * decimales como escala + valor sin escala y fechas como segundos + nanos.
+ */
+public final class CodecBinario {
+
+    private CodecBinario() {
+    }
+
+    /**
+     * Buffer de escritura que crece según se necesita.
+     */
+    public static final class Salida {
+
+        private byte[] datos;
+        private int posicion;
+
+        public Salida(int capacidadInicial) {
+            this.datos = new byte[capacidadInicial];
+        }
+
+        public void reiniciar() {
+            posicion = 0;
+        }
+
+        public int posicion() {
+            return posicion;
+        }
+
+        public byte[] copiar() {
+            return Arrays.copyOf(datos, posicion);
+        }
+
+        public void escribirByte(int valor) {
+            asegurar(1);
+            datos[posicion++] = (byte) valor;
+        }
+
+        public void escribirBytes(byte[] valor) {
+            asegurar(valor.length);
+            System.arraycopy(valor, 0, datos, posicion, valor.length);
+            posicion += valor.length;
+        }
+
+        public void escribirLongFijo(long valor) {
+            asegurar(8);
+            for (int i = 7; i >= 0; i--) {
+                datos[posicion++] = (byte) (valor >>> (i * 8));
+            }
+        }
+
+        public void escribirByteEn(int indice, int valor) {
+            datos[indice] = (byte) valor;
+        }
+
+        public void escribirVarLong(long valor) {
+            long zigzag = (valor << 1) ^ (valor >> 63);
+            asegurar(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                datos[posicion++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            datos[posicion++] = (byte) zigzag;
+        }
+
+        public void escribirString(String valor) {
+            byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+            escribirVarLong(bytes.length);
+            escribirBytes(bytes);
+        }
+
+        public void escribirDecimal(BigDecimal valor) {
+            escribirVarLong(valor.scale());
+            BigInteger sinEscala = valor.unscaledValue();
+            if (sinEscala.bitLength() < 64) {
+                escribirByte(0);
+                escribirVarLong(sinEscala.longValue());
+            } else {
+                escribirByte(1);
+                byte[] bytes = sinEscala.toByteArray();
+                escribirVarLong(bytes.length);
+                escribirBytes(bytes);
+            }
+        }
+
+        public void escribirFecha(LocalDateTime valor) {
+            escribirVarLong(valor.toEpochSecond(ZoneOffset.UTC));
+            escribirVarLong(valor.getNano());
+        }
+
+        private void asegurar(int adicionales) {
+            if (posicion + adicionales > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length * 2, posicion + adicionales));
+            }
+        }
+    }
+
+    public static long leerLongFijo(ByteBuffer buffer) {
+        return buffer.getLong();
+    }
+
+    public static long leerVarLong(ByteBuffer buffer) {
+        long zigzag = 0;
+        int desplazamiento = 0;
+        while (true) {
+            byte b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << desplazamiento;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            desplazamiento += 7;
+            if (desplazamiento > 63) {
+                throw new IllegalArgumentException("Varint mal formado");
+            }
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public static String leerString(ByteBuffer buffer) {
+        int longitud = (int) leerVarLong(buffer);
+        String valor;
+        if (buffer.hasArray()) {
+            valor = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), longitud,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + longitud);
+        } else {
+            byte[] bytes = new byte[longitud];
+            buffer.get(bytes);
+            valor = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return valor;
+    }
+
+    public static BigDecimal leerDecimal(ByteBuffer buffer) {
+        int escala = (int) leerVarLong(buffer);
+        if (buffer.get() == 0) {
+            return BigDecimal.valueOf(leerVarLong(buffer), escala);
+        }
+        byte[] bytes = new byte[(int) leerVarLong(buffer)];
+        buffer.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), escala);
+    }
+
+    public static LocalDateTime leerFecha(ByteBuffer buffer) {
+        long segundos = leerVarLong(buffer);
+        int nanos = (int) leerVarLong(buffer);
+        return LocalDateTime.ofEpochSecond(segundos, nanos, ZoneOffset.UTC);
+    }
+}
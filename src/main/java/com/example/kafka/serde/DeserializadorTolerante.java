@@ -0,0 +1,51 @@
+package com.example.kafka.serde;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ErrorHandlingDeserializer} que conserva la lectura directa del buffer del
+ * fetch: el de Spring solo implementa las variantes con byte[], así que cada registro
+ * se copiaría antes de leerse. Un registro que no se puede leer (p. ej. en formato
+ * binario con una huella que el registro de esquemas aún no conoce) no hace fallar el
+ * poll ni bloquea la partición: llega con valor null y la excepción en la cabecera
+ * {@link #CABECERA_EXCEPCION_VALOR}.
+ */
+public class DeserializadorTolerante extends ErrorHandlingDeserializer<Object> {
+
+    /**
+     * La cabecera en la que {@link ErrorHandlingDeserializer} deja la excepción del valor
+     * (la constante de {@code SerializationUtils} está obsoleta).
+     */
+    public static final String CABECERA_EXCEPCION_VALOR = "springDeserializerExceptionValue";
+
+    private final Deserializer<Object> delegado;
+
+    public DeserializadorTolerante(Deserializer<Object> delegado) {
+        super(delegado);
+        this.delegado = delegado;
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, ByteBuffer data) {
+        try {
+            return delegado.deserialize(topic, headers, data != null ? data.duplicate() : null);
+        } catch (RuntimeException e) {
+            // Solo en el fallo se copia: el de Spring repite la lectura y deja la cabecera
+            return super.deserialize(topic, headers, Utils.toNullableArray(data));
+        }
+    }
+
+    /**
+     * El valor del registro no se pudo leer; no es un tombstone aunque llegue null.
+     */
+    public static boolean esIlegible(ConsumerRecord<?, ?> record) {
+        return record.value() == null
+                && record.headers().lastHeader(CABECERA_EXCEPCION_VALOR) != null;
+    }
+}
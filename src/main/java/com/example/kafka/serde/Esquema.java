@@ -0,0 +1,51 @@
+package com.example.kafka.serde;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Descripción versionada de los campos de un modelo en el formato binario.
+ * Se identifica en el cable por su huella de 64 bits.
+ */
+public record Esquema(String tipo, int version, List<Campo> campos) {
+
+    public record Campo(String nombre, TipoCampo tipo) {
+    }
+
+    /**
+     * Representación canónica, usada para la huella y para persistir el esquema.
+     * Formato: {@code tipo|version|campo:TIPO,campo:TIPO}
+     */
+    public String canonico() {
+        return tipo + "|" + version + "|" + campos.stream()
+                .map(c -> c.nombre() + ":" + c.tipo().name())
+                .collect(Collectors.joining(","));
+    }
+
+    public long huella() {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(canonico().getBytes(StandardCharsets.UTF_8));
+            long huella = 0;
+            for (int i = 0; i < 8; i++) {
+                huella = (huella << 8) | (hash[i] & 0xFF);
+            }
+            return huella;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    public static Esquema desdeCanonico(String canonico) {
+        String[] partes = canonico.split("\\|", 3);
+        List<Campo> campos = partes[2].isEmpty() ? List.of() : Arrays.stream(partes[2].split(","))
+                .map(c -> c.split(":"))
+                .map(c -> new Campo(c[0], TipoCampo.valueOf(c[1])))
+                .toList();
+        return new Esquema(partes[0], Integer.parseInt(partes[1]), campos);
+    }
+}
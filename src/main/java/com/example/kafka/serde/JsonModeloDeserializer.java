@@ -0,0 +1,180 @@
+package com.example.kafka.serde;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.deser.std.NumberDeserializers;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Lee en JSON los modelos conocidos con un {@link ObjectReader} ya ligado a su clase,
+ * elegido comparando los bytes de la cabecera de tipo: sin resolver la clase por nombre
+ * ni comprobar paquetes de confianza en cada registro. Lee directamente del buffer del
+ * fetch y reutiliza las fechas y los importes que se repiten en lugar de volver a
+ * parsearlos. Los registros de otros tipos, o sin cabecera de tipo, se delegan en el
+ * deserializador JSON de Kafka.
+ */
+public class JsonModeloDeserializer implements Deserializer<Object> {
+
+    private static final int TAMANO_CACHE = 1024;
+
+    private final Deserializer<Object> resto;
+    private final Lector[] lectores;
+
+    public JsonModeloDeserializer(ObjectMapper objectMapper, Deserializer<Object> resto) {
+        this.resto = resto;
+        // Copia: los deserializadores con caché solo se usan para los modelos
+        ObjectMapper mapper = objectMapper.copy().registerModule(new SimpleModule("cache-valores")
+                .addDeserializer(LocalDateTime.class, new FechaCacheada())
+                .addDeserializer(BigDecimal.class, new DecimalCacheado()));
+        this.lectores = ModeloBinario.TODOS.stream()
+                .map(modelo -> new Lector(modelo.clase().getName().getBytes(StandardCharsets.UTF_8),
+                        mapper.readerFor(modelo.clase())))
+                .toArray(Lector[]::new);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        resto.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return resto.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        Lector lector = data != null ? lector(headers) : null;
+        if (lector == null) {
+            return resto.deserialize(topic, headers, data);
+        }
+        try {
+            return lector.leido(headers, lector.reader().readValue(data));
+        } catch (IOException e) {
+            throw new SerializationException("JSON no válido para " + lector.nombre(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, ByteBuffer data) {
+        Lector lector = data != null ? lector(headers) : null;
+        if (lector == null) {
+            return resto.deserialize(topic, headers, data);
+        }
+        try {
+            Object valor = data.hasArray()
+                    ? lector.reader().readValue(data.array(), data.arrayOffset() + data.position(), data.remaining())
+                    : lector.reader().readValue(new ByteBufferBackedInputStream(data.duplicate()));
+            return lector.leido(headers, valor);
+        } catch (IOException e) {
+            throw new SerializationException("JSON no válido para " + lector.nombre(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        resto.close();
+    }
+
+    private Lector lector(Headers headers) {
+        Header header = headers != null ? headers.lastHeader(JsonModeloSerializer.HEADER_TIPO) : null;
+        if (header == null) {
+            return null;
+        }
+        byte[] tipo = header.value();
+        for (Lector lector : lectores) {
+            if (Arrays.equals(lector.tipo(), tipo)) {
+                return lector;
+            }
+        }
+        return null;
+    }
+
+    private record Lector(byte[] tipo, ObjectReader reader) {
+
+        String nombre() {
+            return new String(tipo, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Como el deserializador de Kafka, quita la cabecera de tipo una vez leído.
+         */
+        Object leido(Headers headers, Object valor) {
+            headers.remove(JsonModeloSerializer.HEADER_TIPO);
+            return valor;
+        }
+    }
+
+    /**
+     * Fechas ISO: las que se repiten se toman de la caché; el resto, y las escritas como
+     * array, las parsea el deserializador de JavaTimeModule.
+     */
+    private static final class FechaCacheada extends JsonDeserializer<LocalDateTime> {
+
+        private final CacheTexto<LocalDateTime> cache = new CacheTexto<>(TAMANO_CACHE);
+
+        @Override
+        public LocalDateTime deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() != JsonToken.VALUE_STRING) {
+                return LocalDateTimeDeserializer.INSTANCE.deserialize(p, ctxt);
+            }
+            char[] texto = p.getTextCharacters();
+            int desde = p.getTextOffset();
+            int longitud = p.getTextLength();
+            int hash = CacheTexto.hash(texto, desde, longitud);
+            LocalDateTime fecha = cache.buscar(hash, texto, desde, longitud);
+            if (fecha == null) {
+                fecha = LocalDateTimeDeserializer.INSTANCE.deserialize(p, ctxt);
+                if (fecha != null) {
+                    cache.guardar(hash, texto, desde, longitud, fecha);
+                }
+            }
+            return fecha;
+        }
+    }
+
+    /**
+     * Importes: el texto del número se compara con la caché antes de construir el
+     * BigDecimal.
+     */
+    private static final class DecimalCacheado extends JsonDeserializer<BigDecimal> {
+
+        private final CacheTexto<BigDecimal> cache = new CacheTexto<>(TAMANO_CACHE);
+
+        @Override
+        public BigDecimal deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken token = p.currentToken();
+            if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                return NumberDeserializers.BigDecimalDeserializer.instance.deserialize(p, ctxt);
+            }
+            char[] texto = p.getTextCharacters();
+            int desde = p.getTextOffset();
+            int longitud = p.getTextLength();
+            int hash = CacheTexto.hash(texto, desde, longitud);
+            BigDecimal importe = cache.buscar(hash, texto, desde, longitud);
+            if (importe == null) {
+                importe = p.getDecimalValue();
+                cache.guardar(hash, texto, desde, longitud, importe);
+            }
+            return importe;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.kafka.serde;
+
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serializa en JSON los modelos conocidos con un {@link ObjectWriter} ya ligado a su
+ * clase, construido sobre el ObjectMapper de la aplicación, y escribe en un buffer
+ * reutilizado por hilo. El resultado es el mismo que el del serializador JSON de Kafka
+ * (fechas ISO y cabecera de tipo), de modo que cualquier consumidor puede leerlo; el
+ * resto de valores se delega en ese serializador.
+ */
+public class JsonModeloSerializer implements Serializer<Object> {
+
+    /** La cabecera de tipo que lee el deserializador JSON de Spring Kafka. */
+    static final String HEADER_TIPO = "__TypeId__";
+
+    private final Serializer<Object> resto;
+    private final Map<Class<?>, Escritor> escritores = new HashMap<>();
+    private final ThreadLocal<ByteArrayBuilder> salidas = ThreadLocal.withInitial(() -> new ByteArrayBuilder(256));
+
+    public JsonModeloSerializer(ObjectMapper objectMapper, Serializer<Object> resto) {
+        this.resto = resto;
+        for (ModeloBinario<?> modelo : ModeloBinario.TODOS) {
+            ObjectWriter writer = objectMapper.writerFor(modelo.clase())
+                    .without(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+            escritores.put(modelo.clase(),
+                    new Escritor(modelo.clase().getName().getBytes(StandardCharsets.UTF_8), writer));
+        }
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        resto.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        Escritor escritor = data != null ? escritores.get(data.getClass()) : null;
+        return escritor != null ? escribir(escritor, data) : resto.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        Escritor escritor = data != null ? escritores.get(data.getClass()) : null;
+        if (escritor == null) {
+            return resto.serialize(topic, headers, data);
+        }
+        headers.remove(HEADER_TIPO);
+        headers.add(HEADER_TIPO, escritor.tipo());
+        return escribir(escritor, data);
+    }
+
+    @Override
+    public void close() {
+        resto.close();
+    }
+
+    private byte[] escribir(Escritor escritor, Object data) {
+        ByteArrayBuilder salida = salidas.get();
+        try {
+            escritor.writer().writeValue(salida, data);
+            return salida.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("No se pudo serializar " + data.getClass().getSimpleName(), e);
+        } finally {
+            // Conserva el bloque ya reservado para el siguiente registro del hilo
+            salida.reset();
+        }
+    }
+
+    private record Escritor(byte[] tipo, ObjectWriter writer) {
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.kafka.serde;
+
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Asocia una clase del modelo con su esquema binario actual y con los accesores
+ * de cada campo.
+ */
+public final class ModeloBinario<T> {
+
+    public static final ModeloBinario<Pedido> PEDIDO = new ModeloBinario<>(Pedido.class, "Pedido", 1, Pedido::new)
+            .campo("id", TipoCampo.LONG, Pedido::getId, Pedido::setId)
+            .campo("usuarioId", TipoCampo.LONG, Pedido::getUsuarioId, Pedido::setUsuarioId)
+            .campo("monto", TipoCampo.DECIMAL, Pedido::getMonto, Pedido::setMonto)
+            .campo("estado", TipoCampo.STRING, Pedido::getEstado, Pedido::setEstado)
+            .campo("fechaPedido", TipoCampo.FECHA, Pedido::getFechaPedido, Pedido::setFechaPedido);
+
+    public static final ModeloBinario<Usuario> USUARIO = new ModeloBinario<>(Usuario.class, "Usuario", 1, Usuario::new)
+            .campo("id", TipoCampo.LONG, Usuario::getId, Usuario::setId)
+            .campo("nombre", TipoCampo.STRING, Usuario::getNombre, Usuario::setNombre)
+            .campo("email", TipoCampo.STRING, Usuario::getEmail, Usuario::setEmail)
+            .campo("pais", TipoCampo.STRING, Usuario::getPais, Usuario::setPais)
+            .campo("fechaCreacion", TipoCampo.FECHA, Usuario::getFechaCreacion, Usuario::setFechaCreacion);
+
+    public static final List<ModeloBinario<?>> TODOS = List.of(PEDIDO, USUARIO);
+
+    private final Class<T> clase;
+    private final String tipo;
+    private final int version;
+    private final Supplier<T> constructor;
+    private final List<Esquema.Campo> campos = new ArrayList<>();
+    private final List<Function<T, Object>> getters = new ArrayList<>();
+    private final List<BiConsumer<T, Object>> setters = new ArrayList<>();
+
+    private ModeloBinario(Class<T> clase, String tipo, int version, Supplier<T> constructor) {
+        this.clase = clase;
+        this.tipo = tipo;
+        this.version = version;
+        this.constructor = constructor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> ModeloBinario<T> campo(String nombre, TipoCampo tipoCampo,
+                                       Function<T, V> getter, BiConsumer<T, V> setter) {
+        campos.add(new Esquema.Campo(nombre, tipoCampo));
+        getters.add((Function<T, Object>) getter);
+        setters.add((objeto, valor) -> setter.accept(objeto, (V) valor));
+        return this;
+    }
+
+    public Class<T> clase() {
+        return clase;
+    }
+
+    public String tipo() {
+        return tipo;
+    }
+
+    public Esquema esquema() {
+        return new Esquema(tipo, version, List.copyOf(campos));
+    }
+
+    T nuevo() {
+        return constructor.get();
+    }
+
+    Object leerCampo(T objeto, int indice) {
+        return getters.get(indice).apply(objeto);
+    }
+
+    /**
+     * Setter del campo con ese nombre y tipo, o null si este modelo no lo conoce.
+     */
+    BiConsumer<T, Object> setter(Esquema.Campo campo) {
+        int indice = campos.indexOf(campo);
+        return indice >= 0 ? setters.get(indice) : null;
+    }
+
+    int numeroCampos() {
+        return campos.size();
+    }
+
+    TipoCampo tipoCampo(int indice) {
+        return campos.get(indice).tipo();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.kafka.serde;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sustituto local de un schema registry: guarda cada esquema bajo su huella en un
+ * fichero de propiedades compartido por productores y consumidores.
+ */
+@Slf4j
+public class RegistroEsquemas {
+
+    private final Path fichero;
+    private final Map<Long, Esquema> esquemas = new ConcurrentHashMap<>();
+
+    public RegistroEsquemas(Path fichero) {
+        this.fichero = fichero;
+        cargar();
+    }
+
+    /**
+     * Registra el esquema (si no existía) y devuelve su huella.
+     */
+    public long registrar(Esquema esquema) {
+        long huella = esquema.huella();
+        if (esquemas.putIfAbsent(huella, esquema) == null) {
+            guardar(huella, esquema);
+            log.info("Esquema registrado: {} v{} con huella {}",
+                    esquema.tipo(), esquema.version(), Long.toHexString(huella));
+        }
+        return huella;
+    }
+
+    /**
+     * Busca el esquema en memoria y, si no está, relee el fichero por si otra
+     * instancia lo registró después.
+     */
+    public Esquema buscar(long huella) {
+        Esquema esquema = esquemas.get(huella);
+        if (esquema == null) {
+            cargar();
+            esquema = esquemas.get(huella);
+        }
+        if (esquema == null) {
+            throw new IllegalStateException("Esquema desconocido con huella " + Long.toHexString(huella));
+        }
+        return esquema;
+    }
+
+    private synchronized void cargar() {
+        if (!Files.exists(fichero)) {
+            return;
+        }
+        Properties propiedades = new Properties();
+        try (Reader reader = Files.newBufferedReader(fichero, StandardCharsets.UTF_8)) {
+            propiedades.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer el registro de esquemas " + fichero, e);
+        }
+        propiedades.forEach((clave, valor) -> esquemas.putIfAbsent(
+                Long.parseUnsignedLong((String) clave, 16), Esquema.desdeCanonico((String) valor)));
+    }
+
+    private synchronized void guardar(long huella, Esquema esquema) {
+        // Releer antes de escribir para no perder lo registrado por otras instancias
+        cargar();
+        Properties propiedades = new Properties();
+        esquemas.forEach((h, e) -> propiedades.setProperty(Long.toHexString(h), e.canonico()));
+        propiedades.setProperty(Long.toHexString(huella), esquema.canonico());
+
+        try {
+            Path padre = fichero.toAbsolutePath().getParent();
+            Files.createDirectories(padre);
+            Path temporal = Files.createTempFile(padre, "esquemas", ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+                propiedades.store(writer, "Registro local de esquemas binarios");
+            }
+            Files.move(temporal, fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir el registro de esquemas " + fichero, e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.kafka.serde;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+/**
+ * Tipos de campo soportados por el formato binario.
+ */
+public enum TipoCampo {
+
+    LONG {
+        @Override
+        void escribir(CodecBinario.Salida salida, Object valor) {
+            salida.escribirVarLong((Long) valor);
+        }
+
+        @Override
+        Object leer(ByteBuffer buffer) {
+            return CodecBinario.leerVarLong(buffer);
+        }
+    },
+
+    STRING {
+        @Override
+        void escribir(CodecBinario.Salida salida, Object valor) {
+            salida.escribirString((String) valor);
+        }
+
+        @Override
+        Object leer(ByteBuffer buffer) {
+            return CodecBinario.leerString(buffer);
+        }
+    },
+
+    DECIMAL {
+        @Override
+        void escribir(CodecBinario.Salida salida, Object valor) {
+            salida.escribirDecimal((BigDecimal) valor);
+        }
+
+        @Override
+        Object leer(ByteBuffer buffer) {
+            return CodecBinario.leerDecimal(buffer);
+        }
+    },
+
+    FECHA {
+        @Override
+        void escribir(CodecBinario.Salida salida, Object valor) {
+            salida.escribirFecha((LocalDateTime) valor);
+        }
+
+        @Override
+        Object leer(ByteBuffer buffer) {
+            return CodecBinario.leerFecha(buffer);
+        }
+    };
+
+    abstract void escribir(CodecBinario.Salida salida, Object valor);
+
+    abstract Object leer(ByteBuffer buffer);
+}
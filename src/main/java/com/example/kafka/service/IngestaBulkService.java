@@ -0,0 +1,213 @@
+package com.example.kafka.service;
+
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import com.example.kafka.producer.PasarelaEnvios;
+import com.example.kafka.producer.PasarelaSaturadaException;
+import com.example.kafka.producer.SpoolEnvios;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.InputCoercionException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Ingesta masiva de entidades en NDJSON: se leen del cuerpo de la petición una a una con
+ * el parser de streaming de Jackson y se envían a Kafka sin esperar cada confirmación.
+ * Los envíos pasan por {@link PasarelaEnvios}: sin permisos libres la lectura del cuerpo
+ * espera, y si la espera se agota la ingesta se interrumpe.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IngestaBulkService {
+
+    private static final int MAX_ERRORES_REPORTADOS = 20;
+
+    private final ObjectMapper objectMapper;
+    private final PasarelaEnvios pasarelaEnvios;
+
+    public CompletableFuture<Map<String, Object>> ingestarPedidos(InputStream cuerpo) {
+        return ingestar(cuerpo, Pedido.class, pedido -> {
+            if (pedido.getFechaPedido() == null) {
+                pedido.setFechaPedido(LocalDateTime.now());
+            }
+            if (pedido.getEstado() == null || pedido.getEstado().isEmpty()) {
+                pedido.setEstado("PENDIENTE");
+            }
+            return pasarelaEnvios.enviarPedidoEnLote(pedido);
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> ingestarUsuarios(InputStream cuerpo) {
+        return ingestar(cuerpo, Usuario.class, usuario -> {
+            if (usuario.getFechaCreacion() == null) {
+                usuario.setFechaCreacion(LocalDateTime.now());
+            }
+            return pasarelaEnvios.enviarUsuarioEnLote(usuario);
+        });
+    }
+
+    private <T> CompletableFuture<Map<String, Object>> ingestar(
+            InputStream cuerpo,
+            Class<T> tipo,
+            Function<T, CompletableFuture<SendResult<String, Object>>> enviar) {
+
+        ResumenIngesta resumen = new ResumenIngesta();
+        ObjectReader reader = objectMapper.readerFor(tipo);
+        long linea = 0;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(cuerpo)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                linea++;
+                if (token != JsonToken.START_OBJECT) {
+                    resumen.rechazar(linea, "se esperaba un objeto JSON");
+                    parser.skipChildren();
+                    continue;
+                }
+
+                T entidad;
+                try {
+                    entidad = reader.readValue(parser);
+                } catch (JsonMappingException | InputCoercionException e) {
+                    // El JSON es válido pero no encaja con la entidad: se rechaza solo esta
+                    // línea y se avanza hasta el cierre de su objeto
+                    resumen.rechazar(linea, "entidad inválida: " + e.getOriginalMessage());
+                    while (parser.getParsingContext().getNestingDepth() > 0 && parser.nextToken() != null) {
+                        // descartar el resto del objeto
+                    }
+                    continue;
+                }
+                try {
+                    resumen.enviado();
+                    long numero = linea;
+                    enviar.apply(entidad).whenComplete((result, ex) -> resumen.completado(numero, result, ex));
+                } catch (PasarelaSaturadaException e) {
+                    // La pasarela sigue llena tras la espera: no se lee más del cuerpo
+                    resumen.completado(linea, null, e);
+                    resumen.interrumpir();
+                    log.warn("Ingesta bulk interrumpida en la línea {}: {}", linea, e.getMessage());
+                    break;
+                } catch (Exception e) {
+                    // Fallo síncrono del envío (entidad sin id, buffer del productor agotado...)
+                    resumen.completado(linea, null, e);
+                }
+            }
+        } catch (IOException e) {
+            // JSON mal formado: no es posible resincronizar el stream, se corta la ingesta
+            log.error("Error leyendo NDJSON en la línea {}", linea, e);
+            resumen.rechazar(linea, "JSON inválido: " + e.getMessage());
+        }
+
+        return resumen.finLectura();
+    }
+
+    /**
+     * Acumula el resultado de los envíos a medida que el broker los confirma, sin
+     * retener los registros ni sus futures.
+     */
+    private static final class ResumenIngesta {
+
+        // Empieza en 1: la propia lectura del cuerpo cuenta como operación pendiente
+        private final AtomicLong pendientes = new AtomicLong(1);
+        private final CompletableFuture<Map<String, Object>> terminado = new CompletableFuture<>();
+
+        private long aceptados;
+        private long enSpool;
+        private long fallidos;
+        private boolean interrumpida;
+        private final Map<String, long[]> rangos = new TreeMap<>();
+        private final List<String> errores = new ArrayList<>();
+
+        void enviado() {
+            pendientes.incrementAndGet();
+        }
+
+        synchronized void rechazar(long linea, String motivo) {
+            fallidos++;
+            anotarError(linea, motivo);
+        }
+
+        synchronized void interrumpir() {
+            interrumpida = true;
+        }
+
+        void completado(long linea, SendResult<String, Object> result, Throwable ex) {
+            synchronized (this) {
+                if (ex == null && SpoolEnvios.enSpool(result)) {
+                    // Sin partición ni offset hasta que se reenvíe desde el spool
+                    aceptados++;
+                    enSpool++;
+                } else if (ex == null) {
+                    aceptados++;
+                    RecordMetadata metadata = result.getRecordMetadata();
+                    long[] rango = rangos.computeIfAbsent(metadata.topic() + "-" + metadata.partition(),
+                            k -> new long[]{Long.MAX_VALUE, Long.MIN_VALUE});
+                    rango[0] = Math.min(rango[0], metadata.offset());
+                    rango[1] = Math.max(rango[1], metadata.offset());
+                } else {
+                    fallidos++;
+                    anotarError(linea, ex.getMessage());
+                }
+            }
+            terminarSiListo();
+        }
+
+        CompletableFuture<Map<String, Object>> finLectura() {
+            terminarSiListo();
+            return terminado;
+        }
+
+        private void anotarError(long linea, String motivo) {
+            if (errores.size() < MAX_ERRORES_REPORTADOS) {
+                errores.add("línea " + linea + ": " + motivo);
+            }
+        }
+
+        private void terminarSiListo() {
+            if (pendientes.decrementAndGet() == 0) {
+                terminado.complete(resultado());
+            }
+        }
+
+        private synchronized Map<String, Object> resultado() {
+            Map<String, Map<String, Long>> offsets = new LinkedHashMap<>();
+            rangos.forEach((particion, rango) -> {
+                Map<String, Long> valores = new LinkedHashMap<>();
+                valores.put("offsetInicial", rango[0]);
+                valores.put("offsetFinal", rango[1]);
+                offsets.put(particion, valores);
+            });
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("status", interrumpida ? "unavailable" : fallidos == 0 ? "success" : "partial");
+            response.put("interrumpida", interrumpida);
+            response.put("aceptados", aceptados);
+            response.put("enSpool", enSpool);
+            response.put("fallidos", fallidos);
+            response.put("offsets", offsets);
+            response.put("errores", errores);
+            response.put("timestamp", LocalDateTime.now());
+            return response;
+        }
+    }
+}
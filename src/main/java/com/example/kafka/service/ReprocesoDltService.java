@@ -0,0 +1,171 @@
+package com.example.kafka.service;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reproceso en bloque de pedidos-topic-dlt: los registros se reenvían al primer topic de
+ * reintento, no a pedidos-topic, para no sobrescribir en el topic compactado una versión
+ * más reciente del pedido con la que falló. Si vuelven a fallar recorren de nuevo los
+ * reintentos y acaban otra vez en el DLT.
+ * <p>
+ * Lo ya reprocesado se recuerda con los offsets confirmados del grupo
+ * {@value #GROUP_ID}; solo se confirman los registros cuyo reenvío confirmó el broker.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReprocesoDltService {
+
+    private static final String GROUP_ID = "pedidos-dlt-reproceso";
+
+    private static final Duration POLL = Duration.ofMillis(500);
+
+    private final ConsumerFactory<String, Object> consumerFactory;
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    private final KafkaMetricas metricas;
+
+    @Value("${kafka.topics.pedidos}")
+    private String pedidosTopic;
+
+    @Value("${kafka.consumer.pedidos.reintentos.espera-inicial-ms:1000}")
+    private long esperaInicialMs;
+
+    /**
+     * Reenvía hasta {@code limite} registros del DLT de los que había al empezar; lo que
+     * llegue mientras tanto queda para la siguiente llamada.
+     */
+    public synchronized Map<String, Object> reprocesarPedidos(int limite) {
+        String dltTopic = pedidosTopic + "-dlt";
+        // Mismo nombre que genera @RetryableTopic con SUFFIX_WITH_DELAY_VALUE
+        String destino = pedidosTopic + "-retry-" + esperaInicialMs;
+        long inicio = System.currentTimeMillis();
+
+        List<Reenvio> reenvios = new ArrayList<>();
+        long omitidos = 0;
+        long restantes = 0;
+
+        try (Consumer<String, Object> consumer = consumerFactory.createConsumer(GROUP_ID, "dlt-reproceso")) {
+            List<PartitionInfo> info = consumer.partitionsFor(dltTopic);
+            List<TopicPartition> particiones = info == null ? List.of() : info.stream()
+                    .map(p -> new TopicPartition(p.topic(), p.partition()))
+                    .toList();
+            consumer.assign(particiones);
+
+            Map<TopicPartition, OffsetAndMetadata> confirmados = consumer.committed(Set.copyOf(particiones));
+            Map<TopicPartition, Long> finales = consumer.endOffsets(particiones);
+            for (TopicPartition tp : particiones) {
+                OffsetAndMetadata confirmado = confirmados.get(tp);
+                if (confirmado != null) {
+                    consumer.seek(tp, confirmado.offset());
+                } else {
+                    consumer.seekToBeginning(List.of(tp));
+                }
+            }
+
+            // Siguiente offset a confirmar por partición: el posterior al último registro tratado
+            Map<TopicPartition, Long> siguientes = new HashMap<>();
+            while (reenvios.size() + omitidos < limite && hayPendientes(consumer, particiones, finales)) {
+                for (ConsumerRecord<String, Object> record : consumer.poll(POLL)) {
+                    TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+                    if (reenvios.size() + omitidos >= limite || record.offset() >= finales.get(tp)) {
+                        // Se recorre en orden: lo que queda de la partición tampoco se trata
+                        continue;
+                    }
+                    if (record.value() == null) {
+                        omitidos++;
+                    } else {
+                        reenvios.add(new Reenvio(tp, record.offset(),
+                                kafkaTemplate.send(destino, record.key(), record.value())));
+                    }
+                    siguientes.put(tp, record.offset() + 1);
+                }
+            }
+
+            Map<TopicPartition, OffsetAndMetadata> aConfirmar = offsetsConfirmables(reenvios, siguientes);
+            if (!aConfirmar.isEmpty()) {
+                consumer.commitSync(aConfirmar);
+            }
+            for (TopicPartition tp : particiones) {
+                OffsetAndMetadata confirmado = aConfirmar.getOrDefault(tp, confirmados.get(tp));
+                restantes += finales.get(tp) - (confirmado != null ? confirmado.offset()
+                        : consumer.beginningOffsets(List.of(tp)).get(tp));
+            }
+        }
+
+        long fallidos = reenvios.stream().filter(Reenvio::fallido).count();
+        log.info("DLT {}: {} registros reenviados a {} ({} fallidos, {} omitidos) en {} ms, quedan {}",
+                dltTopic, reenvios.size() - fallidos, destino, fallidos, omitidos,
+                System.currentTimeMillis() - inicio, restantes);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", fallidos == 0 ? "success" : "partial");
+        response.put("origen", dltTopic);
+        response.put("destino", destino);
+        response.put("reenviados", reenvios.size() - fallidos);
+        response.put("fallidos", fallidos);
+        response.put("omitidos", omitidos);
+        response.put("restantes", restantes);
+        response.put("timestamp", LocalDateTime.now());
+        return response;
+    }
+
+    private static boolean hayPendientes(Consumer<?, ?> consumer, List<TopicPartition> particiones,
+                                         Map<TopicPartition, Long> finales) {
+        return particiones.stream().anyMatch(tp -> consumer.position(tp) < finales.get(tp));
+    }
+
+    /**
+     * Espera a que el broker confirme los reenvíos y devuelve, por partición, el offset
+     * hasta el que se puede confirmar: el primer reenvío fallido o el siguiente al último
+     * registro tratado.
+     */
+    private Map<TopicPartition, OffsetAndMetadata> offsetsConfirmables(
+            List<Reenvio> reenvios, Map<TopicPartition, Long> siguientes) {
+
+        Map<TopicPartition, Long> hasta = new HashMap<>(siguientes);
+
+        CompletableFuture.allOf(reenvios.stream().map(Reenvio::envio).toArray(CompletableFuture[]::new))
+                .exceptionally(ex -> null)
+                .join();
+        for (Reenvio reenvio : reenvios) {
+            metricas.registrarReprocesoDlt(reenvio.particion().topic(), !reenvio.fallido());
+            if (reenvio.fallido()) {
+                hasta.merge(reenvio.particion(), reenvio.offset(), Math::min);
+            }
+        }
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        hasta.forEach((tp, offset) -> offsets.put(tp, new OffsetAndMetadata(offset)));
+        return offsets;
+    }
+
+    private record Reenvio(TopicPartition particion, long offset, CompletableFuture<?> envio) {
+
+        boolean fallido() {
+            return envio.isCompletedExceptionally();
+        }
+    }
+}
@@ -1,37 +1,220 @@
 package com.example.kafka.service;
 
+import com.example.kafka.metrics.KafkaMetricas;
 import com.example.kafka.model.Pedido;
 import com.example.kafka.model.Usuario;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaOperations;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envío atómico de pares pedido-usuario con el productor transaccional. La auditoría
+ * la deriva después {@code AuditoriaPedidos} a partir de pedidos-topic.
+ * <p>
+ * En modo agrupado los pares de llamadores concurrentes se encolan y cada hilo de envío
+ * los confirma en una sola transacción al llegar a {@code max-pares} o al pasar
+ * {@code espera-max-ms} desde el primero, repartiendo así el coste del commit. Cada
+ * llamador recibe su propio future, que se completa cuando la transacción que contiene
+ * su par se confirma.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class TransaccionService {
 
     private final KafkaTemplate<String, Object> kafkaTemplate;
 
-    @Transactional
+    private final KafkaMetricas metricas;
+
+    @Value("${kafka.topics.pedidos}")
+    private String pedidosTopic;
+
+    @Value("${kafka.topics.usuarios}")
+    private String usuariosTopic;
+
+    @Value("${kafka.transacciones.modo:agrupado}")
+    private String modo;
+
+    @Value("${kafka.transacciones.hilos:4}")
+    private int hilos;
+
+    @Value("${kafka.transacciones.max-pares:500}")
+    private int maxPares;
+
+    @Value("${kafka.transacciones.espera-max-ms:20}")
+    private long esperaMaxMs;
+
+    @Value("${kafka.transacciones.capacidad-cola:100000}")
+    private int capacidadCola;
+
+    private BlockingQueue<Solicitud> cola;
+    private final List<Thread> enviadores = new ArrayList<>();
+    private volatile boolean detenido;
+
+    public TransaccionService(
+            @Qualifier("transactionalKafkaTemplate") KafkaTemplate<String, Object> kafkaTemplate,
+            KafkaMetricas metricas) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.metricas = metricas;
+    }
+
+    @PostConstruct
+    void iniciar() {
+        if (!"agrupado".equals(modo)) {
+            return;
+        }
+        cola = new ArrayBlockingQueue<>(capacidadCola);
+        for (int i = 0; i < hilos; i++) {
+            Thread hilo = new Thread(this::procesarLotes, "transacciones-" + i);
+            hilo.setDaemon(true);
+            hilo.start();
+            enviadores.add(hilo);
+        }
+        log.info("Envío transaccional agrupado con {} hilos, hasta {} pares o {} ms por transacción",
+                hilos, maxPares, esperaMaxMs);
+    }
+
+    @PreDestroy
+    void detener() throws InterruptedException {
+        // Los hilos vacían la cola antes de terminar
+        detenido = true;
+        for (Thread hilo : enviadores) {
+            hilo.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
     public void procesarPedidoConTransaccion(Pedido pedido, Usuario usuario) {
         try {
-            // Iniciar transacción
-            kafkaTemplate.executeInTransaction(operations -> {
-                // Enviar múltiples mensajes en una sola transacción
-                operations.send("pedidos-topic", pedido.getId().toString(), pedido);
-                operations.send("usuarios-topic", usuario.getId().toString(), usuario);
-                operations.send("auditoria-topic", "audit-" + pedido.getId(),
-                        "Pedido y usuario procesados");
-
-                log.info("Transacción completada para pedido: {}", pedido.getId());
-                return true;
-            });
+            enviarEnTransaccion(pedido, usuario).join();
+            log.info("Transacción completada para pedido: {}", pedido.getId());
+        } catch (CompletionException e) {
+            log.error("Error en transacción para pedido: {}", pedido.getId(), e.getCause());
+            throw new RuntimeException("Transacción fallida", e.getCause());
+        }
+    }
+
+    /**
+     * Envía el par en una transacción, sola o agrupada con las de otros llamadores según
+     * el modo. El future se completa con el resultado del envío del pedido tras el commit.
+     */
+    public CompletableFuture<SendResult<String, Object>> enviarEnTransaccion(Pedido pedido, Usuario usuario) {
+        if (pedido == null || pedido.getId() == null || usuario == null || usuario.getId() == null) {
+            // Validado antes de encolar: un par inválido abortaría la transacción de todo el lote
+            throw new IllegalArgumentException("El pedido y el usuario deben tener id");
+        }
+
+        Solicitud solicitud = new Solicitud(pedido, usuario, new CompletableFuture<>());
+        if (cola == null) {
+            confirmar(List.of(solicitud));
+        } else if (detenido || !cola.offer(solicitud)) {
+            solicitud.resultado().completeExceptionally(
+                    new RejectedExecutionException("Cola de transacciones llena o detenida"));
+        }
+        return solicitud.resultado();
+    }
+
+    private void procesarLotes() {
+        List<Solicitud> lote = new ArrayList<>(maxPares);
+        while (!detenido || !cola.isEmpty()) {
+            try {
+                Solicitud primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMaxMs);
+                while (lote.size() < maxPares) {
+                    if (cola.drainTo(lote, maxPares - lote.size()) > 0) {
+                        continue;
+                    }
+                    long restante = limite - System.nanoTime();
+                    Solicitud siguiente = restante > 0 ? cola.poll(restante, TimeUnit.NANOSECONDS) : null;
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                }
+
+                confirmarConAislamiento(lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lote.forEach(s -> s.resultado().completeExceptionally(e));
+                return;
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Si la transacción de un lote aborta se reintenta cada par en su propia transacción,
+     * para que un único par problemático no haga fallar a los demás llamadores.
+     */
+    private void confirmarConAislamiento(List<Solicitud> lote) {
+        if (confirmar(lote) || lote.size() == 1) {
+            return;
+        }
+        log.warn("Transacción de {} pares abortada, se reintenta cada par por separado", lote.size());
+        for (Solicitud solicitud : lote) {
+            confirmar(List.of(solicitud));
+        }
+    }
+
+    /**
+     * Envía el lote en una transacción; solo completa los futures con error cuando el
+     * lote tiene un único par (si no, decide {@link #confirmarConAislamiento}).
+     */
+    private boolean confirmar(List<Solicitud> lote) {
+        long inicio = System.nanoTime();
+        try {
+            List<CompletableFuture<SendResult<String, Object>>> envios = kafkaTemplate.executeInTransaction(
+                    operations -> {
+                        List<CompletableFuture<SendResult<String, Object>>> pedidos = new ArrayList<>(lote.size());
+                        for (Solicitud solicitud : lote) {
+                            pedidos.add(enviarPar(operations, solicitud.pedido(), solicitud.usuario()));
+                        }
+                        return pedidos;
+                    });
+
+            metricas.registrarTransaccion(lote.size(), inicio, null);
+            // Tras el commit todos los envíos están confirmados por el broker
+            for (int i = 0; i < lote.size(); i++) {
+                lote.get(i).resultado().complete(envios.get(i).join());
+            }
+            return true;
         } catch (Exception e) {
-            log.error("Error en transacción para pedido: {}", pedido.getId(), e);
-            throw new RuntimeException("Transacción fallida", e);
+            metricas.registrarTransaccion(lote.size(), inicio, e);
+            if (lote.size() == 1) {
+                log.error("Error en transacción para pedido: {}", lote.get(0).pedido().getId(), e);
+                lote.get(0).resultado().completeExceptionally(e);
+            }
+            return false;
         }
     }
+
+    private CompletableFuture<SendResult<String, Object>> enviarPar(
+            KafkaOperations<String, Object> operations, Pedido pedido, Usuario usuario) {
+        CompletableFuture<SendResult<String, Object>> envioPedido =
+                operations.send(pedidosTopic, pedido.getId().toString(), pedido);
+        operations.send(usuariosTopic, usuario.getId().toString(), usuario);
+        return envioPedido;
+    }
+
+    private record Solicitud(Pedido pedido, Usuario usuario, CompletableFuture<SendResult<String, Object>> resultado) {
+    }
 }
@@ -0,0 +1,705 @@
+package com.example.kafka.store;
+
+import com.example.kafka.config.InstantaneasProperties;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.particionado.ClavesSaladas;
+import com.example.kafka.serde.BinarioDeserializer;
+import com.example.kafka.serde.BinarioSerializer;
+import com.example.kafka.serde.DeserializadorTolerante;
+import com.example.kafka.serde.RegistroEsquemas;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Vista materializada local de pedidos-topic: como el topic está compactado por key,
+ * el último valor de cada id es el estado actual del pedido.
+ * <p>
+ * Cada partición asignada a esta instancia tiene su propio almacén en disco. Al
+ * asignarse, se restaura en otro hilo desde el topic (su changelog) a partir del último
+ * offset aplicado localmente, sin retener el rebalanceo ni pausar la partición: el
+ * listener sigue procesando y la restauración lee hasta pasar el último offset que el
+ * listener ha entregado; a partir de ahí {@code PedidoConsumer} le aplica cada registro
+ * que recibe. Las consultas se sirven solo con los datos locales y no ven la partición
+ * hasta que termina su restauración.
+ * <p>
+ * Todos los pedidos vivos de las particiones asignadas están en memoria: el heap
+ * necesario crece con ellos (unos 250 bytes por pedido, ver
+ * {@code kafka.consumer.pedidos.almacen} en application.yaml), no con el tráfico.
+ * <p>
+ * Periódicamente (o bajo demanda) escribe una {@link Instantanea} de cada partición en
+ * un directorio compartido. Una instancia sin log local, o con un log más antiguo,
+ * carga la instantánea más reciente y solo lee del topic lo posterior a su offset.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(InstantaneasProperties.class)
+public class AlmacenPedidos {
+
+    private static final Duration POLL_RESTAURACION = Duration.ofMillis(500);
+    private static final long ESPERA_REINTENTO_MS = 5_000;
+
+    private final ConsumerFactory<String, Object> consumerFactory;
+    private final RegistroEsquemas registroEsquemas;
+    private final MeterRegistry meterRegistry;
+    private final InstantaneasProperties propiedadesInstantaneas;
+
+    @Value("${kafka.consumer.pedidos.almacen.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${kafka.consumer.pedidos.almacen.directorio:./data/almacen}")
+    private String directorio;
+
+    @Value("${kafka.topics.pedidos:pedidos-topic}")
+    private String topic;
+
+    private final Map<Integer, ParticionPedidos> particiones = new ConcurrentHashMap<>();
+    private final Map<Integer, Restauracion> restauraciones = new ConcurrentHashMap<>();
+    /** Una restauración cancelada termina de cerrar su log antes de que empiece la siguiente. */
+    private final Map<Integer, Object> bloqueos = new ConcurrentHashMap<>();
+
+    private BinarioSerializer serializer;
+    private BinarioDeserializer deserializer;
+    private final RecordHeaders cabecerasBinario = new RecordHeaders();
+    private volatile int particionesTopic;
+
+    private final Object escrituraInstantaneas = new Object();
+    private ExecutorService restaurador;
+    /** Un solo hilo: como mucho una captura de compactación en memoria a la vez. */
+    private ExecutorService compactador;
+    private ScheduledExecutorService planificador;
+    private Timer escrituras;
+
+    @PostConstruct
+    void iniciar() throws IOException {
+        if (!habilitado) {
+            return;
+        }
+        Files.createDirectories(Path.of(directorio));
+        // El almacén siempre guarda el formato binario, sea cual sea el del topic
+        serializer = new BinarioSerializer(registroEsquemas, new JacksonJsonSerializer<>(), true);
+        deserializer = new BinarioDeserializer(registroEsquemas, new JacksonJsonDeserializer<>());
+        cabecerasBinario.add(BinarioSerializer.HEADER_FORMATO, "binario".getBytes(StandardCharsets.UTF_8));
+        restaurador = Executors.newCachedThreadPool(r -> {
+            Thread hilo = new Thread(r, "almacen-restauracion");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        compactador = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "almacen-compactacion");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+
+        Gauge.builder("kafka.app.almacen.pedidos", this, a -> a.particiones.values().stream()
+                        .mapToLong(ParticionPedidos::tamano).sum())
+                .description("Pedidos en el almacén local")
+                .register(meterRegistry);
+
+        if (!propiedadesInstantaneas.isHabilitado()) {
+            return;
+        }
+        Files.createDirectories(Path.of(propiedadesInstantaneas.getDirectorio()));
+        escrituras = Timer.builder("kafka.app.almacen.instantaneas")
+                .description("Escritura de la instantánea de una partición del almacén")
+                .register(meterRegistry);
+        long intervalo = propiedadesInstantaneas.getIntervalo().toMillis();
+        if (intervalo > 0) {
+            planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "almacen-instantaneas");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            planificador.scheduleWithFixedDelay(this::escribirInstantaneasPendientes,
+                    intervalo, intervalo, TimeUnit.MILLISECONDS);
+            log.info("Instantáneas del almacén cada {} ms en {}", intervalo, propiedadesInstantaneas.getDirectorio());
+        }
+    }
+
+    @PreDestroy
+    void detener() {
+        if (planificador != null) {
+            planificador.shutdownNow();
+        }
+        restauraciones.keySet().forEach(this::cerrar);
+        particiones.keySet().forEach(this::cerrar);
+        if (restaurador != null) {
+            restaurador.shutdownNow();
+            compactador.shutdownNow();
+        }
+    }
+
+    public boolean habilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Empieza a restaurar el almacén de la partición en otro hilo. Se invoca desde el
+     * hilo del consumidor al asignarse la partición y vuelve enseguida.
+     */
+    public void abrir(int particion) {
+        if (!habilitado || particiones.containsKey(particion) || restauraciones.containsKey(particion)) {
+            return;
+        }
+        Restauracion restauracion = new Restauracion(particion);
+        restauraciones.put(particion, restauracion);
+        restaurador.execute(() -> restaurarHastaPublicar(restauracion));
+    }
+
+    /**
+     * Cierra el almacén de una partición revocada, o cancela su restauración. Los datos
+     * quedan en disco y se reutilizan si la partición vuelve a esta instancia.
+     */
+    public void cerrar(int particion) {
+        Restauracion restauracion = restauraciones.remove(particion);
+        if (restauracion != null) {
+            restauracion.cancelar();
+        }
+        ParticionPedidos almacen = particiones.remove(particion);
+        if (almacen == null) {
+            return;
+        }
+        try {
+            almacen.close();
+        } catch (IOException e) {
+            log.warn("Error cerrando el almacén de la partición {}", particion, e);
+        }
+    }
+
+    /**
+     * Aplica un registro recibido; {@code pedido} null es un tombstone.
+     */
+    public void aplicar(int particion, long offset, String key, Pedido pedido) {
+        ParticionPedidos almacen = particiones.get(particion);
+        if (almacen == null) {
+            Restauracion restauracion = restauraciones.get(particion);
+            // En restauración solo se anota hasta dónde tiene que leer
+            if (restauracion == null || (almacen = restauracion.entregado(offset)) == null) {
+                return;
+            }
+        }
+        Long id = idDe(key, pedido);
+        if (id == null) {
+            log.warn("Registro sin id en partición: {} offset: {}, no se materializa", particion, offset);
+            return;
+        }
+        almacen.aplicar(offset, id, pedido);
+    }
+
+    /**
+     * Escribe en disco lo acumulado por los almacenes; los listeners por lotes lo
+     * invocan al terminar cada poll.
+     */
+    public void vaciar() {
+        particiones.values().forEach(ParticionPedidos::vaciar);
+    }
+
+    public Pedido buscar(long id) {
+        for (ParticionPedidos almacen : particiones.values()) {
+            Pedido pedido = almacen.buscar(id);
+            if (pedido != null) {
+                return pedido;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pedidos con id en [desde, hasta] de todas las particiones locales, ordenados por
+     * id y opcionalmente filtrados por estado.
+     */
+    public List<Pedido> rango(long desde, long hasta, String estado, int limite) {
+        List<Pedido> resultado = new ArrayList<>();
+        for (ParticionPedidos almacen : particiones.values()) {
+            int tomados = 0;
+            for (Pedido pedido : almacen.rango(desde, hasta).values()) {
+                if (tomados == limite) {
+                    break;
+                }
+                if (estado == null || estado.equals(pedido.getEstado())) {
+                    resultado.add(pedido);
+                    tomados++;
+                }
+            }
+        }
+        resultado.sort(Comparator.comparing(Pedido::getId));
+        return resultado.size() > limite ? new ArrayList<>(resultado.subList(0, limite)) : resultado;
+    }
+
+    /**
+     * Offsets a los que deben saltar las particiones recién asignadas al grupo de
+     * {@code consumer}: las que no tienen offset confirmado y tienen una instantánea por
+     * delante, cuyos registros se consideran procesados por la instancia que la escribió.
+     * Usa el consumidor del callback de asignación, con una sola consulta de offsets
+     * confirmados para todas las particiones.
+     */
+    public Map<TopicPartition, Long> posicionesIniciales(Consumer<?, ?> consumer, Collection<TopicPartition> asignadas) {
+        if (!habilitado || !propiedadesInstantaneas.isHabilitado() || !propiedadesInstantaneas.isSaltarReproduccion()) {
+            return Map.of();
+        }
+        Map<TopicPartition, Long> cubiertos = new HashMap<>();
+        for (TopicPartition tp : asignadas) {
+            long cubierto = offsetInstantanea(tp.partition());
+            if (cubierto >= 0) {
+                cubiertos.put(tp, cubierto);
+            }
+        }
+        if (cubiertos.isEmpty()) {
+            return Map.of();
+        }
+        Map<TopicPartition, Long> destinos = new HashMap<>();
+        try {
+            Map<TopicPartition, OffsetAndMetadata> confirmados = consumer.committed(cubiertos.keySet());
+            cubiertos.keySet().removeIf(tp -> confirmados.get(tp) != null);
+            if (cubiertos.isEmpty()) {
+                return Map.of();
+            }
+            Map<TopicPartition, Long> finales = consumer.endOffsets(cubiertos.keySet());
+            cubiertos.forEach((tp, cubierto) -> {
+                // Una instantánea en o más allá del final es de un topic recreado con el mismo nombre
+                if (cubierto < finales.get(tp)) {
+                    destinos.put(tp, cubierto + 1);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("No se pudieron consultar los offsets confirmados de {}, no se salta nada", cubiertos.keySet(), e);
+            return Map.of();
+        }
+        return destinos;
+    }
+
+    /**
+     * Escribe la instantánea de cada partición local con registros nuevos desde la
+     * última, o de todas con {@code forzar}. Devuelve las escritas.
+     */
+    public List<Map<String, Object>> escribirInstantaneas(boolean forzar) {
+        if (!habilitado || !propiedadesInstantaneas.isHabilitado()) {
+            throw new IllegalStateException("Las instantáneas del almacén están deshabilitadas");
+        }
+        List<Map<String, Object>> escritas = new ArrayList<>();
+        synchronized (escrituraInstantaneas) {
+            for (int particion : particionesAsignadas()) {
+                ParticionPedidos almacen = particiones.get(particion);
+                if (almacen == null) {
+                    continue;
+                }
+                ParticionPedidos.Captura captura = almacen.capturar();
+                if (captura.ultimoOffset() < 0
+                        || (!forzar && captura.ultimoOffset() <= ultimaInstantanea(particion))) {
+                    continue;
+                }
+                long inicio = System.nanoTime();
+                try (Instantanea instantanea = Instantanea.escribir(directorioInstantaneas(), particion,
+                        captura.ultimoOffset(), captura.pedidos(), this::codificar,
+                        propiedadesInstantaneas.getCompresion(),
+                        (int) propiedadesInstantaneas.getTamanoBloque().toBytes())) {
+                    long duracion = System.nanoTime() - inicio;
+                    escrituras.record(duracion, TimeUnit.NANOSECONDS);
+                    Map<String, Object> datos = describir(instantanea);
+                    datos.put("duracionMs", TimeUnit.NANOSECONDS.toMillis(duracion));
+                    escritas.add(datos);
+                    log.info("Instantánea de la partición {} escrita: {} pedidos hasta el offset {}, {} bytes en {} ms",
+                            particion, instantanea.pedidos(), instantanea.offset(), instantanea.tamano(),
+                            TimeUnit.NANOSECONDS.toMillis(duracion));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("No se pudo escribir la instantánea de la partición " + particion, e);
+                }
+                purgarInstantaneas(particion);
+            }
+        }
+        return escritas;
+    }
+
+    /**
+     * Instantáneas en el directorio, de la más reciente a la más antigua por partición.
+     */
+    public Map<String, Object> instantaneas() {
+        Map<Integer, List<Map<String, Object>>> porParticion = new TreeMap<>();
+        if (habilitado && propiedadesInstantaneas.isHabilitado()) {
+            for (int particion : particionesEnDirectorio()) {
+                List<Map<String, Object>> lista = new ArrayList<>();
+                for (Path fichero : ficherosInstantanea(particion)) {
+                    try (Instantanea instantanea = Instantanea.abrir(fichero)) {
+                        lista.add(describir(instantanea));
+                    } catch (IOException e) {
+                        lista.add(new LinkedHashMap<>(Map.of("fichero", fichero.getFileName().toString(),
+                                "error", String.valueOf(e.getMessage()))));
+                    }
+                }
+                porParticion.put(particion, lista);
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("habilitado", habilitado && propiedadesInstantaneas.isHabilitado());
+        response.put("directorio", propiedadesInstantaneas.getDirectorio());
+        response.put("intervalo", propiedadesInstantaneas.getIntervalo().toString());
+        response.put("particiones", porParticion);
+        return response;
+    }
+
+    public Set<Integer> particionesAsignadas() {
+        return new TreeSet<>(particiones.keySet());
+    }
+
+    public Set<Integer> particionesEnRestauracion() {
+        return new TreeSet<>(restauraciones.keySet());
+    }
+
+    /**
+     * Partición del topic a la que pertenece el id (mismo cálculo que el particionador
+     * por defecto), o -1 si aún no se conoce el número de particiones.
+     */
+    public int particionDe(long id) {
+        int total = particionesTopic;
+        if (total == 0) {
+            return -1;
+        }
+        return Utils.toPositive(Utils.murmur2(Long.toString(id).getBytes(StandardCharsets.UTF_8))) % total;
+    }
+
+    public Map<String, Object> resumen() {
+        Map<Integer, Object> porParticion = new TreeMap<>();
+        Map<String, Long> porEstado = new TreeMap<>();
+        long total = 0;
+        for (Map.Entry<Integer, ParticionPedidos> entrada : particiones.entrySet()) {
+            ParticionPedidos almacen = entrada.getValue();
+            Map<String, Object> datos = new LinkedHashMap<>();
+            datos.put("pedidos", almacen.tamano());
+            datos.put("ultimoOffset", almacen.ultimoOffset());
+            porParticion.put(entrada.getKey(), datos);
+            almacen.conteoPorEstado().forEach((e, n) -> porEstado.merge(e, n, Long::sum));
+            total += almacen.tamano();
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("habilitado", habilitado);
+        response.put("pedidos", total);
+        response.put("porEstado", porEstado);
+        response.put("particiones", porParticion);
+        response.put("enRestauracion", particionesEnRestauracion());
+        return response;
+    }
+
+    /**
+     * Restaura la partición reintentando tras un error hasta publicarla o hasta que se
+     * cancele por una revocación.
+     */
+    private void restaurarHastaPublicar(Restauracion restauracion) {
+        int particion = restauracion.particion;
+        synchronized (bloqueos.computeIfAbsent(particion, p -> new Object())) {
+            while (!restauracion.cancelada()) {
+                try {
+                    restaurar(restauracion);
+                    return;
+                } catch (RuntimeException e) {
+                    log.warn("Error restaurando el almacén de la partición {}, se reintenta en {} ms",
+                            particion, ESPERA_REINTENTO_MS, e);
+                }
+                try {
+                    Thread.sleep(ESPERA_REINTENTO_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Carga la instantánea de la partición si va por delante del log local, lee el topic
+     * desde el último offset aplicado hasta pasar tanto el final de la partición al
+     * empezar como el último registro entregado al listener, y publica el almacén.
+     */
+    private void restaurar(Restauracion restauracion) {
+        int particion = restauracion.particion;
+        TopicPartition tp = new TopicPartition(topic, particion);
+        long inicio = System.currentTimeMillis();
+        long aplicados = 0;
+
+        ParticionPedidos almacen = new ParticionPedidos(particion,
+                Path.of(directorio).resolve("pedidos-" + particion + ".log"), this::codificar, this::decodificar,
+                compactador);
+        boolean publicado = false;
+        try (Consumer<String, Object> consumer = consumerFactory.createConsumer(null, "almacen-restauracion")) {
+            particionesTopic = consumer.partitionsFor(topic).size();
+            consumer.assign(List.of(tp));
+            long fin = consumer.endOffsets(List.of(tp)).get(tp);
+            cargarInstantanea(particion, almacen, fin);
+            long desde = almacen.ultimoOffset() + 1;
+            if (desde > 0) {
+                consumer.seek(tp, desde);
+            } else {
+                consumer.seekToBeginning(List.of(tp));
+            }
+
+            while (!restauracion.cancelada()) {
+                long posicion = consumer.position(tp);
+                if (posicion >= fin && restauracion.publicar(almacen, posicion)) {
+                    publicado = true;
+                    break;
+                }
+                ConsumerRecords<String, Object> records = consumer.poll(POLL_RESTAURACION);
+                for (ConsumerRecord<String, Object> record : records) {
+                    if (DeserializadorTolerante.esIlegible(record)) {
+                        // Los listeners también lo descartan: no es un tombstone
+                        continue;
+                    }
+                    Pedido pedido = record.value() instanceof Pedido p ? p : null;
+                    Long id = idDe(record.key(), pedido);
+                    if (id != null) {
+                        almacen.aplicar(record.offset(), id, pedido);
+                        aplicados++;
+                    }
+                }
+            }
+        } finally {
+            if (!publicado) {
+                try {
+                    almacen.close();
+                } catch (IOException e) {
+                    log.warn("Error cerrando el almacén de la partición {}", particion, e);
+                }
+            }
+        }
+        if (!publicado) {
+            return;
+        }
+        almacen.vaciar();
+
+        log.info("Almacén de la partición {} restaurado: {} registros aplicados desde el topic en {} ms, {} pedidos",
+                particion, aplicados, System.currentTimeMillis() - inicio, almacen.tamano());
+    }
+
+    /**
+     * Carga la instantánea válida más reciente de la partición si cubre más offsets que
+     * el log local. Una instantánea que no se puede leer se descarta y se prueba la
+     * anterior; sin ninguna, la restauración lee el topic completo.
+     */
+    private void cargarInstantanea(int particion, ParticionPedidos almacen, long fin) {
+        if (!propiedadesInstantaneas.isHabilitado()) {
+            return;
+        }
+        for (Path fichero : ficherosInstantanea(particion)) {
+            long inicio = System.currentTimeMillis();
+            try (Instantanea instantanea = Instantanea.abrir(fichero)) {
+                if (instantanea.particion() != particion || instantanea.offset() >= fin) {
+                    // De otro topic con el mismo nombre (recreado) o de otra partición
+                    log.warn("Instantánea {} descartada: offset {} y fin de la partición {}",
+                            fichero.getFileName(), instantanea.offset(), fin);
+                    continue;
+                }
+                if (instantanea.offset() > almacen.ultimoOffset()) {
+                    almacen.cargar(instantanea);
+                    log.info("Almacén de la partición {} cargado desde la instantánea {}: {} pedidos en {} ms",
+                            particion, fichero.getFileName(), almacen.tamano(), System.currentTimeMillis() - inicio);
+                }
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("No se pudo cargar la instantánea {}, se prueba la anterior", fichero.getFileName(), e);
+            }
+        }
+    }
+
+    private void escribirInstantaneasPendientes() {
+        try {
+            escribirInstantaneas(false);
+        } catch (RuntimeException e) {
+            log.warn("Error escribiendo las instantáneas del almacén", e);
+        }
+    }
+
+    private long ultimaInstantanea(int particion) {
+        List<Path> ficheros = ficherosInstantanea(particion);
+        return ficheros.isEmpty() ? -1 : Instantanea.offsetDe(ficheros.get(0), particion);
+    }
+
+    /**
+     * Offset de la instantánea legible más reciente de la partición, o -1. Solo abre la
+     * cabecera y el índice, así que cabe en el callback de asignación.
+     */
+    private long offsetInstantanea(int particion) {
+        for (Path fichero : ficherosInstantanea(particion)) {
+            try (Instantanea instantanea = Instantanea.abrir(fichero)) {
+                if (instantanea.particion() == particion) {
+                    return instantanea.offset();
+                }
+            } catch (IOException e) {
+                log.warn("Instantánea {} ilegible, se prueba la anterior", fichero.getFileName(), e);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Borra las instantáneas de la partición que sobran según la retención.
+     */
+    private void purgarInstantaneas(int particion) {
+        List<Path> ficheros = ficherosInstantanea(particion);
+        for (Path fichero : ficheros.subList(Math.min(ficheros.size(), Math.max(1, propiedadesInstantaneas.getRetener())),
+                ficheros.size())) {
+            try {
+                Files.deleteIfExists(fichero);
+            } catch (IOException e) {
+                log.warn("No se pudo borrar la instantánea {}", fichero, e);
+            }
+        }
+    }
+
+    /**
+     * Instantáneas de la partición, de la más reciente a la más antigua.
+     */
+    private List<Path> ficherosInstantanea(int particion) {
+        try (Stream<Path> ficheros = Files.list(directorioInstantaneas())) {
+            return ficheros.filter(f -> Instantanea.offsetDe(f, particion) >= 0)
+                    .sorted(Comparator.comparingLong((Path f) -> Instantanea.offsetDe(f, particion)).reversed())
+                    .toList();
+        } catch (IOException e) {
+            log.warn("No se pudo listar el directorio de instantáneas", e);
+            return List.of();
+        }
+    }
+
+    private Set<Integer> particionesEnDirectorio() {
+        Set<Integer> resultado = new TreeSet<>();
+        try (Stream<Path> ficheros = Files.list(directorioInstantaneas())) {
+            ficheros.map(f -> f.getFileName().toString())
+                    .filter(n -> n.startsWith(Instantanea.PREFIJO) && n.endsWith(Instantanea.SUFIJO))
+                    .forEach(n -> {
+                        String resto = n.substring(Instantanea.PREFIJO.length());
+                        try {
+                            resultado.add(Integer.parseInt(resto.substring(0, resto.indexOf('-'))));
+                        } catch (RuntimeException e) {
+                            // Nombre ajeno al formato
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("No se pudo listar el directorio de instantáneas", e);
+        }
+        return resultado;
+    }
+
+    private Path directorioInstantaneas() {
+        return Path.of(propiedadesInstantaneas.getDirectorio());
+    }
+
+    private static Map<String, Object> describir(Instantanea instantanea) {
+        Map<String, Object> datos = new LinkedHashMap<>();
+        datos.put("fichero", instantanea.fichero().getFileName().toString());
+        datos.put("particion", instantanea.particion());
+        datos.put("offset", instantanea.offset());
+        datos.put("pedidos", instantanea.pedidos());
+        datos.put("bloques", instantanea.bloques());
+        datos.put("bytes", instantanea.tamano());
+        datos.put("compresion", instantanea.compresion());
+        datos.put("creada", Instant.ofEpochMilli(instantanea.creada()).toString());
+        return datos;
+    }
+
+    private static Long idDe(String key, Pedido pedido) {
+        if (pedido != null && pedido.getId() != null) {
+            return pedido.getId();
+        }
+        try {
+            return key != null ? Long.parseLong(ClavesSaladas.original(key)) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private byte[] codificar(Pedido pedido) {
+        return serializer.serialize(topic, new RecordHeaders(), pedido);
+    }
+
+    private Pedido decodificar(ByteBuffer datos) {
+        return (Pedido) deserializer.deserialize(topic, cabecerasBinario, datos);
+    }
+
+    /**
+     * Restauración en curso de una partición. Mientras dura, el listener solo anota el
+     * último offset que ha entregado; la restauración se publica cuando ha leído más
+     * allá, con el mismo lock, así que ningún registro queda sin aplicar.
+     */
+    private final class Restauracion {
+
+        private final int particion;
+        private long entregadoHasta = -1;
+        private ParticionPedidos publicado;
+        private boolean cancelada;
+
+        private Restauracion(int particion) {
+            this.particion = particion;
+        }
+
+        /**
+         * Anota el offset entregado al listener; devuelve el almacén si ya se publicó.
+         */
+        synchronized ParticionPedidos entregado(long offset) {
+            if (publicado == null) {
+                entregadoHasta = Math.max(entregadoHasta, offset);
+            }
+            return publicado;
+        }
+
+        synchronized boolean publicar(ParticionPedidos almacen, long posicion) {
+            if (cancelada || posicion <= entregadoHasta) {
+                return false;
+            }
+            publicado = almacen;
+            particiones.put(particion, almacen);
+            restauraciones.remove(particion, this);
+            return true;
+        }
+
+        synchronized void cancelar() {
+            cancelada = true;
+        }
+
+        synchronized boolean cancelada() {
+            return cancelada;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.kafka.store;
+
+import com.example.kafka.model.Pedido;
+import org.apache.kafka.common.compress.Compression;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.utils.BufferSupplier;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * Instantánea de una partición del almacén: los pedidos vivos ordenados por id hasta un
+ * offset del topic, en bloques comprimidos con un códec de Kafka y un índice sin
+ * comprimir al final. El fichero se lee mapeado en memoria: una carga recorre los
+ * bloques en orden y una búsqueda por id hace una búsqueda binaria en el índice y
+ * descomprime un solo bloque.
+ * <p>
+ * Cabecera: magia (4 bytes) | versión (4) | partición (4) | códec (4) | offset cubierto
+ * (8) | pedidos (8) | creación en ms (8) | bloques (4) | crc32c del índice (4) |
+ * posición del índice (8). Entrada de un bloque: id (8) | longitud (4) | pedido
+ * codificado. Entrada del índice: primer id (8) | posición (8) | longitud comprimida
+ * (4) | longitud sin comprimir (4) | crc32c del bloque comprimido (4).
+ * <p>
+ * Se escribe en un temporal que se renombra al terminar, así que un fichero con el
+ * nombre definitivo siempre está completo.
+ */
+final class Instantanea implements AutoCloseable {
+
+    static final String PREFIJO = "pedidos-";
+    static final String SUFIJO = ".snap";
+
+    private static final int CABECERA = 56;
+    private static final int ENTRADA_INDICE = 28;
+    private static final int CABECERA_ENTRADA = 12;
+    private static final int MAGIA = 0x50534e50;
+    private static final int VERSION = 1;
+
+    private final Path fichero;
+    private final FileChannel canal;
+    private final MappedByteBuffer buffer;
+    private final int particion;
+    private final CompressionType codec;
+    private final long offset;
+    private final long pedidos;
+    private final long creada;
+    private final int bloques;
+    private final int posicionIndice;
+
+    private Instantanea(Path fichero) throws IOException {
+        this.fichero = fichero;
+        this.canal = FileChannel.open(fichero, StandardOpenOption.READ);
+        try {
+            long tamano = canal.size();
+            if (tamano < CABECERA || tamano > Integer.MAX_VALUE) {
+                throw new IOException("Tamaño de instantánea no válido: " + tamano);
+            }
+            buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+            if (buffer.getInt(0) != MAGIA || buffer.getInt(4) != VERSION) {
+                throw new IOException("No es una instantánea de pedidos (versión " + VERSION + ")");
+            }
+            particion = buffer.getInt(8);
+            codec = CompressionType.forId(buffer.getInt(12));
+            offset = buffer.getLong(16);
+            pedidos = buffer.getLong(24);
+            creada = buffer.getLong(32);
+            bloques = buffer.getInt(40);
+            long posicion = buffer.getLong(48);
+            if (bloques < 0 || posicion < CABECERA || posicion + (long) bloques * ENTRADA_INDICE != tamano) {
+                throw new IOException("Índice de la instantánea fuera del fichero");
+            }
+            posicionIndice = (int) posicion;
+            if (crc(buffer.slice(posicionIndice, bloques * ENTRADA_INDICE)) != buffer.getInt(44)) {
+                throw new IOException("Índice de la instantánea corrupto");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            canal.close();
+            throw e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+        }
+    }
+
+    static Instantanea abrir(Path fichero) throws IOException {
+        return new Instantanea(fichero);
+    }
+
+    /**
+     * Escribe la instantánea de {@code pedidos} (ordenados por id) en el directorio y la
+     * devuelve abierta.
+     */
+    static Instantanea escribir(Path directorio, int particion, long offset, List<Map.Entry<Long, Pedido>> pedidos,
+                                Function<Pedido, byte[]> codificar, String compresion, int tamanoBloque) throws IOException {
+        Compression codec = Compression.of(compresion).build();
+        Path destino = directorio.resolve(nombre(particion, offset));
+        Path temporal = Files.createTempFile(directorio, PREFIJO + particion + "-", ".tmp");
+        try {
+            List<ByteBuffer> indice = new ArrayList<>();
+            try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.WRITE)) {
+                salida.position(CABECERA);
+                ByteBuffer bloque = ByteBuffer.allocate(tamanoBloque);
+                long primerId = 0;
+                for (Map.Entry<Long, Pedido> pedido : pedidos) {
+                    byte[] valor = codificar.apply(pedido.getValue());
+                    if (bloque.position() > 0 && bloque.remaining() < CABECERA_ENTRADA + valor.length) {
+                        indice.add(escribirBloque(salida, codec, bloque, primerId));
+                    }
+                    if (bloque.position() == 0) {
+                        primerId = pedido.getKey();
+                        if (bloque.capacity() < CABECERA_ENTRADA + valor.length) {
+                            // Un pedido mayor que el bloque va solo en un bloque a su medida
+                            bloque = ByteBuffer.allocate(CABECERA_ENTRADA + valor.length);
+                        }
+                    }
+                    bloque.putLong(pedido.getKey()).putInt(valor.length).put(valor);
+                }
+                if (bloque.position() > 0) {
+                    indice.add(escribirBloque(salida, codec, bloque, primerId));
+                }
+
+                ByteBuffer entradasIndice = ByteBuffer.allocate(indice.size() * ENTRADA_INDICE);
+                indice.forEach(entradasIndice::put);
+                entradasIndice.flip();
+                long posicionIndice = salida.position();
+                int crcIndice = crc(entradasIndice.duplicate());
+                escribirTodo(salida, entradasIndice);
+
+                ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+                cabecera.putInt(MAGIA).putInt(VERSION).putInt(particion).putInt(codec.type().id)
+                        .putLong(offset).putLong(pedidos.size()).putLong(System.currentTimeMillis())
+                        .putInt(indice.size()).putInt(crcIndice).putLong(posicionIndice).flip();
+                salida.position(0);
+                escribirTodo(salida, cabecera);
+                salida.force(true);
+            }
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+        return abrir(destino);
+    }
+
+    static String nombre(int particion, long offset) {
+        return String.format(PREFIJO + "%d-%020d" + SUFIJO, particion, offset);
+    }
+
+    /**
+     * Offset cubierto por la instantánea de la partición según el nombre del fichero, o
+     * -1 si el fichero no es una instantánea de esa partición.
+     */
+    static long offsetDe(Path fichero, int particion) {
+        String nombre = fichero.getFileName().toString();
+        String prefijo = PREFIJO + particion + "-";
+        if (!nombre.startsWith(prefijo) || !nombre.endsWith(SUFIJO)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(nombre.substring(prefijo.length(), nombre.length() - SUFIJO.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Recorre los pedidos en orden de id; el buffer del pedido solo es válido durante la
+     * llamada.
+     */
+    void recorrer(BiConsumer<Long, ByteBuffer> destino) throws IOException {
+        for (int i = 0; i < bloques; i++) {
+            ByteBuffer datos = ByteBuffer.wrap(descomprimir(i));
+            while (datos.hasRemaining()) {
+                long id = datos.getLong();
+                int longitud = datos.getInt();
+                destino.accept(id, datos.slice(datos.position(), longitud));
+                datos.position(datos.position() + longitud);
+            }
+        }
+    }
+
+    /**
+     * Pedido codificado con ese id, o null si la instantánea no lo contiene.
+     */
+    ByteBuffer buscar(long id) throws IOException {
+        // Último bloque cuyo primer id es <= id
+        int bajo = 0;
+        int alto = bloques - 1;
+        int bloque = -1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (buffer.getLong(posicionIndice + medio * ENTRADA_INDICE) <= id) {
+                bloque = medio;
+                bajo = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        if (bloque < 0) {
+            return null;
+        }
+        ByteBuffer datos = ByteBuffer.wrap(descomprimir(bloque));
+        while (datos.hasRemaining()) {
+            long actual = datos.getLong();
+            int longitud = datos.getInt();
+            if (actual == id) {
+                return datos.slice(datos.position(), longitud);
+            }
+            if (actual > id) {
+                return null;
+            }
+            datos.position(datos.position() + longitud);
+        }
+        return null;
+    }
+
+    Path fichero() {
+        return fichero;
+    }
+
+    int particion() {
+        return particion;
+    }
+
+    long offset() {
+        return offset;
+    }
+
+    long pedidos() {
+        return pedidos;
+    }
+
+    long creada() {
+        return creada;
+    }
+
+    int bloques() {
+        return bloques;
+    }
+
+    long tamano() {
+        return buffer.capacity();
+    }
+
+    String compresion() {
+        return codec.name;
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+
+    private byte[] descomprimir(int bloque) throws IOException {
+        int entrada = posicionIndice + bloque * ENTRADA_INDICE;
+        int posicion = (int) buffer.getLong(entrada + 8);
+        int comprimida = buffer.getInt(entrada + 16);
+        int longitud = buffer.getInt(entrada + 20);
+        ByteBuffer datos = buffer.slice(posicion, comprimida);
+        if (crc(datos.duplicate()) != buffer.getInt(entrada + 24)) {
+            throw new IOException("Bloque " + bloque + " de " + fichero.getFileName() + " corrupto");
+        }
+        Compression compresion = Compression.of(codec).build();
+        try (InputStream in = compresion.wrapForInput(datos, RecordBatch.CURRENT_MAGIC_VALUE, BufferSupplier.NO_CACHING)) {
+            byte[] resultado = in.readNBytes(longitud);
+            if (resultado.length != longitud) {
+                throw new IOException("Bloque " + bloque + " de " + fichero.getFileName() + " incompleto");
+            }
+            return resultado;
+        }
+    }
+
+    private static ByteBuffer escribirBloque(FileChannel salida, Compression codec, ByteBuffer bloque,
+                                             long primerId) throws IOException {
+        bloque.flip();
+        int longitud = bloque.remaining();
+        ByteBufferOutputStream comprimido = new ByteBufferOutputStream(Math.max(1024, longitud / 2));
+        try (OutputStream out = codec.wrapForOutput(comprimido, RecordBatch.CURRENT_MAGIC_VALUE)) {
+            out.write(bloque.array(), 0, longitud);
+        }
+        ByteBuffer datos = comprimido.buffer().flip();
+        long posicion = salida.position();
+        int crc = crc(datos.duplicate());
+        int comprimidos = datos.remaining();
+        escribirTodo(salida, datos);
+        bloque.clear();
+
+        ByteBuffer entrada = ByteBuffer.allocate(ENTRADA_INDICE);
+        entrada.putLong(primerId).putLong(posicion).putInt(comprimidos).putInt(longitud).putInt(crc).flip();
+        return entrada;
+    }
+
+    private static void escribirTodo(FileChannel salida, ByteBuffer datos) throws IOException {
+        while (datos.hasRemaining()) {
+            salida.write(datos);
+        }
+    }
+
+    private static int crc(ByteBuffer datos) {
+        CRC32C crc = new CRC32C();
+        crc.update(datos);
+        return (int) crc.getValue();
+    }
+}
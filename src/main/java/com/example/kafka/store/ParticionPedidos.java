@@ -0,0 +1,386 @@
+package com.example.kafka.store;
+
+import com.example.kafka.model.Pedido;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Estado de una partición de pedidos-topic: último valor por id en memoria, ordenado
+ * por id, respaldado por un log local de solo escritura al final.
+ * <p>
+ * Entrada del log: offset (8 bytes) | id (8 bytes) | longitud (4 bytes, -1 para
+ * tombstone) | pedido codificado. Al abrir se reproduce el log; cuando el número de
+ * entradas duplica al de pedidos vivos se reescribe solo con los vivos. Cargar una
+ * {@link Instantanea} sustituye el estado y el log por los de la instantánea.
+ * <p>
+ * Las entradas se acumulan en un buffer que se escribe al llenarse, con
+ * {@link #vaciar()} (al final de cada poll en los listeners por lotes) o cuando la más
+ * antigua lleva {@value #MAX_MS_PENDIENTE} ms esperando. Lo que no llegue al disco por
+ * una caída se vuelve a leer del topic al restaurar, porque el log termina antes.
+ * <p>
+ * La compactación no para al hilo del consumidor: captura las referencias a los
+ * pedidos vivos y los codifica y escribe en otro hilo; al terminar, con el lock, copia
+ * detrás los bytes que el log recibió entretanto y sustituye el fichero.
+ */
+@Slf4j
+class ParticionPedidos implements AutoCloseable {
+
+    private static final int CABECERA_ENTRADA = 20;
+    private static final int MIN_ENTRADAS_COMPACTAR = 10_000;
+    private static final int TAMANO_BUFFER = 64 * 1024;
+    private static final long MAX_MS_PENDIENTE = 200;
+
+    /**
+     * Pedidos vivos ordenados por id y último offset aplicado, tomados a la vez.
+     */
+    record Captura(long ultimoOffset, List<Map.Entry<Long, Pedido>> pedidos) {
+    }
+
+    private final int particion;
+    private final Path fichero;
+    private final Function<Pedido, byte[]> codificar;
+    private final Function<ByteBuffer, Pedido> decodificar;
+    private final Executor compactador;
+
+    private final ConcurrentSkipListMap<Long, Pedido> pedidos = new ConcurrentSkipListMap<>();
+    private final Map<String, AtomicLong> porEstado = new ConcurrentHashMap<>();
+
+    private final ByteBuffer pendiente = ByteBuffer.allocate(TAMANO_BUFFER);
+    private long pendienteDesde;
+    private FileChannel canal;
+    /** Bytes del log ya escritos en el canal, sin contar el buffer. */
+    private long posicion;
+    private long entradas;
+    private boolean compactando;
+    private boolean cerrado;
+    private volatile long ultimoOffset = -1;
+
+    ParticionPedidos(int particion, Path fichero, Function<Pedido, byte[]> codificar,
+                     Function<ByteBuffer, Pedido> decodificar, Executor compactador) {
+        this.particion = particion;
+        this.fichero = fichero;
+        this.codificar = codificar;
+        this.decodificar = decodificar;
+        this.compactador = compactador;
+        try {
+            long valido = reproducir();
+            canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            // Descarta una entrada final incompleta (caída a mitad de escritura)
+            canal.truncate(valido);
+            canal.position(valido);
+            posicion = valido;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el almacén de la partición " + particion, e);
+        }
+    }
+
+    /**
+     * Aplica un registro del topic; {@code pedido} null es un tombstone.
+     */
+    synchronized void aplicar(long offset, long id, Pedido pedido) {
+        if (offset <= ultimoOffset) {
+            // Ya aplicado (reentrega tras rebalanceo o restauración)
+            return;
+        }
+        if (pendiente.position() == 0) {
+            pendienteDesde = System.nanoTime();
+        }
+        try {
+            anadir(canal, pendiente, offset, id, pedido != null ? codificar.apply(pedido) : null);
+            posicion = canal.position();
+            if (System.nanoTime() - pendienteDesde >= TimeUnit.MILLISECONDS.toNanos(MAX_MS_PENDIENTE)) {
+                escribirPendiente();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir en el almacén de la partición " + particion, e);
+        }
+
+        actualizar(offset, id, pedido);
+        entradas++;
+        compactarSiConviene();
+    }
+
+    /**
+     * Escribe en el log las entradas acumuladas en el buffer.
+     */
+    synchronized void vaciar() {
+        if (cerrado) {
+            return;
+        }
+        try {
+            escribirPendiente();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir en el almacén de la partición " + particion, e);
+        }
+    }
+
+    /**
+     * Copia las referencias a los pedidos vivos sin escribir nada: los registros que
+     * lleguen mientras tanto esperan solo a la copia, no a la codificación.
+     */
+    synchronized Captura capturar() {
+        return new Captura(ultimoOffset, new ArrayList<>(pedidos.entrySet()));
+    }
+
+    /**
+     * Sustituye el estado por el de la instantánea y reescribe el log con él. Solo se
+     * usa al restaurar, antes de aplicar registros, así que no hay ninguna compactación
+     * en curso.
+     */
+    synchronized void cargar(Instantanea instantanea) throws IOException {
+        pedidos.clear();
+        porEstado.clear();
+        instantanea.recorrer((id, valor) -> actualizar(instantanea.offset(), id, decodificar.apply(valor)));
+        ultimoOffset = instantanea.offset();
+        pendiente.clear();
+        Path temporal = temporal();
+        long escritas = escribirLog(temporal, capturar());
+        sustituirLog(temporal);
+        entradas = escritas;
+    }
+
+    Pedido buscar(long id) {
+        return pedidos.get(id);
+    }
+
+    NavigableMap<Long, Pedido> rango(long desde, long hasta) {
+        return pedidos.subMap(desde, true, hasta, true);
+    }
+
+    long ultimoOffset() {
+        return ultimoOffset;
+    }
+
+    int tamano() {
+        return pedidos.size();
+    }
+
+    Map<String, Long> conteoPorEstado() {
+        Map<String, Long> conteo = new HashMap<>();
+        porEstado.forEach((estado, contador) -> {
+            if (contador.get() > 0) {
+                conteo.put(estado, contador.get());
+            }
+        });
+        return conteo;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (cerrado) {
+            return;
+        }
+        cerrado = true;
+        try {
+            escribirPendiente();
+            canal.force(false);
+        } finally {
+            canal.close();
+        }
+    }
+
+    private void actualizar(long offset, long id, Pedido pedido) {
+        Pedido anterior = pedido != null ? pedidos.put(id, pedido) : pedidos.remove(id);
+        if (anterior != null && anterior.getEstado() != null) {
+            porEstado.get(anterior.getEstado()).decrementAndGet();
+        }
+        if (pedido != null && pedido.getEstado() != null) {
+            porEstado.computeIfAbsent(pedido.getEstado(), k -> new AtomicLong()).incrementAndGet();
+        }
+        ultimoOffset = offset;
+    }
+
+    /**
+     * Reproduce el log local y devuelve la posición hasta la que es válido.
+     */
+    private long reproducir() throws IOException {
+        if (!Files.exists(fichero)) {
+            return 0;
+        }
+        long tamano = Files.size(fichero);
+        long valido = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichero), TAMANO_BUFFER))) {
+            while (true) {
+                long offset = in.readLong();
+                long id = in.readLong();
+                int longitud = in.readInt();
+                if (longitud < -1 || longitud > tamano - valido - CABECERA_ENTRADA) {
+                    // Longitud corrupta: el log válido termina aquí, como en SegmentoSpool
+                    log.warn("Partición {}: longitud {} no válida en la posición {}, se descarta el resto del log",
+                            particion, longitud, valido);
+                    break;
+                }
+                Pedido pedido = null;
+                if (longitud >= 0) {
+                    byte[] valor = new byte[longitud];
+                    in.readFully(valor);
+                    pedido = decodificar.apply(ByteBuffer.wrap(valor));
+                }
+                actualizar(offset, id, pedido);
+                entradas++;
+                valido += CABECERA_ENTRADA + Math.max(0, longitud);
+            }
+        } catch (EOFException e) {
+            // Fin del log (o entrada final incompleta)
+        }
+        log.info("Partición {} restaurada desde el log local: {} pedidos hasta el offset {}",
+                particion, pedidos.size(), ultimoOffset);
+        return valido;
+    }
+
+    private void escribirPendiente() throws IOException {
+        if (pendiente.position() == 0) {
+            return;
+        }
+        pendiente.flip();
+        escribirTodo(canal, pendiente);
+        pendiente.clear();
+        posicion = canal.position();
+    }
+
+    private void compactarSiConviene() {
+        if (compactando || entradas < MIN_ENTRADAS_COMPACTAR || entradas < 2L * pedidos.size()) {
+            return;
+        }
+        try {
+            escribirPendiente();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir en el almacén de la partición " + particion, e);
+        }
+        Captura captura = capturar();
+        long desde = posicion;
+        long entradasCapturadas = entradas;
+        compactando = true;
+        compactador.execute(() -> compactar(captura, desde, entradasCapturadas));
+    }
+
+    /**
+     * Reescribe el log con los pedidos vivos de la captura. Lo escrito en el log desde
+     * {@code desde} (posterior a la captura) se copia detrás antes de sustituirlo.
+     */
+    private void compactar(Captura captura, long desde, long entradasCapturadas) {
+        Path temporal = temporal();
+        long inicio = System.currentTimeMillis();
+        try {
+            long escritas = escribirLog(temporal, captura);
+            synchronized (this) {
+                if (cerrado) {
+                    return;
+                }
+                escribirPendiente();
+                try (FileChannel destino = FileChannel.open(temporal, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND)) {
+                    long copiados = 0;
+                    while (desde + copiados < posicion) {
+                        copiados += canal.transferTo(desde + copiados, posicion - desde - copiados, destino);
+                    }
+                    destino.force(false);
+                }
+                sustituirLog(temporal);
+                entradas = escritas + entradas - entradasCapturadas;
+                log.debug("Almacén de la partición {} compactado a {} entradas en {} ms",
+                        particion, entradas, System.currentTimeMillis() - inicio);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("No se pudo compactar el almacén de la partición {}, se reintentará", particion, e);
+        } finally {
+            try {
+                Files.deleteIfExists(temporal);
+            } catch (IOException e) {
+                log.warn("No se pudo borrar {}", temporal, e);
+            }
+            synchronized (this) {
+                compactando = false;
+            }
+        }
+    }
+
+    /**
+     * Escribe los pedidos de la captura en un fichero nuevo; todas las entradas llevan
+     * el último offset de la captura, que es el punto de reanudación.
+     */
+    private long escribirLog(Path destino, Captura captura) throws IOException {
+        try (FileChannel salida = FileChannel.open(destino, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(TAMANO_BUFFER);
+            for (Map.Entry<Long, Pedido> pedido : captura.pedidos()) {
+                anadir(salida, buffer, captura.ultimoOffset(), pedido.getKey(), codificar.apply(pedido.getValue()));
+            }
+            buffer.flip();
+            escribirTodo(salida, buffer);
+            salida.force(false);
+        }
+        return captura.pedidos().size();
+    }
+
+    /**
+     * Sustituye el log por {@code nuevo} y lo reabre para seguir escribiendo al final.
+     */
+    private void sustituirLog(Path nuevo) throws IOException {
+        canal.close();
+        try {
+            Files.move(nuevo, fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Si el movimiento falla se sigue con el log anterior
+            canal = FileChannel.open(fichero, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            posicion = canal.size();
+            canal.position(posicion);
+        }
+    }
+
+    private Path temporal() {
+        return fichero.resolveSibling(fichero.getFileName() + ".compactando");
+    }
+
+    /**
+     * Añade la entrada al buffer, escribiéndolo antes si no cabe; una entrada mayor que
+     * el buffer se escribe directamente.
+     */
+    private static void anadir(FileChannel salida, ByteBuffer buffer, long offset, long id,
+                               byte[] valor) throws IOException {
+        int longitud = CABECERA_ENTRADA + (valor != null ? valor.length : 0);
+        if (buffer.remaining() < longitud) {
+            buffer.flip();
+            escribirTodo(salida, buffer);
+            buffer.clear();
+        }
+        ByteBuffer destino = longitud <= buffer.capacity() ? buffer : ByteBuffer.allocate(longitud);
+        destino.putLong(offset).putLong(id).putInt(valor != null ? valor.length : -1);
+        if (valor != null) {
+            destino.put(valor);
+        }
+        if (destino != buffer) {
+            destino.flip();
+            escribirTodo(salida, destino);
+        }
+    }
+
+    private static void escribirTodo(FileChannel salida, ByteBuffer datos) throws IOException {
+        while (datos.hasRemaining()) {
+            salida.write(datos);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.kafka;
+
+import com.example.kafka.consumer.AuditoriaPedidos;
+import com.example.kafka.model.AuditoriaPedido;
+import com.example.kafka.model.CambioEstadoPedido;
+import com.example.kafka.model.NotificacionPedido;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import com.example.kafka.producer.PedidoProducer;
+import com.example.kafka.producer.UsuarioProducer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Auditoría exactly-once y unión de notificaciones contra un broker embebido: cada pedido
+ * produce exactamente una auditoría y al menos una notificación enriquecida con su
+ * usuario (la unión confirma tras emitir, así que un rebalanceo puede repetir alguna).
+ * <p>
+ * Después para la auditoría, cambia el estado de todos los pedidos y la vuelve a arrancar:
+ * al reasignarse, cada partición con offset confirmado queda pausada mientras se
+ * reconstruyen sus estados y se reanuda al terminar. Los cambios de estado solo se
+ * derivan bien si la partición no se consumió antes de la reconstrucción, y solo llegan
+ * si se reanudó.
+ */
+@SpringBootTest(properties = {
+        "kafka.consumer.autoescalado.habilitado=false",
+        "kafka.consumer.dedup.capacidad=1024",
+        "kafka.logging.modo=resumen"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@EmbeddedKafka(
+        bootstrapServersProperty = "spring.kafka.bootstrap-servers",
+        brokerProperties = {
+                "offsets.topic.replication.factor=1",
+                "transaction.state.log.replication.factor=1",
+                "transaction.state.log.min.isr=1",
+                "group.initial.rebalance.delay.ms=0"
+        })
+class AuditoriaNotificacionesEmbeddedKafkaTests {
+
+    private static final String LISTENER_AUDITORIA = "pedidos-auditoria";
+    private static final List<String> LISTENERS = List.of(
+            LISTENER_AUDITORIA, "notificaciones-repartidor", "notificaciones-union");
+
+    private static final int PEDIDOS = 50;
+    private static final Duration ESPERA_MAX = Duration.ofSeconds(60);
+    // Lectura extra tras llegar a lo esperado, para detectar registros de más
+    private static final Duration EXCESO = Duration.ofSeconds(2);
+
+    private static final Path DATOS = DatosTemporales.crear("kafka-demo-auditoria");
+
+    @DynamicPropertySource
+    static void directorios(DynamicPropertyRegistry registro) {
+        DatosTemporales.registrar(registro, DATOS);
+    }
+
+    @AfterAll
+    static void borrarDatos() {
+        // @DirtiesContext ya cerró el contexto tras la prueba, antes que el broker: nada
+        // vuelve a escribir en el directorio ni se queda esperando a un broker parado
+        DatosTemporales.borrar(DATOS);
+    }
+
+    @Autowired
+    private PedidoProducer pedidoProducer;
+
+    @Autowired
+    private UsuarioProducer usuarioProducer;
+
+    @Autowired
+    private AuditoriaPedidos auditoriaPedidos;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private ConsumerFactory<String, Object> consumerFactory;
+
+    @Value("${kafka.topics.auditoria}")
+    private String auditoriaTopic;
+
+    @Value("${kafka.topics.pedidos-estados}")
+    private String pedidosEstadosTopic;
+
+    @Value("${kafka.topics.notificaciones}")
+    private String notificacionesTopic;
+
+    @Test
+    void auditaYNotificaCadaPedidoYRestauraLosEstadosAlReasignarse() throws Exception {
+        esperarAsignacion();
+        enviar(id -> usuarioProducer.enviarUsuario(Usuario.builder()
+                .id(id)
+                .nombre("usuario-" + id)
+                .email("usuario-" + id + "@example.com")
+                .pais("ES")
+                .fechaCreacion(LocalDateTime.now())
+                .build()));
+        enviar(id -> pedidoProducer.enviarPedido(pedido(id, "PENDIENTE")));
+
+        List<AuditoriaPedido> altas = leer(auditoriaTopic, PEDIDOS, AuditoriaPedido.class);
+        assertThat(altas).as("auditorías de las altas").hasSize(PEDIDOS)
+                .allSatisfy(a -> assertThat(a.getOperacion()).isEqualTo("CREADO"));
+        assertThat(altas).extracting(AuditoriaPedido::getPedidoId).containsExactlyInAnyOrderElementsOf(ids());
+
+        List<NotificacionPedido> notificaciones = leer(notificacionesTopic, PEDIDOS, NotificacionPedido.class);
+        assertThat(notificaciones).as("notificaciones").allSatisfy(n -> {
+            assertThat(n.isEnriquecida()).isTrue();
+            assertThat(n.getNombre()).isEqualTo("usuario-" + n.getUsuarioId());
+            assertThat(n.getEstado()).isEqualTo("PENDIENTE");
+        });
+        assertThat(notificaciones).extracting(NotificacionPedido::getPedidoId).containsAll(ids());
+
+        // Los cambios quedan tras el offset confirmado de cada partición de la auditoría
+        MessageListenerContainer auditoria = registry.getListenerContainer(LISTENER_AUDITORIA);
+        auditoria.stop();
+        enviar(id -> pedidoProducer.enviarPedido(pedido(id, "ENVIADO")));
+        auditoria.start();
+
+        List<AuditoriaPedido> auditorias = leer(auditoriaTopic, 2 * PEDIDOS, AuditoriaPedido.class);
+        assertThat(auditorias).as("auditorías tras reasignarse").hasSize(2 * PEDIDOS);
+        assertThat(auditorias).filteredOn(a -> "ENVIADO".equals(a.getEstado()))
+                .hasSize(PEDIDOS)
+                .allSatisfy(a -> assertThat(a.getOperacion()).isEqualTo("ACTUALIZADO"));
+
+        List<CambioEstadoPedido> cambios = leer(pedidosEstadosTopic, PEDIDOS, CambioEstadoPedido.class);
+        assertThat(cambios).as("cambios de estado").hasSize(PEDIDOS).allSatisfy(c -> {
+            assertThat(c.getEstadoAnterior()).isEqualTo("PENDIENTE");
+            assertThat(c.getEstadoNuevo()).isEqualTo("ENVIADO");
+        });
+        assertThat(cambios).extracting(CambioEstadoPedido::getPedidoId).containsExactlyInAnyOrderElementsOf(ids());
+        assertThat(auditoriaPedidos.particionesEnRestauracion()).as("particiones aún pausadas").isEmpty();
+    }
+
+    /**
+     * Envía uno por id y espera a que el broker los confirme todos.
+     */
+    private static void enviar(LongFunction<CompletableFuture<?>> envio) {
+        CompletableFuture.allOf(LongStream.rangeClosed(1, PEDIDOS)
+                        .mapToObj(envio)
+                        .toArray(CompletableFuture[]::new))
+                .orTimeout(ESPERA_MAX.toSeconds(), TimeUnit.SECONDS)
+                .join();
+    }
+
+    /**
+     * Lee el topic entero con read_committed hasta tener los esperados (o agotar la
+     * espera) y un poco más, para que la prueba vea también los que sobren.
+     */
+    private <T> List<T> leer(String topic, int esperados, Class<T> tipo) {
+        Properties propiedades = new Properties();
+        propiedades.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        List<T> valores = new ArrayList<>();
+        try (Consumer<String, Object> consumer = consumerFactory.createConsumer(null, "prueba-" + topic, null, propiedades)) {
+            List<TopicPartition> particiones = consumer.partitionsFor(topic).stream()
+                    .map(info -> new TopicPartition(topic, info.partition()))
+                    .toList();
+            consumer.assign(particiones);
+            consumer.seekToBeginning(particiones);
+
+            long limite = System.nanoTime() + ESPERA_MAX.toNanos();
+            while (System.nanoTime() < limite) {
+                for (ConsumerRecord<String, Object> record : consumer.poll(Duration.ofMillis(200))) {
+                    valores.add(tipo.cast(record.value()));
+                }
+                if (valores.size() >= esperados) {
+                    limite = Math.min(limite, System.nanoTime() + EXCESO.toNanos());
+                }
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Espera a que cada consumidor de los listeners tenga particiones: con los grupos ya
+     * formados, los envíos no coinciden con los rebalanceos del arranque.
+     */
+    private void esperarAsignacion() throws InterruptedException {
+        long limite = System.nanoTime() + ESPERA_MAX.toNanos();
+        for (String id : LISTENERS) {
+            ConcurrentMessageListenerContainer<?, ?> container =
+                    (ConcurrentMessageListenerContainer<?, ?>) registry.getListenerContainer(id);
+            while (container.getContainers().isEmpty() || container.getContainers().stream()
+                    .anyMatch(c -> c.getAssignedPartitions() == null || c.getAssignedPartitions().isEmpty())) {
+                assertThat(System.nanoTime()).as("asignación de " + id).isLessThan(limite);
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+    }
+
+    private static Pedido pedido(long id, String estado) {
+        return Pedido.builder()
+                .id(id)
+                .usuarioId(id)
+                .monto(BigDecimal.valueOf(id * 100, 2))
+                .estado(estado)
+                .fechaPedido(LocalDateTime.now())
+                .build();
+    }
+
+    private static List<Long> ids() {
+        return LongStream.rangeClosed(1, PEDIDOS).boxed().toList();
+    }
+}
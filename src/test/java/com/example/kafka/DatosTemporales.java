@@ -0,0 +1,52 @@
+package com.example.kafka;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Directorios de datos de la aplicación (dedup, almacén, instantáneas, spool, registro
+ * de esquemas e identificador de instancia) en un directorio temporal, para que las
+ * pruebas no escriban en ./data.
+ */
+final class DatosTemporales {
+
+    private DatosTemporales() {
+    }
+
+    static Path crear(String prefijo) {
+        try {
+            return Files.createTempDirectory(prefijo);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Borra el directorio con todo su contenido; se invoca con el contexto ya cerrado,
+     * para que la aplicación no vuelva a escribir en él.
+     */
+    static void borrar(Path datos) {
+        try (Stream<Path> ficheros = Files.walk(datos)) {
+            for (Path fichero : ficheros.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(fichero);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void registrar(DynamicPropertyRegistry registro, Path datos) {
+        registro.add("kafka.consumer.dedup.directorio", () -> datos.resolve("dedup").toString());
+        registro.add("kafka.consumer.pedidos.almacen.directorio", () -> datos.resolve("almacen").toString());
+        registro.add("kafka.consumer.pedidos.almacen.instantaneas.directorio", () -> datos.resolve("instantaneas").toString());
+        registro.add("kafka.producer.spool.directorio", () -> datos.resolve("spool").toString());
+        registro.add("kafka.serde.registro-esquemas", () -> datos.resolve("esquemas.properties").toString());
+        registro.add("kafka.producer.instancia-fichero", () -> datos.resolve("instancia").toString());
+    }
+}
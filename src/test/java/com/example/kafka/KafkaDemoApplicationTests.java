@@ -1,11 +1,30 @@
 package com.example.kafka;
 
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
-@SpringBootTest
+import java.nio.file.Path;
+
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = "kafka.consumer.dedup.capacidad=1024")
 class KafkaDemoApplicationTests {
 
+	private static final Path DATOS = DatosTemporales.crear("kafka-demo-contexto");
+
+	@DynamicPropertySource
+	static void directorios(DynamicPropertyRegistry registro) {
+		DatosTemporales.registrar(registro, DATOS);
+	}
+
+	@AfterAll
+	static void borrarDatos() {
+		DatosTemporales.borrar(DATOS);
+	}
+
 	@Test
 	void contextLoads() {
 	}
@@ -0,0 +1,511 @@
+package com.example.kafka;
+
+import com.example.kafka.config.RegistroEventosProperties;
+import com.example.kafka.logging.RegistroEventos;
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import com.example.kafka.producer.PedidoProducer;
+import com.example.kafka.producer.UsuarioProducer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Carga sostenida contra un broker embebido (KRaft, en el mismo proceso): envía pedidos
+ * y usuarios a ritmo fijo con PedidoProducer y UsuarioProducer mientras provoca un
+ * rebalanceo (un consumidor ajeno entra en el grupo y sale sin confirmar) y una caída
+ * tras procesar sin confirmar (se para el grupo y se rebobinan sus offsets). Comprueba
+ * que cada registro confirmado por el broker se procesa exactamente una vez.
+ * <p>
+ * Por defecto dura unos segundos y solo registra el throughput y el p99 de latencia
+ * extremo a extremo: en una máquina compartida no son estables. {@code mvn -Psoak test}
+ * la ejecuta durante minutos y además falla si empeoran de los umbrales. Duración,
+ * ritmos y umbrales: propiedades de sistema {@code carga.*}. La auditoría y las
+ * notificaciones las cubre {@link AuditoriaNotificacionesEmbeddedKafkaTests}.
+ */
+@Slf4j
+@SpringBootTest(properties = {
+        "kafka.consumer.pedidos.modo=record",
+        // Los umbrales de throughput y p99 están medidos con el formato compacto
+        "kafka.serde.formato=binario",
+        "kafka.auditoria.habilitado=false",
+        "kafka.notificaciones.habilitado=false",
+        // Los cambios de concurrencia los provoca la propia prueba
+        "kafka.consumer.autoescalado.habilitado=false",
+        "kafka.consumer.flujo.limites.usuarios.tasa=0",
+        "kafka.consumer.dedup.capacidad=1048576",
+        "kafka.logging.modo=resumen",
+        // Calentamiento del productor contra el broker embebido antes de la carga
+        "kafka.arranque.calentar=true"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@EmbeddedKafka(
+        bootstrapServersProperty = "spring.kafka.bootstrap-servers",
+        brokerProperties = {
+                "offsets.topic.replication.factor=1",
+                "transaction.state.log.replication.factor=1",
+                "transaction.state.log.min.isr=1",
+                "group.initial.rebalance.delay.ms=0"
+        })
+class PedidosEmbeddedKafkaTests {
+
+    private static final String GRUPO_PEDIDOS = "pedidos-processor-group";
+
+    private static final Duration DURACION = Duration.parse(System.getProperty("carga.duracion", "PT30S"));
+    private static final int PEDIDOS_POR_SEGUNDO = Integer.getInteger("carga.pedidos-por-segundo", 1000);
+    private static final int USUARIOS_POR_SEGUNDO = Integer.getInteger("carga.usuarios-por-segundo", 200);
+    private static final double MIN_PEDIDOS_POR_SEGUNDO =
+            Double.parseDouble(System.getProperty("carga.min-pedidos-por-segundo", "800"));
+    private static final long MAX_P99_MS = Long.getLong("carga.max-p99-ms", 3000);
+    // Solo en el perfil soak
+    private static final boolean VERIFICAR_RENDIMIENTO = Boolean.getBoolean("carga.verificar-rendimiento");
+
+    // Registros por partición que se vuelven a entregar tras la caída
+    private static final int RETROCESO = 200;
+    private static final Duration ESPERA_MAX = Duration.ofSeconds(60);
+
+    private static final Path DATOS = DatosTemporales.crear("kafka-demo-carga");
+
+    @DynamicPropertySource
+    static void directorios(DynamicPropertyRegistry registro) {
+        DatosTemporales.registrar(registro, DATOS);
+    }
+
+    @AfterAll
+    static void borrarDatos() {
+        // @DirtiesContext ya cerró el contexto tras la prueba, antes que el broker: nada
+        // vuelve a escribir en el directorio ni se queda esperando a un broker parado
+        DatosTemporales.borrar(DATOS);
+    }
+
+    @TestConfiguration
+    static class Observacion {
+
+        @Bean
+        @Primary
+        RegistroEventosObservado registroEventosObservado(RegistroEventosProperties propiedades,
+                                                          MeterRegistry meterRegistry) {
+            return new RegistroEventosObservado(propiedades, meterRegistry);
+        }
+    }
+
+    @Autowired
+    private PedidoProducer pedidoProducer;
+
+    @Autowired
+    private UsuarioProducer usuarioProducer;
+
+    @Autowired
+    private RegistroEventosObservado observado;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private ConsumerFactory<String, Object> consumerFactory;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Value("${kafka.topics.pedidos}")
+    private String pedidosTopic;
+
+    @Value("${kafka.topics.usuarios}")
+    private String usuariosTopic;
+
+    private volatile boolean estable;
+
+    @Test
+    void cargaSostenidaSinPerdidasNiDuplicadosConCaidasYRebalanceos() throws Exception {
+        long segundos = DURACION.toSeconds();
+        Seguimiento pedidos = new Seguimiento((int) (PEDIDOS_POR_SEGUNDO * (segundos + 1)));
+        Seguimiento usuarios = new Seguimiento((int) (USUARIOS_POR_SEGUNDO * (segundos + 1)));
+        observado.seguir(pedidosTopic, pedidos, usuariosTopic, usuarios);
+        esperarAsignacion();
+
+        long inicio = System.nanoTime();
+        long fin = inicio + DURACION.toNanos();
+        Thread productorPedidos = generar("carga-pedidos", PEDIDOS_POR_SEGUNDO, inicio, fin, pedidos,
+                id -> pedidoProducer.enviarPedido(Pedido.builder()
+                        .id((long) id)
+                        .usuarioId((long) id % 1000)
+                        .monto(BigDecimal.valueOf(id % 10_000, 2))
+                        .estado("PENDIENTE")
+                        .fechaPedido(LocalDateTime.now())
+                        .build()));
+        Thread productorUsuarios = generar("carga-usuarios", USUARIOS_POR_SEGUNDO, inicio, fin, usuarios,
+                id -> usuarioProducer.enviarUsuario(Usuario.builder()
+                        .id((long) id)
+                        .nombre("usuario-" + id)
+                        .email("usuario-" + id + "@example.com")
+                        .pais("ES")
+                        .fechaCreacion(LocalDateTime.now())
+                        .build()));
+
+        // Calentamiento fuera de la medida de latencia
+        esperarHasta(inicio + DURACION.toNanos() / 10);
+        estable = true;
+
+        esperarHasta(inicio + DURACION.toNanos() * 35 / 100);
+        int asignadasAlIntruso = aislar(pedidos, usuarios, this::intruso);
+        assertThat(asignadasAlIntruso).as("particiones asignadas al consumidor ajeno").isPositive();
+
+        esperarHasta(inicio + DURACION.toNanos() * 65 / 100);
+        long rebobinados = aislar(pedidos, usuarios, this::caida);
+
+        productorPedidos.join();
+        productorUsuarios.join();
+        estable = false;
+        assertThat(pedidos.alDia(ESPERA_MAX)).as("pedidos procesados tras la carga").isTrue();
+        assertThat(usuarios.alDia(ESPERA_MAX)).as("usuarios procesados tras la carga").isTrue();
+        double segundosTotales = (System.nanoTime() - inicio) / 1e9;
+
+        Resultado rp = pedidos.resultado();
+        Resultado ru = usuarios.resultado();
+        double throughput = rp.procesados / segundosTotales;
+        log.info("Pedidos: {} enviados, {} procesados, {} perdidos, {} duplicados, {} descartados por dedup, "
+                        + "{}/s, p50 {} ms, p99 {} ms",
+                rp.enviados, rp.procesados, rp.perdidos, rp.duplicados, observado.duplicadosDescartados.sum(),
+                String.format("%.0f", throughput), rp.p50Ms, rp.p99Ms);
+        log.info("Usuarios: {} enviados, {} procesados, {} perdidos, {} duplicados, p99 {} ms",
+                ru.enviados, ru.procesados, ru.perdidos, ru.duplicados, ru.p99Ms);
+
+        assertThat(rp.fallidos).as("pedidos rechazados por el broker").isZero();
+        assertThat(rp.perdidos).as("pedidos confirmados sin procesar").isZero();
+        assertThat(rp.duplicados).as("pedidos procesados más de una vez").isZero();
+        assertThat(rebobinados).as("registros rebobinados").isPositive();
+        assertThat(observado.duplicadosDescartados.sum()).as("redeliveries descartados tras la caída").isEqualTo(rebobinados);
+        assertThat(ru.fallidos).as("usuarios rechazados por el broker").isZero();
+        assertThat(ru.perdidos).as("usuarios confirmados sin procesar").isZero();
+        assertThat(ru.duplicados).as("usuarios procesados más de una vez").isZero();
+
+        if (!VERIFICAR_RENDIMIENTO) {
+            return;
+        }
+        assertThat(throughput).as("pedidos procesados por segundo").isGreaterThanOrEqualTo(MIN_PEDIDOS_POR_SEGUNDO);
+        assertThat(rp.p99Ms).as("p99 de latencia de pedidos (ms)").isLessThanOrEqualTo(MAX_P99_MS);
+        assertThat(ru.p99Ms).as("p99 de latencia de usuarios (ms)").isLessThanOrEqualTo(MAX_P99_MS);
+    }
+
+    /**
+     * Deja la medida de latencia fuera del fallo: antes de provocarlo espera a que se
+     * procese todo lo enviado y, después, a que se recupere el retraso acumulado.
+     */
+    private <T> T aislar(Seguimiento pedidos, Seguimiento usuarios, FalloInyectado<T> fallo) throws Exception {
+        estable = false;
+        assertThat(pedidos.alDia(ESPERA_MAX) && usuarios.alDia(ESPERA_MAX)).as("al día antes del fallo").isTrue();
+        T resultado = fallo.provocar();
+        assertThat(pedidos.alDia(ESPERA_MAX) && usuarios.alDia(ESPERA_MAX)).as("al día tras el fallo").isTrue();
+        // La segunda ronda del rebalanceo cooperativo puede llegar después de ponerse al día
+        TimeUnit.SECONDS.sleep(3);
+        assertThat(pedidos.alDia(ESPERA_MAX) && usuarios.alDia(ESPERA_MAX)).as("al día tras el rebalanceo").isTrue();
+        estable = true;
+        return resultado;
+    }
+
+    /**
+     * Un consumidor ajeno entra en el grupo de pedidos, recibe registros que no confirma
+     * y se va: sus particiones vuelven a la aplicación desde el último offset confirmado.
+     */
+    private int intruso() {
+        Map<String, Object> propiedades = new HashMap<>(consumerFactory.getConfigurationProperties());
+        propiedades.put(ConsumerConfig.GROUP_ID_CONFIG, GRUPO_PEDIDOS);
+        propiedades.put(ConsumerConfig.CLIENT_ID_CONFIG, "intruso");
+        propiedades.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        propiedades.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+
+        int maxAsignadas = 0;
+        try (KafkaConsumer<byte[], byte[]> consumidor = new KafkaConsumer<>(propiedades)) {
+            consumidor.subscribe(List.of(pedidosTopic));
+            // Con el asignador cooperativo la partición llega en la segunda ronda del rebalanceo
+            long limite = System.nanoTime() + ESPERA_MAX.toNanos();
+            while (consumidor.assignment().isEmpty() && System.nanoTime() < limite) {
+                consumidor.poll(Duration.ofMillis(100));
+            }
+            long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (System.nanoTime() < fin) {
+                consumidor.poll(Duration.ofMillis(100));
+                maxAsignadas = Math.max(maxAsignadas, consumidor.assignment().size());
+            }
+        }
+        log.info("Consumidor ajeno fuera del grupo tras tener {} particiones", maxAsignadas);
+        return maxAsignadas;
+    }
+
+    /**
+     * Caída después de procesar y antes de confirmar: se paran todos los contenedores del
+     * grupo de pedidos, se rebobinan sus offsets y se vuelven a arrancar con otra
+     * concurrencia. Los registros rebobinados llegan de nuevo y el deduplicador los descarta;
+     * devuelve cuántos se rebobinaron una vez que han vuelto a llegar todos.
+     */
+    private long caida() throws Exception {
+        long descartadosPrevios = observado.duplicadosDescartados.sum();
+        long repetidos = 0;
+        List<MessageListenerContainer> grupo = registry.getAllListenerContainers().stream()
+                .filter(c -> GRUPO_PEDIDOS.equals(c.getGroupId()) && c.isRunning())
+                .toList();
+        grupo.forEach(MessageListenerContainer::stop);
+
+        try (Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            Map<TopicPartition, OffsetAndMetadata> rebobinados = new HashMap<>();
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> confirmado
+                    : admin.listConsumerGroupOffsets(GRUPO_PEDIDOS).partitionsToOffsetAndMetadata().get().entrySet()) {
+                if (confirmado.getKey().topic().equals(pedidosTopic) && confirmado.getValue() != null) {
+                    long offset = confirmado.getValue().offset();
+                    long nuevo = Math.max(0, offset - RETROCESO);
+                    rebobinados.put(confirmado.getKey(), new OffsetAndMetadata(nuevo));
+                    repetidos += offset - nuevo;
+                }
+            }
+            // El grupo tarda un momento en quedar vacío tras la salida de los consumidores
+            long limite = System.nanoTime() + ESPERA_MAX.toNanos();
+            while (true) {
+                try {
+                    admin.alterConsumerGroupOffsets(GRUPO_PEDIDOS, rebobinados).all().get();
+                    break;
+                } catch (ExecutionException e) {
+                    if (System.nanoTime() > limite) {
+                        throw e;
+                    }
+                    TimeUnit.MILLISECONDS.sleep(200);
+                }
+            }
+            log.info("Grupo {} parado y rebobinado {} registros por partición: {}", GRUPO_PEDIDOS, RETROCESO, rebobinados);
+        }
+
+        if (registry.getListenerContainer("pedidos-record") instanceof ConcurrentMessageListenerContainer<?, ?> c) {
+            c.setConcurrency(5);
+        }
+        grupo.forEach(MessageListenerContainer::start);
+
+        long limite = System.nanoTime() + ESPERA_MAX.toNanos();
+        while (observado.duplicadosDescartados.sum() - descartadosPrevios < repetidos && System.nanoTime() < limite) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return repetidos;
+    }
+
+    private Thread generar(String nombre, int porSegundo, long inicio, long fin, Seguimiento seguimiento,
+                           IntFunction<CompletableFuture<?>> enviar) {
+        Thread hilo = new Thread(() -> {
+            long ahora;
+            while ((ahora = System.nanoTime()) < fin) {
+                long debidos = Math.min(seguimiento.capacidad(), (ahora - inicio) * porSegundo / 1_000_000_000L);
+                while (seguimiento.siguiente.get() < debidos) {
+                    int id = seguimiento.siguiente.get();
+                    seguimiento.enviado.set(id, System.nanoTime());
+                    seguimiento.medible.set(id, estable ? 1 : 0);
+                    seguimiento.siguiente.incrementAndGet();
+                    try {
+                        enviar.apply(id).whenComplete((r, ex) -> seguimiento.confirmado.set(id, ex == null ? 1 : 2));
+                    } catch (RuntimeException e) {
+                        seguimiento.confirmado.set(id, 2);
+                    }
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }, nombre);
+        hilo.start();
+        return hilo;
+    }
+
+    private void esperarAsignacion() throws InterruptedException {
+        long limite = System.nanoTime() + ESPERA_MAX.toNanos();
+        for (String id : List.of("pedidos-record", "usuarios")) {
+            MessageListenerContainer container = registry.getListenerContainer(id);
+            while (container.getAssignedPartitions() == null || container.getAssignedPartitions().isEmpty()) {
+                assertThat(System.nanoTime()).as("asignación de " + id).isLessThan(limite);
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+    }
+
+    private static void esperarHasta(long nanos) {
+        long espera;
+        while ((espera = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(espera);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FalloInyectado<T> {
+        T provocar() throws Exception;
+    }
+
+    private record Resultado(int enviados, int fallidos, int procesados, int perdidos, int duplicados,
+                             long p50Ms, long p99Ms) {
+    }
+
+    /**
+     * Estado por id enviado: instante de envío, confirmación del broker y veces procesado.
+     */
+    static final class Seguimiento {
+
+        final AtomicInteger siguiente = new AtomicInteger();
+        final AtomicLongArray enviado;
+        final AtomicIntegerArray medible;
+        // 0 pendiente, 1 confirmado, 2 fallido
+        final AtomicIntegerArray confirmado;
+        final AtomicIntegerArray procesado;
+        final AtomicLongArray latencia;
+
+        // Ids por debajo de este ya confirmados y procesados (o fallidos)
+        private int alDia;
+
+        Seguimiento(int capacidad) {
+            enviado = new AtomicLongArray(capacidad);
+            medible = new AtomicIntegerArray(capacidad);
+            confirmado = new AtomicIntegerArray(capacidad);
+            procesado = new AtomicIntegerArray(capacidad);
+            latencia = new AtomicLongArray(capacidad);
+        }
+
+        int capacidad() {
+            return procesado.length();
+        }
+
+        void procesar(long id) {
+            if (id < 0 || id >= capacidad()) {
+                return;
+            }
+            int i = (int) id;
+            if (procesado.incrementAndGet(i) == 1) {
+                latencia.set(i, System.nanoTime() - enviado.get(i));
+            }
+        }
+
+        /**
+         * Espera a que todo lo enviado hasta ahora esté procesado.
+         */
+        synchronized boolean alDia(Duration espera) throws InterruptedException {
+            int hasta = siguiente.get();
+            long limite = System.nanoTime() + espera.toNanos();
+            while (alDia < hasta) {
+                int estado = confirmado.get(alDia);
+                if (estado == 2 || (estado == 1 && procesado.get(alDia) > 0)) {
+                    alDia++;
+                } else if (System.nanoTime() > limite) {
+                    return false;
+                } else {
+                    TimeUnit.MILLISECONDS.sleep(20);
+                }
+            }
+            return true;
+        }
+
+        Resultado resultado() {
+            int enviados = siguiente.get();
+            int fallidos = 0, procesados = 0, perdidos = 0, duplicados = 0, medidas = 0;
+            long[] latencias = new long[enviados];
+            for (int i = 0; i < enviados; i++) {
+                int veces = procesado.get(i);
+                if (confirmado.get(i) == 2) {
+                    fallidos++;
+                } else if (veces == 0) {
+                    perdidos++;
+                }
+                if (veces > 0) {
+                    procesados++;
+                    if (medible.get(i) == 1) {
+                        latencias[medidas++] = latencia.get(i);
+                    }
+                }
+                if (veces > 1) {
+                    duplicados++;
+                }
+            }
+            Arrays.sort(latencias, 0, medidas);
+            return new Resultado(enviados, fallidos, procesados, perdidos, duplicados,
+                    percentilMs(latencias, medidas, 0.50), percentilMs(latencias, medidas, 0.99));
+        }
+
+        private static long percentilMs(long[] ordenadas, int cantidad, double percentil) {
+            if (cantidad == 0) {
+                return 0;
+            }
+            int indice = Math.min(cantidad - 1, (int) Math.ceil(percentil * cantidad) - 1);
+            return TimeUnit.NANOSECONDS.toMillis(ordenadas[Math.max(0, indice)]);
+        }
+    }
+
+    /**
+     * Registro de eventos que además anota cada pedido y usuario procesado por los listeners.
+     */
+    static class RegistroEventosObservado extends RegistroEventos {
+
+        final LongAdder duplicadosDescartados = new LongAdder();
+
+        private volatile String pedidosTopic;
+        private volatile Seguimiento pedidos;
+        private volatile String usuariosTopic;
+        private volatile Seguimiento usuarios;
+
+        RegistroEventosObservado(RegistroEventosProperties propiedades, MeterRegistry meterRegistry) {
+            super(propiedades, meterRegistry);
+        }
+
+        void seguir(String pedidosTopic, Seguimiento pedidos, String usuariosTopic, Seguimiento usuarios) {
+            this.pedidosTopic = pedidosTopic;
+            this.pedidos = pedidos;
+            this.usuariosTopic = usuariosTopic;
+            this.usuarios = usuarios;
+        }
+
+        @Override
+        public void registrar(Evento evento, String topic, int particion, long offset, Long id) {
+            if (id != null && pedidos != null) {
+                if (evento == Evento.PROCESADO && topic.equals(pedidosTopic)) {
+                    pedidos.procesar(id);
+                } else if (evento == Evento.DUPLICADO && topic.equals(pedidosTopic)) {
+                    duplicadosDescartados.increment();
+                } else if (evento == Evento.PROCESADO && topic.equals(usuariosTopic)) {
+                    usuarios.procesar(id);
+                }
+            }
+            super.registrar(evento, topic, particion, offset, id);
+        }
+    }
+}
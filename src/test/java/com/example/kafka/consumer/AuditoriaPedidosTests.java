@@ -0,0 +1,153 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.model.CambioEstadoPedido;
+import com.example.kafka.model.Pedido;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuditoriaPedidosTests {
+
+    private static final TopicPartition TP = new TopicPartition("pedidos-topic", 0);
+
+    private KafkaTemplate<String, Object> kafkaTemplate;
+    private MockConsumer<String, Object> restauracion;
+    private AuditoriaPedidos auditoria;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void crear() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+
+        restauracion = new MockConsumer<>("earliest");
+        restauracion.updateBeginningOffsets(Map.of(TP, 0L));
+        ConsumerFactory<String, Object> consumerFactory = mock(ConsumerFactory.class);
+        when(consumerFactory.createConsumer(anyString(), anyString(), any(), any())).thenReturn(restauracion);
+
+        auditoria = new AuditoriaPedidos(kafkaTemplate, consumerFactory,
+                new KafkaMetricas(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(auditoria, "auditoriaTopic", "auditoria-topic");
+        ReflectionTestUtils.setField(auditoria, "pedidosEstadosTopic", "pedidos-estados-topic");
+        ReflectionTestUtils.invokeMethod(auditoria, "iniciar");
+    }
+
+    @AfterEach
+    void detener() {
+        ReflectionTestUtils.invokeMethod(auditoria, "detener");
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void laRestauracionSeHaceConLaParticionPausadaYFueraDelCallback() throws Exception {
+        // Los registros solo llegan cuando la prueba lo decide: el callback no puede esperarlos
+        CountDownLatch liberar = new CountDownLatch(1);
+        restauracion.schedulePollTask(() -> {
+            esperar(liberar);
+            restauracion.addRecord(registro(0, Pedido.builder().id(1L).estado("CREADO").build()));
+            restauracion.addRecord(registro(1, Pedido.builder().id(2L).estado("CREADO").build()));
+            restauracion.addRecord(registro(2, Pedido.builder().id(1L).estado("PAGADO").build()));
+        });
+
+        Consumer<?, ?> consumer = consumerConfirmado(3);
+        auditoria.onPartitionsAssigned(consumer, List.of(TP));
+
+        verify(consumer).pause(List.of(TP));
+        auditoria.setupThreadState(consumer);
+        verify(consumer, never()).resume(any());
+        assertThat(auditoria.particionesEnRestauracion()).containsExactly(TP);
+
+        // El hilo del consumidor la reanuda en el primer poll tras terminar la restauración
+        liberar.countDown();
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!auditoria.particionesEnRestauracion().isEmpty() && System.nanoTime() < limite) {
+            auditoria.setupThreadState(consumer);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        verify(consumer).resume(List.of(TP));
+
+        // Con el estado restaurado, el pedido 1 pasa de PAGADO a ENVIADO
+        TransactionSynchronizationManager.initSynchronization();
+        auditoria.auditar(List.of(new ConsumerRecord<>(TP.topic(), TP.partition(), 3, "1",
+                Pedido.builder().id(1L).estado("ENVIADO").build())));
+
+        ArgumentCaptor<Object> cambio = ArgumentCaptor.forClass(Object.class);
+        verify(kafkaTemplate).send(eq("pedidos-estados-topic"), eq("1"), cambio.capture());
+        assertThat(((CambioEstadoPedido) cambio.getValue()).getEstadoAnterior()).isEqualTo("PAGADO");
+    }
+
+    @Test
+    void sinOffsetConfirmadoNoSePausa() {
+        Consumer<?, ?> consumer = consumerConfirmado(0);
+        auditoria.onPartitionsAssigned(consumer, List.of(TP));
+
+        verify(consumer, never()).pause(any());
+        assertThat(auditoria.particionesEnRestauracion()).isEmpty();
+    }
+
+    @Test
+    void unaRevocacionDuranteLaRestauracionLaCancelaSinReanudar() throws Exception {
+        CountDownLatch liberar = new CountDownLatch(1);
+        restauracion.schedulePollTask(() -> esperar(liberar));
+
+        Consumer<?, ?> consumer = consumerConfirmado(3);
+        auditoria.onPartitionsAssigned(consumer, List.of(TP));
+        auditoria.onPartitionsRevokedAfterCommit(consumer, List.of(TP));
+        liberar.countDown();
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(auditoria.particionesEnRestauracion()).isEmpty();
+        auditoria.setupThreadState(consumer);
+        verify(consumer, never()).resume(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<?, ?> consumerConfirmado(long offset) {
+        Consumer<String, Object> consumer = mock(Consumer.class);
+        when(consumer.committed(Set.of(TP))).thenReturn(offset > 0
+                ? Map.of(TP, new OffsetAndMetadata(offset))
+                : Map.of());
+        when(consumer.assignment()).thenReturn(Set.of(TP));
+        return consumer;
+    }
+
+    private static ConsumerRecord<String, Object> registro(long offset, Pedido pedido) {
+        return new ConsumerRecord<>(TP.topic(), TP.partition(), offset, pedido.getId().toString(), pedido);
+    }
+
+    private static void esperar(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
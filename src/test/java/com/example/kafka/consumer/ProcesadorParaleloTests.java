@@ -0,0 +1,204 @@
+package com.example.kafka.consumer;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RebalanceInProgressException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProcesadorParaleloTests {
+
+    private static final TopicPartition TP = new TopicPartition("pedidos-topic", 0);
+
+    private KafkaTemplate<String, Object> kafkaTemplate;
+    private ProcesadorParalelo procesador;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void crear() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocacion -> {
+            ProducerRecord<String, Object> record = invocacion.getArgument(0);
+            return CompletableFuture.completedFuture(new SendResult<>(record,
+                    new RecordMetadata(new TopicPartition(record.topic(), 0), 0, 0, 0, 0, 0)));
+        });
+        procesador = new ProcesadorParalelo(mock(KafkaListenerEndpointRegistry.class),
+                new KafkaMetricas(new SimpleMeterRegistry()), kafkaTemplate);
+        ReflectionTestUtils.setField(procesador, "hilos", 4);
+        ReflectionTestUtils.setField(procesador, "esperaRevocacionMs", 1000L);
+        ReflectionTestUtils.setField(procesador, "intentos", 3);
+        ReflectionTestUtils.setField(procesador, "esperaInicialMs", 10L);
+        ReflectionTestUtils.setField(procesador, "multiplicador", 2.0);
+        ReflectionTestUtils.setField(procesador, "esperaMaxMs", 100L);
+        ReflectionTestUtils.invokeMethod(procesador, "iniciar");
+    }
+
+    @AfterEach
+    void detener() {
+        ReflectionTestUtils.invokeMethod(procesador, "detener");
+    }
+
+    @Test
+    void reintentaSinAdelantarALosSiguientesDeLaMismaKey() throws Exception {
+        List<Long> procesados = new CopyOnWriteArrayList<>();
+        AtomicInteger fallos = new AtomicInteger();
+        procesador.enviar(record(0, "k"), () -> {
+            if (fallos.getAndIncrement() < 2) {
+                throw new IllegalStateException("fallo transitorio");
+            }
+            procesados.add(0L);
+        });
+        procesador.enviar(record(1, "k"), () -> procesados.add(1L));
+
+        Consumer<?, ?> consumer = consumer();
+        esperarConfirmacion(consumer, 2);
+
+        assertThat(procesados).containsExactly(0L, 1L);
+        verify(kafkaTemplate, never()).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void agotadosLosIntentosPublicaEnElDltYLaParticionSigueConfirmando() throws Exception {
+        procesador.enviar(record(0, "k"), () -> {
+            throw new IllegalStateException("fallo permanente");
+        });
+        procesador.enviar(record(1, "otra"), () -> {
+        });
+
+        esperarConfirmacion(consumer(), 2);
+
+        ArgumentCaptor<ProducerRecord<String, Object>> enviado = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(enviado.capture());
+        assertThat(enviado.getValue().topic()).isEqualTo("pedidos-topic-dlt");
+        assertThat(enviado.getValue().key()).isEqualTo("k");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void siElDltFallaSeReintentaLaPublicacionAntesDeConfirmar() throws Exception {
+        AtomicInteger envios = new AtomicInteger();
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocacion -> {
+            ProducerRecord<String, Object> record = invocacion.getArgument(0);
+            if (envios.getAndIncrement() == 0) {
+                return CompletableFuture.failedFuture(new IllegalStateException("broker caído"));
+            }
+            return CompletableFuture.completedFuture(new SendResult<>(record,
+                    new RecordMetadata(new TopicPartition(record.topic(), 0), 0, 0, 0, 0, 0)));
+        });
+        procesador.enviar(record(0, "k"), () -> {
+            throw new IllegalStateException("fallo permanente");
+        });
+
+        esperarConfirmacion(consumer(), 1);
+
+        verify(kafkaTemplate, times(2)).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    void trasRevocarseLaParticionNoSeEjecutaLoQueSigueEnCola() throws Exception {
+        CountDownLatch bloqueo = new CountDownLatch(1);
+        List<Long> procesados = new CopyOnWriteArrayList<>();
+        procesador.enviar(record(0, "k"), () -> {
+            try {
+                bloqueo.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            procesados.add(0L);
+        });
+        procesador.enviar(record(1, "k"), () -> procesados.add(1L));
+
+        Consumer<?, ?> consumer = consumer();
+        procesador.onPartitionsRevokedBeforeCommit(consumer, List.of(TP));
+        bloqueo.countDown();
+        Thread.sleep(200);
+
+        // El que ya estaba en marcha termina; el siguiente de la key ya no es nuestro
+        assertThat(procesados).containsExactly(0L);
+        assertThat(consumer.committed(Set.of(TP)).get(TP).offset()).isZero();
+    }
+
+    @Test
+    void unaConfirmacionFallidaSeVuelveAEnviar() throws Exception {
+        CompletableFuture<Void> hecho = new CompletableFuture<>();
+        procesador.enviar(record(0, "k"), () -> hecho.complete(null));
+        hecho.get(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        when(consumer.assignment()).thenReturn(Set.of(TP));
+        AtomicInteger llamadas = new AtomicInteger();
+        doAnswer(invocacion -> {
+            Map<TopicPartition, OffsetAndMetadata> offsets = invocacion.getArgument(0);
+            OffsetCommitCallback callback = invocacion.getArgument(1);
+            callback.onComplete(offsets, llamadas.getAndIncrement() == 0
+                    ? new RebalanceInProgressException("rebalanceo") : null);
+            return null;
+        }).when(consumer).commitAsync(anyMap(), any(OffsetCommitCallback.class));
+
+        procesador.confirmar(consumer);
+        procesador.confirmar(consumer);
+        procesador.confirmar(consumer);
+
+        // La primera falla, la segunda repite el mismo offset y la tercera ya no tiene nada nuevo
+        verify(consumer, times(2)).commitAsync(anyMap(), any(OffsetCommitCallback.class));
+    }
+
+    private void esperarConfirmacion(Consumer<?, ?> consumer, long offset) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            procesador.confirmar(consumer);
+            OffsetAndMetadata confirmado = consumer.committed(Set.of(TP)).get(TP);
+            if (confirmado != null && confirmado.offset() == offset) {
+                return;
+            }
+            assertThat(System.nanoTime()).as("confirmación hasta el offset " + offset).isLessThan(limite);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Consumer<?, ?> consumer() {
+        MockConsumer<String, Object> consumer =
+                new MockConsumer<>("earliest");
+        consumer.assign(List.of(TP));
+        return consumer;
+    }
+
+    private static ConsumerRecord<String, Object> record(long offset, String key) {
+        return new ConsumerRecord<>(TP.topic(), TP.partition(), offset, key, "pedido-" + offset);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.kafka.dedup;
+
+import com.example.kafka.metrics.KafkaMetricas;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeduplicadorRegistrosTests {
+
+    private static final String TOPIC = "pedidos-topic";
+    private static final String LISTENER = "pedidos-record";
+    /** Con 16 entradas la generación rota al llegar a 11 (70%). */
+    private static final int CAPACIDAD = 16;
+
+    @TempDir
+    Path directorio;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<DeduplicadorRegistros> abiertos = new ArrayList<>();
+
+    @AfterEach
+    void cerrar() throws IOException {
+        for (DeduplicadorRegistros deduplicador : abiertos) {
+            deduplicador.cerrar();
+        }
+    }
+
+    @Test
+    void alLlenarseLaGeneracionActualSeVaciaLaAnteriorYSeOlvidaLoMasAntiguo() throws Exception {
+        DeduplicadorRegistros deduplicador = abrir(CAPACIDAD, Duration.ofHours(24));
+
+        marcar(deduplicador, 0, 11);
+        // La duodécima rota: la generación nueva empieza vacía y la anterior se conserva
+        marcar(deduplicador, 11, 12);
+        assertThat(duplicados(deduplicador, 0, 12)).isEqualTo(12);
+
+        // La nueva se llena y al rotar otra vez se vacía la que tenía los 11 primeros
+        marcar(deduplicador, 12, 22);
+        marcar(deduplicador, 22, 23);
+        assertThat(duplicados(deduplicador, 0, 11)).isZero();
+        assertThat(duplicados(deduplicador, 11, 23)).isEqualTo(12);
+    }
+
+    @Test
+    void laGeneracionCaducadaRotaAunqueNoEsteLlena() throws Exception {
+        DeduplicadorRegistros deduplicador = abrir(CAPACIDAD, Duration.ZERO);
+
+        // Con ttl cero cada marca rota: un registro sobrevive a una rotación, no a dos
+        marcar(deduplicador, 0, 1);
+        marcar(deduplicador, 1, 2);
+        assertThat(duplicados(deduplicador, 0, 2)).isEqualTo(2);
+        marcar(deduplicador, 2, 3);
+        assertThat(duplicados(deduplicador, 0, 1)).isZero();
+        assertThat(duplicados(deduplicador, 1, 3)).isEqualTo(2);
+    }
+
+    @Test
+    void trasReiniciarRecuerdaLoProcesadoYSigueEnLaGeneracionMasReciente() throws Exception {
+        DeduplicadorRegistros deduplicador = abrir(CAPACIDAD, Duration.ofHours(24));
+        marcar(deduplicador, 0, 11);
+        // La generación nueva tiene que ser posterior a la primera al milisegundo
+        Thread.sleep(5);
+        marcar(deduplicador, 11, 12);
+        deduplicador.cerrar();
+        abiertos.remove(deduplicador);
+
+        DeduplicadorRegistros reiniciado = abrir(CAPACIDAD, Duration.ofHours(24));
+        assertThat(duplicados(reiniciado, 0, 12)).isEqualTo(12);
+        // Si se hubiera reabierto en la generación llena, esta marca rotaría y borraría la 12
+        marcar(reiniciado, 12, 13);
+        assertThat(duplicados(reiniciado, 0, 13)).isEqualTo(13);
+    }
+
+    @Test
+    void otraCapacidadDescartaLosFicherosAnteriores() throws Exception {
+        DeduplicadorRegistros deduplicador = abrir(CAPACIDAD, Duration.ofHours(24));
+        marcar(deduplicador, 0, 5);
+        deduplicador.cerrar();
+        abiertos.remove(deduplicador);
+
+        DeduplicadorRegistros reiniciado = abrir(CAPACIDAD * 2, Duration.ofHours(24));
+        assertThat(duplicados(reiniciado, 0, 5)).isZero();
+    }
+
+    @Test
+    void conIdDeEnvioElReenvioConOtroOffsetOParticionEsDuplicado() throws Exception {
+        DeduplicadorRegistros deduplicador = abrir(CAPACIDAD, Duration.ofHours(24));
+        byte[] idEnvio = idEnvio(42);
+
+        deduplicador.marcarProcesado(TOPIC, 0, 100, idEnvio);
+
+        // El spool lo reenvía: nuevo offset, o incluso otra partición
+        assertThat(deduplicador.esDuplicado(LISTENER, TOPIC, 0, 250, idEnvio)).isTrue();
+        assertThat(deduplicador.esDuplicado(LISTENER, TOPIC, 3, 7, idEnvio)).isTrue();
+        // Otro envío en el mismo offset, el mismo id en otro topic o sin cabecera no lo son
+        assertThat(deduplicador.esDuplicado(LISTENER, TOPIC, 0, 100, idEnvio(43))).isFalse();
+        assertThat(deduplicador.esDuplicado(LISTENER, "otro-topic", 0, 100, idEnvio)).isFalse();
+        assertThat(deduplicador.esDuplicado(LISTENER, TOPIC, 0, 100, null)).isFalse();
+
+        assertThat(meterRegistry.get("kafka.app.dedup.duplicados").tag("listener", LISTENER).counter().count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void sinIdDeEnvioValidoSeIdentificaPorParticionYOffset() throws Exception {
+        DeduplicadorRegistros deduplicador = abrir(CAPACIDAD, Duration.ofHours(24));
+
+        deduplicador.marcarProcesado(TOPIC, 1, 100, null);
+        // Una cabecera que no mide 8 bytes se ignora
+        deduplicador.marcarProcesado(TOPIC, 1, 101, new byte[]{1, 2, 3});
+
+        assertThat(deduplicador.esDuplicado(LISTENER, TOPIC, 1, 100, null)).isTrue();
+        assertThat(deduplicador.esDuplicado(LISTENER, TOPIC, 1, 101, null)).isTrue();
+        assertThat(deduplicador.esDuplicado(LISTENER, TOPIC, 2, 100, null)).isFalse();
+        assertThat(deduplicador.esDuplicado(LISTENER, TOPIC, 1, 102, null)).isFalse();
+    }
+
+    @Test
+    void elConjuntoLlenoRechazaValoresNuevos() throws IOException {
+        try (ConjuntoMapeado conjunto = new ConjuntoMapeado(directorio.resolve("lleno.bin"), 4)) {
+            for (long valor = 1; valor <= 4; valor++) {
+                assertThat(conjunto.agregar(valor)).isTrue();
+            }
+            assertThat(conjunto.agregar(5)).isFalse();
+            assertThat(conjunto.agregar(3)).isFalse();
+            assertThat(conjunto.contiene(4)).isTrue();
+            assertThat(conjunto.contiene(5)).isFalse();
+            assertThat(conjunto.tamano()).isEqualTo(4);
+        }
+    }
+
+    private DeduplicadorRegistros abrir(int capacidad, Duration ttl) throws IOException {
+        DeduplicadorRegistros deduplicador = new DeduplicadorRegistros(new KafkaMetricas(meterRegistry), meterRegistry);
+        ReflectionTestUtils.setField(deduplicador, "habilitado", true);
+        ReflectionTestUtils.setField(deduplicador, "directorio", directorio.toString());
+        ReflectionTestUtils.setField(deduplicador, "capacidad", capacidad);
+        ReflectionTestUtils.setField(deduplicador, "ttl", ttl);
+        deduplicador.abrir();
+        abiertos.add(deduplicador);
+        return deduplicador;
+    }
+
+    private static void marcar(DeduplicadorRegistros deduplicador, long desde, long hasta) {
+        for (long offset = desde; offset < hasta; offset++) {
+            deduplicador.marcarProcesado(TOPIC, 0, offset, null);
+        }
+    }
+
+    private static long duplicados(DeduplicadorRegistros deduplicador, long desde, long hasta) {
+        long duplicados = 0;
+        for (long offset = desde; offset < hasta; offset++) {
+            if (deduplicador.esDuplicado(LISTENER, TOPIC, 0, offset, null)) {
+                duplicados++;
+            }
+        }
+        return duplicados;
+    }
+
+    private static byte[] idEnvio(long id) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.kafka.estadisticas;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnilloCubosTests {
+
+    private static final int CUBOS = 4;
+    private static final int DIMENSIONES = 3;
+    private static final int CUBETAS = 2;
+
+    private final AnilloCubos anillo = new AnilloCubos(CUBOS, DIMENSIONES, CUBETAS);
+
+    @Test
+    void unaEpocaNuevaReutilizaElCuboPartiendoDeCero() {
+        assertThat(anillo.anadir(1, 0, 2, 150, 1)).isTrue();
+        assertThat(anillo.anadir(1, 1, 2, 50, 0)).isTrue();
+
+        // La época 5 cae en el mismo cubo que la 1 y lo reclama
+        assertThat(anillo.anadir(5, 0, 2, 700, 1)).isTrue();
+
+        long[] registros = new long[DIMENSIONES];
+        long[] sumas = new long[DIMENSIONES];
+        long[] histogramas = new long[DIMENSIONES * CUBETAS];
+        anillo.acumular(5, registros, sumas, histogramas);
+        assertThat(registros).containsExactly(1, 0, 1);
+        assertThat(sumas).containsExactly(700, 0, 700);
+        assertThat(histogramas).containsExactly(0, 1, 0, 0, 0, 1);
+
+        // La época reemplazada ya no se lee
+        long[] anteriores = new long[DIMENSIONES];
+        anillo.acumular(1, anteriores, new long[DIMENSIONES], new long[DIMENSIONES * CUBETAS]);
+        assertThat(anteriores).containsOnly(0);
+    }
+
+    @Test
+    void unaEpocaAnteriorNoPisaElCuboDeUnaPosterior() {
+        assertThat(anillo.anadir(6, 0, 1, 100, 0)).isTrue();
+
+        assertThat(anillo.anadir(2, 0, 1, 100, 0)).isFalse();
+
+        long[] registros = new long[DIMENSIONES];
+        anillo.acumular(6, registros, new long[DIMENSIONES], new long[DIMENSIONES * CUBETAS]);
+        assertThat(registros).containsExactly(1, 1, 0);
+    }
+
+    @Test
+    void lasEpocasNegativasCaenEnSuCubo() {
+        assertThat(anillo.anadir(-1, 2, 1, 10, 0)).isTrue();
+
+        long[] registros = new long[DIMENSIONES];
+        anillo.acumular(-1, registros, new long[DIMENSIONES], new long[DIMENSIONES * CUBETAS]);
+        assertThat(registros).containsExactly(0, 1, 1);
+    }
+}
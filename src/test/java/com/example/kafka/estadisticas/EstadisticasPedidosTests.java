@@ -0,0 +1,80 @@
+package com.example.kafka.estadisticas;
+
+import com.example.kafka.config.EstadisticasProperties;
+import com.example.kafka.estadisticas.EstadisticasPedidos.Ventana;
+import com.example.kafka.model.Pedido;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EstadisticasPedidosTests {
+
+    private static final long MINUTO = Duration.ofMinutes(1).toMillis();
+
+    @Test
+    void lasVentanasSaltantesSeAlineanConMultiplosDelAvance() {
+        Ventana ventana = new Ventana("quince", false, 15, 5);
+
+        // En el minuto 12 la ventana en curso es [0, 15); en el 15 pasa a [5, 20)
+        assertThat(ventana.fin(12 * MINUTO)).isEqualTo(15);
+        assertThat(ventana.fin(15 * MINUTO - 1)).isEqualTo(15);
+        assertThat(ventana.fin(15 * MINUTO)).isEqualTo(20);
+        assertThat(ventana.fin(-1)).isZero();
+
+        assertThat(new Ventana("minuto", false, 1, 1).fin(7 * MINUTO + 30_000)).isEqualTo(8);
+    }
+
+    @Test
+    void lasUltimasVentanasNoLleganAlCuboMasAntiguo() {
+        // 60 cubos: en los 59 consultables caben 9 ventanas de 15 que avanzan de 5 en 5
+        assertThat(new Ventana("quince", false, 15, 5).maximoUltimas(60)).isEqualTo(9);
+        assertThat(new Ventana("minuto", false, 1, 1).maximoUltimas(60)).isEqualTo(59);
+        assertThat(new Ventana("hora", true, 1, 1).maximoUltimas(2)).isEqualTo(1);
+    }
+
+    @Test
+    void seAceptanLasEpocasQueCabenEnElAnillo() {
+        int cubos = 60;
+        long actual = 1_000;
+
+        assertThat(EstadisticasPedidos.aceptable(actual, actual, cubos)).isTrue();
+        assertThat(EstadisticasPedidos.aceptable(actual + 1, actual, cubos)).isTrue();
+        assertThat(EstadisticasPedidos.aceptable(actual - cubos + 2, actual, cubos)).isTrue();
+
+        assertThat(EstadisticasPedidos.aceptable(actual + 2, actual, cubos)).isFalse();
+        assertThat(EstadisticasPedidos.aceptable(actual - cubos + 1, actual, cubos)).isFalse();
+    }
+
+    @Test
+    void alLiberarseUnaParticionDejaDeContar() {
+        EstadisticasPedidos estadisticas = new EstadisticasPedidos(new EstadisticasProperties(), new SimpleMeterRegistry());
+        estadisticas.iniciar();
+        long ahora = System.currentTimeMillis();
+        estadisticas.registrar(0, ahora, pedido(1, "10.00"));
+        estadisticas.registrar(1, ahora, pedido(2, "20.00"));
+
+        estadisticas.liberar(1);
+
+        Map<String, Object> informe = estadisticas.informe();
+        assertThat(informe.get("particiones")).asString().isEqualTo("[0]");
+        assertThat(ventana(informe, "minuto").get("registros")).isEqualTo(1L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> ventana(Map<String, Object> informe, String nombre) {
+        return (Map<String, Object>) ((Map<String, Object>) informe.get("ventanas")).get(nombre);
+    }
+
+    private static Pedido pedido(long id, String monto) {
+        Pedido pedido = new Pedido();
+        pedido.setId(id);
+        pedido.setEstado("PENDIENTE");
+        pedido.setMonto(new BigDecimal(monto));
+        return pedido;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.kafka.producer;
+
+import com.example.kafka.config.SpoolProperties;
+import com.example.kafka.metrics.KafkaMetricas;
+import com.example.kafka.producer.SegmentoSpool.Entrada;
+import com.example.kafka.serde.RegistroEsquemas;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentoSpoolTests {
+
+    private static final int CAPACIDAD = 4096;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void conservaLasEntradasYLaPosicionConfirmadaAlReabrir() throws Exception {
+        try (SegmentoSpool segmento = SegmentoSpool.crear(directorio, 7, CAPACIDAD)) {
+            for (int i = 1; i <= 3; i++) {
+                assertThat(anadir(segmento, i)).isTrue();
+            }
+            List<Entrada> primera = new ArrayList<>();
+            segmento.leer(1, primera);
+            segmento.confirmar(primera.get(0).siguiente(), 1);
+        }
+
+        try (SegmentoSpool segmento = SegmentoSpool.abrir(directorio.resolve(SegmentoSpool.nombre(7)), 7)) {
+            assertThat(segmento.pendientes()).isEqualTo(2);
+            List<Entrada> entradas = new ArrayList<>();
+            segmento.leer(10, entradas);
+            assertThat(entradas).extracting(Entrada::idEnvio).containsExactly(2L, 3L);
+            assertThat(entradas).extracting(Entrada::topic).containsOnly("pedidos-topic");
+            assertThat(entradas).extracting(Entrada::key).containsExactly("k2", "k3");
+            assertThat(new String(entradas.get(1).valor(), StandardCharsets.UTF_8)).isEqualTo("valor-3");
+        }
+    }
+
+    @Test
+    void descartaLaEntradaFinalIncompletaYSigueEscribiendoDetras() throws Exception {
+        Path fichero = directorio.resolve(SegmentoSpool.nombre(1));
+        int finSegunda;
+        try (SegmentoSpool segmento = SegmentoSpool.crear(directorio, 1, CAPACIDAD)) {
+            anadir(segmento, 1);
+            anadir(segmento, 2);
+            List<Entrada> entradas = new ArrayList<>();
+            segmento.leer(10, entradas);
+            finSegunda = entradas.get(1).siguiente();
+            anadir(segmento, 3);
+        }
+        // Caída a mitad de escribir la tercera: su contenido no coincide con el crc
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap(new byte[]{0x55}), finSegunda + 20);
+        }
+
+        try (SegmentoSpool segmento = SegmentoSpool.abrir(fichero, 1)) {
+            assertThat(segmento.pendientes()).isEqualTo(2);
+            assertThat(segmento.bytesPendientes()).isEqualTo(finSegunda - SegmentoSpool.CABECERA);
+            assertThat(anadir(segmento, 4)).isTrue();
+            List<Entrada> entradas = new ArrayList<>();
+            segmento.leer(10, entradas);
+            assertThat(entradas).extracting(Entrada::idEnvio).containsExactly(1L, 2L, 4L);
+        }
+    }
+
+    @Test
+    void rechazaUnSegmentoConCabeceraNoValida() throws Exception {
+        Path fichero = directorio.resolve(SegmentoSpool.nombre(2));
+        Files.write(fichero, new byte[CAPACIDAD]);
+
+        assertThatThrownBy(() -> SegmentoSpool.abrir(fichero, 2)).isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    void apartaLosSegmentosIlegiblesSinImpedirElArranque() throws Exception {
+        try (SegmentoSpool segmento = SegmentoSpool.crear(directorio, 1, CAPACIDAD)) {
+            anadir(segmento, 1);
+        }
+        // Truncado por debajo de la cabecera
+        Files.write(directorio.resolve(SegmentoSpool.nombre(2)), new byte[10]);
+
+        SpoolProperties propiedades = new SpoolProperties();
+        propiedades.setDirectorio(directorio.toString());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SpoolEnvios spool = new SpoolEnvios(null, propiedades,
+                new RegistroEsquemas(directorio.resolve("esquemas.properties")),
+                new KafkaMetricas(meterRegistry), meterRegistry);
+        ReflectionTestUtils.invokeMethod(spool, "iniciar");
+        try {
+            assertThat(spool.estado()).containsEntry("registros", 1L).containsEntry("modo", "spool");
+            assertThat(directorio.resolve(SegmentoSpool.nombre(2) + ".corrupto")).exists();
+            assertThat(directorio.resolve(SegmentoSpool.nombre(2))).doesNotExist();
+        } finally {
+            ReflectionTestUtils.invokeMethod(spool, "detener");
+        }
+    }
+
+    private static boolean anadir(SegmentoSpool segmento, long id) {
+        return segmento.anadir(id, "pedidos-topic".getBytes(StandardCharsets.UTF_8),
+                ("k" + id).getBytes(StandardCharsets.UTF_8), ("valor-" + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.kafka.serde;
+
+import com.example.kafka.model.Pedido;
+import com.example.kafka.model.Usuario;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinarioSerdeTests {
+
+    private static final String TOPIC = "pedidos-topic";
+
+    @TempDir
+    Path directorio;
+
+    private RegistroEsquemas registro;
+    private BinarioSerializer serializer;
+    private BinarioDeserializer deserializer;
+
+    @BeforeEach
+    void crear() {
+        registro = new RegistroEsquemas(directorio.resolve("esquemas.properties"));
+        serializer = new BinarioSerializer(registro, new JacksonJsonSerializer<>(), true);
+        JacksonJsonDeserializer<Object> json = new JacksonJsonDeserializer<>();
+        json.addTrustedPackages("com.example.kafka.model");
+        deserializer = new BinarioDeserializer(registro, json);
+    }
+
+    @Test
+    void primitivasDeIdaYVuelta() {
+        List<Long> enteros = List.of(0L, 1L, -1L, 63L, -64L, 64L, 300L, Long.MAX_VALUE, Long.MIN_VALUE);
+        List<String> textos = List.of("", "pedido", "ñandú €", "🚀");
+        List<BigDecimal> decimales = List.of(BigDecimal.ZERO, new BigDecimal("-12.50"),
+                new BigDecimal("1E+3"), new BigDecimal("123456789012345678901234567890.123"));
+        List<LocalDateTime> fechas = List.of(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_999),
+                LocalDateTime.of(2026, 3, 1, 10, 15, 30, 123_000_000));
+
+        CodecBinario.Salida salida = new CodecBinario.Salida(4);
+        enteros.forEach(salida::escribirVarLong);
+        textos.forEach(salida::escribirString);
+        decimales.forEach(salida::escribirDecimal);
+        fechas.forEach(salida::escribirFecha);
+        byte[] datos = salida.copiar();
+
+        // Buffer con array (fetch en heap) y directo (sin array accesible)
+        ByteBuffer directo = ByteBuffer.allocateDirect(datos.length).put(datos).flip();
+        for (ByteBuffer buffer : List.of(ByteBuffer.wrap(datos), directo)) {
+            List<Object> leidos = new ArrayList<>();
+            enteros.forEach(e -> leidos.add(CodecBinario.leerVarLong(buffer)));
+            textos.forEach(t -> leidos.add(CodecBinario.leerString(buffer)));
+            decimales.forEach(d -> leidos.add(CodecBinario.leerDecimal(buffer)));
+            fechas.forEach(f -> leidos.add(CodecBinario.leerFecha(buffer)));
+
+            List<Object> esperados = new ArrayList<>();
+            esperados.addAll(enteros);
+            esperados.addAll(textos);
+            esperados.addAll(decimales);
+            esperados.addAll(fechas);
+            assertThat(leidos).isEqualTo(esperados);
+            assertThat(buffer.hasRemaining()).isFalse();
+        }
+    }
+
+    @Test
+    void varintMalFormado() {
+        byte[] datos = new byte[11];
+        Arrays.fill(datos, (byte) 0x80);
+        assertThatThrownBy(() -> CodecBinario.leerVarLong(ByteBuffer.wrap(datos)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void modelosDeIdaYVueltaConCamposNulos() {
+        Pedido pedido = Pedido.builder().id(42L).usuarioId(7L).monto(new BigDecimal("99.95"))
+                .estado("PENDIENTE").fechaPedido(LocalDateTime.of(2026, 1, 2, 3, 4, 5)).build();
+        Pedido sinEstado = Pedido.builder().id(43L).monto(new BigDecimal("1.00")).build();
+        Usuario usuario = Usuario.builder().id(7L).nombre("Ana").email("ana@example.com").pais("ES")
+                .fechaCreacion(LocalDateTime.of(2025, 12, 31, 0, 0)).build();
+
+        for (Object modelo : List.of(pedido, sinEstado, usuario)) {
+            Headers headers = new RecordHeaders();
+            byte[] datos = serializer.serialize(TOPIC, headers, modelo);
+            assertThat(headers.lastHeader(BinarioSerializer.HEADER_FORMATO).value())
+                    .isEqualTo(BinarioSerializer.FORMATO_BINARIO);
+
+            assertThat(deserializer.deserialize(TOPIC, headers, datos)).isEqualTo(modelo);
+            ByteBuffer directo = ByteBuffer.allocateDirect(datos.length).put(datos).flip();
+            assertThat(deserializer.deserialize(TOPIC, headers, directo)).isEqualTo(modelo);
+        }
+    }
+
+    @Test
+    void sinBinarioSeEscribeJsonYSeLeeIgual() {
+        BinarioSerializer soloJson = new BinarioSerializer(registro, new JacksonJsonSerializer<>(), false);
+        Pedido pedido = Pedido.builder().id(1L).monto(new BigDecimal("10.00")).estado("PAGADO").build();
+
+        Headers headers = new RecordHeaders();
+        byte[] datos = soloJson.serialize(TOPIC, headers, pedido);
+
+        assertThat(headers.lastHeader(BinarioSerializer.HEADER_FORMATO)).isNull();
+        assertThat(deserializer.deserialize(TOPIC, headers, datos)).isEqualTo(pedido);
+    }
+
+    @Test
+    void unEscritorMasNuevoConUnCampoDesconocidoSeLeeSinEse() {
+        // v2 añade "canal" entre usuarioId y monto; este lector lo descarta
+        Esquema v2 = new Esquema("Pedido", 2, List.of(
+                new Esquema.Campo("id", TipoCampo.LONG),
+                new Esquema.Campo("usuarioId", TipoCampo.LONG),
+                new Esquema.Campo("canal", TipoCampo.STRING),
+                new Esquema.Campo("monto", TipoCampo.DECIMAL),
+                new Esquema.Campo("estado", TipoCampo.STRING),
+                new Esquema.Campo("fechaPedido", TipoCampo.FECHA)));
+        byte[] datos = escribir(registro.registrar(v2), v2, 5L, 9L, "web", new BigDecimal("3.30"), "ENVIADO", null);
+
+        Object leido = deserializer.deserialize(TOPIC, cabecerasBinario(), datos);
+
+        assertThat(leido).isEqualTo(Pedido.builder().id(5L).usuarioId(9L)
+                .monto(new BigDecimal("3.30")).estado("ENVIADO").build());
+    }
+
+    @Test
+    void unEscritorMasAntiguoSinUnCampoLoDejaEnNull() {
+        Esquema v0 = new Esquema("Pedido", 0, List.of(
+                new Esquema.Campo("id", TipoCampo.LONG),
+                new Esquema.Campo("monto", TipoCampo.DECIMAL)));
+        byte[] datos = escribir(registro.registrar(v0), v0, 6L, new BigDecimal("8"));
+
+        Object leido = deserializer.deserialize(TOPIC, cabecerasBinario(), datos);
+
+        assertThat(leido).isEqualTo(Pedido.builder().id(6L).monto(new BigDecimal("8")).build());
+    }
+
+    @Test
+    void unCampoQueCambiaDeTipoNoSeAsigna() {
+        // Mismo nombre con otro tipo es otro campo: se lee para avanzar y se descarta
+        Esquema cambiado = new Esquema("Pedido", 3, List.of(
+                new Esquema.Campo("id", TipoCampo.LONG),
+                new Esquema.Campo("estado", TipoCampo.LONG)));
+        byte[] datos = escribir(registro.registrar(cambiado), cambiado, 7L, 2L);
+
+        assertThat(deserializer.deserialize(TOPIC, cabecerasBinario(), datos))
+                .isEqualTo(Pedido.builder().id(7L).build());
+    }
+
+    @Test
+    void unEsquemaRegistradoDespuesPorOtraInstanciaSeEncuentraAlReleer() {
+        Esquema v2 = new Esquema("Pedido", 2, List.of(new Esquema.Campo("id", TipoCampo.LONG)));
+        // Otra instancia con el mismo fichero registra el esquema después de arrancar este lector
+        long huella = new RegistroEsquemas(directorio.resolve("esquemas.properties")).registrar(v2);
+
+        assertThat(deserializer.deserialize(TOPIC, cabecerasBinario(), escribir(huella, v2, 11L)))
+                .isEqualTo(Pedido.builder().id(11L).build());
+    }
+
+    @Test
+    void unaHuellaDesconocidaNoBloqueaLaParticion() {
+        Esquema ajeno = new Esquema("Pedido", 9, List.of(new Esquema.Campo("id", TipoCampo.LONG)));
+        byte[] datos = escribir(ajeno.huella(), ajeno, 1L);
+
+        assertThatThrownBy(() -> deserializer.deserialize(TOPIC, cabecerasBinario(), datos))
+                .isInstanceOf(IllegalStateException.class);
+
+        DeserializadorTolerante tolerante = new DeserializadorTolerante(deserializer);
+        tolerante.configure(Map.of(), false);
+        Headers headers = cabecerasBinario();
+        assertThat(tolerante.deserialize(TOPIC, headers, ByteBuffer.wrap(datos))).isNull();
+        assertThat(headers.lastHeader(DeserializadorTolerante.CABECERA_EXCEPCION_VALOR)).isNotNull();
+
+        // El siguiente registro legible de la partición se sigue leyendo
+        Headers siguientes = new RecordHeaders();
+        Pedido pedido = Pedido.builder().id(2L).build();
+        byte[] legible = serializer.serialize(TOPIC, siguientes, pedido);
+        assertThat(tolerante.deserialize(TOPIC, siguientes, ByteBuffer.wrap(legible))).isEqualTo(pedido);
+    }
+
+    private static byte[] escribir(long huella, Esquema esquema, Object... valores) {
+        CodecBinario.Salida salida = new CodecBinario.Salida(64);
+        salida.escribirLongFijo(huella);
+        int inicioBitmap = salida.posicion();
+        int bytesBitmap = (valores.length + 7) / 8;
+        for (int i = 0; i < bytesBitmap; i++) {
+            salida.escribirByte(0);
+        }
+        long bitmap = 0;
+        for (int i = 0; i < valores.length; i++) {
+            if (valores[i] != null) {
+                bitmap |= 1L << i;
+                esquema.campos().get(i).tipo().escribir(salida, valores[i]);
+            }
+        }
+        for (int i = 0; i < bytesBitmap; i++) {
+            salida.escribirByteEn(inicioBitmap + i, (int) (bitmap >>> (8 * i)));
+        }
+        return salida.copiar();
+    }
+
+    private static Headers cabecerasBinario() {
+        Headers headers = new RecordHeaders();
+        headers.add(BinarioSerializer.HEADER_FORMATO, BinarioSerializer.FORMATO_BINARIO);
+        return headers;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.kafka.service;
+
+import com.example.kafka.model.Pedido;
+import com.example.kafka.producer.PasarelaEnvios;
+import com.example.kafka.producer.PasarelaSaturadaException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.SendResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestaBulkServiceTests {
+
+    private final AtomicLong offsets = new AtomicLong();
+    private PasarelaEnvios pasarela;
+    private IngestaBulkService servicio;
+
+    @BeforeEach
+    void setUp() {
+        pasarela = mock(PasarelaEnvios.class);
+        when(pasarela.enviarPedidoEnLote(any(Pedido.class))).thenAnswer(invocacion -> {
+            Pedido pedido = invocacion.getArgument(0);
+            if (pedido.getId() == 99) {
+                throw new PasarelaSaturadaException("Sin permisos libres");
+            }
+            RecordMetadata metadata = new RecordMetadata(new TopicPartition("pedidos-topic", 0),
+                    offsets.getAndIncrement(), 0, 0, 0, 0);
+            return CompletableFuture.completedFuture(new SendResult<String, Object>(
+                    new ProducerRecord<>("pedidos-topic", String.valueOf(pedido.getId()), pedido), metadata));
+        });
+        servicio = new IngestaBulkService(new ObjectMapper().findAndRegisterModules(), pasarela);
+    }
+
+    @Test
+    void unaEntidadQueNoEncajaSeRechazaSinCortarLaIngesta() throws Exception {
+        String cuerpo = """
+                {"id": 1, "estado": "PENDIENTE"}
+                {"id": "no-numerico", "detalle": {"lineas": [1, 2, {"x": 3}]}, "estado": "ENVIADO"}
+                {"id": 3, "monto": 10.5}
+                """;
+
+        Map<String, Object> resultado = ingestar(cuerpo);
+
+        assertThat(resultado.get("aceptados")).isEqualTo(2L);
+        assertThat(resultado.get("fallidos")).isEqualTo(1L);
+        assertThat((List<?>) resultado.get("errores")).singleElement()
+                .asString().startsWith("línea 2: entidad inválida");
+    }
+
+    @Test
+    void unJsonMalFormadoCortaLaIngesta() throws Exception {
+        String cuerpo = """
+                {"id": 1}
+                {"id": 2,,}
+                {"id": 3}
+                """;
+
+        Map<String, Object> resultado = ingestar(cuerpo);
+
+        assertThat(resultado.get("aceptados")).isEqualTo(1L);
+        assertThat(resultado.get("fallidos")).isEqualTo(1L);
+        assertThat((List<?>) resultado.get("errores")).singleElement()
+                .asString().startsWith("línea 2: JSON inválido");
+    }
+
+    @Test
+    void siLaPasarelaSigueLlenaSeDejaDeLeerElCuerpo() throws Exception {
+        String cuerpo = """
+                {"id": 1}
+                {"id": 99}
+                {"id": 3}
+                """;
+
+        Map<String, Object> resultado = ingestar(cuerpo);
+
+        assertThat(resultado.get("interrumpida")).isEqualTo(true);
+        assertThat(resultado.get("status")).isEqualTo("unavailable");
+        assertThat(resultado.get("aceptados")).isEqualTo(1L);
+        assertThat(resultado.get("fallidos")).isEqualTo(1L);
+        verify(pasarela, times(2)).enviarPedidoEnLote(any(Pedido.class));
+    }
+
+    private Map<String, Object> ingestar(String cuerpo) throws Exception {
+        return servicio.ingestarPedidos(new ByteArrayInputStream(cuerpo.getBytes(StandardCharsets.UTF_8))).get();
+    }
+}
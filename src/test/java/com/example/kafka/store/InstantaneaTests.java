@@ -0,0 +1,162 @@
+package com.example.kafka.store;
+
+import com.example.kafka.model.Pedido;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InstantaneaTests {
+
+    private static final int TAMANO_BLOQUE = 1024;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void loEscritoSeRecorreEnOrdenConSusDatos() throws IOException {
+        List<Map.Entry<Long, Pedido>> pedidos = pedidos(1, 500);
+
+        try (Instantanea instantanea = escribir(3, 41, pedidos, "zstd")) {
+            assertThat(instantanea.fichero().getFileName().toString()).isEqualTo(Instantanea.nombre(3, 41));
+            assertThat(Instantanea.offsetDe(instantanea.fichero(), 3)).isEqualTo(41);
+            assertThat(Instantanea.offsetDe(instantanea.fichero(), 4)).isEqualTo(-1);
+        }
+        try (Instantanea instantanea = Instantanea.abrir(directorio.resolve(Instantanea.nombre(3, 41)))) {
+            assertThat(instantanea.particion()).isEqualTo(3);
+            assertThat(instantanea.offset()).isEqualTo(41);
+            assertThat(instantanea.pedidos()).isEqualTo(500);
+            assertThat(instantanea.bloques()).isGreaterThan(1);
+            assertThat(instantanea.compresion()).isEqualTo("zstd");
+
+            List<Map.Entry<Long, Pedido>> leidos = new ArrayList<>();
+            instantanea.recorrer((id, valor) -> leidos.add(new AbstractMap.SimpleEntry<>(id, decodificar(valor))));
+            assertThat(leidos).extracting(Map.Entry::getKey).containsExactlyElementsOf(
+                    pedidos.stream().map(Map.Entry::getKey).toList());
+            assertThat(leidos).extracting(e -> e.getValue().getEstado()).containsExactlyElementsOf(
+                    pedidos.stream().map(e -> e.getValue().getEstado()).toList());
+        }
+    }
+
+    @Test
+    void buscarEncuentraCadaIdEnTodosLosBloquesYNingunoQueFalte() throws IOException {
+        // Solo ids pares: los impares caen entre dos entradas, también entre dos bloques
+        List<Map.Entry<Long, Pedido>> pedidos = new ArrayList<>();
+        for (long id = 10; id <= 2_000; id += 2) {
+            pedidos.add(entrada(id, "ESTADO-" + id));
+        }
+
+        try (Instantanea instantanea = escribir(0, 7, pedidos, "lz4")) {
+            assertThat(instantanea.bloques()).isGreaterThan(5);
+            for (long id = 10; id <= 2_000; id += 2) {
+                assertThat(decodificar(instantanea.buscar(id)).getEstado()).isEqualTo("ESTADO-" + id);
+                assertThat(instantanea.buscar(id + 1)).isNull();
+            }
+            assertThat(instantanea.buscar(9)).isNull();
+            assertThat(instantanea.buscar(Long.MIN_VALUE)).isNull();
+            assertThat(instantanea.buscar(Long.MAX_VALUE)).isNull();
+        }
+    }
+
+    @Test
+    void unPedidoMayorQueElBloqueVaEnUnBloqueSoloYSeEncuentra() throws IOException {
+        String grande = "G".repeat(TAMANO_BLOQUE * 5);
+        List<Map.Entry<Long, Pedido>> pedidos = new ArrayList<>(pedidos(1, 50));
+        pedidos.add(entrada(51, grande));
+        pedidos.addAll(pedidos(52, 50));
+
+        try (Instantanea instantanea = escribir(1, 99, pedidos, "none")) {
+            assertThat(decodificar(instantanea.buscar(51)).getEstado()).isEqualTo(grande);
+            assertThat(decodificar(instantanea.buscar(50)).getEstado()).isEqualTo("ESTADO-50");
+            assertThat(decodificar(instantanea.buscar(52)).getEstado()).isEqualTo("ESTADO-52");
+
+            List<Long> ids = new ArrayList<>();
+            instantanea.recorrer((id, valor) -> ids.add(id));
+            assertThat(ids).hasSize(101).isSorted();
+        }
+    }
+
+    @Test
+    void unBloqueCorruptoSeDetectaAlLeerlo() throws IOException {
+        Path fichero;
+        try (Instantanea instantanea = escribir(2, 10, pedidos(1, 300), "none")) {
+            fichero = instantanea.fichero();
+        }
+        // El primer bloque empieza justo después de la cabecera
+        cambiarByte(fichero, 56 + 20);
+
+        try (Instantanea instantanea = Instantanea.abrir(fichero)) {
+            assertThatThrownBy(() -> instantanea.buscar(1))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("corrupto");
+            assertThatThrownBy(() -> instantanea.recorrer((id, valor) -> { }))
+                    .isInstanceOf(IOException.class);
+            // Los demás bloques siguen legibles
+            assertThat(decodificar(instantanea.buscar(300)).getEstado()).isEqualTo("ESTADO-300");
+        }
+    }
+
+    @Test
+    void unIndiceCorruptoImpideAbrirla() throws IOException {
+        Path fichero;
+        long tamano;
+        try (Instantanea instantanea = escribir(2, 11, pedidos(1, 300), "zstd")) {
+            fichero = instantanea.fichero();
+            tamano = instantanea.tamano();
+        }
+        // El índice ocupa el final del fichero
+        cambiarByte(fichero, tamano - 3);
+
+        assertThatThrownBy(() -> Instantanea.abrir(fichero))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("corrupto");
+    }
+
+    private Instantanea escribir(int particion, long offset, List<Map.Entry<Long, Pedido>> pedidos,
+                                 String compresion) throws IOException {
+        return Instantanea.escribir(directorio, particion, offset, pedidos,
+                p -> p.getEstado().getBytes(StandardCharsets.UTF_8), compresion, TAMANO_BLOQUE);
+    }
+
+    private static void cambiarByte(Path fichero, long posicion) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer dato = ByteBuffer.allocate(1);
+            canal.read(dato, posicion);
+            dato.put(0, (byte) (dato.get(0) ^ 0xff)).rewind();
+            canal.write(dato, posicion);
+        }
+    }
+
+    private static List<Map.Entry<Long, Pedido>> pedidos(long desde, int cantidad) {
+        List<Map.Entry<Long, Pedido>> pedidos = new ArrayList<>();
+        for (long id = desde; id < desde + cantidad; id++) {
+            pedidos.add(entrada(id, "ESTADO-" + id));
+        }
+        return pedidos;
+    }
+
+    private static Map.Entry<Long, Pedido> entrada(long id, String estado) {
+        Pedido pedido = new Pedido();
+        pedido.setId(id);
+        pedido.setEstado(estado);
+        return new AbstractMap.SimpleEntry<>(id, pedido);
+    }
+
+    private static Pedido decodificar(ByteBuffer valor) {
+        Pedido pedido = new Pedido();
+        pedido.setEstado(StandardCharsets.UTF_8.decode(valor).toString());
+        return pedido;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.kafka.store;
+
+import com.example.kafka.model.Pedido;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParticionPedidosTests {
+
+    @TempDir
+    Path directorio;
+
+    private final List<Runnable> compactaciones = new ArrayList<>();
+    private final Executor compactador = compactaciones::add;
+
+    @Test
+    void loAcumuladoEnElBufferSeEscribeAlCerrarYSeReproduceAlAbrir() throws Exception {
+        Path fichero = directorio.resolve("pedidos-0.log");
+        String grande = "X".repeat(100 * 1024);
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            almacen.aplicar(0, 1, pedido(1, "PENDIENTE"));
+            almacen.aplicar(1, 2, pedido(2, grande));
+            almacen.aplicar(2, 3, pedido(3, "ENVIADO"));
+            almacen.aplicar(3, 1, null);
+        }
+
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            assertThat(almacen.ultimoOffset()).isEqualTo(3);
+            assertThat(almacen.buscar(1)).isNull();
+            assertThat(almacen.buscar(2).getEstado()).isEqualTo(grande);
+            assertThat(almacen.buscar(3).getEstado()).isEqualTo("ENVIADO");
+        }
+    }
+
+    @Test
+    void laCompactacionConservaLoAplicadoMientrasSeEscribia() throws Exception {
+        Path fichero = directorio.resolve("pedidos-1.log");
+        long offset = 0;
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            // 100 pedidos actualizados hasta que el log pide compactarse
+            while (compactaciones.isEmpty()) {
+                almacen.aplicar(offset, offset % 100, pedido(offset % 100, "V" + offset));
+                offset++;
+            }
+            long antes = Files.size(fichero);
+            // Registros posteriores a la captura, antes de que la compactación termine
+            almacen.aplicar(offset++, 5, pedido(5, "TRAS-CAPTURA"));
+            almacen.aplicar(offset++, 200, pedido(200, "NUEVO"));
+            almacen.aplicar(offset++, 7, null);
+            almacen.vaciar();
+
+            compactaciones.remove(0).run();
+            assertThat(Files.size(fichero)).isLessThan(antes);
+            almacen.aplicar(offset++, 8, pedido(8, "TRAS-COMPACTAR"));
+        }
+
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            assertThat(almacen.ultimoOffset()).isEqualTo(offset - 1);
+            assertThat(almacen.tamano()).isEqualTo(100);
+            assertThat(almacen.buscar(5).getEstado()).isEqualTo("TRAS-CAPTURA");
+            assertThat(almacen.buscar(200).getEstado()).isEqualTo("NUEVO");
+            assertThat(almacen.buscar(7)).isNull();
+            assertThat(almacen.buscar(8).getEstado()).isEqualTo("TRAS-COMPACTAR");
+            assertThat(almacen.buscar(9).getEstado()).isEqualTo("V" + ultimaVersion(9, offset - 4));
+        }
+    }
+
+    @Test
+    void unaEntradaFinalIncompletaSeDescarta() throws Exception {
+        Path fichero = directorio.resolve("pedidos-2.log");
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            almacen.aplicar(0, 1, pedido(1, "PENDIENTE"));
+        }
+        // Caída a mitad de escribir la siguiente entrada
+        Files.write(fichero, new byte[]{0, 0, 0, 0, 0, 0, 0, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            assertThat(almacen.ultimoOffset()).isZero();
+            almacen.aplicar(1, 2, pedido(2, "ENVIADO"));
+        }
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            assertThat(almacen.ultimoOffset()).isEqualTo(1);
+            assertThat(almacen.tamano()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void unaLongitudCorruptaTerminaElLogValido() throws Exception {
+        Path fichero = directorio.resolve("pedidos-3.log");
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            almacen.aplicar(0, 1, pedido(1, "PENDIENTE"));
+        }
+        // Cabecera completa con una longitud mayor que lo que queda del fichero
+        ByteBuffer corrupta = ByteBuffer.allocate(24).putLong(1).putLong(2).putInt(Integer.MAX_VALUE).putInt(0);
+        Files.write(fichero, corrupta.array(), StandardOpenOption.APPEND);
+
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            assertThat(almacen.ultimoOffset()).isZero();
+            almacen.aplicar(1, 2, pedido(2, "ENVIADO"));
+        }
+        try (ParticionPedidos almacen = abrir(fichero)) {
+            assertThat(almacen.ultimoOffset()).isEqualTo(1);
+            assertThat(almacen.tamano()).isEqualTo(2);
+        }
+    }
+
+    /**
+     * Última versión escrita del id en la secuencia de offsets anterior a {@code hasta}.
+     */
+    private static long ultimaVersion(long id, long hasta) {
+        long ultimo = id;
+        for (long offset = id; offset < hasta; offset += 100) {
+            ultimo = offset;
+        }
+        return ultimo;
+    }
+
+    private ParticionPedidos abrir(Path fichero) {
+        return new ParticionPedidos(0, fichero,
+                p -> (p.getId() + "|" + p.getEstado()).getBytes(StandardCharsets.UTF_8),
+                ParticionPedidosTests::decodificar, compactador);
+    }
+
+    private static Pedido decodificar(ByteBuffer datos) {
+        String texto = StandardCharsets.UTF_8.decode(datos).toString();
+        int separador = texto.indexOf('|');
+        return pedido(Long.parseLong(texto.substring(0, separador)), texto.substring(separador + 1));
+    }
+
+    private static Pedido pedido(long id, String estado) {
+        Pedido pedido = new Pedido();
+        pedido.setId(id);
+        pedido.setEstado(estado);
+        return pedido;
+    }
+}